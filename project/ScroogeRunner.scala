@@ -235,6 +235,11 @@ object ScroogeRunner {
       runScrooge(Seq(Scala, Android), file)
     }
 
+    section("primitive_collections/") {
+      val files = filesInDir(s"$base/src/test/thrift/primitive_collections") mkString " "
+      runScrooge(Seq(Scala), s"--language-flag primitive-collections $files")
+    }
+
     filesGenerated
   }
 
@@ -1,12 +1,16 @@
 package com.twitter.scrooge.adapt
 
+import com.twitter.finagle.stats.{NullStatsReceiver, StatsReceiver}
 import com.twitter.scrooge.{
+  ReusablePool,
   TArrayByteTransport,
+  TSizeProtocol,
   ThriftStruct,
   ThriftStructCodec,
   ThriftStructSerializer
 }
-import java.util
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.{Function => JFunction}
 import org.apache.thrift.protocol.{TBinaryProtocol, TProtocolFactory}
 
 /**
@@ -18,49 +22,130 @@ import org.apache.thrift.protocol.{TBinaryProtocol, TProtocolFactory}
  *                     accordingly to account for the delay.
  * @param useThreshold Number of times a field is accessed during the tracking
  *                     period for it to be considered used.
+ * @param readaptation Whether and how field accesses keep being tracked
+ *                     after the first adaptation, to adapt again when they
+ *                     change. Disabled by default.
+ * @param statsReceiver Where the adaptive decoders report their metrics,
+ *                      scoped by `adaptive_scrooge` and by struct, see
+ *                      [[AdaptTrackingDecoder]]. Nothing is reported by
+ *                      default.
  */
-case class AdaptSettings(trackedReads: Int, useThreshold: Int)
+case class AdaptSettings(
+  trackedReads: Int,
+  useThreshold: Int,
+  readaptation: ReadaptSettings = ReadaptSettings.Disabled,
+  statsReceiver: StatsReceiver = NullStatsReceiver)
+
+object ReadaptSettings {
+
+  /**
+   * Adapt only once, after `trackedReads` reads.
+   */
+  val Disabled: ReadaptSettings = ReadaptSettings(0, 0, 0)
+}
+
+/**
+ * Continuous re-adaptation: after the first adaptation, a sample of the
+ * decoded structs keep recording their field accesses. The access counts
+ * are halved after each window of sampled reads, so that a field is used
+ * when its recent access rate is at least `useThreshold / trackedReads`.
+ *
+ * At the end of a window, or as soon as `fallbackThreshold` structs had to
+ * decode all their fields again because a field considered unused was
+ * accessed, a new decoder is pruned for the fields currently used.
+ *
+ * @param sampleRate        One in `sampleRate` decodes records its field
+ *                          accesses. 0 disables re-adaptation.
+ * @param window            Number of sampled reads after which the fields
+ *                          used are reevaluated and the counts decayed.
+ * @param fallbackThreshold Number of full decodes of structs adaptively
+ *                          decoded by the current decoder that trigger an
+ *                          early reevaluation.
+ * @param hysteresis        A field considered used stays so until its
+ *                          access rate falls below `hysteresis` times the
+ *                          rate making a field used, so that fields
+ *                          accessed close to that rate do not flip at every
+ *                          window.
+ */
+case class ReadaptSettings(
+  sampleRate: Int,
+  window: Int,
+  fallbackThreshold: Int,
+  hysteresis: Double = 0.5) {
+  require(sampleRate >= 0, s"sampleRate must not be negative: $sampleRate")
+  if (enabled) {
+    require(window > 0, s"window must be positive: $window")
+    require(fallbackThreshold > 0, s"fallbackThreshold must be positive: $fallbackThreshold")
+    require(hysteresis > 0 && hysteresis <= 1, s"hysteresis must be in (0, 1]: $hysteresis")
+  }
+
+  def enabled: Boolean = sampleRate > 0
+}
 
 object AdaptBinaryThriftStructSerializer {
   type ProtocolAndTransport = (AdaptTProtocol, TArrayByteTransport)
 
-  // Memoize protocol for setting
-  private val reusableProtocolAndTransportMap =
-    new ThreadLocal[util.HashMap[AdaptSettings, ProtocolAndTransport]] {
-      override def initialValue(): util.HashMap[AdaptSettings, ProtocolAndTransport] =
-        new util.HashMap[AdaptSettings, ProtocolAndTransport]()
+  // Memoize protocol pool for setting and profile
+  private val reusableProtocolAndTransportPools =
+    new ConcurrentHashMap[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]]()
+
+  private val newPool: JFunction[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]] =
+    new JFunction[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]] {
+      def apply(key: (AdaptSettings, AdaptProfile)): ReusablePool[ProtocolAndTransport] = {
+        val (settings, profile) = key
+        ReusablePool { () =>
+          val transport = new TArrayByteTransport()
+          val proto = new TAdaptBinaryProtocol(transport, newAdaptContext(settings, profile))
+          (proto, transport)
+        }
+      }
     }
 
+  // The context of the protocols of the adaptive serializers
+  private[adapt] def newAdaptContext(settings: AdaptSettings, profile: AdaptProfile): AdaptContext =
+    if (profile eq AdaptProfile.Empty) new TrackingAdaptContext(settings)
+    else new ProfiledAdaptContext(settings, profile)
+
   /**
-   * Thread local cache protocol for a setting.
+   * Pool of protocols for a setting.
+   *
+   * The protocol is mutable, each one is only used by a single thread
+   * between acquire and release. This way we reuse the underlying byte
+   * arrays and avoid gc cost.
    */
-  private def cachedProtocol(settings: AdaptSettings): ProtocolAndTransport = {
-
-    /*
-     * The protocol is mutable but this is threadsafe because we have a
-     * separate copy for each thread. This way we reuse the underlying
-     * byte arrays and avoid gc cost.
-     */
-    val protoTransMap = reusableProtocolAndTransportMap.get()
-    var protoTrans = protoTransMap.get(settings)
-    if (protoTrans == null) {
-      val transport = new TArrayByteTransport()
-      val proto = new TAdaptBinaryProtocol(transport, new TrackingAdaptContext(settings))
-      protoTrans = (proto, transport)
-      protoTransMap.put(settings, protoTrans)
-    }
-    protoTrans
-  }
+  private def protocolPool(
+    settings: AdaptSettings,
+    profile: AdaptProfile
+  ): ReusablePool[ProtocolAndTransport] =
+    reusableProtocolAndTransportPools.computeIfAbsent((settings, profile), newPool)
+
+  /**
+   * Hit, miss and oversize counters of the pool of protocols used by
+   * serializers with the given settings and without a profile.
+   */
+  def poolStats(settings: AdaptSettings): ReusablePool.Stats =
+    protocolPool(settings, AdaptProfile.Empty).stats
 
   /**
    * Build an Adaptive binary thrift serializer from settings. Reuses
-   * threadlocal transport for efficiency and concurrency safety.
+   * pooled transports for efficiency and concurrency safety.
    */
   def apply[T <: ThriftStruct](
     codec: ThriftStructCodec[T],
     settings: AdaptSettings
   ): ThriftStructSerializer[T] =
-    new AdaptBinaryThriftStructSerializer[T](codec, settings)
+    new AdaptBinaryThriftStructSerializer[T](codec, settings, AdaptProfile.Empty)
+
+  /**
+   * Build an Adaptive binary thrift serializer whose structs start adapted as
+   * in `profile`, see [[ProfiledAdaptContext]].
+   */
+  def apply[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings,
+    profile: AdaptProfile
+  ): ThriftStructSerializer[T] =
+    new AdaptBinaryThriftStructSerializer[T](codec, settings, profile)
 
   /**
    * A serializer for binary thrift that does adaptive decoding.
@@ -68,7 +153,8 @@ object AdaptBinaryThriftStructSerializer {
    */
   private[this] class AdaptBinaryThriftStructSerializer[T <: ThriftStruct](
     val codec: ThriftStructCodec[T],
-    settings: AdaptSettings)
+    settings: AdaptSettings,
+    profile: AdaptProfile)
       extends ThriftStructSerializer[T] {
 
     // Since we only support the fast path reading from the TArrayByteTransport
@@ -76,17 +162,48 @@ object AdaptBinaryThriftStructSerializer {
     // which we are wire compatible with.
     val protocolFactory: TProtocolFactory = new TBinaryProtocol.Factory
 
+    private[this] val pool = protocolPool(settings, profile)
+
+    private[this] def sizeOf(obj: T, proto: AdaptTProtocol): Int = {
+      val sizes = TSizeProtocol(proto)
+      codec.encode(obj, sizes)
+      Math.toIntExact(sizes.size)
+    }
+
+    override def serializedSize(obj: T): Int = {
+      val protoAndTransport = pool.acquire()
+      try {
+        sizeOf(obj, protoAndTransport._1)
+      } finally {
+        pool.release(protoAndTransport)
+      }
+    }
+
+    // The exact size is computed first so that the bytes are written once, into the returned array.
     override def toBytes(obj: T): Array[Byte] = {
-      val (proto, transport) = cachedProtocol(settings)
-      transport.reset()
-      codec.encode(obj, proto)
-      transport.toByteArray
+      val protoAndTransport = pool.acquire()
+      try {
+        val (proto, transport) = protoAndTransport
+        transport.reset(new Array[Byte](sizeOf(obj, proto)))
+        codec.encode(obj, proto)
+        transport.toByteArray
+      } finally {
+        pool.release(protoAndTransport)
+      }
     }
 
-    override def fromBytes(bytes: Array[Byte]): T = {
-      val (proto, transport) = cachedProtocol(settings)
-      transport.setBytes(bytes)
-      codec.decode(proto)
+    override def fromBytes(bytes: Array[Byte]): T =
+      fromBytes(bytes, 0, bytes.length)
+
+    override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T = {
+      val protoAndTransport = pool.acquire()
+      try {
+        val (proto, transport) = protoAndTransport
+        transport.setBytes(bytes, offset, length)
+        codec.decode(proto)
+      } finally {
+        pool.release(protoAndTransport)
+      }
     }
   }
 }
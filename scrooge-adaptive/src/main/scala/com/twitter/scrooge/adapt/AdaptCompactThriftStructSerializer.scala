@@ -0,0 +1,138 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{
+  ReusablePool,
+  TArrayByteTransport,
+  TSizeProtocol,
+  ThriftStruct,
+  ThriftStructCodec,
+  ThriftStructSerializer
+}
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.{Function => JFunction}
+import org.apache.thrift.protocol.{TCompactProtocol, TProtocolFactory}
+
+object AdaptCompactThriftStructSerializer {
+  type ProtocolAndTransport = (AdaptTProtocol, TArrayByteTransport)
+
+  // Memoize protocol pool for setting and profile
+  private val reusableProtocolAndTransportPools =
+    new ConcurrentHashMap[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]]()
+
+  private val newPool: JFunction[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]] =
+    new JFunction[(AdaptSettings, AdaptProfile), ReusablePool[ProtocolAndTransport]] {
+      def apply(key: (AdaptSettings, AdaptProfile)): ReusablePool[ProtocolAndTransport] = {
+        val (settings, profile) = key
+        ReusablePool { () =>
+          val transport = new TArrayByteTransport()
+          val context = AdaptBinaryThriftStructSerializer.newAdaptContext(settings, profile)
+          val proto = new TAdaptCompactProtocol(transport, context)
+          (proto, transport)
+        }
+      }
+    }
+
+  /**
+   * Pool of protocols for a setting.
+   *
+   * The protocol is mutable, each one is only used by a single thread
+   * between acquire and release. This way we reuse the underlying byte
+   * arrays and avoid gc cost.
+   */
+  private def protocolPool(
+    settings: AdaptSettings,
+    profile: AdaptProfile
+  ): ReusablePool[ProtocolAndTransport] =
+    reusableProtocolAndTransportPools.computeIfAbsent((settings, profile), newPool)
+
+  /**
+   * Hit, miss and oversize counters of the pool of protocols used by
+   * serializers with the given settings and without a profile.
+   */
+  def poolStats(settings: AdaptSettings): ReusablePool.Stats =
+    protocolPool(settings, AdaptProfile.Empty).stats
+
+  /**
+   * Build an Adaptive compact thrift serializer from settings. Reuses
+   * pooled transports for efficiency and concurrency safety.
+   */
+  def apply[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings
+  ): ThriftStructSerializer[T] =
+    new AdaptCompactThriftStructSerializer[T](codec, settings, AdaptProfile.Empty)
+
+  /**
+   * Build an Adaptive compact thrift serializer whose structs start adapted as
+   * in `profile`, see [[ProfiledAdaptContext]].
+   */
+  def apply[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings,
+    profile: AdaptProfile
+  ): ThriftStructSerializer[T] =
+    new AdaptCompactThriftStructSerializer[T](codec, settings, profile)
+
+  /**
+   * A serializer for compact thrift that does adaptive decoding.
+   * @see [[AdaptTProtocol]]
+   */
+  private[this] class AdaptCompactThriftStructSerializer[T <: ThriftStruct](
+    val codec: ThriftStructCodec[T],
+    settings: AdaptSettings,
+    profile: AdaptProfile)
+      extends ThriftStructSerializer[T] {
+
+    // Since we only support the fast path reading from the TArrayByteTransport
+    // we provide the default if someone hits it to be the TCompactProtocol
+    // which we are wire compatible with.
+    val protocolFactory: TProtocolFactory = new TCompactProtocol.Factory
+
+    private[this] val pool = protocolPool(settings, profile)
+
+    private[this] def sizeOf(obj: T, proto: AdaptTProtocol): Int = {
+      val sizes = TSizeProtocol(proto)
+      codec.encode(obj, sizes)
+      Math.toIntExact(sizes.size)
+    }
+
+    override def serializedSize(obj: T): Int = {
+      val protoAndTransport = pool.acquire()
+      try {
+        sizeOf(obj, protoAndTransport._1)
+      } finally {
+        pool.release(protoAndTransport)
+      }
+    }
+
+    // The exact size is computed first so that the bytes are written once, into the returned array.
+    override def toBytes(obj: T): Array[Byte] = {
+      val protoAndTransport = pool.acquire()
+      try {
+        val (proto, transport) = protoAndTransport
+        transport.reset(new Array[Byte](sizeOf(obj, proto)))
+        // the compact protocol tracks field ids across calls, make sure we start clean
+        proto.reset()
+        codec.encode(obj, proto)
+        transport.toByteArray
+      } finally {
+        pool.release(protoAndTransport)
+      }
+    }
+
+    override def fromBytes(bytes: Array[Byte]): T =
+      fromBytes(bytes, 0, bytes.length)
+
+    override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T = {
+      val protoAndTransport = pool.acquire()
+      try {
+        val (proto, transport) = protoAndTransport
+        transport.setBytes(bytes, offset, length)
+        proto.reset()
+        codec.decode(proto)
+      } finally {
+        pool.release(protoAndTransport)
+      }
+    }
+  }
+}
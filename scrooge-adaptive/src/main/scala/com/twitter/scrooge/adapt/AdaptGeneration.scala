@@ -0,0 +1,50 @@
+package com.twitter.scrooge.adapt
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An adaptation of the decoding of a struct.
+ * @param structName Fully qualified name of the struct.
+ * @param generation 1 for the first adaptation, then incremented each time
+ *                   the struct is adapted again, see [[ReadaptSettings]].
+ * @param usedFields Names of the fields decoded, the others are skipped.
+ *                   All the fields when the struct is decoded eagerly.
+ * @param fallbacks  Number of structs decoded by the previous generation
+ *                   which had to decode all their fields again.
+ * @param path       Empty for top level structs, else the parent struct
+ *                   field the structs are decoded from, see
+ *                   [[AdaptDecoderHolder.path]].
+ */
+case class AdaptGeneration(
+  structName: String,
+  generation: Int,
+  usedFields: Set[String],
+  fallbacks: Int,
+  path: String = "") {
+
+  /**
+   * The key of this generation in [[AdaptGeneration.latest]].
+   */
+  def key: String = if (path.isEmpty) structName else path
+}
+
+object AdaptGeneration {
+  private[this] val latestByKey = new ConcurrentHashMap[String, AdaptGeneration]()
+
+  /**
+   * The current generation of each struct adaptively decoded by this process,
+   * by struct name for top level structs and by path for nested ones.
+   */
+  def latest: Map[String, AdaptGeneration] = {
+    val builder = Map.newBuilder[String, AdaptGeneration]
+    val iter = latestByKey.values.iterator
+    while (iter.hasNext) {
+      val generation = iter.next()
+      builder += generation.key -> generation
+    }
+    builder.result()
+  }
+
+  private[adapt] def record(generation: AdaptGeneration): Unit =
+    latestByKey.put(generation.key, generation)
+}
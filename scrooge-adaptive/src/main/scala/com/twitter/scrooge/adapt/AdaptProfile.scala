@@ -0,0 +1,131 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path, StandardCopyOption}
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+
+/**
+ * The fields used by adapted structs, by codec class name for top level
+ * structs and by codec class name and path for nested ones, see
+ * [[AdaptDecoderHolder.path]]. A profile saved by
+ * a process lets a later one start with adapted decoders instead of learning
+ * again which fields are used, see [[ProfiledAdaptContext]].
+ *
+ * Entries are only used while the struct has the fields it had when the
+ * profile was saved.
+ */
+case class AdaptProfile(entries: Map[String, AdaptProfile.Entry]) {
+  import AdaptProfile._
+
+  /**
+   * The ids of the fields of `codec` used according to this profile, if it
+   * has an entry for a struct with the same fields decoded from `path`.
+   */
+  def usedFieldIds[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    path: String = ""
+  ): Option[Set[Short]] =
+    entries.get(keyOf(codec, path)).collect {
+      case entry if entry.schema == schemaOf(codec) => entry.usedFieldIds
+    }
+
+  /**
+   * Writes this profile to `path`, replacing it atomically.
+   */
+  def save(path: Path): Unit = {
+    val lines = entries.toSeq.sortBy(_._1).map {
+      case (key, entry) =>
+        s"$key\t${entry.schema}\t${entry.usedFieldIds.toSeq.sorted.mkString(",")}"
+    }
+    val content = (Header +: lines).mkString("", "\n", "\n")
+    val parent = path.toAbsolutePath.getParent
+    val tmp = Files.createTempFile(parent, path.getFileName.toString, ".tmp")
+    try {
+      Files.write(tmp, content.getBytes(StandardCharsets.UTF_8))
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      Files.deleteIfExists(tmp)
+    }
+  }
+}
+
+object AdaptProfile {
+
+  /**
+   * @param schema       Fingerprint of the ids, names and types of the fields
+   *                     of the struct.
+   * @param usedFieldIds Ids of the fields decoded, the others are skipped.
+   */
+  case class Entry(schema: String, usedFieldIds: Set[Short])
+
+  val Empty: AdaptProfile = AdaptProfile(Map.empty)
+
+  private val Header = "# scrooge adaptive profile v1"
+
+  private[this] val latestByKey = new ConcurrentHashMap[String, Entry]()
+
+  /**
+   * The fields currently used by the structs adaptively decoded by this
+   * process.
+   */
+  def current: AdaptProfile = {
+    val builder = Map.newBuilder[String, Entry]
+    val iter = latestByKey.entrySet.iterator
+    while (iter.hasNext) {
+      val e = iter.next()
+      builder += e.getKey -> e.getValue
+    }
+    AdaptProfile(builder.result())
+  }
+
+  /**
+   * Reads a profile written by `save`, the empty profile if `path` does not
+   * exist.
+   */
+  def load(path: Path): AdaptProfile =
+    if (!Files.exists(path)) Empty
+    else {
+      val lines = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).split('\n')
+      if (lines.isEmpty || lines(0) != Header)
+        throw new IOException(s"$path is not a scrooge adaptive profile")
+      val entries = lines.iterator.drop(1).filter(_.nonEmpty).map { line =>
+        line.split("\t", -1) match {
+          case Array(key, schema, ids) =>
+            val usedFieldIds =
+              try ids.split(',').iterator.filter(_.nonEmpty).map(_.toShort).toSet
+              catch {
+                case e: NumberFormatException =>
+                  throw new IOException(s"Malformed field ids in $path: $line", e)
+              }
+            key -> Entry(schema, usedFieldIds)
+          case _ =>
+            throw new IOException(s"Malformed line in $path: $line")
+        }
+      }
+      AdaptProfile(entries.toMap)
+    }
+
+  /**
+   * Fingerprint of the ids, names and types of the fields of `codec`.
+   */
+  def schemaOf[T <: ThriftStruct](codec: ThriftStructCodec[T]): String = {
+    val fields = codec.metaData.fields.sortBy(_.id).map { f => s"${f.id}:${f.`type`}:${f.name}" }
+    val crc = new CRC32
+    crc.update(fields.mkString(",").getBytes(StandardCharsets.UTF_8))
+    java.lang.Long.toHexString(crc.getValue)
+  }
+
+  private def keyOf[T <: ThriftStruct](codec: ThriftStructCodec[T], path: String): String =
+    if (path.isEmpty) codec.getClass.getName
+    else s"${codec.getClass.getName}@$path"
+
+  private[adapt] def record[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    path: String,
+    usedFieldIds: Set[Short]
+  ): Unit =
+    latestByKey.put(keyOf(codec, path), Entry(schemaOf(codec), usedFieldIds))
+}
@@ -1,8 +1,9 @@
 package com.twitter.scrooge.adapt
 
+import com.twitter.finagle.stats.{Counter, Gauge, Stat, StatsReceiver}
 import com.twitter.logging.Logger
 import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
-import java.lang.reflect.InvocationTargetException
+import java.util.concurrent.{ThreadLocalRandom, TimeUnit}
 import java.util.concurrent.atomic.AtomicInteger
 
 private[adapt] object AdaptTrackingDecoder {
@@ -10,7 +11,6 @@ private[adapt] object AdaptTrackingDecoder {
 
   val AdaptSuffix = "__Adapt"
   val AdaptDecoderSuffix = "__AdaptDecoder"
-  val DecodeMethodName = "decode"
 }
 
 /**
@@ -21,72 +21,220 @@ private[adapt] object AdaptTrackingDecoder {
  * decoding so it's expensive because we end up doing decoding twice.
  * Expectation is that fields that are considered unused will rarely be accessed.
  * When fields are considered unused is decided using useThreshold.
+ *
+ * With re-adaptation enabled, a sample of the reads keeps recording field
+ * accesses after the first adaptation, and the decoder is pruned again when
+ * the fields used change, see [[ReadaptSettings]].
+ *
+ * Metrics are reported to `settings.statsReceiver`, scoped by
+ * `adaptive_scrooge` and by the struct name, or the path of nested structs:
+ *  - `learning_reads` and `sampled_reads`: reads recording field accesses,
+ *    before the first adaptation and sampled afterwards.
+ *  - `adaptations` and `adaptation_latency_us`: how many times the decoder
+ *    was adapted and how long pruning and loading its classes took.
+ *  - `generation`, `used_fields` and `unused_fields`: the current adaptation.
+ *    Unused fields have no member in the adapted representation.
+ *  - `fallbacks` and `field_fallbacks/<field>`: adaptively decoded structs
+ *    decoded again in full because a skipped field was accessed, by the
+ *    field accessed first.
+ *  - `decoded_bytes` and `skipped_bytes`: bytes of the structs adaptively
+ *    decoded, and of the values of the fields skipped among them.
  * @param fallbackDecoder Sometimes it may not be worth doing adaptive decoding,
  *                        fallback to this decoder in those cases.
  * @param accessRecordingDecoderBuilder Builder for decoder used during learning
  *                                      phase. Allows injecting AccessRecorder
  *                                      to learn about how fields are accessed.
  * @param settings        Settings that govern how adaptation is done
- * @param classLoader     ClassLoader used to load the adapted classes generated
- *                        at runtime.
+ * @param parentClassLoader Parent of the ClassLoaders used to load the adapted
+ *                          classes generated at runtime, one per adaptation.
+ * @param path            Where the structs decoded are decoded from, see
+ *                        [[AdaptDecoderHolder.path]].
+ * @param profiledFieldIds  Ids of the fields used according to a saved
+ *                          [[AdaptProfile]], if any. The decoder is then
+ *                          adapted from the first read, without learning.
  */
 private[adapt] class AdaptTrackingDecoder[T <: ThriftStruct](
   codec: ThriftStructCodec[T],
   fallbackDecoder: Decoder[T],
   accessRecordingDecoderBuilder: AccessRecorder => Decoder[T],
   settings: AdaptSettings,
-  classLoader: AdaptClassLoader)
+  parentClassLoader: ClassLoader,
+  path: String,
+  profiledFieldIds: Option[Set[Short]] = None)
     extends AccessRecorder
     with Decoder[T] {
   import AdaptTrackingDecoder._
 
+  private[this] val readaptation = settings.readaptation
+
+  private[this] val stats: StatsReceiver = {
+    val structName = codec.getClass.getName.dropRight(1)
+    settings.statsReceiver.scope("adaptive_scrooge").scope(if (path.isEmpty) structName else path)
+  }
+  private[this] val learningReadsCounter: Counter = stats.counter("learning_reads")
+  private[this] val sampledReadsCounter: Counter = stats.counter("sampled_reads")
+  private[this] val adaptationsCounter: Counter = stats.counter("adaptations")
+  private[this] val adaptationLatencyStat: Stat = stats.stat("adaptation_latency_us")
+  private[this] val fallbacksCounter: Counter = stats.counter("fallbacks")
+  private[this] val fieldFallbacksCounters: Map[Short, Counter] = {
+    val fieldStats = stats.scope("field_fallbacks")
+    codec.metaData.fields.map { f =>
+      (f.id, fieldStats.counter(CaseConverter.toCamelCase(f.name)))
+    }.toMap
+  }
+  private[this] val decodedBytesCounter: Counter = stats.counter("decoded_bytes")
+  private[this] val skippedBytesCounter: Counter = stats.counter("skipped_bytes")
+
+  // Number of reads recorded, decayed along with fieldAccessCounts once re-adapting.
   private[this] val trackedCount = new AtomicInteger()
   private[this] val fieldAccessCounts: Map[Short, AtomicInteger] =
     codec.metaData.fields.map { f => (f.id, new AtomicInteger(0)) }.toMap
 
+  // Sampled reads and full decodes since the fields used were last evaluated.
+  private[this] val windowReads = new AtomicInteger()
+  private[this] val fallbacks = new AtomicInteger()
+  private[this] val fieldFallbackCounts: Map[Short, AtomicInteger] =
+    codec.metaData.fields.map { f => (f.id, new AtomicInteger(0)) }.toMap
+
+  // Minimum access rate of a used field
+  private[this] val useRate: Double =
+    settings.useThreshold.toDouble / math.max(settings.trackedReads, 1)
+
+  // A profile stands for a learning phase in which its fields were used.
+  profiledFieldIds.foreach { ids =>
+    trackedCount.set(settings.trackedReads)
+    ids.foreach { id => fieldAccessCounts.get(id).foreach(_.set(settings.useThreshold)) }
+  }
+
   def fieldAccessed(fieldId: Short): Unit =
     fieldAccessCounts(fieldId).getAndIncrement()
 
+  override def unusedFieldAccessed(fieldId: Short): Unit = {
+    fallbacksCounter.incr()
+    fieldFallbacksCounters(fieldId).incr()
+    if (readaptation.enabled) {
+      fieldFallbackCounts(fieldId).getAndIncrement()
+      if (fallbacks.incrementAndGet() == readaptation.fallbackThreshold) readapt()
+    }
+  }
+
+  override def structDecoded(bytes: Int, skippedBytes: Int): Unit = {
+    decodedBytesCounter.incr(bytes)
+    skippedBytesCounter.incr(skippedBytes)
+  }
+
   @volatile private[this] var adaptiveDecoder: Decoder[T] = _
 
+  // Written holding the lock on this, volatile for the gauges
+  @volatile private[this] var generation: Int = 0
+  @volatile private[this] var useMapById: Map[Short, Boolean] = Map.empty
+
+  // Held on to so that the gauges are not garbage collected
+  private[adapt] val gauges: Seq[Gauge] = Seq(
+    stats.addGauge("generation") { generation.toFloat },
+    stats.addGauge("used_fields") { useMapById.count(_._2).toFloat },
+    stats.addGauge("unused_fields") { useMapById.count(!_._2).toFloat }
+  )
+
   private[this] def allFieldsUsed(useMap: Map[Short, Boolean]): Boolean =
     useMap.values.forall(identity)
 
-  private[this] def buildDecoder(): Decoder[T] = {
-    val useMapByField = codec.metaData.fields.map { f =>
-      (f, fieldAccessCounts(f.id).get >= settings.useThreshold)
+  private[this] def buildDecoder(): Decoder[T] = synchronized {
+    // Concurrent first reads may all build the decoder of a profile
+    if (adaptiveDecoder == null) {
+      val useMap = codec.metaData.fields.map { f =>
+        (f.id, fieldAccessCounts(f.id).get >= settings.useThreshold)
+      }.toMap
+      adapt(useMap, fallbacks = 0)
+    }
+    adaptiveDecoder
+  }
+
+  /**
+   * Reevaluates which fields are used from their recent access rates, prunes
+   * a new decoder if they changed, and decays the counts.
+   */
+  private[this] def readapt(): Unit = synchronized {
+    val reads = math.max(trackedCount.get, 1)
+    // Full decodes happen on reads that are not sampled.
+    val unsampledReads = math.max(windowReads.get, 1).toDouble * readaptation.sampleRate
+    val fallbackCount = fallbacks.get
+    val useMap = codec.metaData.fields.map { f =>
+      val rate = fieldAccessCounts(f.id).get.toDouble / reads
+      val fallbackRate = fieldFallbackCounts(f.id).get / unsampledReads
+      val minRate =
+        if (useMapById.getOrElse(f.id, false)) useRate * readaptation.hysteresis
+        else useRate
+      (f.id, rate >= minRate || fallbackRate >= useRate)
     }.toMap
 
-    val useMapByName = useMapByField.map {
-      case (f, v) =>
-        val normalizedName = CaseConverter.toCamelCase(f.name)
-        (normalizedName, v)
-    }
+    if (useMap != useMapById) adapt(useMap, fallbackCount)
+
+    decay(trackedCount)
+    fieldAccessCounts.values.foreach(decay)
+    windowReads.set(0)
+    fallbacks.set(0)
+    fieldFallbackCounts.values.foreach(_.set(0))
+  }
 
-    val useMapById = useMapByField.map { case (f, v) => (f.id, v) }
+  // Halves a count without losing concurrent increments
+  private[this] def decay(count: AtomicInteger): Unit =
+    count.addAndGet(-(count.get / 2))
 
-    if (allFieldsUsed(useMapById)) {
-      logger.ifDebug(
-        s"Adaptive scrooge is using all fields for ${codec.metaData.structName} struct."
-      )
-      fallbackDecoder
-    } else {
-      val namesToUse = useMapByName.collect {
-        case (name, true) => name
-      }
+  // Called holding the lock on this
+  private[this] def adapt(useMap: Map[Short, Boolean], fallbacks: Int): Unit = {
+    val structName = codec.metaData.structName
+    val namesById = codec.metaData.fields.map { f =>
+      (f.id, CaseConverter.toCamelCase(f.name))
+    }.toMap
+    val useMapByName = useMap.map { case (id, v) => (namesById(id), v) }
+    val namesToUse = useMapByName.collect {
+      case (name, true) => name
+    }
 
-      if (namesToUse.isEmpty) {
+    val decoder =
+      if (allFieldsUsed(useMap)) {
         logger.ifDebug(
-          s"Adaptive scrooge isn't using fields for ${codec.metaData.structName} struct with settings: $settings"
+          s"Adaptive scrooge is using all fields for $structName struct."
         )
+        fallbackDecoder
       } else {
-        logger.ifDebug(
-          s"Adaptive scrooge is using fields: ${namesToUse
-            .mkString(",")} for ${codec.metaData.structName} struct with settings: $settings"
-        )
+        if (namesToUse.isEmpty) {
+          logger.ifDebug(
+            s"Adaptive scrooge isn't using fields for $structName struct with settings: $settings"
+          )
+        } else {
+          logger.ifDebug(
+            s"Adaptive scrooge is using fields: ${namesToUse
+              .mkString(",")} for $structName struct with settings: $settings"
+          )
+        }
+        val start = System.nanoTime()
+        val pruned = buildAdaptiveDecoder(useMapByName, useMap)
+        adaptationLatencyStat.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start).toFloat)
+        pruned
       }
-      buildAdaptiveDecoder(useMapByName, useMapById)
+
+    generation += 1
+    useMapById = useMap
+    adaptationsCounter.incr()
+    adaptiveDecoder = decoder
+    if (generation > 1) {
+      logger.ifInfo(
+        s"Adaptive scrooge adapted $structName struct again after $fallbacks full decodes, " +
+          s"generation $generation is using fields: ${namesToUse.mkString(",")}"
+      )
     }
+    AdaptGeneration.record(
+      AdaptGeneration(
+        codec.getClass.getName.dropRight(1),
+        generation,
+        namesToUse.toSet,
+        fallbacks,
+        path
+      )
+    )
+    AdaptProfile.record(codec, path, useMap.collect { case (id, true) => id }.toSet)
   }
 
   private[this] def buildAdaptiveDecoder(
@@ -99,6 +247,10 @@ private[adapt] class AdaptTrackingDecoder[T <: ThriftStruct](
     val adaptFqdn = codecClassName.dropRight(1) + AdaptSuffix
     val adaptDecoderFqdn = codecClassName.dropRight(1) + AdaptDecoderSuffix
 
+    // A class can only be defined once by a ClassLoader, each adaptation
+    // uses a new one.
+    val classLoader = new AdaptClassLoader(parentClassLoader)
+
     // Prune AdaptTemplate to create Adapt and load it
     val adaptClassBytes = AdaptAsmPruner.pruneAdapt(adaptFqdn, useMapByName)
     classLoader.defineClass(adaptFqdn, adaptClassBytes)
@@ -107,27 +259,34 @@ private[adapt] class AdaptTrackingDecoder[T <: ThriftStruct](
     val adaptDecoderClassBytes =
       AdaptAsmPruner.pruneAdaptDecoder(adaptDecoderFqdn, useMapById)
 
+    // The pruned decoder implements Decoder, so steady state decoding is a
+    // direct interface call rather than a reflective one.
     val decoderClass = classLoader.defineClass(adaptDecoderFqdn, adaptDecoderClassBytes)
-    val prunedDecoder = decoderClass.newInstance()
-
-    val decodeMethod = decoderClass.getMethod(DecodeMethodName, classOf[AdaptTProtocol])
-
-    new Decoder[T] {
-      def apply(prot: AdaptTProtocol): T = {
-        try {
-          decodeMethod.invoke(prunedDecoder, prot).asInstanceOf[T]
-        } catch {
-          case e: InvocationTargetException if e.getCause != null =>
-            // Throw the original exception if present
-            throw e.getCause
-        }
-      }
-    }
+    decoderClass
+      .getDeclaredConstructor(classOf[AccessRecorder])
+      .newInstance(this)
+      .asInstanceOf[Decoder[T]]
+  }
+
+  // Records the field accesses of a sample of the reads once adapted.
+  private[this] def sampledDecode(prot: AdaptTProtocol): T = {
+    sampledReadsCounter.incr()
+    val t = accessRecordingDecoderBuilder(this)(prot)
+    trackedCount.incrementAndGet()
+    if (windowReads.incrementAndGet() == readaptation.window) readapt()
+    t
   }
 
   def apply(prot: AdaptTProtocol): T = {
-    if (adaptiveDecoder != null) {
-      adaptiveDecoder(prot)
+    val decoder = adaptiveDecoder
+    if (decoder != null) {
+      if (readaptation.enabled &&
+        ThreadLocalRandom.current().nextInt(readaptation.sampleRate) == 0)
+        sampledDecode(prot)
+      else
+        decoder(prot)
+    } else if (profiledFieldIds.isDefined) {
+      buildDecoder()(prot)
     } else {
 
       /*
@@ -138,11 +297,11 @@ private[adapt] class AdaptTrackingDecoder[T <: ThriftStruct](
        * over.
        */
       if (trackedCount.incrementAndGet == settings.trackedReads + 1) {
-        val decoder = buildDecoder()
-        adaptiveDecoder = decoder
-        decoder(prot)
-      } else
+        buildDecoder()(prot)
+      } else {
+        learningReadsCounter.incr()
         accessRecordingDecoderBuilder(this)(prot)
+      }
     }
   }
 }
@@ -0,0 +1,43 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
+
+/**
+ * An AdaptContext that starts from a saved [[AdaptProfile]]: the decoders of
+ * the structs it has an entry for are adapted from the first read instead of
+ * after a learning phase. Structs without an entry, or whose fields changed
+ * since the profile was saved, learn which fields they use as with
+ * [[TrackingAdaptContext]].
+ * @param settings Settings that govern how adaptation is done
+ * @param profile  Fields used by each struct, typically loaded with
+ *                 `AdaptProfile.load` from what a previous process saved
+ *                 from `AdaptProfile.current`.
+ */
+class ProfiledAdaptContext(settings: AdaptSettings, profile: AdaptProfile) extends AdaptContext {
+  def buildDecoder[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    fallbackDecoder: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T]
+  ): Decoder[T] = buildDecoder(codec, fallbackDecoder, accessRecordingDecoderBuilder, "")
+
+  override def buildDecoder[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    fallbackDecoder: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T],
+    path: String
+  ): Decoder[T] = {
+    new AdaptTrackingDecoder[T](
+      codec,
+      fallbackDecoder,
+      accessRecordingDecoderBuilder,
+      settings,
+      this.getClass.getClassLoader,
+      path,
+      profile.usedFieldIds(codec, path)
+    )
+  }
+
+  def shouldReloadDecoder: Boolean = false
+
+  def initCopy(): AdaptContext = new ProfiledAdaptContext(settings, profile)
+}
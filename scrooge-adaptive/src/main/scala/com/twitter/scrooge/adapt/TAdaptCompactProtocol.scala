@@ -0,0 +1,30 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{TArrayByteTransport, TLazyCompactProtocol}
+
+/**
+ * This is an implementation of the AdaptTProtocol trait in scrooge-core for
+ * the compact wire format. It is the compact counterpart of
+ * [[TAdaptBinaryProtocol]] and borrows its reading, writing and skipping
+ * from TLazyCompactProtocol. See doc comments for specific methods in base
+ * trait to learn more.
+ */
+class TAdaptCompactProtocol(transport: TArrayByteTransport, context: AdaptContext)
+    extends TLazyCompactProtocol(transport)
+    with AdaptTProtocol {
+  def adaptContext: AdaptContext = context
+
+  def withBytes(bytes: Array[Byte]): AdaptTProtocol = {
+    val trans = new TArrayByteTransport()
+    trans.setBytes(bytes)
+    new TAdaptCompactProtocol(trans, context.initCopy())
+  }
+
+  override def withBytes(bytes: Array[Byte], offset: Int, length: Int): AdaptTProtocol = {
+    val trans = new TArrayByteTransport()
+    trans.setBytes(bytes, offset, length)
+    new TAdaptCompactProtocol(trans, context.initCopy())
+  }
+
+  def offsetSkipEnum(): Int = offsetSkipI32()
+}
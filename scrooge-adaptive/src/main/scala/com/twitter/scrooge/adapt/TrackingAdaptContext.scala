@@ -9,20 +9,25 @@ import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
  * @param settings        Settings that govern how adaptation is done
  */
 class TrackingAdaptContext(settings: AdaptSettings) extends AdaptContext {
-  private[this] val adaptClassLoader =
-    new AdaptClassLoader(this.getClass.getClassLoader)
-
   def buildDecoder[T <: ThriftStruct](
     codec: ThriftStructCodec[T],
     fallbackDecoder: Decoder[T],
     accessRecordingDecoderBuilder: AccessRecorder => Decoder[T]
+  ): Decoder[T] = buildDecoder(codec, fallbackDecoder, accessRecordingDecoderBuilder, "")
+
+  override def buildDecoder[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    fallbackDecoder: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T],
+    path: String
   ): Decoder[T] = {
     new AdaptTrackingDecoder[T](
       codec,
       fallbackDecoder,
       accessRecordingDecoderBuilder,
       settings,
-      adaptClassLoader
+      this.getClass.getClassLoader,
+      path
     )
   }
 
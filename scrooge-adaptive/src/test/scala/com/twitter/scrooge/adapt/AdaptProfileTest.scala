@@ -0,0 +1,94 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.TArrayByteTransport
+import com.twitter.scrooge.adapt.testutil.{ReloadOnceAdaptBinarySerializer, ReloadOnceAdaptContext}
+import com.twitter.scrooge.adapt.thrift.TestStruct
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class AdaptProfileTest extends AnyFunSuite {
+
+  private[this] val t: TestStruct = testStructArbitrary.arbitrary.sample.get
+  private[this] val bytes: Array[Byte] = ReloadOnceAdaptBinarySerializer(TestStruct).toBytes(t)
+  private[this] val settings = AdaptSettings(trackedReads = 1, useThreshold = 1)
+
+  private[this] def profileOf(usedFieldIds: Short*): AdaptProfile =
+    AdaptProfile(
+      Map(
+        TestStruct.getClass.getName ->
+          AdaptProfile.Entry(AdaptProfile.schemaOf(TestStruct), usedFieldIds.toSet)
+      )
+    )
+
+  // Decodes with a decoder built by a ProfiledAdaptContext, for each test
+  private[this] def decodeWithProfile(profile: AdaptProfile): TestStruct = {
+    val context = new ReloadOnceAdaptContext(new ProfiledAdaptContext(settings, profile))
+    val transport = new TArrayByteTransport()
+    transport.setBytes(bytes)
+    TestStruct.decode(new TAdaptBinaryProtocol(transport, context))
+  }
+
+  test("current profile has the fields used by adapted structs") {
+    val adaptSer = ReloadOnceAdaptBinarySerializer(TestStruct, settings)
+    adaptSer.fromBytes(bytes).boolField
+    adaptSer.fromBytes(bytes)
+    assert(AdaptProfile.current.usedFieldIds(TestStruct) == Some(Set[Short](1)))
+  }
+
+  test("profile can be saved and loaded") {
+    val dir = Files.createTempDirectory("adapt-profile")
+    val path = dir.resolve("profile")
+    try {
+      assert(AdaptProfile.load(path) == AdaptProfile.Empty)
+      val profile = profileOf(1, 7)
+      profile.save(path)
+      assert(AdaptProfile.load(path) == profile)
+      profileOf().save(path)
+      assert(AdaptProfile.load(path) == profileOf())
+    } finally {
+      Files.deleteIfExists(path)
+      Files.delete(dir)
+    }
+  }
+
+  test("malformed profiles are not loaded") {
+    val path = Files.createTempFile("adapt-profile", "")
+    try {
+      Files.write(path, "not a profile\n".getBytes(StandardCharsets.UTF_8))
+      intercept[IOException](AdaptProfile.load(path))
+      Files.write(
+        path,
+        "# scrooge adaptive profile v1\nTestStruct$\tabc\tone\n".getBytes(StandardCharsets.UTF_8)
+      )
+      intercept[IOException](AdaptProfile.load(path))
+    } finally {
+      Files.delete(path)
+    }
+  }
+
+  test("structs in the profile are adapted from the first read") {
+    val decoded = decodeWithProfile(profileOf(1, 7))
+    assert(decoded.getClass.getName.endsWith("__Adapt"))
+    val generation = AdaptGeneration.latest(TestStruct.getClass.getName.dropRight(1))
+    assert(generation.generation == 1)
+    assert(generation.usedFields == Set("boolField", "stringField"))
+    assert(decoded.boolField == t.boolField)
+    assert(decoded.stringField == t.stringField)
+    assert(decoded == t)
+  }
+
+  test("structs whose fields changed since the profile was saved learn again") {
+    val profile = AdaptProfile(
+      Map(TestStruct.getClass.getName -> AdaptProfile.Entry("0", Set[Short](1)))
+    )
+    assert(profile.usedFieldIds(TestStruct) == None)
+    val decoded = decodeWithProfile(profile)
+    assert(!decoded.getClass.getName.endsWith("__Adapt"))
+    assert(decoded == t)
+  }
+}
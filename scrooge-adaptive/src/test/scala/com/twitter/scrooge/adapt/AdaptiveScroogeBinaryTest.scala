@@ -0,0 +1,39 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{
+  BinaryThriftStructSerializer,
+  CompactThriftSerializer,
+  LazyBinaryThriftStructSerializer,
+  ThriftStruct,
+  ThriftStructCodec,
+  ThriftStructSerializer
+}
+import com.twitter.scrooge.adapt.testutil.{
+  BinaryThriftFieldRemover,
+  ReloadOnceAdaptBinarySerializer
+}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class AdaptiveScroogeBinaryTest extends AdaptiveScroogeTest {
+  def eagerSerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T] =
+    BinaryThriftStructSerializer(codec)
+
+  def lazySerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T] =
+    LazyBinaryThriftStructSerializer(codec)
+
+  def adaptSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings
+  ): ThriftStructSerializer[T] =
+    ReloadOnceAdaptBinarySerializer(codec, settings)
+
+  def otherFormatSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T]
+  ): ThriftStructSerializer[T] =
+    CompactThriftSerializer(codec)
+
+  def removeField(bytes: Array[Byte], fieldId: Short): Array[Byte] =
+    BinaryThriftFieldRemover.removeField(bytes, fieldId)
+}
@@ -0,0 +1,39 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{
+  BinaryThriftStructSerializer,
+  CompactThriftSerializer,
+  LazyCompactThriftStructSerializer,
+  ThriftStruct,
+  ThriftStructCodec,
+  ThriftStructSerializer
+}
+import com.twitter.scrooge.adapt.testutil.{
+  CompactThriftFieldRemover,
+  ReloadOnceAdaptCompactSerializer
+}
+import org.junit.runner.RunWith
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class AdaptiveScroogeCompactTest extends AdaptiveScroogeTest {
+  def eagerSerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T] =
+    CompactThriftSerializer(codec)
+
+  def lazySerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T] =
+    LazyCompactThriftStructSerializer(codec)
+
+  def adaptSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings
+  ): ThriftStructSerializer[T] =
+    ReloadOnceAdaptCompactSerializer(codec, settings)
+
+  def otherFormatSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T]
+  ): ThriftStructSerializer[T] =
+    BinaryThriftStructSerializer(codec)
+
+  def removeField(bytes: Array[Byte], fieldId: Short): Array[Byte] =
+    CompactThriftFieldRemover.removeField(bytes, fieldId)
+}
@@ -1,23 +1,12 @@
 package com.twitter.scrooge.adapt
 
-import com.twitter.scrooge.{
-  BinaryThriftStructSerializer,
-  LazyBinaryThriftStructSerializer,
-  ThriftStruct,
-  ThriftStructCodec,
-  ThriftStructSerializer
-}
-import com.twitter.scrooge.adapt.testutil.{
-  BinaryThriftFieldRemover,
-  ReloadOnceAdaptBinarySerializer
-}
+import com.twitter.finagle.stats.InMemoryStatsReceiver
+import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec, ThriftStructSerializer}
 import com.twitter.scrooge.adapt.thrift._
 import org.apache.thrift.protocol.{TProtocolException, TType}
-import org.junit.runner.RunWith
 import org.scalacheck.Prop.forAll
 import org.scalacheck.{Arbitrary, Prop}
 import org.scalatest.propspec.AnyPropSpec
-import org.scalatestplus.junit.JUnitRunner
 import org.scalatestplus.scalacheck.Checkers
 
 object Accessor {
@@ -32,8 +21,42 @@ trait Accessor[-T] extends ((T) => Any) {
   def apply(t: T): Any
 }
 
-@RunWith(classOf[JUnitRunner])
-class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
+/**
+ * The adaptive scrooge suite, run for each wire format supported by
+ * [[AdaptTProtocol]] implementations.
+ */
+abstract class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
+
+  /**
+   * Serializer decoding eagerly in the wire format tested.
+   */
+  def eagerSerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T]
+
+  /**
+   * Serializer decoding lazily in the wire format tested.
+   */
+  def lazySerializer[T <: ThriftStruct](codec: ThriftStructCodec[T]): ThriftStructSerializer[T]
+
+  /**
+   * Serializer decoding adaptively in the wire format tested, with a new
+   * decoder, see `ReloadOnceAdaptContext`.
+   */
+  def adaptSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    settings: AdaptSettings = AdaptSettings(1, 1)
+  ): ThriftStructSerializer[T]
+
+  /**
+   * Serializer decoding eagerly in another wire format.
+   */
+  def otherFormatSerializer[T <: ThriftStruct](
+    codec: ThriftStructCodec[T]
+  ): ThriftStructSerializer[T]
+
+  /**
+   * Removes the field with id `fieldId` from the bytes of a struct.
+   */
+  def removeField(bytes: Array[Byte], fieldId: Short): Array[Byte]
 
   /**
    * Bytes of thrift struct with no fields set, it's still a valid thrift object.
@@ -132,12 +155,12 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     implicit arb: Arbitrary[T]
   ): Prop =
     forAll { (orig: T) =>
-      val eagerSer = BinaryThriftStructSerializer(thriftCodec)
+      val eagerSer = eagerSerializer(thriftCodec)
       // Make sure materialization happens
       val trackedReads = 1
       val useThreshold = 1
       val adaptSer =
-        ReloadOnceAdaptBinarySerializer(thriftCodec, AdaptSettings(trackedReads, useThreshold))
+        adaptSerializer(thriftCodec, AdaptSettings(trackedReads, useThreshold))
 
       val bytes = eagerSer.toBytes(orig)
       for (_ <- 0 until trackedReads) {
@@ -153,11 +176,11 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     t == encodeDecode(t, ser)
 
   def protocolDecodeTest(t: TestStruct, accessor: Accessor[TestStruct]): Boolean = {
-    val eagerSer = BinaryThriftStructSerializer(TestStruct)
-    val lazSer = LazyBinaryThriftStructSerializer(TestStruct)
+    val eagerSer = eagerSerializer(TestStruct)
+    val lazSer = lazySerializer(TestStruct)
     val bytes = eagerSer.toBytes(t)
 
-    val adaptSer = ReloadOnceAdaptBinarySerializer(TestStruct)
+    val adaptSer = adaptSerializer(TestStruct)
     val ad = adaptSer.fromBytes(bytes) // trigger adapt
     accessor.apply(ad)
     val adaptGenerated = adaptSer.fromBytes(bytes)
@@ -165,13 +188,14 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     val lazCheck = encodeDecodeTest(adaptGenerated, lazSer)
     val eagerCheck = encodeDecodeTest(adaptGenerated, eagerSer)
     val adaptCheck = encodeDecodeTest(adaptGenerated, adaptSer)
-    lazCheck && eagerCheck && adaptCheck
+    val otherFormatCheck = encodeDecodeTest(adaptGenerated, otherFormatSerializer(TestStruct))
+    lazCheck && eagerCheck && adaptCheck && otherFormatCheck
   }
 
   def encodeDecodeTestAllFormatNestedStruct(tn: TestNestedStruct): Boolean =
-    encodeDecodeTest(tn, BinaryThriftStructSerializer(TestNestedStruct)) &&
-      encodeDecodeTest(tn, LazyBinaryThriftStructSerializer(TestNestedStruct)) &&
-      encodeDecodeTest(tn, ReloadOnceAdaptBinarySerializer(TestNestedStruct))
+    encodeDecodeTest(tn, eagerSerializer(TestNestedStruct)) &&
+      encodeDecodeTest(tn, lazySerializer(TestNestedStruct)) &&
+      encodeDecodeTest(tn, adaptSerializer(TestNestedStruct))
 
   def getMaterializedFieldNames(t: ThriftStruct): Seq[String] =
     t.getClass.getDeclaredFields.flatMap { f =>
@@ -211,16 +235,16 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     ser.fromBytes(ser.toBytes(t))
 
   def toEager[T <: ThriftStruct](t: T, codec: ThriftStructCodec[T]): T =
-    encodeDecode(t, BinaryThriftStructSerializer(codec))
+    encodeDecode(t, eagerSerializer(codec))
 
   def toLazy[T <: ThriftStruct](t: T, codec: ThriftStructCodec[T]): T =
-    encodeDecode(t, LazyBinaryThriftStructSerializer(codec))
+    encodeDecode(t, lazySerializer(codec))
 
   def toAdapt[T <: ThriftStruct](t: T, codec: ThriftStructCodec[T]): T =
-    encodeDecode(t, ReloadOnceAdaptBinarySerializer(codec))
+    encodeDecode(t, adaptSerializer(codec))
 
   def toBytes(t: TestStruct): Array[Byte] = {
-    val ser = BinaryThriftStructSerializer(TestStruct)
+    val ser = eagerSerializer(TestStruct)
     ser.toBytes(t)
   }
 
@@ -234,10 +258,10 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
 
   def fixture[T <: ThriftStruct](t: T, codec: ThriftStructCodec[T], train: T => Any = NoAccess) =
     new Fixture[T] {
-      val eagerSer = BinaryThriftStructSerializer(codec)
+      val eagerSer = eagerSerializer(codec)
       val bytes = eagerSer.toBytes(t)
       val (adaptSer, recorder, adapted) = {
-        val ser = ReloadOnceAdaptBinarySerializer(codec)
+        val ser = adaptSerializer(codec)
         val recorder = ser.fromBytes(bytes)
         train(recorder)
         val adapted = ser.fromBytes(bytes)
@@ -397,10 +421,10 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     "not be materialized") {
     check {
       forAll { t: TestRequiredField =>
-        val eagerSer = BinaryThriftStructSerializer(TestRequiredField)
+        val eagerSer = eagerSerializer(TestRequiredField)
         val trackedReads = 3
         val useThreshold = 2
-        val adaptSer = ReloadOnceAdaptBinarySerializer(
+        val adaptSer = adaptSerializer(
           TestRequiredField,
           AdaptSettings(trackedReads, useThreshold))
 
@@ -474,7 +498,7 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
         val results = Par.calcInParallel(100) { _ =>
           // Build serializer per thread, serializer is not thread safe
           // and is not what we're testing.
-          val adaptSer = ReloadOnceAdaptBinarySerializer(TestStruct)
+          val adaptSer = adaptSerializer(TestStruct)
           encodeDecodeTest(t, adaptSer)
         }
         results.forall(_ == true)
@@ -482,6 +506,117 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     }
   }
 
+  property("Adapt decoder should be shared by threads decoding while it adapts") {
+    check {
+      forAll { t: TestStruct =>
+        val adaptSer =
+          adaptSerializer(TestStruct, AdaptSettings(trackedReads = 50, useThreshold = 10))
+        val bytes = adaptSer.toBytes(t)
+        adaptSer.fromBytes(bytes) // reload the decoder
+        val results = Par.calcInParallel(16) { _ =>
+          (0 until 20).forall { _ =>
+            val decoded = adaptSer.fromBytes(bytes)
+            decoded.boolField == t.boolField && decoded == t
+          }
+        }
+        results.forall(_ == true)
+      }
+    }
+  }
+
+  property("Adapt decoder should adapt again when the fields accessed change") {
+    val t = testStructArbitrary.arbitrary.sample.get
+    val settings = AdaptSettings(
+      trackedReads = 10,
+      useThreshold = 5,
+      ReadaptSettings(sampleRate = 2, window = 10, fallbackThreshold = 5)
+    )
+    val adaptSer = adaptSerializer(TestStruct, settings)
+    val bytes = adaptSer.toBytes(t)
+    def latest: AdaptGeneration = AdaptGeneration.latest(TestStruct.getClass.getName.dropRight(1))
+    def read(times: Int)(access: TestStruct => Any): Unit =
+      for (_ <- 0 until times) access(adaptSer.fromBytes(bytes))
+
+    read(11)(_.boolField)
+    assert(latest.generation == 1)
+    assert(latest.usedFields == Set("boolField"))
+
+    read(200) { decoded =>
+      assert(decoded.boolField == t.boolField)
+      assert(decoded.stringField == t.stringField)
+    }
+    val withStringField = latest
+    assert(withStringField.generation > 1)
+    assert(withStringField.usedFields == Set("boolField", "stringField"))
+
+    read(1000)(_.boolField)
+    assert(latest.generation > withStringField.generation)
+    assert(latest.usedFields == Set("boolField"))
+    assert(adaptSer.fromBytes(bytes) == t)
+  }
+
+  property("Adapt decoder should adapt nested structs to their accesses from the parent field") {
+    val tn = testNestedStructArbitrary.arbitrary.sample.get
+    val t = tn.copy(seqField = Seq(tn.field))
+    val adaptSer = adaptSerializer(
+      TestNestedStruct,
+      AdaptSettings(trackedReads = 4, useThreshold = 2)
+    )
+    val bytes = adaptSer.toBytes(t)
+    def latest(fieldName: String): AdaptGeneration =
+      AdaptGeneration.latest(s"${TestNestedStruct.getClass.getName.dropRight(1)}.$fieldName")
+
+    // The parent adapts on the 5th read, then the nested structs on the 9th.
+    for (_ <- 0 until 12) {
+      val decoded = adaptSer.fromBytes(bytes)
+      assert(decoded.field.boolField == t.field.boolField)
+      assert(decoded.seqField.map(_.boolField) == t.seqField.map(_.boolField))
+    }
+    for (fieldName <- Seq("field", "seqField")) {
+      assert(latest(fieldName).structName == TestStruct.getClass.getName.dropRight(1))
+      assert(latest(fieldName).usedFields == Set("boolField"))
+    }
+    val decoded = adaptSer.fromBytes(bytes)
+    assert(decoded.field.getClass.getName.endsWith(AdaptTrackingDecoder.AdaptSuffix))
+    assert(decoded == t)
+  }
+
+  property("Adapt decoder should report its metrics") {
+    val t = testStructArbitrary.arbitrary.sample.get
+    val stats = new InMemoryStatsReceiver
+    val adaptSer = adaptSerializer(
+      TestStruct,
+      AdaptSettings(trackedReads = 2, useThreshold = 1, statsReceiver = stats)
+    )
+    val bytes = adaptSer.toBytes(t)
+    val scope = Seq("adaptive_scrooge", TestStruct.getClass.getName.dropRight(1))
+    def counter(name: String*): Long = stats.counter(scope ++ name: _*)()
+    def gauge(name: String): Float = stats.gauges(scope :+ name)()
+
+    for (_ <- 0 until 3) adaptSer.fromBytes(bytes).boolField
+    // Accessing a skipped field decodes the struct again
+    assert(adaptSer.fromBytes(bytes).stringField == t.stringField)
+
+    assert(counter("learning_reads") == 2)
+    assert(counter("adaptations") == 1)
+    assert(stats.stat(scope :+ "adaptation_latency_us": _*)().size == 1)
+    assert(gauge("generation") == 1)
+    assert(gauge("used_fields") == 1)
+    assert(gauge("unused_fields") == TestStruct.metaData.fields.size - 1)
+    assert(counter("fallbacks") == 1)
+    assert(counter("field_fallbacks", "stringField") == 1)
+    assert(counter("decoded_bytes") == 2 * bytes.length)
+    assert(counter("skipped_bytes") > 0)
+    assert(counter("skipped_bytes") < counter("decoded_bytes"))
+  }
+
+  property("ReadaptSettings should validate its parameters") {
+    assert(!ReadaptSettings.Disabled.enabled)
+    intercept[IllegalArgumentException](ReadaptSettings(1, 0, 1))
+    intercept[IllegalArgumentException](ReadaptSettings(1, 1, 0))
+    intercept[IllegalArgumentException](ReadaptSettings(1, 1, 1, hysteresis = 1.5))
+  }
+
   property(
     "Adapt serializer should pick up the default value when present " +
       "for optional values, when optional field is used"
@@ -489,10 +624,10 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     check {
       forAll { t: TestStruct =>
         val before = t.copy(optionalFieldWithDefaultValue = "test")
-        val eagerSer = BinaryThriftStructSerializer(TestStruct)
+        val eagerSer = eagerSerializer(TestStruct)
         val bytes = eagerSer.toBytes(before)
-        val pruned = BinaryThriftFieldRemover.removeField(bytes, 17)
-        val adaptSer = ReloadOnceAdaptBinarySerializer(TestStruct)
+        val pruned = removeField(bytes, 17)
+        val adaptSer = adaptSerializer(TestStruct)
         val ad = adaptSer.fromBytes(pruned) // trigger adaptation
         // Make sure optional field with default value is used
         ad.optionalFieldWithDefaultValue
@@ -509,10 +644,10 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     check {
       forAll { t: TestStruct =>
         val before = t.copy(optionalFieldWithDefaultValue = "test")
-        val eagerSer = BinaryThriftStructSerializer(TestStruct)
+        val eagerSer = eagerSerializer(TestStruct)
         val bytes = eagerSer.toBytes(before)
-        val pruned = BinaryThriftFieldRemover.removeField(bytes, 17)
-        val adaptSer = ReloadOnceAdaptBinarySerializer(TestStruct)
+        val pruned = removeField(bytes, 17)
+        val adaptSer = adaptSerializer(TestStruct)
         adaptSer.fromBytes(pruned) // trigger adaptation
         val after = adaptSer.fromBytes(pruned)
         after.optionalFieldWithDefaultValue == "default_value"
@@ -528,10 +663,10 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     check {
       forAll { t: TestRequiredDefaultsStruct =>
         val before = t.copy(stringField = "test")
-        val eagerSer = BinaryThriftStructSerializer(TestRequiredDefaultsStruct)
+        val eagerSer = eagerSerializer(TestRequiredDefaultsStruct)
         val bytes = eagerSer.toBytes(before)
-        val pruned = BinaryThriftFieldRemover.removeField(bytes, 1)
-        val adaptSer = ReloadOnceAdaptBinarySerializer(TestRequiredDefaultsStruct)
+        val pruned = removeField(bytes, 1)
+        val adaptSer = adaptSerializer(TestRequiredDefaultsStruct)
         adaptSer.fromBytes(bytes) // trigger adaptation
         Prop.throws(classOf[TProtocolException]) {
           adaptSer.fromBytes(pruned)
@@ -540,11 +675,28 @@ class AdaptiveScroogeTest extends AnyPropSpec with Checkers {
     }
   }
 
+  property("Adapt serializer should decode from a slice of a larger array") {
+    check {
+      forAll { t: TestStruct =>
+        val bytes = toBytes(t)
+        val padded = Array.fill[Byte](3)(-1) ++ bytes ++ Array.fill[Byte](5)(-1)
+        val adaptSer = adaptSerializer(TestStruct)
+        val recorder = adaptSer.fromBytes(padded, 3, bytes.length) // trigger adaptation
+        recorder.boolField
+        val after = adaptSer.fromBytes(padded, 3, bytes.length)
+        // Accessing an unused field falls back to decoding the same slice eagerly
+        after.stringField == t.stringField &&
+        after == t &&
+        adaptSer.toBytes(after).sameElements(bytes)
+      }
+    }
+  }
+
   property("Adapt struct inside union should work correctly") {
     check {
       forAll { t: TestStructUnion =>
         val f = fixture(t, TestStructUnion)
-        encodeDecodeTest(f.adapted, BinaryThriftStructSerializer(TestStructUnion))
+        encodeDecodeTest(f.adapted, eagerSerializer(TestStructUnion))
       }
     }
   }
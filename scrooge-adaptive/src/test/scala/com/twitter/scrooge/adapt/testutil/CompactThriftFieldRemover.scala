@@ -0,0 +1,80 @@
+package com.twitter.scrooge.adapt.testutil
+
+import org.apache.thrift.protocol.{TCompactProtocol, TProtocol, TProtocolUtil, TType}
+import org.apache.thrift.transport.{TMemoryBuffer, TMemoryInputTransport}
+
+/**
+ * Remove field with an id from bytes of a thrift struct generated using
+ * Compact protocol.
+ * Field ids are delta encoded in the compact protocol, so unlike
+ * [[BinaryThriftFieldRemover]] the struct is copied field by field rather
+ * than cut out of the bytes.
+ * Mainly used for testing, e.g. creating invalid thrift objects that don't
+ * have required fields set.
+ */
+object CompactThriftFieldRemover {
+
+  def removeField(thriftBytes: Array[Byte], fieldToRemove: Short): Array[Byte] = {
+    val in = new TCompactProtocol(new TMemoryInputTransport(thriftBytes))
+    val buffer = new TMemoryBuffer(thriftBytes.length)
+    val out = new TCompactProtocol(buffer)
+    copyStruct(in, out, Some(fieldToRemove))
+    java.util.Arrays.copyOf(buffer.getArray, buffer.length)
+  }
+
+  private[this] def copyStruct(in: TProtocol, out: TProtocol, fieldToRemove: Option[Short]): Unit = {
+    out.writeStructBegin(in.readStructBegin())
+    var done = false
+    while (!done) {
+      val field = in.readFieldBegin()
+      if (field.`type` == TType.STOP) {
+        done = true
+      } else if (fieldToRemove.contains(field.id)) {
+        TProtocolUtil.skip(in, field.`type`)
+        in.readFieldEnd()
+      } else {
+        out.writeFieldBegin(field)
+        copyValue(field.`type`, in, out)
+        out.writeFieldEnd()
+        in.readFieldEnd()
+      }
+    }
+    out.writeFieldStop()
+    in.readStructEnd()
+    out.writeStructEnd()
+  }
+
+  private[this] def copyValue(tpe: Byte, in: TProtocol, out: TProtocol): Unit =
+    tpe match {
+      case TType.STRUCT => copyStruct(in, out, None)
+      case TType.I64 => out.writeI64(in.readI64())
+      case TType.I32 | TType.ENUM => out.writeI32(in.readI32())
+      case TType.I16 => out.writeI16(in.readI16())
+      case TType.BOOL => out.writeBool(in.readBool())
+      case TType.BYTE => out.writeByte(in.readByte())
+      case TType.DOUBLE => out.writeDouble(in.readDouble())
+      case TType.VOID =>
+      case TType.STRING => out.writeBinary(in.readBinary())
+      case TType.LIST =>
+        val list = in.readListBegin()
+        out.writeListBegin(list)
+        for (_ <- 0 until list.size) copyValue(list.elemType, in, out)
+        in.readListEnd()
+        out.writeListEnd()
+      case TType.SET =>
+        val set = in.readSetBegin()
+        out.writeSetBegin(set)
+        for (_ <- 0 until set.size) copyValue(set.elemType, in, out)
+        in.readSetEnd()
+        out.writeSetEnd()
+      case TType.MAP =>
+        val map = in.readMapBegin()
+        out.writeMapBegin(map)
+        for (_ <- 0 until map.size) {
+          copyValue(map.keyType, in, out)
+          copyValue(map.valueType, in, out)
+        }
+        in.readMapEnd()
+        out.writeMapEnd()
+    }
+}
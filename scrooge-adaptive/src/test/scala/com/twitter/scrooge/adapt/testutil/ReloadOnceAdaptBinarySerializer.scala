@@ -46,5 +46,12 @@ object ReloadOnceAdaptBinarySerializer {
       transport.setBytes(bytes)
       codec.decode(proto)
     }
+
+    override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T = {
+      val transport = new TArrayByteTransport()
+      val proto = new TAdaptBinaryProtocol(transport, adaptContext)
+      transport.setBytes(bytes, offset, length)
+      codec.decode(proto)
+    }
   }
 }
@@ -2,26 +2,34 @@ package com.twitter.scrooge.adapt.testutil
 
 import com.twitter.scrooge.adapt.{AccessRecorder, AdaptContext, Decoder}
 import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
-import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Wraps an adapt context to provide reload once behavior i.e. it when
  * shouldReloadDecoder is called the first time then and only then true is
  * returned. This is useful for testing where we want a new decoder to be
  * created for each test but wouldn't want reload to be triggered every time
- * inside the test.
+ * inside the test. Nested struct decoders are reloaded once per path.
  */
 class ReloadOnceAdaptContext(underlying: AdaptContext) extends AdaptContext {
-  private[this] val reloaded = new AtomicBoolean
+  private[this] val reloaded = ConcurrentHashMap.newKeySet[String]()
   def buildDecoder[T <: ThriftStruct](
     codec: ThriftStructCodec[T],
     fallbackDecoder: Decoder[T],
     accessRecordingDecoderBuilder: AccessRecorder => Decoder[T]
   ): Decoder[T] = underlying.buildDecoder(codec, fallbackDecoder, accessRecordingDecoderBuilder)
 
-  def shouldReloadDecoder: Boolean =
-    if (reloaded.get()) false
-    else reloaded.compareAndSet(false, true)
+  override def buildDecoder[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    fallbackDecoder: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T],
+    path: String
+  ): Decoder[T] =
+    underlying.buildDecoder(codec, fallbackDecoder, accessRecordingDecoderBuilder, path)
+
+  def shouldReloadDecoder: Boolean = shouldReloadDecoder("")
+
+  override def shouldReloadDecoder(path: String): Boolean = reloaded.add(path)
 
   // initCopy is used for decoding thrift from bytes when
   // unused field is accessed. We don't want to reload
@@ -0,0 +1,112 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge.{BinaryThriftStructSerializer, ThriftStructSerializer}
+import com.twitter.scrooge.adapt.{AdaptBinaryThriftStructSerializer, AdaptSettings}
+import com.twitter.scrooge.adapt.testutil.ReloadOnceAdaptBinarySerializer
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+import thrift.benchmark._
+
+/**
+ * Compares decoding airlines with the pruned decoder built by adaptive
+ * decoding, once it has learnt which fields are accessed, with eager decoding.
+ * `AdaptDecodeContendedBenchmark` does the same from as many threads as there
+ * are cores, sharing the serializers.
+ */
+object AdaptDecodeBenchmark {
+  val (airlines: Array[Airline], airlinesBytes) =
+    AirlineGenerator.buildAirlinesAndBytes(1337, 10)
+
+  private final def read3Fields(bh: Blackhole, airline: Airline): Unit = {
+    bh.consume(airline.name)
+    bh.consume(airline.headQuarter)
+    bh.consume(airline.owner)
+  }
+
+  @State(Scope.Thread)
+  class DecodeState {
+    val eagerSerializer: BinaryThriftStructSerializer[Airline] =
+      BinaryThriftStructSerializer(Airline)
+    val adaptSerializer: ThriftStructSerializer[Airline] =
+      ReloadOnceAdaptBinarySerializer(Airline, Settings)
+    var iter = 0
+
+    def nextBytes(): Array[Byte] = {
+      val bytes = airlinesBytes(iter % airlinesBytes.length)
+      iter += 1
+      bytes
+    }
+
+    @Setup(Level.Trial)
+    def setup(): Unit = adapt(adaptSerializer)
+  }
+
+  @State(Scope.Benchmark)
+  class SharedDecodeState {
+    val eagerSerializer: BinaryThriftStructSerializer[Airline] =
+      BinaryThriftStructSerializer(Airline)
+    val adaptSerializer: ThriftStructSerializer[Airline] =
+      AdaptBinaryThriftStructSerializer(Airline, Settings)
+
+    @Setup(Level.Trial)
+    def setup(): Unit = adapt(adaptSerializer)
+  }
+
+  @State(Scope.Thread)
+  class ThreadState {
+    var iter = 0
+
+    def nextBytes(): Array[Byte] = {
+      val bytes = airlinesBytes(iter % airlinesBytes.length)
+      iter += 1
+      bytes
+    }
+  }
+
+  private val Settings = AdaptSettings(trackedReads = 10, useThreshold = 5)
+
+  // Learn that only the 3 fields are accessed, and build the pruned decoder
+  private def adapt(adaptSerializer: ThriftStructSerializer[Airline]): Unit =
+    for (_ <- 0 until 2; bytes <- airlinesBytes) {
+      val airline = adaptSerializer.fromBytes(bytes)
+      require(airline.name != null && airline.headQuarter != null && airline.owner != null)
+    }
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class AdaptDecodeBenchmark {
+  import AdaptDecodeBenchmark._
+
+  @Benchmark
+  def timeAdaptDecode(state: DecodeState): Airline =
+    state.adaptSerializer.fromBytes(state.nextBytes())
+
+  @Benchmark
+  def timeEagerDecode(state: DecodeState): Airline =
+    state.eagerSerializer.fromBytes(state.nextBytes())
+
+  @Benchmark
+  def timeAdaptDecode3FieldsAccessed(state: DecodeState, bh: Blackhole): Unit =
+    read3Fields(bh, state.adaptSerializer.fromBytes(state.nextBytes()))
+
+  @Benchmark
+  def timeEagerDecode3FieldsAccessed(state: DecodeState, bh: Blackhole): Unit =
+    read3Fields(bh, state.eagerSerializer.fromBytes(state.nextBytes()))
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+@Threads(Threads.MAX)
+class AdaptDecodeContendedBenchmark {
+  import AdaptDecodeBenchmark._
+
+  @Benchmark
+  def timeAdaptDecode(shared: SharedDecodeState, thread: ThreadState): Airline =
+    shared.adaptSerializer.fromBytes(thread.nextBytes())
+
+  @Benchmark
+  def timeEagerDecode(shared: SharedDecodeState, thread: ThreadState): Airline =
+    shared.eagerSerializer.fromBytes(thread.nextBytes())
+}
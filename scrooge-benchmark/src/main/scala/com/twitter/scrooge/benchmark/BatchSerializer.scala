@@ -0,0 +1,66 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge._
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import thrift.benchmark._
+
+object BatchSerializerBenchmark {
+
+  @State(Scope.Benchmark)
+  class AirportState {
+    // Size of the pool the batches are processed on, 1 is sequential.
+    @Param(Array("1", "2", "4", "8"))
+    var parallelism: Int = _
+
+    @Param(Array("binary", "lazy-binary", "compact"))
+    var serializerName: String = _
+
+    val (airports, _) = AirportGenerator.buildAirportsAndBytes(1337, 10000)
+
+    var pool: ForkJoinPool = _
+    var serializer: ThriftStructSerializer[Airport] = _
+    var bytes: Array[Array[Byte]] = _
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      pool = new ForkJoinPool(parallelism)
+      serializer = serializerName match {
+        case "binary" => BinaryThriftStructSerializer(Airport)
+        case "lazy-binary" => LazyBinaryThriftStructSerializer(Airport)
+        case "compact" => CompactThriftSerializer(Airport)
+      }
+      bytes = serializer.toBytesBatch(airports, pool)
+      require(
+        serializer.fromBytesBatch(bytes, pool) == airports.toSeq,
+        "Batches do not round trip, benchmarks pointless"
+      )
+    }
+
+    @TearDown(Level.Trial)
+    def tearDown(): Unit = pool.shutdown()
+  }
+}
+
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class BatchSerializerBenchmark {
+  import BatchSerializerBenchmark._
+
+  @Benchmark
+  def timeFromBytesLoop(state: AirportState): Array[Airport] =
+    state.bytes.map(state.serializer.fromBytes)
+
+  @Benchmark
+  def timeFromBytesBatch(state: AirportState): IndexedSeq[Airport] =
+    state.serializer.fromBytesBatch(state.bytes, state.pool)
+
+  @Benchmark
+  def timeToBytesBatch(state: AirportState): Array[Array[Byte]] =
+    state.serializer.toBytesBatch(state.airports, state.pool)
+
+  @Benchmark
+  def timeFromBytesIterator(state: AirportState): Int =
+    state.serializer.fromBytesIterator(state.bytes.iterator, state.pool).size
+}
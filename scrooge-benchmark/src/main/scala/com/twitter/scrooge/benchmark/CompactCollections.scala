@@ -0,0 +1,147 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge.internal.TProtocols
+import java.util.concurrent.TimeUnit
+import org.apache.thrift.protocol.{TBinaryProtocol, TProtocol, TType}
+import org.openjdk.jmh.annotations._
+import scala.collection.mutable
+
+/**
+ * Compares the containers built by `TProtocols.readMap` and `readSet` with the
+ * unsized `mutable.HashMap` and `mutable.HashSet` they replaced.
+ *
+ * Each operation decodes `count` containers and keeps all of them, so running with
+ * `-prof gc` and comparing `gc.alloc.rate.norm` gives the heap footprint of the
+ * decoded containers, plus the garbage left by resizing.
+ */
+object CompactCollectionsBenchmark {
+
+  // The collections TProtocols used to build.
+  def readHashMap[K, V](
+    protocol: TProtocol,
+    readKey: TProtocol => K,
+    readValue: TProtocol => V
+  ): collection.Map[K, V] = {
+    val tmap = protocol.readMapBegin()
+    val map = new mutable.HashMap[K, V]()
+    var i = 0
+    while (i < tmap.size) {
+      val key = readKey(protocol)
+      map(key) = readValue(protocol)
+      i += 1
+    }
+    protocol.readMapEnd()
+    map
+  }
+
+  def readHashSet[T](protocol: TProtocol, readElement: TProtocol => T): collection.Set[T] = {
+    val tset = protocol.readSetBegin()
+    val set = new mutable.HashSet[T]()
+    var i = 0
+    while (i < tset.size) {
+      set += readElement(protocol)
+      i += 1
+    }
+    protocol.readSetEnd()
+    set
+  }
+
+  @State(Scope.Thread)
+  class ContainersState {
+    @Param(Array("1", "4", "8", "64", "4096"))
+    var size: Int = 1
+
+    // many small containers, a few large ones
+    def count: Int = math.max(1, 4096 / size)
+
+    val map: TRewindable = new TRewindable
+    val mapProt: TProtocol = new TBinaryProtocol(map)
+    val set: TRewindable = new TRewindable
+    val setProt: TProtocol = new TBinaryProtocol(set)
+
+    var keys: Array[Long] = _
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      val rng = new java.util.Random(31415926535897932L)
+      keys = Array.fill(size)(rng.nextLong())
+      val values = keys.map(k => k -> k.toString).toMap
+      for (_ <- 0 until count) {
+        TProtocols().writeMap(
+          mapProt,
+          values,
+          TType.I64,
+          TProtocols.writeI64Fn,
+          TType.STRING,
+          TProtocols.writeStringFn)
+        TProtocols().writeSet(setProt, keys.toSet, TType.I64, TProtocols.writeI64Fn)
+      }
+    }
+  }
+}
+
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class CompactCollectionsBenchmark {
+  import CompactCollectionsBenchmark._
+
+  @Benchmark
+  def timeReadCompactMap(state: ContainersState): Array[collection.Map[Long, String]] = {
+    val maps = Array.fill(state.count) {
+      TProtocols().readMap(state.mapProt, TProtocols.readI64Fn, TProtocols.readStringFn)
+    }
+    state.map.rewind()
+    maps
+  }
+
+  @Benchmark
+  def timeReadHashMap(state: ContainersState): Array[collection.Map[Long, String]] = {
+    val maps = Array.fill(state.count) {
+      readHashMap(state.mapProt, TProtocols.readI64Fn, TProtocols.readStringFn)
+    }
+    state.map.rewind()
+    maps
+  }
+
+  @Benchmark
+  def timeReadCompactSet(state: ContainersState): Array[collection.Set[Long]] = {
+    val sets = Array.fill(state.count) {
+      TProtocols().readSet(state.setProt, TProtocols.readI64Fn)
+    }
+    state.set.rewind()
+    sets
+  }
+
+  @Benchmark
+  def timeReadHashSet(state: ContainersState): Array[collection.Set[Long]] = {
+    val sets = Array.fill(state.count) {
+      readHashSet(state.setProt, TProtocols.readI64Fn)
+    }
+    state.set.rewind()
+    sets
+  }
+
+  @Benchmark
+  def timeLookupCompactMap(state: ContainersState): Int = {
+    val map = TProtocols().readMap(state.mapProt, TProtocols.readI64Fn, TProtocols.readStringFn)
+    state.map.rewind()
+    lookup(map, state.keys)
+  }
+
+  @Benchmark
+  def timeLookupHashMap(state: ContainersState): Int = {
+    val map = readHashMap(state.mapProt, TProtocols.readI64Fn, TProtocols.readStringFn)
+    state.map.rewind()
+    lookup(map, state.keys)
+  }
+
+  private[this] def lookup(map: collection.Map[Long, String], keys: Array[Long]): Int = {
+    var found = 0
+    var i = 0
+    while (i < keys.length) {
+      if (map.contains(keys(i))) found += 1
+      i += 1
+    }
+    found
+  }
+}
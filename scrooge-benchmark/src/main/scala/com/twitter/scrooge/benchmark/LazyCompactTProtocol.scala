@@ -0,0 +1,136 @@
+package com.twitter.scrooge.benchmark
+
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+import java.nio.ByteBuffer
+import thrift.benchmark._
+import com.twitter.scrooge._
+
+object LazyCompactTProtocolBenchmark {
+  // Pass in a seed and fixed number of airports.
+  // Will be initialized with this object so separate from the benchmarks.
+  val airports: Array[Airport] = AirportGenerator.buildAirportsAndBytes(1337, 10)._1
+  val airportBytes: Array[Array[Byte]] = {
+    val ser = CompactThriftSerializer(Airport)
+    airports.map(ser.toBytes)
+  }
+
+  // Consume a set of fields
+  // lazy deserializers will need to materialize these into the blackhole.
+  @inline private final def read3Fields(bh: Blackhole, airport: Airport): Unit = {
+    bh.consume(airport.country)
+    bh.consume(airport.state)
+    bh.consume(airport.loc.map(_.latitude))
+  }
+
+  // Consume a set of fields
+  // lazy deserializers will need to materialize these into the blackhole.
+  @inline private final def readAllFields(bh: Blackhole, airport: Airport): Unit = {
+    bh.consume(airport.code)
+    bh.consume(airport.name)
+    bh.consume(airport.state)
+    bh.consume(airport.closestCity)
+
+    if (airport.loc.isDefined) {
+      val loc = airport.loc.get
+      bh.consume(loc.latitude)
+      bh.consume(loc.longitude)
+      bh.consume(loc.altitude)
+    }
+  }
+
+  @State(Scope.Benchmark)
+  class AirportState {
+
+    val compactThriftSerializer: CompactThriftSerializer[Airport] =
+      CompactThriftSerializer(Airport)
+
+    val lazyCompactSerializer: LazyCompactThriftStructSerializer[Airport] =
+      LazyCompactThriftStructSerializer(Airport)
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      require(
+        airportBytes.forall { b =>
+          compactThriftSerializer.fromBytes(b) == lazyCompactSerializer.fromBytes(b)
+        },
+        "Deserializers do not agree, benchmarks pointless"
+      )
+      require(
+        airports.forall { b =>
+          ByteBuffer.wrap(compactThriftSerializer.toBytes(b)) == ByteBuffer.wrap(
+            lazyCompactSerializer.toBytes(b)
+          )
+        },
+        "Serializers do not agree, benchmarks pointless"
+      )
+    }
+  }
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.Throughput))
+class LazyCompactTProtocolBenchmark {
+  import LazyCompactTProtocolBenchmark._
+
+  // ========= Reference benchmarks =========
+
+  @Benchmark
+  def timeReferenceToBytes(state: AirportState): Seq[Array[Byte]] = {
+    airports.map(state.compactThriftSerializer.toBytes)
+  }
+
+  @Benchmark
+  def timeReferenceFromBytes(state: AirportState): Seq[Airport] = {
+    airportBytes.map(state.compactThriftSerializer.fromBytes)
+  }
+
+  @Benchmark
+  def timeReferenceFromBytesRead3Fields(state: AirportState, bh: Blackhole): Blackhole = {
+    airportBytes.map(state.compactThriftSerializer.fromBytes).foreach(a => read3Fields(bh, a))
+    bh
+  }
+
+  @Benchmark
+  def timeReferenceFromBytesReadAllFields(state: AirportState, bh: Blackhole): Blackhole = {
+    airportBytes.map(state.compactThriftSerializer.fromBytes).foreach(a => readAllFields(bh, a))
+    bh
+  }
+
+  @Benchmark
+  def timeReferenceRTBytes(state: AirportState): Seq[Array[Byte]] = {
+    airportBytes.map(b =>
+      state.compactThriftSerializer.toBytes(state.compactThriftSerializer.fromBytes(b)))
+  }
+
+  // ========= Lazy compact benchmarks =========
+
+  @Benchmark
+  def timeLazyCompactToBytes(state: AirportState): Seq[Array[Byte]] = {
+    airports.map(state.lazyCompactSerializer.toBytes)
+  }
+
+  @Benchmark
+  def timeLazyCompactFromBytes(state: AirportState): Seq[Airport] = {
+    airportBytes.map(state.lazyCompactSerializer.fromBytes)
+  }
+
+  @Benchmark
+  def timeLazyCompactFromBytesRead3Fields(state: AirportState, bh: Blackhole): Blackhole = {
+    airportBytes.map(state.lazyCompactSerializer.fromBytes).foreach(a => read3Fields(bh, a))
+    bh
+  }
+
+  @Benchmark
+  def timeLazyCompactFromBytesReadAllFields(state: AirportState, bh: Blackhole): Blackhole = {
+    airportBytes.map(state.lazyCompactSerializer.fromBytes).foreach(a => readAllFields(bh, a))
+    bh
+  }
+
+  @Benchmark
+  def timeLazyCompactRTBytes(state: AirportState): Seq[Array[Byte]] = {
+    airportBytes.map(b =>
+      state.lazyCompactSerializer.toBytes(state.lazyCompactSerializer.fromBytes(b)))
+  }
+}
@@ -0,0 +1,63 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge._
+import java.util.concurrent.TimeUnit
+import org.apache.thrift.protocol.{TBinaryProtocol, TCompactProtocol}
+import org.openjdk.jmh.annotations._
+import thrift.benchmark._
+
+/**
+ * Counts the encoded size of airports, as built and as lazily decoded, and
+ * compares `toBytes` writing into an array of the exact size with writing
+ * into the transport's segments and copying them.
+ */
+object SerializedSizeBenchmark {
+  val (airports: Array[Airport], airportBytes) = AirportGenerator.buildAirportsAndBytes(1337, 10)
+
+  @State(Scope.Thread)
+  class SizeState {
+    val binaryFactory: TBinaryProtocol.Factory = new TBinaryProtocol.Factory
+    val compactFactory: TCompactProtocol.Factory = new TCompactProtocol.Factory
+
+    val lazySerializer: LazyBinaryThriftStructSerializer[Airport] =
+      LazyBinaryThriftStructSerializer(Airport)
+    val copyingSerializer: ThreadUnsafeLazyBinaryProtocol[Airport] =
+      ThreadUnsafeLazyBinaryProtocol(Airport)
+
+    val lazyAirports: Array[Airport] = airportBytes.map(lazySerializer.fromBytes)
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      require(
+        airports.forall(a => lazySerializer.serializedSize(a) == copyingSerializer.toBytes(a).length),
+        "Sizes do not match the encoded bytes, benchmarks pointless"
+      )
+    }
+  }
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class SerializedSizeBenchmark {
+  import SerializedSizeBenchmark._
+
+  @Benchmark
+  def timeBinarySize(state: SizeState): Int =
+    airports.map(Airport.serializedSize(_, state.binaryFactory)).sum
+
+  @Benchmark
+  def timeCompactSize(state: SizeState): Int =
+    airports.map(Airport.serializedSize(_, state.compactFactory)).sum
+
+  @Benchmark
+  def timeLazyDecodedSize(state: SizeState): Int =
+    state.lazyAirports.map(state.lazySerializer.serializedSize).sum
+
+  @Benchmark
+  def timeExactSizeToBytes(state: SizeState): Array[Array[Byte]] =
+    airports.map(state.lazySerializer.toBytes)
+
+  @Benchmark
+  def timeCopyingToBytes(state: SizeState): Array[Array[Byte]] =
+    airports.map(state.copyingSerializer.toBytes)
+}
@@ -0,0 +1,74 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge._
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import scala.util.Random
+import thrift.benchmark._
+
+object ThriftPathBenchmark {
+
+  @State(Scope.Thread)
+  class FlightState {
+    @Param(Array("binary", "compact"))
+    var protocol: String = _
+
+    val rng = new Random(31415926535897932L)
+    val flight: Flight = AirlineGenerator.buildFlight(rng)
+
+    val toCode: ThriftPath = ThriftPath(Flight, "to.code")
+    val fromLatitude: ThriftPath = ThriftPath(Flight, "from_.loc.latitude")
+
+    var bytes: Array[Byte] = _
+    var serializer: ThriftStructSerializer[Flight] = _
+    var proto: LazyTProtocol = _
+    val transport = new TArrayByteTransport
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      protocol match {
+        case "binary" =>
+          serializer = BinaryThriftStructSerializer(Flight)
+          proto = new TLazyBinaryProtocol(transport)
+        case "compact" =>
+          serializer = CompactThriftSerializer(Flight)
+          proto = new TLazyCompactProtocol(transport)
+      }
+      bytes = serializer.toBytes(flight)
+      transport.setBytes(bytes)
+      val code = toCode.getString(proto)
+      transport.setBytes(bytes)
+      val latitude = fromLatitude.getDouble(proto, 0.0)
+      require(
+        code == flight.to.code && latitude == flight.from.loc.map(_.latitude).getOrElse(0.0),
+        "ThriftPath does not agree with the decoder, benchmarks pointless"
+      )
+    }
+  }
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class ThriftPathBenchmark {
+  import ThriftPathBenchmark._
+
+  @Benchmark
+  def timeDecodeString(state: FlightState): String =
+    state.serializer.fromBytes(state.bytes).to.code
+
+  @Benchmark
+  def timePathString(state: FlightState): String = {
+    state.transport.setBytes(state.bytes)
+    state.toCode.getString(state.proto)
+  }
+
+  @Benchmark
+  def timeDecodeDouble(state: FlightState): Double =
+    state.serializer.fromBytes(state.bytes).from.loc.map(_.latitude).getOrElse(0.0)
+
+  @Benchmark
+  def timePathDouble(state: FlightState): Double = {
+    state.transport.setBytes(state.bytes)
+    state.fromLatitude.getDouble(state.proto, 0.0)
+  }
+}
@@ -0,0 +1,85 @@
+package com.twitter.scrooge.benchmark
+
+import com.twitter.scrooge.{TArrayByteTransport, TLazyBinaryProtocol, TLazyCompactProtocol, Utf8}
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.TimeUnit
+import org.apache.thrift.protocol.{TBinaryProtocol, TCompactProtocol}
+import org.openjdk.jmh.annotations._
+import scala.util.Random
+
+object Utf8Benchmark {
+  @State(Scope.Thread)
+  class StringState {
+    @Param(Array("ascii", "latin1", "cjk"))
+    var alphabet: String = "ascii"
+
+    @Param(Array("16", "256", "4096"))
+    var length: Int = 16
+
+    var str: String = _
+    var dest: Array[Byte] = _
+
+    val transport: TArrayByteTransport = new TArrayByteTransport
+    val lazyBinary: TLazyBinaryProtocol = new TLazyBinaryProtocol(transport)
+    val lazyCompact: TLazyCompactProtocol = new TLazyCompactProtocol(transport)
+    // the libthrift protocols, writing the result of String.getBytes
+    val binary: TBinaryProtocol = new TBinaryProtocol(transport)
+    val compact: TCompactProtocol = new TCompactProtocol(transport)
+
+    @Setup(Level.Trial)
+    def setup(): Unit = {
+      val (first, last) = alphabet match {
+        case "ascii" => (0x20, 0x7e)
+        case "latin1" => (0xa0, 0xff)
+        case "cjk" => (0x4e00, 0x9fff)
+      }
+      val rng = new Random(1337)
+      str = Seq.fill(length)((first + rng.nextInt(last - first + 1)).toChar).mkString
+      dest = new Array[Byte](str.length * 3)
+    }
+  }
+}
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Array(Mode.AverageTime))
+class Utf8Benchmark {
+  import Utf8Benchmark._
+
+  @Benchmark
+  def timeGetBytes(state: StringState): Array[Byte] =
+    state.str.getBytes(StandardCharsets.UTF_8)
+
+  @Benchmark
+  def timeEncode(state: StringState): Int = {
+    Utf8.encodedLength(state.str)
+    Utf8.encode(state.str, state.dest, 0)
+  }
+
+  @Benchmark
+  def timeBinaryWriteString(state: StringState): Int = {
+    state.transport.reset()
+    state.binary.writeString(state.str)
+    state.transport.writtenLength
+  }
+
+  @Benchmark
+  def timeLazyBinaryWriteString(state: StringState): Int = {
+    state.transport.reset()
+    state.lazyBinary.writeString(state.str)
+    state.transport.writtenLength
+  }
+
+  @Benchmark
+  def timeCompactWriteString(state: StringState): Int = {
+    state.transport.reset()
+    state.compact.writeString(state.str)
+    state.transport.writtenLength
+  }
+
+  @Benchmark
+  def timeLazyCompactWriteString(state: StringState): Int = {
+    state.transport.reset()
+    state.lazyCompact.writeString(state.str)
+    state.transport.writtenLength
+  }
+}
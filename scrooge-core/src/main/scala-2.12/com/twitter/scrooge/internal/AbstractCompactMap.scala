@@ -0,0 +1,8 @@
+package com.twitter.scrooge.internal
+
+/**
+ * The parent of [[CompactMap]] on Scala 2.12, where `Map` removes several
+ * keys at once through `-(key)`.
+ */
+private[internal] abstract class AbstractCompactMap[K, V]
+    extends scala.collection.AbstractMap[K, V]
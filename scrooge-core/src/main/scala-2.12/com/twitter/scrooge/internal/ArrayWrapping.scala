@@ -0,0 +1,13 @@
+package com.twitter.scrooge.internal
+
+import scala.collection.mutable
+
+private[scrooge] object ArrayWrapping {
+
+  /**
+   * `array` as an `IndexedSeq`, without copying it. `array` must not be
+   * modified afterwards.
+   */
+  def unsafeWrap[A <: AnyRef](array: Array[A]): IndexedSeq[A] =
+    mutable.WrappedArray.make[A](array)
+}
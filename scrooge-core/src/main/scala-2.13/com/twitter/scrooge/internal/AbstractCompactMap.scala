@@ -0,0 +1,15 @@
+package com.twitter.scrooge.internal
+
+import scala.collection.immutable
+
+/**
+ * The parent of [[CompactMap]] on Scala 2.13, where `Map` leaves removing
+ * several keys at once abstract.
+ */
+private[internal] abstract class AbstractCompactMap[K, V]
+    extends scala.collection.AbstractMap[K, V] {
+
+  @deprecated("Use -- or removedAll on an immutable Map", "2.13.0")
+  override def -(key1: K, key2: K, keys: K*): scala.collection.Map[K, V] =
+    immutable.Map.empty[K, V] ++ this -- (key1 +: key2 +: keys)
+}
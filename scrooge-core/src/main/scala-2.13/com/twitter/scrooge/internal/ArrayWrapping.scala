@@ -0,0 +1,13 @@
+package com.twitter.scrooge.internal
+
+import scala.collection.immutable
+
+private[scrooge] object ArrayWrapping {
+
+  /**
+   * `array` as an `IndexedSeq`, without copying it. `array` must not be
+   * modified afterwards.
+   */
+  def unsafeWrap[A <: AnyRef](array: Array[A]): IndexedSeq[A] =
+    immutable.ArraySeq.unsafeWrapArray(array)
+}
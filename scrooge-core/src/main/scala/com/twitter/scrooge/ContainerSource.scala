@@ -0,0 +1,37 @@
+package com.twitter.scrooge
+
+/**
+ * The elements of a list, set or map field written by the generated
+ * `writeStreaming` method of a struct, produced while the field is written
+ * rather than held in memory. The elements of a map are its entries.
+ *
+ * A source is written once, as its iterator is consumed.
+ *
+ * @param size     Number of elements, -1 when unknown until `elements` ends.
+ * @param elements The elements, in writing order.
+ */
+final class ContainerSource[+A] private (val size: Int, val elements: Iterator[A])
+
+object ContainerSource {
+
+  /**
+   * Elements written as they are produced. Writing throws a
+   * `TProtocolException` if `elements` does not have `size` elements.
+   */
+  def sized[A](size: Int, elements: Iterator[A]): ContainerSource[A] = {
+    if (size < 0) throw new IllegalArgumentException(s"Negative size: $size")
+    new ContainerSource(size, elements)
+  }
+
+  /**
+   * Elements whose number is known once `elements` ends. With the binary
+   * and compact protocols they are encoded into a buffer and the container
+   * is written with its size once they are all produced. With other
+   * protocols they are collected first.
+   */
+  def unsized[A](elements: Iterator[A]): ContainerSource[A] =
+    new ContainerSource(-1, elements)
+
+  def apply[A](elements: Iterable[A]): ContainerSource[A] =
+    sized(elements.size, elements.iterator)
+}
@@ -0,0 +1,145 @@
+package com.twitter.scrooge
+
+/**
+ * The fields to decode with `ThriftStructCodec.decode(iprot, mask)`, by
+ * field id. Each included field has a mask of its own, which applies to the
+ * struct it holds, or to the elements of a list or set of structs it holds.
+ *
+ * The other fields are skipped without being decoded and hold their default
+ * value, `None` for optional fields. This includes required fields, which
+ * a projection may leave out. With a strict mask, accessing a field which was
+ * not decoded throws a [[MaskedFieldException]] instead, which also happens
+ * when the struct is compared, hashed or printed.
+ *
+ * Unknown fields are only kept as passthrough fields by [[FieldMask.All]].
+ */
+final class FieldMask private (
+  private val fields: Option[Map[Short, FieldMask]],
+  val isStrict: Boolean) {
+
+  /**
+   * Whether this mask includes all fields, of this struct and nested ones.
+   */
+  def includesAll: Boolean = fields.isEmpty
+
+  /**
+   * Whether the field `fieldId` is decoded.
+   */
+  def contains(fieldId: Short): Boolean = fields match {
+    case Some(included) => included.contains(fieldId)
+    case None => true
+  }
+
+  /**
+   * The mask of the struct held by field `fieldId`, [[FieldMask.All]] if it is
+   * decoded as a whole.
+   */
+  def nested(fieldId: Short): FieldMask = fields match {
+    case Some(included) => included.getOrElse(fieldId, FieldMask.All)
+    case None => FieldMask.All
+  }
+
+  /**
+   * This mask, throwing on access to the fields which are not decoded, here
+   * and in nested structs.
+   */
+  def strict: FieldMask =
+    if (isStrict || includesAll) this
+    else new FieldMask(fields.map(_.map { case (id, mask) => id -> mask.strict }), true)
+
+  /**
+   * The fields included by this mask or by `that`.
+   */
+  def union(that: FieldMask): FieldMask = (fields, that.fields) match {
+    case (Some(a), Some(b)) =>
+      val merged = b.foldLeft(a) {
+        case (acc, (id, mask)) =>
+          acc.updated(id, acc.get(id).fold(mask)(_.union(mask)))
+      }
+      new FieldMask(Some(merged), isStrict || that.isStrict)
+    case _ =>
+      FieldMask.All
+  }
+
+  override def equals(other: Any): Boolean = other match {
+    case that: FieldMask => fields == that.fields && isStrict == that.isStrict
+    case _ => false
+  }
+
+  override def hashCode: Int = 31 * fields.hashCode + isStrict.hashCode
+
+  override def toString: String = fields match {
+    case Some(included) =>
+      val byId = included.toSeq.sortBy(_._1).map {
+        case (id, mask) => if (mask.includesAll) id.toString else s"$id$mask"
+      }
+      byId.mkString(if (isStrict) "strict(" else "(", ", ", ")")
+    case None =>
+      "All"
+  }
+}
+
+object FieldMask {
+
+  /**
+   * Decodes all fields.
+   */
+  val All: FieldMask = new FieldMask(None, false)
+
+  /**
+   * Decodes the fields with the given ids as a whole.
+   */
+  def apply(fieldIds: Short*): FieldMask =
+    new FieldMask(Some(fieldIds.map(_ -> All).toMap), false)
+
+  /**
+   * Decodes the given fields, each with its own mask.
+   */
+  def apply(fields: Map[Short, FieldMask]): FieldMask =
+    new FieldMask(Some(fields), false)
+
+  /**
+   * Decodes the fields at the given dotted paths of the struct of `codec`,
+   * e.g. "id", "name" and "loc.latitude". Path segments are field names, as
+   * written in the thrift file, or field ids. Nested segments can go through
+   * struct fields and lists and sets of structs.
+   *
+   * @throws IllegalArgumentException if a path does not name a field.
+   */
+  def forPaths[T <: ThriftStruct](codec: ThriftStructCodec[T], paths: String*): FieldMask =
+    paths.foldLeft(apply()) { (mask, path) =>
+      mask.union(forPath(codec.metaData, path.split('.').toList, path))
+    }
+
+  private[this] def forPath(
+    metaData: ThriftStructMetaData[_],
+    segments: List[String],
+    path: String
+  ): FieldMask = segments match {
+    case segment :: rest =>
+      val field = metaData.fieldInfos
+        .find { f => f.tfield.name == segment || f.tfield.id.toString == segment }
+        .getOrElse(
+          throw new IllegalArgumentException(
+            s"No field '$segment' in struct ${metaData.structName} for path '$path'"))
+      val nested =
+        if (rest.isEmpty) All
+        else forPath(nestedMetaData(field, path), rest, path)
+      apply(Map(field.tfield.id -> nested))
+    case Nil =>
+      throw new IllegalArgumentException(s"Empty field path '$path'")
+  }
+
+  private[this] def nestedMetaData(field: ThriftStructFieldInfo, path: String): ThriftStructMetaData[_] = {
+    def structClass(manifest: Manifest[_]): Option[Class[ThriftStruct]] =
+      if (classOf[ThriftStruct].isAssignableFrom(manifest.runtimeClass))
+        Some(manifest.runtimeClass.asInstanceOf[Class[ThriftStruct]])
+      else None
+    structClass(field.manifest)
+      .orElse(field.valueManifest.filter(_ => field.keyManifest.isEmpty).flatMap(structClass))
+      .map(ThriftStructMetaData.forStructClass(_))
+      .getOrElse(
+        throw new IllegalArgumentException(
+          s"Field '${field.tfield.name}' of path '$path' holds no struct"))
+  }
+}
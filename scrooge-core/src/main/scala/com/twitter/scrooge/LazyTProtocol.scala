@@ -1,5 +1,6 @@
 package com.twitter.scrooge
 
+import java.nio.ByteBuffer
 import org.apache.thrift.protocol._
 
 /**
@@ -12,6 +13,8 @@ import org.apache.thrift.protocol._
  *    large savings can be had avoiding this for all strings in our deserialization path.
  * 3) Optional fields require boxing + allocations during deserialization for primitive types, this stores the offset to those
  *    types instead, doing a lazy instantiation of the Option when the field is first accessed.
+ * 4) Nested structs, containers and binaries are skipped rather than decoded, only their offset is stored and they are
+ *    decoded with a reader positioned at that offset when the field is first accessed.
  */
 trait LazyTProtocol extends TProtocol {
 
@@ -24,6 +27,13 @@ trait LazyTProtocol extends TProtocol {
    */
   def writeRaw(buf: Array[Byte], offset: Int, len: Int): Unit
 
+  /**
+   * Whether bytes read by `source` can be handed to `writeRaw` on this
+   * protocol as is, i.e. both protocols share the same wire format.
+   */
+  def canWriteRawFrom(source: LazyTProtocol): Boolean =
+    source.isInstanceOf[TCompactProtocol] == this.isInstanceOf[TCompactProtocol]
+
   /**
    * Return the underlying Array[Byte] used in reading
    */
@@ -76,6 +86,26 @@ trait LazyTProtocol extends TProtocol {
    */
   def decodeString(arr: Array[Byte], offset: Int): String
 
+  /**
+   * Given a backing Array[Byte] and offset, decode this type from it
+   * using this TProtocol's deserializer. The returned ByteBuffer wraps
+   * `arr`, the bytes are not copied.
+   */
+  def decodeBinary(arr: Array[Byte], offset: Int): ByteBuffer
+
+  /**
+   * Create a new protocol of the same wire format set up to read `length`
+   * bytes of `arr` starting at `offset`, without copying them. Used to decode
+   * the fields that were only skipped when first read.
+   */
+  def readerAt(arr: Array[Byte], offset: Int, length: Int): LazyTProtocol
+
+  /**
+   * When set, large lists of structs are decoded in parallel, see
+   * [[ParallelListDecoding]]. Readers created by `readerAt` share it.
+   */
+  def parallelListDecoding: Option[ParallelListDecoding] = None
+
   /**
    * Skips the length of a boolean on the underlying transport
    * Returns: The offset at which the boolean can be read.
@@ -124,4 +154,28 @@ trait LazyTProtocol extends TProtocol {
    */
   def offsetSkipBinary(): Int
 
+  /**
+   * Skip a struct. This still involves parsing but no objects are created.
+   * @return The offset at which the struct can be read.
+   */
+  def offsetSkipStruct(): Int
+
+  /**
+   * Skip a list. This still involves parsing but no objects are created.
+   * @return The offset at which the list can be read.
+   */
+  def offsetSkipList(): Int
+
+  /**
+   * Skip a set. This still involves parsing but no objects are created.
+   * @return The offset at which the set can be read.
+   */
+  def offsetSkipSet(): Int
+
+  /**
+   * Skip a map. This still involves parsing but no objects are created.
+   * @return The offset at which the map can be read.
+   */
+  def offsetSkipMap(): Int
+
 }
@@ -0,0 +1,10 @@
+package com.twitter.scrooge
+
+/**
+ * Thrown on access to a field of a struct decoded with a strict [[FieldMask]]
+ * which does not include the field.
+ */
+final class MaskedFieldException(val structName: String, val fieldName: String)
+    extends IllegalStateException(
+      s"Field '$fieldName' of struct $structName was not decoded, it is not in the FieldMask"
+    )
@@ -0,0 +1,18 @@
+package com.twitter.scrooge
+
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Decodes large lists of structs read by a [[TLazyBinaryProtocol]] or a
+ * [[TLazyCompactProtocol]] in parallel. The elements are first skipped to
+ * find where each one starts, then decoded a range at a time on `pool`.
+ *
+ * @param minSize Lists of structs with at least this many elements are
+ *                decoded in parallel, smaller ones by the calling thread.
+ * @param pool    The pool the elements are decoded on.
+ */
+final case class ParallelListDecoding(
+  minSize: Int,
+  pool: ForkJoinPool = ForkJoinPool.commonPool()) {
+  if (minSize < 1) throw new IllegalArgumentException(s"minSize must be positive: $minSize")
+}
@@ -0,0 +1,189 @@
+package com.twitter.scrooge
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A bounded pool of mutable, non thread safe objects such as transports
+ * and protocols, used to reuse their buffers across calls.
+ *
+ * Unlike a ThreadLocal, the number of pooled objects does not grow with
+ * the number of threads, which makes it suitable for virtual threads.
+ * {{{
+ *   val pool = ReusablePool(() => TReusableMemoryTransport())
+ *
+ *   val transport = pool.acquire()
+ *   try {
+ *     // code that uses transport
+ *   } finally {
+ *     transport.reset()
+ *     pool.release(transport)
+ *   }
+ * }}}
+ *
+ * @see [[ReusablePool.apply]] for the default, striped, implementation.
+ * @see [[ReusablePool.threadLocal]] for a per-thread implementation.
+ */
+trait ReusablePool[A] {
+
+  /**
+   * Borrow an object, creating a new one if none is available. It is
+   * returned as it was handed to `release`.
+   */
+  def acquire(): A
+
+  /**
+   * Hand back an object obtained from `acquire`. It must not be used by
+   * the caller afterwards. Oversized objects, and objects for which there
+   * is no room left, are dropped.
+   */
+  def release(a: A): Unit
+
+  def stats: ReusablePool.Stats
+}
+
+object ReusablePool {
+
+  /**
+   * Counters for a [[ReusablePool]].
+   *
+   * hits: acquires served by a pooled object.
+   * misses: acquires that had to create a new object.
+   * oversize: releases that dropped an object for being too large.
+   */
+  final class Stats {
+    private[scrooge] val hitsCounter: LongAdder = new LongAdder
+    private[scrooge] val missesCounter: LongAdder = new LongAdder
+    private[scrooge] val oversizeCounter: LongAdder = new LongAdder
+
+    def hits: Long = hitsCounter.sum()
+    def misses: Long = missesCounter.sum()
+    def oversize: Long = oversizeCounter.sum()
+
+    override def toString: String = s"ReusablePool.Stats(hits=$hits, misses=$misses, oversize=$oversize)"
+  }
+
+  /**
+   * Number of pooled objects per stripe for pools built with `apply`.
+   */
+  val DefaultSlotsPerStripe: Int = 4
+
+  private[this] val NeverOversize: Any => Boolean = _ => false
+
+  /**
+   * A bounded, lock-free pool holding at most `stripes * slotsPerStripe`
+   * objects. Threads are spread across stripes by thread id, so contention
+   * stays low without keeping an object per thread.
+   *
+   * @param newInstance creates an object on a miss.
+   * @param isOversize objects for which this returns true are dropped on
+   *                   release rather than pooled.
+   * @param stripes number of stripes, rounded up to a power of two. Defaults
+   *                to the number of available processors.
+   * @param slotsPerStripe number of objects pooled per stripe.
+   */
+  def apply[A <: AnyRef](
+    newInstance: () => A,
+    isOversize: A => Boolean = NeverOversize,
+    stripes: Int = Runtime.getRuntime.availableProcessors,
+    slotsPerStripe: Int = DefaultSlotsPerStripe
+  ): ReusablePool[A] =
+    new StripedReusablePool[A](newInstance, isOversize, stripes, slotsPerStripe)
+
+  /**
+   * A pool keeping one object per thread, the behavior of scrooge before
+   * pools were introduced. This is only appropriate for a small, fixed set of
+   * platform threads.
+   */
+  def threadLocal[A <: AnyRef](
+    newInstance: () => A,
+    isOversize: A => Boolean = NeverOversize
+  ): ReusablePool[A] =
+    new ThreadLocalReusablePool[A](newInstance, isOversize)
+
+  private final class StripedReusablePool[A <: AnyRef](
+    newInstance: () => A,
+    isOversize: A => Boolean,
+    stripes: Int,
+    slotsPerStripe: Int)
+      extends ReusablePool[A] {
+    require(stripes > 0, s"stripes must be positive: $stripes")
+    require(slotsPerStripe > 0, s"slotsPerStripe must be positive: $slotsPerStripe")
+
+    private[this] val stripeMask: Int = Integer.highestOneBit(stripes * 2 - 1) - 1
+    private[this] val slots = new AtomicReferenceArray[A]((stripeMask + 1) * slotsPerStripe)
+
+    val stats: Stats = new Stats
+
+    private[this] def stripeOffset(): Int = {
+      // Fibonacci hashing spreads sequential thread ids over the stripes
+      val h = (Thread.currentThread.getId * 0x9e3779b97f4a7c15L) >>> 32
+      (h.toInt & stripeMask) * slotsPerStripe
+    }
+
+    def acquire(): A = {
+      val offset = stripeOffset()
+      var result: A = null.asInstanceOf[A]
+      var i = 0
+      while (result == null && i < slotsPerStripe) {
+        val a = slots.get(offset + i)
+        if (a != null && slots.compareAndSet(offset + i, a, null.asInstanceOf[A])) {
+          result = a
+        }
+        i += 1
+      }
+      if (result != null) {
+        stats.hitsCounter.increment()
+        result
+      } else {
+        stats.missesCounter.increment()
+        newInstance()
+      }
+    }
+
+    def release(a: A): Unit = {
+      if (isOversize(a)) {
+        stats.oversizeCounter.increment()
+      } else {
+        val offset = stripeOffset()
+        var released = false
+        var i = 0
+        while (!released && i < slotsPerStripe) {
+          released = slots.get(offset + i) == null &&
+            slots.compareAndSet(offset + i, null.asInstanceOf[A], a)
+          i += 1
+        }
+      }
+    }
+  }
+
+  private final class ThreadLocalReusablePool[A <: AnyRef](
+    newInstance: () => A,
+    isOversize: A => Boolean)
+      extends ReusablePool[A] {
+
+    private[this] val local = new ThreadLocal[A]
+
+    val stats: Stats = new Stats
+
+    def acquire(): A = {
+      val a = local.get()
+      if (a != null) {
+        local.remove()
+        stats.hitsCounter.increment()
+        a
+      } else {
+        stats.missesCounter.increment()
+        newInstance()
+      }
+    }
+
+    def release(a: A): Unit = {
+      if (isOversize(a)) {
+        stats.oversizeCounter.increment()
+      } else {
+        local.set(a)
+      }
+    }
+  }
+}
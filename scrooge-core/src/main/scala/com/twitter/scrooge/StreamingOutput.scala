@@ -0,0 +1,22 @@
+package com.twitter.scrooge
+
+import java.io.{BufferedOutputStream, OutputStream}
+import java.nio.channels.{Channels, WritableByteChannel}
+import org.apache.thrift.protocol.{TProtocol, TProtocolFactory}
+import org.apache.thrift.transport.TIOStreamTransport
+
+/**
+ * Protocols writing to an `OutputStream` or a `WritableByteChannel` through
+ * a fixed size buffer, e.g. for structs written with [[ContainerSource]]s.
+ * What is left in the buffer is written by `protocol.getTransport.flush()`.
+ * The stream or channel is not closed.
+ */
+object StreamingOutput {
+  private val BufferSize = 8192
+
+  def apply(protocolFactory: TProtocolFactory, out: OutputStream): TProtocol =
+    protocolFactory.getProtocol(new TIOStreamTransport(new BufferedOutputStream(out, BufferSize)))
+
+  def apply(protocolFactory: TProtocolFactory, channel: WritableByteChannel): TProtocol =
+    apply(protocolFactory, Channels.newOutputStream(channel))
+}
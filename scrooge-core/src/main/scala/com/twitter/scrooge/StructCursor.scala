@@ -0,0 +1,298 @@
+package com.twitter.scrooge
+
+import java.io.{BufferedInputStream, InputStream}
+import java.nio.channels.{Channels, ReadableByteChannel}
+import org.apache.thrift.protocol._
+import org.apache.thrift.transport.{TIOStreamTransport, TMemoryInputTransport}
+
+/**
+ * A pull decoder over the wire encoding of a value: a struct's fields, or
+ * a container's elements. Values are visited one at a time with `next()`,
+ * then read, skipped or descended into. Values not read are skipped, so
+ * only the value being read is held in memory, however large the
+ * container it belongs to.
+ *
+ * Cursors share their protocol: a cursor opened on a nested struct or
+ * container is finished, skipping what is left of it, when its parent
+ * moves on, and must not be used afterwards.
+ */
+sealed abstract class ThriftCursor private[scrooge] (protocol: TProtocol) {
+  private[this] var child: ThriftCursor = null
+  // A value is at the cursor and has not been read or skipped.
+  private[this] var pending = false
+  private[this] var finished = false
+  private var closed = false
+
+  /**
+   * The `TType` of the value at the cursor.
+   */
+  def valueType: Byte
+
+  // Reads the header of the next value, or the end of the encoding.
+  protected def advance(): Boolean
+
+  // Called once the value at the cursor has been read.
+  protected def valueRead(): Unit
+
+  /**
+   * Moves to the next value, skipping the current one if it was not read.
+   *
+   * @return false at the end of the struct or container.
+   */
+  final def next(): Boolean = {
+    if (closed)
+      throw new IllegalStateException("Cursor used after its parent moved on")
+    closeChild()
+    if (pending) {
+      pending = false
+      TProtocolUtil.skip(protocol, valueType)
+      valueRead()
+    }
+    if (!finished) {
+      pending = advance()
+      finished = !pending
+    }
+    pending
+  }
+
+  /**
+   * Reads the value at the cursor with `reader`, e.g. `_.readI64()`.
+   */
+  final def read[T](reader: TProtocol => T): T = readAs(valueType, reader)
+
+  /**
+   * Reads the struct at the cursor with `codec`.
+   */
+  final def readStruct[T <: ThriftStruct](codec: ThriftStructCodec[T]): T =
+    readAs(TType.STRUCT, codec.decode(_))
+
+  final def skip(): Unit = {
+    take(valueType)
+    TProtocolUtil.skip(protocol, valueType)
+    valueRead()
+  }
+
+  /**
+   * A cursor over the fields of the struct at the cursor.
+   */
+  final def struct(): StructCursor = {
+    take(TType.STRUCT)
+    protocol.readStructBegin()
+    open(new StructCursor(protocol))
+  }
+
+  /**
+   * A cursor over the elements of the list, set or map at the cursor.
+   */
+  final def container(): ContainerCursor = {
+    checkPending()
+    val tpe = valueType
+    if (tpe != TType.LIST && tpe != TType.SET && tpe != TType.MAP)
+      throw new IllegalStateException(
+        s"Value at the cursor is a ${ThriftStruct.ttypeToString(tpe)}, not a container")
+    take(tpe)
+    val cursor = tpe match {
+      case TType.LIST =>
+        val list = protocol.readListBegin()
+        new ContainerCursor(protocol, TType.LIST, list.size, TType.STOP, list.elemType)
+      case TType.SET =>
+        val set = protocol.readSetBegin()
+        new ContainerCursor(protocol, TType.SET, set.size, TType.STOP, set.elemType)
+      case _ =>
+        val map = protocol.readMapBegin()
+        new ContainerCursor(protocol, TType.MAP, map.size, map.keyType, map.valueType)
+    }
+    open(cursor)
+  }
+
+  /**
+   * Skips the rest of the encoding.
+   */
+  final def finish(): Unit = while (next()) {}
+
+  private[this] def checkPending(): Unit =
+    if (!pending)
+      throw new IllegalStateException("No value at the cursor, call next() first")
+
+  private[this] def take(expectedType: Byte): Unit = {
+    checkPending()
+    if (valueType != expectedType)
+      throw new IllegalStateException(
+        s"Value at the cursor is a ${ThriftStruct.ttypeToString(valueType)}, " +
+          s"not a ${ThriftStruct.ttypeToString(expectedType)}")
+    pending = false
+  }
+
+  private[this] def readAs[T](expectedType: Byte, reader: TProtocol => T): T = {
+    take(expectedType)
+    val value = reader(protocol)
+    valueRead()
+    value
+  }
+
+  private[this] def open[C <: ThriftCursor](cursor: C): C = {
+    child = cursor
+    cursor
+  }
+
+  private[this] def closeChild(): Unit =
+    if (child != null) {
+      child.finish()
+      child.closed = true
+      child = null
+      valueRead()
+    }
+}
+
+/**
+ * A [[ThriftCursor]] over the fields of a struct, in wire order.
+ * {{{
+ *   val cursor = StructCursor(new TBinaryProtocol.Factory, inputStream)
+ *   while (cursor.next()) {
+ *     if (cursor.fieldId == 2) {
+ *       val records = cursor.container()
+ *       while (records.next() && !done) process(records.readStruct(Record))
+ *     }
+ *   }
+ * }}}
+ */
+final class StructCursor private[scrooge] (protocol: TProtocol) extends ThriftCursor(protocol) {
+  private[this] var field: TField = null
+
+  /**
+   * Id of the field at the cursor.
+   */
+  def fieldId: Short = current.id
+
+  def valueType: Byte = current.`type`
+
+  protected def advance(): Boolean = {
+    field = protocol.readFieldBegin()
+    if (field.`type` == TType.STOP) {
+      protocol.readStructEnd()
+      false
+    } else true
+  }
+
+  protected def valueRead(): Unit = protocol.readFieldEnd()
+
+  private[this] def current: TField = {
+    if (field == null)
+      throw new IllegalStateException("No field at the cursor, call next() first")
+    field
+  }
+}
+
+/**
+ * A [[ThriftCursor]] over the elements of a list or set, or over the keys
+ * and values of a map, which alternate.
+ *
+ * @param containerType `TType.LIST`, `TType.SET` or `TType.MAP`.
+ * @param size          Number of elements, or map entries.
+ * @param keyType       Type of the keys of a map, `TType.STOP` otherwise.
+ * @param elementType   Type of the elements, or of the values of a map.
+ */
+final class ContainerCursor private[scrooge] (
+  protocol: TProtocol,
+  val containerType: Byte,
+  val size: Int,
+  val keyType: Byte,
+  val elementType: Byte)
+    extends ThriftCursor(protocol) {
+  private[this] val isMap = containerType == TType.MAP
+  private[this] var remaining: Long = if (isMap) 2L * size else size
+  private[this] var atKey = false
+
+  /**
+   * Whether the value at the cursor is the key of a map entry.
+   */
+  def isKey: Boolean = atKey
+
+  def valueType: Byte = if (atKey) keyType else elementType
+
+  protected def advance(): Boolean =
+    if (remaining == 0) {
+      containerType match {
+        case TType.LIST => protocol.readListEnd()
+        case TType.SET => protocol.readSetEnd()
+        case _ => protocol.readMapEnd()
+      }
+      atKey = false
+      false
+    } else {
+      atKey = isMap && remaining % 2 == 0
+      remaining -= 1
+      true
+    }
+
+  protected def valueRead(): Unit = ()
+
+  /**
+   * The elements of a list or set, read one by one with `reader`.
+   */
+  def iterator[T](reader: TProtocol => T): Iterator[T] = {
+    if (isMap)
+      throw new IllegalStateException("Use entries to iterate over a map")
+    new Iterator[T] {
+      private[this] var ready = false
+      def hasNext: Boolean = {
+        if (!ready) ready = ContainerCursor.this.next()
+        ready
+      }
+      def next(): T = {
+        if (!hasNext) throw new NoSuchElementException
+        ready = false
+        read(reader)
+      }
+    }
+  }
+
+  /**
+   * The entries of a map, read one by one with `keyReader` and `valueReader`.
+   */
+  def entries[K, V](keyReader: TProtocol => K, valueReader: TProtocol => V): Iterator[(K, V)] = {
+    if (!isMap)
+      throw new IllegalStateException("Use iterator to iterate over a list or set")
+    new Iterator[(K, V)] {
+      private[this] var ready = false
+      def hasNext: Boolean = {
+        if (!ready) ready = ContainerCursor.this.next()
+        ready
+      }
+      def next(): (K, V) = {
+        if (!hasNext) throw new NoSuchElementException
+        ready = false
+        val key = read(keyReader)
+        ContainerCursor.this.next()
+        key -> read(valueReader)
+      }
+    }
+  }
+}
+
+object StructCursor {
+  private val BufferSize = 8192
+
+  /**
+   * A cursor over the struct `protocol` is positioned at.
+   */
+  def apply(protocol: TProtocol): StructCursor = {
+    protocol.readStructBegin()
+    new StructCursor(protocol)
+  }
+
+  def apply(protocolFactory: TProtocolFactory, bytes: Array[Byte]): StructCursor =
+    apply(protocolFactory.getProtocol(new TMemoryInputTransport(bytes)))
+
+  /**
+   * A cursor over the struct read from `in`, which is read as the cursor
+   * moves, through a fixed size buffer. `in` is not closed by the cursor.
+   */
+  def apply(protocolFactory: TProtocolFactory, in: InputStream): StructCursor =
+    apply(
+      protocolFactory.getProtocol(new TIOStreamTransport(new BufferedInputStream(in, BufferSize)))
+    )
+
+  def apply(protocolFactory: TProtocolFactory, channel: ReadableByteChannel): StructCursor =
+    apply(protocolFactory, Channels.newInputStream(channel))
+}
@@ -1,23 +1,68 @@
 package com.twitter.scrooge
 
+import com.twitter.io.Buf
+import java.io.OutputStream
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.channels.GatheringByteChannel
+import java.nio.channels.WritableByteChannel
 import org.apache.thrift.transport.TTransport
+import scala.collection.mutable.ArrayBuffer
 
 /**
  * TArrayByteTransport decodes Array[Byte] to primitive types
  * This is a replacement transport optimized for Array[Byte]
  * and the TLazyBinaryProtocol
  *
+ * The read side can be pointed at a slice of an Array[Byte], at a heap
+ * ByteBuffer or at an array backed Buf without copying. Lazily decoded
+ * structs keep referencing the original bytes, so they must not be mutated
+ * while such structs are alive.
+ *
+ * The write side appends to a chain of segments. They can be copied into a
+ * single array with `toByteArray`, or emitted as they are with `writeTo`
+ * and `toBuf`. Segments are pooled on `reset` and reused by later writes.
+ * When the size of the message is known upfront, `reset(dest)` writes it
+ * straight into the array `toByteArray` returns.
+ *
  * NB. This class/transport is not thread safe, and contains mutable state.
  */
 object TArrayByteTransport {
+
+  /**
+   * Default upper bound on the bytes kept around by `reset` for reuse.
+   */
+  val DefaultMaxPooledBytes: Int = 4 * 1024 * 1024
+
   def apply(buf: Array[Byte]): TArrayByteTransport = {
     val t = new TArrayByteTransport(0) // No write buffer used in read path
     t.setBytes(buf)
     t
   }
+
+  def apply(buf: Array[Byte], offset: Int, length: Int): TArrayByteTransport = {
+    val t = new TArrayByteTransport(0) // No write buffer used in read path
+    t.setBytes(buf, offset, length)
+    t
+  }
+
+  def apply(buf: ByteBuffer): TArrayByteTransport = {
+    val t = new TArrayByteTransport(0) // No write buffer used in read path
+    t.setByteBuffer(buf)
+    t
+  }
+
+  def apply(buf: Buf): TArrayByteTransport = {
+    val t = new TArrayByteTransport(0) // No write buffer used in read path
+    t.setBuf(buf)
+    t
+  }
 }
 
-final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTransport {
+final class TArrayByteTransport(
+  initialWriteBufferSize: Int = 512,
+  maxPooledBytes: Int = TArrayByteTransport.DefaultMaxPooledBytes)
+    extends TTransport {
   // Read state variables
   private[this] var bufferPos = 0
   private[this] var readbufferSiz_ = 0
@@ -31,6 +76,12 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
   private[this] var currentBuffer: Array[Byte] = Array.empty
   private[this] var currentOffset: Int = 0
 
+  // Segments handed back by reset, in the order they were first written to
+  private[this] var spareBuffers: List[Array[Byte]] = Nil
+
+  // The caller owned array given to reset(dest), never pooled
+  private[this] var destBuffer: Array[Byte] = null
+
   @inline private[this] def remainingSpaceInBuffer: Int = (currentBuffer.length - currentOffset)
 
   private[this] var writerOffset_ : Int = 0
@@ -47,16 +98,65 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
   @inline def writerOffset: Int = writerOffset_
 
   // Allow resetting the internal state down
-  // this cache's the high water mark seen so far and keeps an internal buffer of that size however.
+  // the segments written so far are pooled, oldest first, so that a message of a similar size
+  // walks through the same segments again without allocating. At most maxPooledBytes are kept.
+  // Arrays previously exposed through toBuf or toByteBuffers are overwritten by later writes.
   def reset(): Unit = {
     if (currentBuffer != null) {
-      if (currentBuffer.length < totalSize)
-        currentBuffer = new Array(totalSize)
+      val segments = writeBuffers.foldLeft(currentBuffer :: spareBuffers) {
+        case (acc, (buf, _)) => buf :: acc
+      }
+      val pooled = List.newBuilder[Array[Byte]]
+      var pooledBytes = 0L
+      segments.foreach { buf =>
+        if (buf.length > 0 && (buf ne destBuffer) && pooledBytes + buf.length <= maxPooledBytes) {
+          pooled += buf
+          pooledBytes += buf.length
+        }
+      }
+      pooled.result() match {
+        case head :: tail =>
+          currentBuffer = head
+          spareBuffers = tail
+        case Nil =>
+          currentBuffer = Array.empty
+          spareBuffers = Nil
+      }
       currentOffset = 0
       writeBuffers = Nil
       writerOffset_ = 0
-      nextBufferSize = currentBuffer.length * 2
+      nextBufferSize = math.max(initialWriteBufferSize, currentBuffer.length * 2)
       totalSize = 0
+      destBuffer = null
+    }
+  }
+
+  /**
+   * Like `reset`, but the following writes go to `dest`, a new array meant
+   * to hold exactly the next message. Once `dest.length` bytes have been
+   * written, `toByteArray` returns `dest` itself rather than a copy. Writes
+   * past the end of `dest` go to pooled segments as usual, `dest` is never
+   * pooled.
+   */
+  def reset(dest: Array[Byte]): Unit = {
+    reset()
+    if (currentBuffer.length > 0) spareBuffers = currentBuffer :: spareBuffers
+    currentBuffer = dest
+    destBuffer = dest
+  }
+
+  // Take the first pooled segment able to hold numBytes, if any.
+  private[this] def takeSpareBuffer(numBytes: Int): Array[Byte] = {
+    var prev: List[Array[Byte]] = Nil
+    var rest = spareBuffers
+    while (rest.nonEmpty && rest.head.length < numBytes) {
+      prev = rest.head :: prev
+      rest = rest.tail
+    }
+    if (rest.isEmpty) null
+    else {
+      spareBuffers = prev reverse_::: rest.tail
+      rest.head
     }
   }
 
@@ -68,17 +168,22 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
    */
   def getBuffer(numBytes: Int): Array[Byte] = {
     totalSize += numBytes
-    if (remainingSpaceInBuffer > numBytes) {
+    if (remainingSpaceInBuffer >= numBytes) {
       writerOffset_ = currentOffset
       currentOffset += numBytes
       currentBuffer
     } else {
       if (currentBuffer != null)
         writeBuffers = (currentBuffer, currentOffset) :: writeBuffers
-      nextBufferSize = if (nextBufferSize > numBytes * 2) nextBufferSize else numBytes * 2
-      currentBuffer = new Array[Byte](nextBufferSize)
+      val spare = if (spareBuffers.isEmpty) null else takeSpareBuffer(numBytes)
+      if (spare != null) {
+        currentBuffer = spare
+      } else {
+        nextBufferSize = if (nextBufferSize > numBytes * 2) nextBufferSize else numBytes * 2
+        currentBuffer = new Array[Byte](nextBufferSize)
+        nextBufferSize = nextBufferSize * 2
+      }
       currentOffset = numBytes
-      nextBufferSize = nextBufferSize * 2
       writerOffset_ = 0
       currentBuffer
     }
@@ -96,6 +201,7 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
   def toByteArray: Array[Byte] = {
     (currentBuffer, writeBuffers) match {
       case (null, Nil) => new Array[Byte](0)
+      case (buf, Nil) if (buf eq destBuffer) && totalSize == buf.length => buf
       case (buf, Nil) =>
         val finalBuf = new Array[Byte](totalSize)
         System.arraycopy(currentBuffer, 0, finalBuf, 0, totalSize)
@@ -114,6 +220,80 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
     }
   }
 
+  /**
+   * Number of bytes written since the last `reset`.
+   */
+  def writtenLength: Int = totalSize
+
+  // Apply f to each non empty segment and the number of bytes used in it, in write order.
+  private[this] def foreachSegment(f: (Array[Byte], Int) => Unit): Unit = {
+    def loop(segments: List[(Array[Byte], Int)]): Unit = segments match {
+      case (buf, len) :: rest =>
+        loop(rest)
+        if (len > 0) f(buf, len)
+      case Nil =>
+    }
+    loop(writeBuffers)
+    if (currentOffset > 0) f(currentBuffer, currentOffset)
+  }
+
+  /**
+   * Write the bytes written so far to `out`, one call per segment, without
+   * first copying them into a single array.
+   */
+  def writeTo(out: OutputStream): Unit =
+    foreachSegment(out.write(_, 0, _))
+
+  /**
+   * Write the bytes written so far to `channel`, using a gathering write when
+   * the channel supports it. This is meant for blocking channels, it returns
+   * once every byte has been written.
+   */
+  def writeTo(channel: WritableByteChannel): Unit = channel match {
+    case gathering: GatheringByteChannel =>
+      val buffers = toByteBuffers
+      var remaining = totalSize.toLong
+      while (remaining > 0) {
+        remaining -= gathering.write(buffers)
+      }
+    case _ =>
+      foreachSegment { (buf, len) =>
+        val bb = ByteBuffer.wrap(buf, 0, len)
+        while (bb.hasRemaining) channel.write(bb)
+      }
+  }
+
+  /**
+   * Copy the bytes written so far into `dst`, advancing its position.
+   *
+   * @throws BufferOverflowException if `dst` does not have `writtenLength`
+   *         bytes remaining, in which case nothing is written.
+   */
+  def writeTo(dst: ByteBuffer): Unit = {
+    if (dst.remaining < totalSize) throw new BufferOverflowException
+    foreachSegment(dst.put(_, 0, _))
+  }
+
+  /**
+   * The bytes written so far as ByteBuffers over the internal segments.
+   * They are only valid until the next `reset`.
+   */
+  def toByteBuffers: Array[ByteBuffer] = {
+    val buffers = new ArrayBuffer[ByteBuffer](writeBuffers.size + 1)
+    foreachSegment((buf, len) => buffers += ByteBuffer.wrap(buf, 0, len))
+    buffers.toArray
+  }
+
+  /**
+   * The bytes written so far as a Buf over the internal segments. It is
+   * only valid until the next `reset`, copy it if it needs to live longer.
+   */
+  def toBuf: Buf = {
+    val bufs = new ArrayBuffer[Buf](writeBuffers.size + 1)
+    foreachSegment((buf, len) => bufs += Buf.ByteArray.Owned(buf, 0, len))
+    Buf(bufs)
+  }
+
   // Read methods from here:
 
   // Only used in reading to give a pointer to the Array[Byte]
@@ -122,7 +302,7 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
   @inline
   def srcBuf: Array[Byte] = srcBuf_
 
-  // How big is the buffer we are reading from
+  // The offset in srcBuf at which the bytes we are reading from end
   @inline
   def bufferSiz: Int = readbufferSiz_
 
@@ -132,6 +312,45 @@ final class TArrayByteTransport(initialWriteBufferSize: Int = 512) extends TTran
     readbufferSiz_ = srcBuf_.length
   }
 
+  /**
+   * Read from `length` bytes of `arr` starting at `offset`. The array is
+   * not copied, positions reported by this transport are offsets in `arr`.
+   */
+  def setBytes(arr: Array[Byte], offset: Int, length: Int): Unit = {
+    if (offset < 0 || length < 0 || offset > arr.length - length)
+      throw new IndexOutOfBoundsException(
+        s"offset: $offset, length: $length, array length: ${arr.length}")
+    bufferPos = offset
+    srcBuf_ = arr
+    readbufferSiz_ = offset + length
+  }
+
+  /**
+   * Read from the remaining bytes of `buf`, the position of `buf` is left
+   * untouched. Heap buffers are read in place, direct and read only buffers
+   * have their remaining bytes copied once into a new array.
+   */
+  def setByteBuffer(buf: ByteBuffer): Unit = {
+    if (buf.hasArray) {
+      setBytes(buf.array, buf.arrayOffset + buf.position(), buf.remaining)
+    } else {
+      val arr = new Array[Byte](buf.remaining)
+      buf.duplicate().get(arr)
+      setBytes(arr)
+    }
+  }
+
+  /**
+   * Read from `buf`. Bufs backed by a single array or heap ByteBuffer are
+   * read in place, other Bufs (e.g. composites) are copied once into a new
+   * array.
+   */
+  def setBuf(buf: Buf): Unit = buf match {
+    case Buf.ByteArray.Owned(arr, begin, end) => setBytes(arr, begin, end - begin)
+    case Buf.ByteBuffer.Owned(bb) => setByteBuffer(bb)
+    case _ => setBytes(Buf.ByteArray.Owned.extract(buf))
+  }
+
   override def isOpen: Boolean = bufferPos < readbufferSiz_
 
   override def open(): Unit = ()
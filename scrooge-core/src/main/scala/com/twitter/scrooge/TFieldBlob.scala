@@ -1,6 +1,7 @@
 package com.twitter.scrooge
 
 import com.twitter.io.Buf
+import java.nio.ByteBuffer
 import java.util.Arrays
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TMemoryBuffer
@@ -16,8 +17,30 @@ object TFieldBlob {
     read(field, iprot)
   }
 
+  /**
+   * Reads the value of `field` into a [[TFieldBlob]].
+   *
+   * When `iprot` is a [[LazyTProtocol]], the value is not decoded: the blob
+   * refers to its bytes in the protocol's buffer, like lazily decoded fields
+   * do. Values read with the compact protocol are already in the blob's
+   * format, values read with the binary protocol are only converted when the
+   * blob's `content` is inspected. Writing such a blob to a protocol sharing
+   * the wire format it was read with is a single copy.
+   */
   def read(field: TField, iprot: TProtocol): TFieldBlob = {
-    capture(field) { ThriftUtil.transfer(_, iprot, field.`type`) }
+    iprot match {
+      // a compact bool is stored in the field header, not in the value bytes
+      case lazyProt: LazyTProtocol if field.`type` != TType.BOOL =>
+        val start = lazyProt.offset
+        TProtocolUtil.skip(iprot, field.`type`)
+        val length = lazyProt.offset - start
+        if (lazyProt.isInstanceOf[TCompactProtocol])
+          TFieldBlob(field, Buf.ByteArray.Owned(lazyProt.buffer, start, start + length))
+        else
+          TFieldBlob(field, new BinaryEncodedBuf(field.`type`, lazyProt.buffer, start, length))
+      case _ =>
+        capture(field) { ThriftUtil.transfer(_, iprot, field.`type`) }
+    }
   }
 
   def capture(field: TField)(f: TProtocol => Unit): TFieldBlob = {
@@ -29,6 +52,80 @@ object TFieldBlob {
 
   private val sysPropReadLength: Int =
     System.getProperty("org.apache.thrift.readLength", "-1").toInt
+
+  /**
+   * The content of a blob read from a binary [[LazyTProtocol]]: the binary
+   * encoded value, converted to the compact encoding on first access.
+   */
+  private[scrooge] final class BinaryEncodedBuf(
+    fieldType: Byte,
+    val bytes: Array[Byte],
+    val offset: Int,
+    val binaryLength: Int)
+      extends Buf {
+
+    private[this] lazy val compact: Buf.ByteArray = {
+      val blob = capture(new TField("", fieldType, 0)) { oprot =>
+        val iprot = new TBinaryProtocol(new TMemoryInputTransport(bytes, offset, binaryLength))
+        ThriftUtil.transfer(oprot, iprot, fieldType)
+      }
+      Buf.ByteArray.coerce(blob.content)
+    }
+
+    def write(output: Array[Byte], off: Int): Unit = compact.write(output, off)
+    def write(output: ByteBuffer): Unit = compact.write(output)
+    def length: Int = compact.length
+    def slice(from: Int, until: Int): Buf = compact.slice(from, until)
+    def get(index: Int): Byte = compact.get(index)
+    def process(from: Int, until: Int, processor: Buf.Processor): Int =
+      compact.process(from, until, processor)
+    protected def unsafeByteArrayBuf: Option[Buf.ByteArray] = Some(compact)
+  }
+
+  private[this] def isCompact(oprot: TProtocol): Boolean =
+    oprot match {
+      case lazyProt: LazyTProtocol => lazyProt.isInstanceOf[TCompactProtocol]
+      case sizes: TSizeProtocol => sizes.isCompact
+      case _ => oprot.getClass == classOf[TCompactProtocol]
+    }
+
+  private[this] def isBinary(oprot: TProtocol): Boolean =
+    oprot match {
+      case lazyProt: LazyTProtocol => !lazyProt.isInstanceOf[TCompactProtocol]
+      case sizes: TSizeProtocol => !sizes.isCompact
+      case _ => oprot.getClass == classOf[TBinaryProtocol]
+    }
+
+  // Only protocols known to write values straight to their transport, with no
+  // pending state besides a compact bool, are written to directly.
+  private[this] def writeRaw(oprot: TProtocol, bytes: Array[Byte], offset: Int, length: Int): Unit =
+    oprot match {
+      case lazyProt: LazyTProtocol => lazyProt.writeRaw(bytes, offset, length)
+      case _ => oprot.getTransport.write(bytes, offset, length)
+    }
+
+  /**
+   * Writes the value of `blob` to `oprot`, copying its bytes when they are
+   * already in the wire format of `oprot` and converting them otherwise.
+   */
+  private def writeValue(blob: TFieldBlob, oprot: TProtocol): Unit = {
+    val fieldType = blob.field.`type`
+    blob.content match {
+      case _ if fieldType == TType.BOOL =>
+        ThriftUtil.transfer(oprot, blob.read, fieldType)
+      case binary: BinaryEncodedBuf if isBinary(oprot) =>
+        writeRaw(oprot, binary.bytes, binary.offset, binary.binaryLength)
+      case binary: BinaryEncodedBuf if !isCompact(oprot) =>
+        val iprot = new TBinaryProtocol(
+          new TMemoryInputTransport(binary.bytes, binary.offset, binary.binaryLength))
+        ThriftUtil.transfer(oprot, iprot, fieldType)
+      case content if isCompact(oprot) =>
+        val Buf.ByteArray.Owned(bytes, begin, end) = Buf.ByteArray.coerce(content)
+        writeRaw(oprot, bytes, begin, end - begin)
+      case _ =>
+        ThriftUtil.transfer(oprot, blob.read, fieldType)
+    }
+  }
 }
 
 /**
@@ -62,14 +159,14 @@ case class TFieldBlob(field: TField, content: Buf) {
 
   def write(oprot: TProtocol): Unit = {
     oprot.writeFieldBegin(field)
-    ThriftUtil.transfer(oprot, read, field.`type`)
+    writeValue(this, oprot)
     oprot.writeFieldEnd()
   }
 
   // This is Required for PassThrough implementation Of Union in Java
   // TUnion already writes the Begin and End Fields
   def writeWithoutFieldMeta(oprot: TProtocol): Unit = {
-    ThriftUtil.transfer(oprot, read, field.`type`)
+    writeValue(this, oprot)
   }
 
   /**
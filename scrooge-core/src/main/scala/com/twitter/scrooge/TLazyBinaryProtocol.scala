@@ -17,13 +17,23 @@ import org.apache.thrift.protocol._
 object TLazyBinaryProtocol {
   private val AnonymousStruct: TStruct = new TStruct()
   private val utf8Charset = Charset.forName("UTF-8")
+
+  // Sizes of the parts of the wire format skipped by the offsetSkip methods
+  private final val FieldTypeBytes = 1
+  private final val FieldTypeAndIdBytes = 3
+  private final val ListHeaderBytes = 5
+  private final val MapHeaderBytes = 6
 }
 
-class TLazyBinaryProtocol(transport: TArrayByteTransport)
+class TLazyBinaryProtocol(
+  transport: TArrayByteTransport,
+  override val parallelListDecoding: Option[ParallelListDecoding])
     extends TBinaryProtocol(transport)
     with LazyTProtocol {
   import TLazyBinaryProtocol._
 
+  def this(transport: TArrayByteTransport) = this(transport, None)
+
   @inline
   final def writeRaw(buf: Array[Byte], offset: Int, len: Int): Unit = {
     transport.write(buf, offset, len)
@@ -129,16 +139,11 @@ class TLazyBinaryProtocol(transport: TArrayByteTransport)
   }
 
   override def writeString(str: String): Unit = {
-    try {
-      val data: Array[Byte] = str.getBytes(utf8Charset)
-      val buf = transport.getBuffer(data.length + 4)
-      val offset = transport.writerOffset
-      innerWriteI32(buf, offset, data.length)
-      System.arraycopy(data, 0, buf, offset + 4, data.length)
-    } catch {
-      case uex: UnsupportedEncodingException =>
-        throw new TException("JVM DOES NOT SUPPORT UTF-8")
-    }
+    val length = Utf8.encodedLength(str)
+    val buf = transport.getBuffer(length + 4)
+    val offset = transport.writerOffset
+    innerWriteI32(buf, offset, length)
+    Utf8.encode(str, buf, offset + 4)
   }
 
   override def writeBinary(bin: ByteBuffer): Unit = {
@@ -338,6 +343,81 @@ class TLazyBinaryProtocol(transport: TArrayByteTransport)
 
   override def offsetSkipBinary(): Int = offsetSkipString
 
+  override def offsetSkipStruct(): Int = {
+    val pos = transport.getBufferPosition
+    var done = false
+    while (!done) {
+      val tpe: Byte = transport.srcBuf(transport.getBufferPosition)
+      if (tpe == TType.STOP) {
+        done = true
+        transport.advance(FieldTypeBytes)
+      } else {
+        transport.advance(FieldTypeAndIdBytes)
+        offsetSkipValue(tpe)
+      }
+    }
+    pos
+  }
+
+  override def offsetSkipList(): Int = {
+    val pos = transport.getBufferPosition
+    // List is serialized as:
+    // ElemType | List Size | Values
+    val elemType = transport.srcBuf(pos)
+    val size = decodeI32(transport.srcBuf, pos + FieldTypeBytes)
+    transport.advance(ListHeaderBytes)
+    checkReadLength(size)
+    var i = 0
+    while (i < size) {
+      offsetSkipValue(elemType)
+      i += 1
+    }
+    pos
+  }
+
+  override def offsetSkipSet(): Int = offsetSkipList()
+
+  override def offsetSkipMap(): Int = {
+    val pos = transport.getBufferPosition
+    // Map is serialized as:
+    // KeyType | ValueType | Map Size | Keys and Values
+    val keyType: Byte = transport.srcBuf(pos)
+    val valueType: Byte = transport.srcBuf(pos + FieldTypeBytes)
+    val size = decodeI32(transport.srcBuf, pos + 2 * FieldTypeBytes)
+    transport.advance(MapHeaderBytes)
+    checkReadLength(size)
+    var i = 0
+    while (i < size) {
+      offsetSkipValue(keyType)
+      offsetSkipValue(valueType)
+      i += 1
+    }
+    pos
+  }
+
+  private[this] def offsetSkipValue(tpe: Byte): Unit = tpe match {
+    case TType.STRUCT => offsetSkipStruct()
+    case TType.I64 | TType.DOUBLE => transport.advance(8)
+    case TType.I32 | TType.ENUM => transport.advance(4)
+    case TType.I16 => transport.advance(2)
+    case TType.BOOL | TType.BYTE => transport.advance(1)
+    case TType.VOID =>
+    case TType.STRING => offsetSkipString()
+    case TType.LIST => offsetSkipList()
+    case TType.MAP => offsetSkipMap()
+    case TType.SET => offsetSkipSet()
+    case other => throw new TProtocolException(s"don't know what type: $other")
+  }
+
+  override def decodeBinary(buf: Array[Byte], off: Int): ByteBuffer =
+    ByteBuffer.wrap(buf, off + 4, decodeI32(buf, off))
+
+  override def readerAt(buf: Array[Byte], offset: Int, length: Int): LazyTProtocol = {
+    val trans = new TArrayByteTransport()
+    trans.setBytes(buf, offset, length)
+    new TLazyBinaryProtocol(trans, parallelListDecoding)
+  }
+
   override def readBinary(): ByteBuffer = {
     val size = readI32()
     checkReadLength(size)
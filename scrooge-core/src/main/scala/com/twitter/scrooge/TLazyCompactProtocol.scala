@@ -0,0 +1,471 @@
+package com.twitter.scrooge
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import org.apache.thrift.TException
+import org.apache.thrift.protocol._
+
+/**
+ * This is an implementation of the LazyTProtocol trait for the compact wire
+ * format. It is the compact counterpart of [[TLazyBinaryProtocol]] and is wire
+ * compatible with `TCompactProtocol`.
+ *
+ * Reads go straight to the backing Array[Byte] of the [[TArrayByteTransport]],
+ * writes are inherited from `TCompactProtocol`, except for strings which are
+ * encoded straight into the transport's buffer.
+ *
+ * Unlike the binary protocol, the value of a boolean field is folded into the
+ * field header. `offsetSkipBool` therefore returns the offset of the field
+ * header byte, and `decodeBool` knows how to read either a field header or a
+ * plain boolean byte.
+ *
+ * This is not thread safe and maintains state.
+ */
+object TLazyCompactProtocol {
+  private val AnonymousStruct: TStruct = new TStruct()
+  private val StopField: TField = new TField("", TType.STOP, 0)
+
+  // Compact protocol wire types, see TCompactProtocol.Types
+  private final val BooleanTrue: Byte = 0x01
+  private final val BooleanFalse: Byte = 0x02
+  private final val CompactByte: Byte = 0x03
+  private final val CompactI16: Byte = 0x04
+  private final val CompactI32: Byte = 0x05
+  private final val CompactI64: Byte = 0x06
+  private final val CompactDouble: Byte = 0x07
+  private final val CompactBinary: Byte = 0x08
+  private final val CompactList: Byte = 0x09
+  private final val CompactSet: Byte = 0x0a
+  private final val CompactMap: Byte = 0x0b
+  private final val CompactStruct: Byte = 0x0c
+
+  private[scrooge] def getTType(compactType: Byte): Byte = (compactType & 0x0f) match {
+    case TType.STOP => TType.STOP
+    case BooleanTrue | BooleanFalse => TType.BOOL
+    case CompactByte => TType.BYTE
+    case CompactI16 => TType.I16
+    case CompactI32 => TType.I32
+    case CompactI64 => TType.I64
+    case CompactDouble => TType.DOUBLE
+    case CompactBinary => TType.STRING
+    case CompactList => TType.LIST
+    case CompactSet => TType.SET
+    case CompactMap => TType.MAP
+    case CompactStruct => TType.STRUCT
+    case other => throw new TProtocolException(s"don't know what type: $other")
+  }
+
+  @inline private[scrooge] def zigzagToInt(n: Int): Int = (n >>> 1) ^ -(n & 1)
+
+  @inline private[scrooge] def zigzagToLong(n: Long): Long = (n >>> 1) ^ -(n & 1)
+
+  /**
+   * Returns the number of bytes needed to encode `n` as a varint.
+   */
+  private[scrooge] def varint32Size(n: Int): Int =
+    1 + (31 - Integer.numberOfLeadingZeros(n | 1)) / 7
+
+  /**
+   * Returns the number of bytes used by the varint starting at `off`.
+   */
+  private[scrooge] def varintSize(buf: Array[Byte], off: Int): Int = {
+    var pos = off
+    while ((buf(pos) & 0x80) == 0x80) pos += 1
+    pos - off + 1
+  }
+
+  private[scrooge] def decodeVarint32(buf: Array[Byte], off: Int): Int = {
+    var result = 0
+    var shift = 0
+    var pos = off
+    var b = buf(pos)
+    while ((b & 0x80) == 0x80) {
+      result |= (b & 0x7f) << shift
+      shift += 7
+      pos += 1
+      b = buf(pos)
+    }
+    result | ((b & 0x7f) << shift)
+  }
+
+  private[scrooge] def decodeVarint64(buf: Array[Byte], off: Int): Long = {
+    var result = 0L
+    var shift = 0
+    var pos = off
+    var b = buf(pos)
+    while ((b & 0x80) == 0x80) {
+      result |= (b & 0x7fL) << shift
+      shift += 7
+      pos += 1
+      b = buf(pos)
+    }
+    result | ((b & 0x7fL) << shift)
+  }
+
+  private[scrooge] def decodeFixedI64(buf: Array[Byte], off: Int): Long =
+    ((buf(off + 7) & 0xffL) << 56) |
+      ((buf(off + 6) & 0xffL) << 48) |
+      ((buf(off + 5) & 0xffL) << 40) |
+      ((buf(off + 4) & 0xffL) << 32) |
+      ((buf(off + 3) & 0xffL) << 24) |
+      ((buf(off + 2) & 0xffL) << 16) |
+      ((buf(off + 1) & 0xffL) << 8) |
+      ((buf(off) & 0xffL))
+}
+
+class TLazyCompactProtocol(
+  transport: TArrayByteTransport,
+  override val parallelListDecoding: Option[ParallelListDecoding])
+    extends TCompactProtocol(transport)
+    with LazyTProtocol {
+  import TLazyCompactProtocol._
+
+  def this(transport: TArrayByteTransport) = this(transport, None)
+
+  // Field ids in the compact protocol are delta encoded against the previous
+  // field of the enclosing struct, so we keep a stack of them while reading.
+  private[this] var lastFieldId: Short = 0
+  private[this] var fieldIdStack: Array[Short] = new Array[Short](16)
+  private[this] var fieldIdStackSize: Int = 0
+
+  // Offset of the field header of the boolean field being read, -1 otherwise.
+  private[this] var boolFieldOffset: Int = -1
+
+  @inline
+  final def writeRaw(buf: Array[Byte], offset: Int, len: Int): Unit = {
+    transport.write(buf, offset, len)
+  }
+
+  override def reset(): Unit = {
+    super.reset()
+    lastFieldId = 0
+    fieldIdStackSize = 0
+    boolFieldOffset = -1
+  }
+
+  /*
+   * Writing methods
+   */
+  override def writeString(str: String): Unit = {
+    val length = Utf8.encodedLength(str)
+    val buf = transport.getBuffer(varint32Size(length) + length)
+    var offset = transport.writerOffset
+    var n = length
+    while ((n & ~0x7f) != 0) {
+      buf(offset) = ((n & 0x7f) | 0x80).toByte
+      n >>>= 7
+      offset += 1
+    }
+    buf(offset) = n.toByte
+    Utf8.encode(str, buf, offset + 1)
+  }
+
+  /*
+   * Reading methods
+   */
+  // Due to corruption some records try allocating huge amount of memory. Check for this condition
+  // where new memory allocation should not be larger than remaining buffer size. Throwing exception
+  // will skip this record.
+  private[this] def checkReadLength(length: Int): Unit = {
+    if (length < 0) {
+      throw new TException(s"Negative length: $length")
+    }
+    if (transport.getBytesRemainingInBuffer < length) {
+      throw new TException(
+        s"Requested length $length > Buffer length ${transport.getBytesRemainingInBuffer}. " +
+          "Possible data corruption"
+      )
+    }
+  }
+
+  private[this] def readVarint32(): Int = {
+    val off = transport.getBufferPosition
+    val buf = transport.srcBuf
+    transport.advance(varintSize(buf, off))
+    decodeVarint32(buf, off)
+  }
+
+  private[this] def readVarint64(): Long = {
+    val off = transport.getBufferPosition
+    val buf = transport.srcBuf
+    transport.advance(varintSize(buf, off))
+    decodeVarint64(buf, off)
+  }
+
+  override def readMessageEnd(): Unit = ()
+
+  override def readStructBegin(): TStruct = {
+    if (fieldIdStackSize == fieldIdStack.length) {
+      fieldIdStack = java.util.Arrays.copyOf(fieldIdStack, fieldIdStack.length * 2)
+    }
+    fieldIdStack(fieldIdStackSize) = lastFieldId
+    fieldIdStackSize += 1
+    lastFieldId = 0
+    AnonymousStruct
+  }
+
+  override def readStructEnd(): Unit = {
+    fieldIdStackSize -= 1
+    lastFieldId = fieldIdStack(fieldIdStackSize)
+  }
+
+  override def readFieldBegin(): TField = {
+    val headerOffset = transport.getBufferPosition
+    val header = readByte()
+    if (header == TType.STOP) {
+      StopField
+    } else {
+      val delta = (header & 0xf0) >> 4
+      val fieldId: Short =
+        if (delta == 0) readI16()
+        else (lastFieldId + delta).toShort
+      val compactType = (header & 0x0f).toByte
+      if (compactType == BooleanTrue || compactType == BooleanFalse) {
+        boolFieldOffset = headerOffset
+      }
+      lastFieldId = fieldId
+      new TField("", getTType(compactType), fieldId)
+    }
+  }
+
+  override def readFieldEnd(): Unit = ()
+
+  override def readMapBegin(): TMap = {
+    val size = readVarint32()
+    checkReadLength(size)
+    val keyAndValueType: Byte = if (size == 0) 0 else readByte()
+    new TMap(
+      getTType((keyAndValueType >> 4).toByte),
+      getTType((keyAndValueType & 0x0f).toByte),
+      size)
+  }
+
+  override def readMapEnd(): Unit = ()
+
+  override def readListBegin(): TList = {
+    val sizeAndType = readByte()
+    val shortSize = (sizeAndType >> 4) & 0x0f
+    val size = if (shortSize == 15) readVarint32() else shortSize
+    checkReadLength(size)
+    new TList(getTType(sizeAndType), size)
+  }
+
+  override def readListEnd(): Unit = ()
+
+  override def readSetBegin(): TSet = new TSet(readListBegin())
+
+  override def readSetEnd(): Unit = ()
+
+  override def readBool(): Boolean = {
+    if (boolFieldOffset != -1) {
+      val b = decodeBool(transport.srcBuf, boolFieldOffset)
+      boolFieldOffset = -1
+      b
+    } else {
+      readByte() == BooleanTrue
+    }
+  }
+
+  @inline
+  override def readByte(): Byte = {
+    val r: Byte = transport.srcBuf(transport.getBufferPosition)
+    transport.advance(1)
+    r
+  }
+
+  @inline
+  override def readI16(): Short = zigzagToInt(readVarint32()).toShort
+
+  @inline
+  override def readI32(): Int = zigzagToInt(readVarint32())
+
+  @inline
+  override def readI64(): Long = zigzagToLong(readVarint64())
+
+  @inline
+  override def readDouble(): Double = {
+    val off = transport.getBufferPosition
+    transport.advance(8)
+    decodeDouble(transport.srcBuf, off)
+  }
+
+  override def readString(): String = {
+    val size = readVarint32()
+    checkReadLength(size)
+    val s = new String(transport.srcBuf, transport.getBufferPosition, size, StandardCharsets.UTF_8)
+    transport.advance(size)
+    s
+  }
+
+  override def readBinary(): ByteBuffer = {
+    val size = readVarint32()
+    checkReadLength(size)
+    val bb = ByteBuffer.wrap(transport.srcBuf, transport.getBufferPosition, size)
+    transport.advance(size)
+    bb
+  }
+
+  override def buffer: Array[Byte] = transport.srcBuf
+
+  override def offset: Int = transport.getBufferPosition
+
+  // A boolean is either a field header, whose type nibble carries the value,
+  // or a plain byte inside a container. Both use 1 for true.
+  override def decodeBool(buf: Array[Byte], offset: Int): Boolean =
+    (buf(offset) & 0x0f) == BooleanTrue
+
+  override def decodeByte(buf: Array[Byte], offset: Int): Byte =
+    buf(offset)
+
+  override def decodeI16(buf: Array[Byte], off: Int): Short =
+    zigzagToInt(decodeVarint32(buf, off)).toShort
+
+  override def decodeI32(buf: Array[Byte], off: Int): Int =
+    zigzagToInt(decodeVarint32(buf, off))
+
+  override def decodeI64(buf: Array[Byte], off: Int): Long =
+    zigzagToLong(decodeVarint64(buf, off))
+
+  override def decodeDouble(buf: Array[Byte], off: Int): Double =
+    java.lang.Double.longBitsToDouble(decodeFixedI64(buf, off))
+
+  override def decodeString(buf: Array[Byte], off: Int): String = {
+    val size = decodeVarint32(buf, off)
+    try {
+      new String(buf, off + varintSize(buf, off), size, StandardCharsets.UTF_8)
+    } catch {
+      case e: StringIndexOutOfBoundsException =>
+        throw new TException(
+          s"Data is corrupt, string size reported as $size, array size is : ${buf.length} , with offset as $off"
+        )
+    }
+  }
+
+  override def offsetSkipBool(): Int = {
+    if (boolFieldOffset != -1) {
+      val pos = boolFieldOffset
+      boolFieldOffset = -1
+      pos
+    } else {
+      offsetSkipByte()
+    }
+  }
+
+  override def offsetSkipByte(): Int = {
+    val pos = transport.getBufferPosition
+    transport.advance(1)
+    pos
+  }
+
+  private[this] def offsetSkipVarint(): Int = {
+    val pos = transport.getBufferPosition
+    transport.advance(varintSize(transport.srcBuf, pos))
+    pos
+  }
+
+  override def offsetSkipI16(): Int = offsetSkipVarint()
+
+  override def offsetSkipI32(): Int = offsetSkipVarint()
+
+  override def offsetSkipI64(): Int = offsetSkipVarint()
+
+  override def offsetSkipDouble(): Int = {
+    val pos = transport.getBufferPosition
+    transport.advance(8)
+    pos
+  }
+
+  override def offsetSkipString(): Int = {
+    val pos = transport.getBufferPosition
+    val size = readVarint32()
+    checkReadLength(size)
+    transport.advance(size)
+    pos
+  }
+
+  override def offsetSkipBinary(): Int = offsetSkipString()
+
+  // Unlike readStructBegin and readFieldBegin, this leaves the field ids
+  // tracked by the protocol alone: fields of a skipped struct are never read.
+  override def offsetSkipStruct(): Int = {
+    val pos = transport.getBufferPosition
+    var done = false
+    while (!done) {
+      val header: Byte = transport.srcBuf(transport.getBufferPosition)
+      transport.advance(1)
+      if (header == TType.STOP) {
+        done = true
+      } else {
+        // Without a delta, the field id follows the header as a varint
+        if ((header & 0xf0) == 0) offsetSkipVarint()
+        val compactType = (header & 0x0f).toByte
+        // Boolean fields have their value in the header and no payload
+        if (compactType != BooleanTrue && compactType != BooleanFalse)
+          offsetSkipValue(getTType(compactType))
+      }
+    }
+    pos
+  }
+
+  override def offsetSkipList(): Int = {
+    val pos = transport.getBufferPosition
+    // List is serialized as:
+    // Size and ElemType | [Size] | Values
+    val sizeAndType = readByte()
+    val shortSize = (sizeAndType >> 4) & 0x0f
+    val size = if (shortSize == 15) readVarint32() else shortSize
+    checkReadLength(size)
+    val elemType = getTType(sizeAndType)
+    var i = 0
+    while (i < size) {
+      offsetSkipValue(elemType)
+      i += 1
+    }
+    pos
+  }
+
+  override def offsetSkipSet(): Int = offsetSkipList()
+
+  override def offsetSkipMap(): Int = {
+    val pos = transport.getBufferPosition
+    // Map is serialized as:
+    // Size | [KeyType and ValueType | Keys and Values]
+    val size = readVarint32()
+    checkReadLength(size)
+    if (size > 0) {
+      val keyAndValueType = readByte()
+      val keyType = getTType((keyAndValueType >> 4).toByte)
+      val valueType = getTType((keyAndValueType & 0x0f).toByte)
+      var i = 0
+      while (i < size) {
+        offsetSkipValue(keyType)
+        offsetSkipValue(valueType)
+        i += 1
+      }
+    }
+    pos
+  }
+
+  // Skips a value inside a container, or the payload of a non boolean field.
+  private[this] def offsetSkipValue(tpe: Byte): Unit = tpe match {
+    case TType.STRUCT => offsetSkipStruct()
+    case TType.I64 | TType.I32 | TType.I16 | TType.ENUM => offsetSkipVarint()
+    case TType.BOOL | TType.BYTE => transport.advance(1)
+    case TType.DOUBLE => transport.advance(8)
+    case TType.VOID =>
+    case TType.STRING => offsetSkipString()
+    case TType.LIST => offsetSkipList()
+    case TType.MAP => offsetSkipMap()
+    case TType.SET => offsetSkipSet()
+    case other => throw new TProtocolException(s"don't know what type: $other")
+  }
+
+  override def decodeBinary(buf: Array[Byte], off: Int): ByteBuffer =
+    ByteBuffer.wrap(buf, off + varintSize(buf, off), decodeVarint32(buf, off))
+
+  override def readerAt(buf: Array[Byte], offset: Int, length: Int): LazyTProtocol = {
+    val trans = new TArrayByteTransport()
+    trans.setBytes(buf, offset, length)
+    new TLazyCompactProtocol(trans, parallelListDecoding)
+  }
+}
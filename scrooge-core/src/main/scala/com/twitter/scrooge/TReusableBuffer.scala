@@ -13,34 +13,54 @@ package com.twitter.scrooge
  *       try {
  *         // code that uses buffer
  *       } finally {
- *         buffer.reset()
+ *         reusableBuffer.reset()
  *       }
  *     }
  *   }
  * }}}
  *
+ * Between `get` and `reset` the calling thread holds on to a buffer borrowed
+ * from a bounded [[ReusablePool]], `reset` hands it back. The number of
+ * buffers kept alive therefore does not grow with the number of threads.
+ *
  * @param initialSize The initial buffer size, default is 512.
  * @param maxThriftBufferSize The buffer will reset if it exceeds max buffer
  *                            size, default is 16K.
  */
 case class TReusableBuffer(initialSize: Int = 512, maxThriftBufferSize: Int = 16 * 1024) {
 
-  private[this] val tlReusableBuffer = new ThreadLocal[TReusableMemoryTransport] {
-    override def initialValue(): TReusableMemoryTransport = TReusableMemoryTransport(initialSize)
-  }
+  private[this] val pool: ReusablePool[TReusableMemoryTransport] =
+    ReusablePool(
+      () => TReusableMemoryTransport(initialSize),
+      _.currentCapacity > maxThriftBufferSize
+    )
+
+  // The buffer borrowed by the current thread, only set between get and reset
+  private[this] val borrowed = new ThreadLocal[TReusableMemoryTransport]
 
   /**
    * NOTE: This method resets the underlying TReusableMemoryTransport before returning it.
    */
   def get(): TReusableMemoryTransport = {
-    val buf = tlReusableBuffer.get()
+    var buf = borrowed.get()
+    if (buf == null) {
+      buf = pool.acquire()
+      borrowed.set(buf)
+    }
     buf.reset()
     buf
   }
 
   def reset(): Unit = {
-    if (tlReusableBuffer.get().currentCapacity > maxThriftBufferSize) {
-      tlReusableBuffer.remove()
+    val buf = borrowed.get()
+    if (buf != null) {
+      borrowed.remove()
+      pool.release(buf)
     }
   }
+
+  /**
+   * Hit, miss and oversize counters of the underlying pool.
+   */
+  def stats: ReusablePool.Stats = pool.stats
 }
@@ -0,0 +1,289 @@
+package com.twitter.scrooge
+
+import java.nio.ByteBuffer
+import org.apache.thrift.protocol._
+import org.apache.thrift.transport.TTransport
+
+object TSizeProtocol {
+  private final val Compact = 1
+  private final val Raw = 2
+
+  // Cached sizes are stored with the kind of protocol they were counted for in the low bits.
+  private final val KindBits = 2
+  private final val KindMask = (1 << KindBits) - 1
+  private final val MaxCachedSize = Int.MaxValue >>> KindBits
+
+  private val NotReadable: String = "TSizeProtocol only counts the bytes written to it"
+
+  /**
+   * Counts the bytes written by `TBinaryProtocol`.
+   */
+  def binary(): TSizeProtocol = new TSizeProtocol(0, null)
+
+  /**
+   * Counts the bytes written by `TCompactProtocol`.
+   */
+  def compact(): TSizeProtocol = new TSizeProtocol(Compact, null)
+
+  /**
+   * Counts the bytes written by protocols made by `protocolFactory`, if it
+   * is the factory of `TBinaryProtocol` or of `TCompactProtocol`.
+   */
+  def apply(protocolFactory: TProtocolFactory): Option[TSizeProtocol] = {
+    val factoryClass = protocolFactory.getClass
+    if (factoryClass == classOf[TBinaryProtocol.Factory]) Some(binary())
+    else if (factoryClass == classOf[TCompactProtocol.Factory]) Some(compact())
+    else None
+  }
+
+  /**
+   * Counts the bytes written by `protocol`, including the lazily decoded
+   * structs it copies as they are.
+   */
+  def apply(protocol: LazyTProtocol): TSizeProtocol =
+    new TSizeProtocol(Raw | (if (protocol.isInstanceOf[TCompactProtocol]) Compact else 0), protocol)
+
+  private def varint32Size(n: Int): Int = TLazyCompactProtocol.varint32Size(n)
+
+  private def varint64Size(n: Long): Int =
+    1 + (63 - java.lang.Long.numberOfLeadingZeros(n | 1)) / 7
+
+  private def zigzag32(n: Int): Int = (n << 1) ^ (n >> 31)
+
+  private def zigzag64(n: Long): Long = (n << 1) ^ (n >> 63)
+
+  /**
+   * A write only transport counting the bytes written to it.
+   */
+  private[scrooge] final class CountingTransport extends TTransport {
+    var count: Long = 0L
+
+    override def isOpen: Boolean = true
+    override def open(): Unit = ()
+    override def close(): Unit = ()
+
+    override def read(buf: Array[Byte], off: Int, len: Int): Int =
+      throw new UnsupportedOperationException(NotReadable)
+
+    override def write(buf: Array[Byte], off: Int, len: Int): Unit =
+      count += len
+  }
+}
+
+/**
+ * A TProtocol that writes nothing, and instead counts the bytes the binary or
+ * the compact protocol would write. Writing a struct to it computes the
+ * struct's encoded size without encoding it.
+ *
+ * Scrooge generated structs recognize it: lazily decoded structs count the
+ * bytes they would copy as is, and immutable instances cache their sizes,
+ * see `writeCachedStruct`.
+ *
+ * Messages are counted as written by a strict `TBinaryProtocol`.
+ *
+ * This is not thread safe and maintains state.
+ */
+final class TSizeProtocol private (
+  kind: Int,
+  lazyProtocol: LazyTProtocol,
+  counter: TSizeProtocol.CountingTransport)
+    extends TProtocol(counter) {
+  import TSizeProtocol._
+
+  private def this(kind: Int, lazyProtocol: LazyTProtocol) =
+    this(kind, lazyProtocol, new TSizeProtocol.CountingTransport)
+
+  private[this] val compact: Boolean = (kind & Compact) != 0
+
+  // The compact protocol delta encodes field ids against the previous field
+  // of the enclosing struct, and folds the value of boolean fields into the
+  // field header.
+  private[this] var lastFieldId: Short = 0
+  private[this] var fieldIdStack: Array[Short] = null
+  private[this] var fieldIdStackSize: Int = 0
+  private[this] var boolField: Boolean = false
+
+  /**
+   * The number of bytes written since this protocol was created or `reset`.
+   */
+  def size: Long = counter.count
+
+  /**
+   * Whether the bytes are counted for the compact protocol.
+   */
+  def isCompact: Boolean = compact
+
+  override def reset(): Unit = {
+    counter.count = 0L
+    lastFieldId = 0
+    fieldIdStackSize = 0
+    boolField = false
+  }
+
+  /**
+   * The lazy protocol whose bytes are counted, if any.
+   */
+  def countedProtocol: Option[LazyTProtocol] = Option(lazyProtocol)
+
+  /**
+   * Whether the protocol whose bytes are counted copies the bytes lazily read
+   * by `source` as they are. Those are then counted with `writeRaw`.
+   */
+  def canWriteRawFrom(source: LazyTProtocol): Boolean =
+    lazyProtocol != null && lazyProtocol.canWriteRawFrom(source)
+
+  /**
+   * Counts `length` bytes which are already encoded for this protocol.
+   */
+  def writeRaw(length: Int): Unit =
+    counter.count += length
+
+  /**
+   * Counts a struct whose size may already be in `cache`, running `write`
+   * otherwise.
+   *
+   * `cache` is 0, or a value previously returned by this method for the same
+   * struct, and the struct's content must not have changed since.
+   *
+   * @return the value to pass as `cache` the next time the struct is counted.
+   */
+  def writeCachedStruct(cache: Int)(write: => Unit): Int = {
+    if (cache != 0 && (cache & KindMask) == kind) {
+      counter.count += cache >>> KindBits
+      cache
+    } else {
+      val start = counter.count
+      write
+      val size = counter.count - start
+      if (size <= MaxCachedSize) (size.toInt << KindBits) | kind
+      else cache
+    }
+  }
+
+  private[this] def count(n: Int): Unit =
+    counter.count += n
+
+  private[this] def compactFieldHeaderSize(id: Short): Int =
+    if (id > lastFieldId && id - lastFieldId <= 15) 1
+    else 1 + varint32Size(zigzag32(id))
+
+  private[this] def stringSize(length: Int): Int =
+    if (compact) varint32Size(length) + length
+    else 4 + length
+
+  /*
+   * Writing methods
+   */
+  override def writeMessageBegin(message: TMessage): Unit = {
+    if (compact) count(2 + varint32Size(message.seqid))
+    else count(4 + 4)
+    writeString(message.name)
+  }
+
+  override def writeMessageEnd(): Unit = ()
+
+  override def writeStructBegin(struct: TStruct): Unit = {
+    if (compact) {
+      if (fieldIdStack == null) {
+        fieldIdStack = new Array[Short](16)
+      } else if (fieldIdStackSize == fieldIdStack.length) {
+        fieldIdStack = java.util.Arrays.copyOf(fieldIdStack, fieldIdStack.length * 2)
+      }
+      fieldIdStack(fieldIdStackSize) = lastFieldId
+      fieldIdStackSize += 1
+      lastFieldId = 0
+    }
+  }
+
+  override def writeStructEnd(): Unit = {
+    if (compact) {
+      fieldIdStackSize -= 1
+      lastFieldId = fieldIdStack(fieldIdStackSize)
+    }
+  }
+
+  override def writeFieldBegin(field: TField): Unit = {
+    if (compact) {
+      count(compactFieldHeaderSize(field.id))
+      lastFieldId = field.id
+      boolField = field.`type` == TType.BOOL
+    } else {
+      count(3)
+    }
+  }
+
+  override def writeFieldEnd(): Unit = ()
+
+  override def writeFieldStop(): Unit = count(1)
+
+  override def writeMapBegin(map: TMap): Unit = {
+    if (!compact) count(6)
+    else if (map.size == 0) count(1)
+    else count(varint32Size(map.size) + 1)
+  }
+
+  override def writeMapEnd(): Unit = ()
+
+  override def writeListBegin(list: TList): Unit = writeCollectionBegin(list.size)
+
+  override def writeListEnd(): Unit = ()
+
+  override def writeSetBegin(set: TSet): Unit = writeCollectionBegin(set.size)
+
+  override def writeSetEnd(): Unit = ()
+
+  private[this] def writeCollectionBegin(size: Int): Unit = {
+    if (!compact) count(5)
+    else if (size <= 14) count(1)
+    else count(1 + varint32Size(size))
+  }
+
+  override def writeBool(b: Boolean): Unit = {
+    if (boolField) boolField = false
+    else count(1)
+  }
+
+  override def writeByte(b: Byte): Unit = count(1)
+
+  override def writeI16(i16: Short): Unit =
+    if (compact) count(varint32Size(zigzag32(i16))) else count(2)
+
+  override def writeI32(i32: Int): Unit =
+    if (compact) count(varint32Size(zigzag32(i32))) else count(4)
+
+  override def writeI64(i64: Long): Unit =
+    if (compact) count(varint64Size(zigzag64(i64))) else count(8)
+
+  override def writeDouble(dub: Double): Unit = count(8)
+
+  override def writeString(str: String): Unit = count(stringSize(Utf8.encodedLength(str)))
+
+  override def writeBinary(buf: ByteBuffer): Unit = count(stringSize(buf.remaining))
+
+  /*
+   * Reading methods
+   */
+  private[this] def notReadable: Nothing =
+    throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, NotReadable)
+
+  override def readMessageBegin(): TMessage = notReadable
+  override def readMessageEnd(): Unit = notReadable
+  override def readStructBegin(): TStruct = notReadable
+  override def readStructEnd(): Unit = notReadable
+  override def readFieldBegin(): TField = notReadable
+  override def readFieldEnd(): Unit = notReadable
+  override def readMapBegin(): TMap = notReadable
+  override def readMapEnd(): Unit = notReadable
+  override def readListBegin(): TList = notReadable
+  override def readListEnd(): Unit = notReadable
+  override def readSetBegin(): TSet = notReadable
+  override def readSetEnd(): Unit = notReadable
+  override def readBool(): Boolean = notReadable
+  override def readByte(): Byte = notReadable
+  override def readI16(): Short = notReadable
+  override def readI32(): Int = notReadable
+  override def readI64(): Long = notReadable
+  override def readDouble(): Double = notReadable
+  override def readString(): String = notReadable
+  override def readBinary(): ByteBuffer = notReadable
+}
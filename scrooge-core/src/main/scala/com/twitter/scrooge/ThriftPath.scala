@@ -0,0 +1,232 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.internal.TProtocols
+import java.nio.ByteBuffer
+import org.apache.thrift.protocol.{TCompactProtocol, TProtocolException, TType}
+
+/**
+ * A path to a field of a struct, possibly nested in struct fields, e.g.
+ * "request.user.id". Its value is found in the bytes of an encoded struct by
+ * skipping over the other fields, without decoding the struct or allocating.
+ *
+ * Read with a [[TLazyBinaryProtocol]] or a [[TLazyCompactProtocol]] positioned
+ * at the start of the encoded struct. The protocol's transport is left after
+ * the value's field header, or after the struct whose field is missing.
+ * Getters return their default, or null, when a field of the path is absent.
+ *
+ * @param path      The path as compiled.
+ * @param fieldIds  Ids of the fields of the path, from the outermost struct.
+ * @param fieldType Type of the field at the end of the path, as in its
+ *                  `ThriftStructFieldInfo`.
+ */
+final class ThriftPath private (val path: String, fieldIds: Array[Short], val fieldType: Byte) {
+
+  /**
+   * The offset in `proto.buffer` of the value at this path, -1 if absent.
+   * Values can then be decoded by `proto`, e.g. with `decodeI64`. The value of
+   * a boolean field of the compact protocol is in its field header, whose
+   * offset is returned.
+   */
+  def offsetIn(proto: LazyTProtocol): Int = {
+    val transport = proto.getTransport.asInstanceOf[TArrayByteTransport]
+    val compact = proto.isInstanceOf[TCompactProtocol]
+    var offset = 0
+    var depth = 0
+    while (offset != -1 && depth < fieldIds.length) {
+      val last = depth == fieldIds.length - 1
+      val expectedType = if (last) wireType(fieldType) else TType.STRUCT
+      offset =
+        if (compact) seekCompact(proto, transport, fieldIds(depth), expectedType)
+        else seekBinary(proto, transport, fieldIds(depth), expectedType)
+      depth += 1
+    }
+    offset
+  }
+
+  def getBool(proto: LazyTProtocol, default: Boolean): Boolean = {
+    checkType(TType.BOOL)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeBool(proto.buffer, offset)
+  }
+
+  def getByte(proto: LazyTProtocol, default: Byte): Byte = {
+    checkType(TType.BYTE)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeByte(proto.buffer, offset)
+  }
+
+  def getI16(proto: LazyTProtocol, default: Short): Short = {
+    checkType(TType.I16)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeI16(proto.buffer, offset)
+  }
+
+  /**
+   * The value of an i32 field, or of an enum field.
+   */
+  def getI32(proto: LazyTProtocol, default: Int): Int = {
+    checkType(TType.I32)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeI32(proto.buffer, offset)
+  }
+
+  def getI64(proto: LazyTProtocol, default: Long): Long = {
+    checkType(TType.I64)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeI64(proto.buffer, offset)
+  }
+
+  def getDouble(proto: LazyTProtocol, default: Double): Double = {
+    checkType(TType.DOUBLE)
+    val offset = offsetIn(proto)
+    if (offset == -1) default else proto.decodeDouble(proto.buffer, offset)
+  }
+
+  /**
+   * The value of a string field, null if absent.
+   */
+  def getString(proto: LazyTProtocol): String = {
+    checkType(TType.STRING)
+    val offset = offsetIn(proto)
+    if (offset == -1) null else proto.decodeString(proto.buffer, offset)
+  }
+
+  /**
+   * The value of a binary, or string, field wrapping the bytes read, null if
+   * absent.
+   */
+  def getBinary(proto: LazyTProtocol): ByteBuffer = {
+    checkType(TType.STRING)
+    val offset = offsetIn(proto)
+    if (offset == -1) null else proto.decodeBinary(proto.buffer, offset)
+  }
+
+  override def toString: String = s"ThriftPath($path)"
+
+  private[this] def wireType(tpe: Byte): Byte = if (tpe == TType.ENUM) TType.I32 else tpe
+
+  private[this] def checkType(tpe: Byte): Unit =
+    if (wireType(fieldType) != tpe)
+      throw new IllegalArgumentException(
+        s"Field at '$path' is a ${ThriftStruct.ttypeToString(fieldType)}, " +
+          s"not a ${ThriftStruct.ttypeToString(tpe)}")
+
+  private[this] def found(id: Short, expectedType: Byte, actualType: Byte): Unit =
+    if (actualType != expectedType)
+      throw new TProtocolException(
+        s"Received wrong type for field $id of '$path' " +
+          s"(expected=${ThriftStruct.ttypeToString(expectedType)}, " +
+          s"actual=${ThriftStruct.ttypeToString(actualType)}).")
+
+  // Binary protocol field header: type | id (2 bytes)
+  private[this] def seekBinary(
+    proto: LazyTProtocol,
+    transport: TArrayByteTransport,
+    id: Short,
+    expectedType: Byte
+  ): Int = {
+    var offset = -1
+    var done = false
+    while (!done) {
+      val buf = transport.srcBuf
+      val pos = transport.getBufferPosition
+      val tpe = buf(pos)
+      if (tpe == TType.STOP) {
+        transport.advance(1)
+        done = true
+      } else {
+        transport.advance(3)
+        if (proto.decodeI16(buf, pos + 1) == id) {
+          found(id, expectedType, tpe)
+          offset = transport.getBufferPosition
+          done = true
+        } else {
+          TProtocols.skipField(proto, tpe)
+        }
+      }
+    }
+    offset
+  }
+
+  // Compact protocol field header: id delta and type | [id as a varint]
+  // Boolean fields have their value in the header and no payload.
+  private[this] def seekCompact(
+    proto: LazyTProtocol,
+    transport: TArrayByteTransport,
+    id: Short,
+    expectedType: Byte
+  ): Int = {
+    import TLazyCompactProtocol.{decodeVarint32, getTType, varintSize, zigzagToInt}
+    var offset = -1
+    var lastId = 0
+    var done = false
+    while (!done) {
+      val buf = transport.srcBuf
+      val pos = transport.getBufferPosition
+      val header = buf(pos)
+      transport.advance(1)
+      if (header == TType.STOP) {
+        done = true
+      } else {
+        val delta = (header & 0xf0) >> 4
+        val fieldId =
+          if (delta != 0) lastId + delta
+          else {
+            transport.advance(varintSize(buf, pos + 1))
+            zigzagToInt(decodeVarint32(buf, pos + 1))
+          }
+        lastId = fieldId
+        val tpe = getTType(header)
+        if (fieldId == id) {
+          found(id, expectedType, tpe)
+          offset = if (tpe == TType.BOOL) pos else transport.getBufferPosition
+          done = true
+        } else if (tpe != TType.BOOL) {
+          TProtocols.skipField(proto, tpe)
+        }
+      }
+    }
+    offset
+  }
+}
+
+object ThriftPath {
+
+  /**
+   * Compiles a dotted path of field names, as written in the thrift file, or
+   * field ids, e.g. "user.id" or "3.1", against the struct of `metaData`.
+   * All the fields but the last one must be structs.
+   *
+   * @throws IllegalArgumentException if the path does not name such fields.
+   */
+  def apply(metaData: ThriftStructMetaData[_], path: String): ThriftPath = {
+    val segments = path.split('.')
+    val fieldIds = new Array[Short](segments.length)
+    var current: ThriftStructMetaData[_] = metaData
+    var fieldType = TType.STOP
+    var i = 0
+    while (i < segments.length) {
+      if (current == null)
+        throw new IllegalArgumentException(
+          s"Field '${segments(i - 1)}' of path '$path' is not a struct")
+      val segment = segments(i)
+      val field = current.fieldInfos
+        .find { f => f.tfield.name == segment || f.tfield.id.toString == segment }
+        .getOrElse(
+          throw new IllegalArgumentException(
+            s"No field '$segment' in struct ${current.structName} for path '$path'"))
+      fieldIds(i) = field.tfield.id
+      fieldType = field.tfield.`type`
+      val fieldClass = field.manifest.runtimeClass
+      current =
+        if (fieldType == TType.STRUCT && classOf[ThriftStruct].isAssignableFrom(fieldClass))
+          ThriftStructMetaData.forStructClass(fieldClass.asInstanceOf[Class[ThriftStruct]])
+        else null
+      i += 1
+    }
+    new ThriftPath(path, fieldIds, fieldType)
+  }
+
+  def apply[T <: ThriftStruct](codec: ThriftStructCodec[T], path: String): ThriftPath =
+    apply(codec.metaData, path)
+}
@@ -1,6 +1,7 @@
 package com.twitter.scrooge
 
 import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.protocol.TProtocolFactory
 import scala.reflect.ClassTag
 
 /**
@@ -14,6 +15,39 @@ trait ThriftStructCodec[T <: ThriftStruct] {
   @throws(classOf[org.apache.thrift.TException])
   def decode(iprot: TProtocol): T
 
+  /**
+   * Decodes only the fields included by `mask`, skipping the others, see
+   * [[FieldMask]].
+   *
+   * Scrooge generated structs implement this. Other codecs, including those of
+   * unions and exceptions, decode all fields.
+   */
+  @throws(classOf[org.apache.thrift.TException])
+  def decode(iprot: TProtocol, mask: FieldMask): T = decode(iprot)
+
+  /**
+   * The number of bytes `encode` writes for `t` to a protocol made by
+   * `protocolFactory`, e.g. to write a length prefix ahead of `t`.
+   *
+   * Sizes for the binary and compact protocols are counted with a
+   * [[TSizeProtocol]] without encoding `t`, and are cached by the scrooge
+   * generated structs which can. For other protocols `t` is encoded and its
+   * bytes are counted.
+   */
+  @throws(classOf[org.apache.thrift.TException])
+  def serializedSize(t: T, protocolFactory: TProtocolFactory): Int = {
+    val size = TSizeProtocol(protocolFactory) match {
+      case Some(sizes) =>
+        encode(t, sizes)
+        sizes.size
+      case None =>
+        val transport = new TSizeProtocol.CountingTransport
+        encode(t, protocolFactory.getProtocol(transport))
+        transport.count
+    }
+    Math.toIntExact(size)
+  }
+
   lazy val metaData: ThriftStructMetaData[T] = ThriftStructMetaData(this)
 }
 
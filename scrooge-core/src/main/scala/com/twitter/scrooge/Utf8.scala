@@ -0,0 +1,96 @@
+package com.twitter.scrooge
+
+/**
+ * UTF-8 encoding of Strings straight into a caller provided array, used by
+ * the protocols writing to a [[TArrayByteTransport]] so that writing a
+ * string does not allocate an intermediate Array[Byte].
+ *
+ * The output is identical to `String.getBytes(StandardCharsets.UTF_8)`,
+ * including the replacement of unpaired surrogates by '?'.
+ */
+private[scrooge] object Utf8 {
+
+  private[this] final val Replacement: Byte = '?'
+
+  /**
+   * The number of bytes of the UTF-8 encoding of `str`.
+   */
+  def encodedLength(str: String): Int = {
+    val chars = str.length
+    var i = 0
+    // ASCII takes one byte per char
+    while (i < chars && str.charAt(i) < 0x80) {
+      i += 1
+    }
+    var length = i
+    while (i < chars) {
+      val c = str.charAt(i)
+      if (c < 0x80) {
+        length += 1
+      } else if (c < 0x800) {
+        length += 2
+      } else if (!Character.isSurrogate(c)) {
+        length += 3
+      } else if (isSurrogatePair(str, i)) {
+        length += 4
+        i += 1
+      } else {
+        length += 1
+      }
+      i += 1
+    }
+    length
+  }
+
+  /**
+   * Writes the UTF-8 encoding of `str` to `dest` starting at `offset`,
+   * which must have room for `encodedLength(str)` bytes.
+   *
+   * @return the offset following the last byte written.
+   */
+  def encode(str: String, dest: Array[Byte], offset: Int): Int = {
+    val chars = str.length
+    var i = 0
+    var pos = offset
+    var c: Char = 0
+    while (i < chars && { c = str.charAt(i); c < 0x80 }) {
+      dest(pos) = c.toByte
+      pos += 1
+      i += 1
+    }
+    while (i < chars) {
+      c = str.charAt(i)
+      if (c < 0x80) {
+        dest(pos) = c.toByte
+        pos += 1
+      } else if (c < 0x800) {
+        dest(pos) = (0xc0 | (c >> 6)).toByte
+        dest(pos + 1) = (0x80 | (c & 0x3f)).toByte
+        pos += 2
+      } else if (!Character.isSurrogate(c)) {
+        dest(pos) = (0xe0 | (c >> 12)).toByte
+        dest(pos + 1) = (0x80 | ((c >> 6) & 0x3f)).toByte
+        dest(pos + 2) = (0x80 | (c & 0x3f)).toByte
+        pos += 3
+      } else if (isSurrogatePair(str, i)) {
+        val cp = Character.toCodePoint(c, str.charAt(i + 1))
+        dest(pos) = (0xf0 | (cp >> 18)).toByte
+        dest(pos + 1) = (0x80 | ((cp >> 12) & 0x3f)).toByte
+        dest(pos + 2) = (0x80 | ((cp >> 6) & 0x3f)).toByte
+        dest(pos + 3) = (0x80 | (cp & 0x3f)).toByte
+        pos += 4
+        i += 1
+      } else {
+        dest(pos) = Replacement
+        pos += 1
+      }
+      i += 1
+    }
+    pos
+  }
+
+  private[this] def isSurrogatePair(str: String, i: Int): Boolean =
+    Character.isHighSurrogate(str.charAt(i)) &&
+      i + 1 < str.length &&
+      Character.isLowSurrogate(str.charAt(i + 1))
+}
@@ -0,0 +1,63 @@
+package com.twitter.scrooge.adapt
+
+import com.twitter.scrooge.{ThriftStruct, ThriftStructCodec}
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Holds the adaptive decoder of a struct for one place it is decoded from:
+ * as a top level struct, or as a field of a parent struct, on its own or as
+ * the elements of a list or a set. Scrooge generated codecs keep one for
+ * their top level structs, and one for each of their struct fields, so that
+ * nested structs adapt to how they are accessed from their parent.
+ *
+ * The decoder is published without locking: concurrent first decodes may
+ * each build one, and all use the first one published, unless a reload was
+ * requested.
+ *
+ * @param path Empty for top level structs, else the fully qualified name of
+ *             the parent struct and the name of the field, e.g.
+ *             `com.example.Airline.headQuarter`.
+ */
+final class AdaptDecoderHolder[T <: ThriftStruct](val path: String) {
+  private[this] val decoder = new AtomicReference[Decoder[T]]()
+
+  /**
+   * Decode a struct of `codec` with the decoder held, if the codec was
+   * generated with adaptive decoding, else with `codec.decode`.
+   */
+  def decode(protocol: AdaptTProtocol, codec: ThriftStructCodec[T]): T =
+    codec match {
+      case adaptive: AdaptiveDecoding[T @unchecked] => adaptive.adaptiveDecode(protocol, this)
+      case _ => codec.decode(protocol)
+    }
+
+  /**
+   * The decoder held, built by the protocol's [[AdaptContext]] on first use
+   * and when it requests a reload. This method is called by the scrooge
+   * generated code.
+   */
+  def apply(
+    protocol: AdaptTProtocol,
+    codec: ThriftStructCodec[T],
+    fallback: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T]
+  ): Decoder[T] = {
+    val adaptContext = protocol.adaptContext
+    val reloadRequired = adaptContext.shouldReloadDecoder(path)
+    val current = decoder.get
+    if ((current ne null) && !reloadRequired) {
+      current
+    } else {
+      val built =
+        adaptContext.buildDecoder(codec, fallback, accessRecordingDecoderBuilder, path)
+      if (reloadRequired) {
+        decoder.set(built)
+        built
+      } else if (decoder.compareAndSet(null, built)) {
+        built
+      } else {
+        decoder.get
+      }
+    }
+  }
+}
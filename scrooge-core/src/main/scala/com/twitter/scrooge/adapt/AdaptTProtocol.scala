@@ -5,12 +5,36 @@ import org.apache.thrift.protocol.TProtocolException
 
 trait AccessRecorder {
   def fieldAccessed(fieldId: Short): Unit
+
+  /**
+   * Called when field `fieldId`, which the adaptive decoder skipped as unused,
+   * is the first one accessed on a struct that therefore decodes all its
+   * fields again.
+   */
+  def unusedFieldAccessed(fieldId: Short): Unit = ()
+
+  /**
+   * Called by the adaptive decoder after decoding a struct of `bytes` bytes,
+   * `skippedBytes` of which are the values of the fields it skipped.
+   */
+  def structDecoded(bytes: Int, skippedBytes: Int): Unit = ()
 }
 
 trait Decoder[T <: ThriftStruct] {
   def apply(protocol: AdaptTProtocol): T
 }
 
+/**
+ * Implemented by the codecs of structs generated with adaptive decoding.
+ */
+trait AdaptiveDecoding[T <: ThriftStruct] {
+
+  /**
+   * Decode a struct with the adaptive decoder kept by `holder`.
+   */
+  def adaptiveDecode(protocol: AdaptTProtocol, holder: AdaptDecoderHolder[T]): T
+}
+
 /**
  * Helper methods for adaptive decoding. See comments for individual methods to
  * learn more.
@@ -37,6 +61,20 @@ trait AdaptContext {
     accessRecordingDecoderBuilder: AccessRecorder => Decoder[T]
   ): Decoder[T]
 
+  /**
+   * Build the decoder of the structs decoded from `path`, see
+   * [[AdaptDecoderHolder.path]]. Nested structs get their own decoders,
+   * adapting to how they are accessed from their parent. The default
+   * implementation ignores the path.
+   */
+  def buildDecoder[T <: ThriftStruct](
+    codec: ThriftStructCodec[T],
+    fallback: Decoder[T],
+    accessRecordingDecoderBuilder: AccessRecorder => Decoder[T],
+    path: String
+  ): Decoder[T] =
+    buildDecoder(codec, fallback, accessRecordingDecoderBuilder)
+
   /**
    * Should the caller reload the decoder.
    * This is a contract with the caller, which is honored by the scrooge
@@ -45,6 +83,12 @@ trait AdaptContext {
    */
   def shouldReloadDecoder: Boolean
 
+  /**
+   * Should the caller reload the decoder of the structs decoded from `path`.
+   * The default implementation ignores the path.
+   */
+  def shouldReloadDecoder(path: String): Boolean = shouldReloadDecoder
+
   /**
    * Override this to provide a copy at initial state if implementation uses
    * mutable state. This is needed for Adaptive Scrooge to generate the protocol
@@ -93,30 +137,6 @@ object AdaptTProtocol {
  */
 trait AdaptTProtocol extends LazyTProtocol {
 
-  /**
-   * Skip a struct. This still involves parsing but no objects are created.
-   * @return The offset at which the struct can be read.
-   */
-  def offsetSkipStruct(): Int
-
-  /**
-   * Skip a list. This still involves parsing but no objects are created.
-   * @return The offset at which the list can be read.
-   */
-  def offsetSkipList(): Int
-
-  /**
-   * Skip a set. This still involves parsing but no objects are created.
-   * @return The offset at which the set can be read.
-   */
-  def offsetSkipSet(): Int
-
-  /**
-   * Skip a map. This still involves parsing but no objects are created.
-   * @return The offset at which the map can be read.
-   */
-  def offsetSkipMap(): Int
-
   /**
    * Skip an Enum. This still involves parsing but no objects are created.
    */
@@ -133,4 +153,11 @@ trait AdaptTProtocol extends LazyTProtocol {
    */
   def withBytes(bytes: Array[Byte]): AdaptTProtocol
 
+  /**
+   * Create a new protocol object set up to read `length` bytes of `bytes`
+   * starting at `offset`. Implementations should avoid copying the bytes.
+   */
+  def withBytes(bytes: Array[Byte], offset: Int, length: Int): AdaptTProtocol =
+    withBytes(java.util.Arrays.copyOfRange(bytes, offset, offset + length))
+
 }
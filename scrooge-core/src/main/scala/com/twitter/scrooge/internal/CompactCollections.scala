@@ -0,0 +1,285 @@
+package com.twitter.scrooge.internal
+
+import scala.collection.immutable
+
+private[internal] object CompactCollections {
+
+  /**
+   * Containers with at most this many elements are stored in a flat array
+   * and searched linearly, which beats hashing at these sizes.
+   */
+  val MaxFlatSize: Int = 8
+
+  /** Stands in for a `null` key, as a `null` slot is an empty one. */
+  val NullKey: AnyRef = new AnyRef
+
+  def box(key: Any): AnyRef =
+    if (key == null) NullKey else key.asInstanceOf[AnyRef]
+
+  def unbox[A](key: AnyRef): A =
+    (if (key eq NullKey) null else key).asInstanceOf[A]
+
+  /**
+   * The most elements a container is sized for before any is added, as
+   * the size announced by the protocol comes from the input.
+   */
+  val MaxPresize: Int = 1024
+
+  val MaxSlots: Int = 1 << 29
+
+  /** The number of slots to hash `expectedSize` elements into, a power of two. */
+  def slots(expectedSize: Int): Int =
+    if (expectedSize <= MaxFlatSize) expectedSize
+    else {
+      // keep the load factor at or below 3/4
+      val minSlots = expectedSize.toLong * 4 / 3
+      math.min(java.lang.Long.highestOneBit(minSlots * 2 - 1), MaxSlots.toLong).toInt
+    }
+
+  /** The number of elements `slots` slots hold before they grow. */
+  def maxCount(slots: Int, flat: Boolean): Int =
+    if (flat) slots else slots / 4 * 3
+
+  /** The number of slots to grow `slots` slots into. */
+  def grownSlots(slots: Int, flat: Boolean, name: String): Int =
+    if (flat) CompactCollections.slots(MaxFlatSize + 1)
+    else if (slots >= MaxSlots) throw new IllegalStateException(s"$name is full: $slots")
+    else slots * 2
+
+  def shift(slots: Int): Int = 32 - Integer.numberOfTrailingZeros(slots)
+
+  def hashSlot(key: AnyRef, shift: Int): Int =
+    (key.## * 0x9e3779b9) >>> shift
+}
+
+/**
+ * A read-only `Map` produced by `TProtocols.readMap`, sized for the number
+ * of entries announced by the protocol, up to [[CompactCollections.MaxPresize]]
+ * entries, and grown as more are added.
+ *
+ * Keys and values are kept side by side in a single array. Maps of at
+ * most [[CompactCollections.MaxFlatSize]] entries keep them in decoding order
+ * and are searched linearly, larger maps are open addressed with linear
+ * probing. Either way there is no per entry node.
+ *
+ * The map is filled while decoding and is not modified once it has been
+ * handed out; adding or removing entries returns a regular immutable `Map`.
+ *
+ * @note this class, while public, is not intended to be
+ *       used outside of generated code.
+ */
+final class CompactMap[K, V] private[scrooge] (expectedSize: Int)
+    extends AbstractCompactMap[K, V] {
+  import CompactCollections._
+
+  private[this] var flat: Boolean = expectedSize <= MaxFlatSize
+  private[this] var capacity: Int = slots(math.min(expectedSize, MaxPresize))
+  private[this] var keyShift: Int = shift(capacity)
+  // keys at even indices, their values at the following odd index
+  private[this] var table: Array[AnyRef] = new Array[AnyRef](capacity * 2)
+  private[this] var count: Int = 0
+
+  /**
+   * Index of the key slot holding `key`, or of the empty slot where it
+   * would go. Returns `table.length` when a flat map is full.
+   */
+  private[this] def indexOf(key: AnyRef): Int = {
+    if (flat) {
+      var i = 0
+      while (i < count * 2 && table(i) != key) {
+        i += 2
+      }
+      i
+    } else {
+      val mask = capacity - 1
+      var slot = hashSlot(key, keyShift)
+      while (table(slot * 2) != null && table(slot * 2) != key) {
+        slot = (slot + 1) & mask
+      }
+      slot * 2
+    }
+  }
+
+  private[this] def grow(): Unit = {
+    val old = table
+    capacity = grownSlots(capacity, flat, "CompactMap")
+    flat = false
+    keyShift = shift(capacity)
+    table = new Array[AnyRef](capacity * 2)
+    var j = 0
+    while (j < old.length) {
+      if (old(j) != null) {
+        val i = indexOf(old(j))
+        table(i) = old(j)
+        table(i + 1) = old(j + 1)
+      }
+      j += 2
+    }
+  }
+
+  /** Only called while decoding, before the map is published. */
+  private[internal] def add(key: K, value: V): Unit = {
+    val boxed = box(key)
+    var i = indexOf(boxed)
+    if (i == table.length || table(i) == null) {
+      if (count >= maxCount(capacity, flat)) {
+        grow()
+        i = indexOf(boxed)
+      }
+      table(i) = boxed
+      count += 1
+    }
+    table(i + 1) = value.asInstanceOf[AnyRef]
+  }
+
+  private[this] def find(key: K): Int = {
+    val i = indexOf(box(key))
+    if (i < table.length && table(i) != null) i else -1
+  }
+
+  def get(key: K): Option[V] = {
+    val i = find(key)
+    if (i < 0) None else Some(table(i + 1).asInstanceOf[V])
+  }
+
+  override def getOrElse[V1 >: V](key: K, default: => V1): V1 = {
+    val i = find(key)
+    if (i < 0) default else table(i + 1).asInstanceOf[V1]
+  }
+
+  override def apply(key: K): V = {
+    val i = find(key)
+    if (i < 0) default(key) else table(i + 1).asInstanceOf[V]
+  }
+
+  override def contains(key: K): Boolean = find(key) >= 0
+
+  override def size: Int = count
+
+  override def isEmpty: Boolean = count == 0
+
+  /** Like `foreach`, without allocating a tuple per entry. */
+  private[internal] def foreachKeyValue(f: (K, V) => Unit): Unit = {
+    var i = 0
+    while (i < table.length) {
+      if (table(i) != null) f(unbox[K](table(i)), table(i + 1).asInstanceOf[V])
+      i += 2
+    }
+  }
+
+  def iterator: Iterator[(K, V)] = new Iterator[(K, V)] {
+    private[this] var i = 0
+    private[this] def advance(): Unit =
+      while (i < table.length && table(i) == null) i += 2
+
+    def hasNext: Boolean = { advance(); i < table.length }
+
+    def next(): (K, V) = {
+      advance()
+      if (i >= table.length) throw new NoSuchElementException("next on empty iterator")
+      val entry = (unbox[K](table(i)), table(i + 1).asInstanceOf[V])
+      i += 2
+      entry
+    }
+  }
+
+  override def +[V1 >: V](kv: (K, V1)): scala.collection.Map[K, V1] =
+    immutable.Map.empty[K, V1] ++ this + kv
+
+  override def -(key: K): scala.collection.Map[K, V] =
+    immutable.Map.empty[K, V] ++ this - key
+}
+
+/**
+ * A read-only `Set` produced by `TProtocols.readSet`, laid out like
+ * [[CompactMap]] without the values.
+ *
+ * @note this class, while public, is not intended to be
+ *       used outside of generated code.
+ */
+final class CompactSet[A] private[scrooge] (expectedSize: Int)
+    extends scala.collection.AbstractSet[A] {
+  import CompactCollections._
+
+  private[this] var flat: Boolean = expectedSize <= MaxFlatSize
+  private[this] var capacity: Int = slots(math.min(expectedSize, MaxPresize))
+  private[this] var elemShift: Int = shift(capacity)
+  private[this] var table: Array[AnyRef] = new Array[AnyRef](capacity)
+  private[this] var count: Int = 0
+
+  /** See `CompactMap.indexOf`. */
+  private[this] def indexOf(elem: AnyRef): Int = {
+    if (flat) {
+      var i = 0
+      while (i < count && table(i) != elem) {
+        i += 1
+      }
+      i
+    } else {
+      val mask = capacity - 1
+      var i = hashSlot(elem, elemShift)
+      while (table(i) != null && table(i) != elem) {
+        i = (i + 1) & mask
+      }
+      i
+    }
+  }
+
+  private[this] def grow(): Unit = {
+    val old = table
+    capacity = grownSlots(capacity, flat, "CompactSet")
+    flat = false
+    elemShift = shift(capacity)
+    table = new Array[AnyRef](capacity)
+    var j = 0
+    while (j < old.length) {
+      if (old(j) != null) table(indexOf(old(j))) = old(j)
+      j += 1
+    }
+  }
+
+  /** Only called while decoding, before the set is published. */
+  private[internal] def add(elem: A): Unit = {
+    val boxed = box(elem)
+    var i = indexOf(boxed)
+    if (i == table.length || table(i) == null) {
+      if (count >= maxCount(capacity, flat)) {
+        grow()
+        i = indexOf(boxed)
+      }
+      table(i) = boxed
+      count += 1
+    }
+  }
+
+  def contains(elem: A): Boolean = {
+    val i = indexOf(box(elem))
+    i < table.length && table(i) != null
+  }
+
+  override def size: Int = count
+
+  override def isEmpty: Boolean = count == 0
+
+  def iterator: Iterator[A] = new Iterator[A] {
+    private[this] var i = 0
+    private[this] def advance(): Unit =
+      while (i < table.length && table(i) == null) i += 1
+
+    def hasNext: Boolean = { advance(); i < table.length }
+
+    def next(): A = {
+      advance()
+      if (i >= table.length) throw new NoSuchElementException("next on empty iterator")
+      val elem = unbox[A](table(i))
+      i += 1
+      elem
+    }
+  }
+
+  override def +(elem: A): scala.collection.Set[A] = toSet[A] + elem
+
+  override def -(elem: A): scala.collection.Set[A] = toSet[A] - elem
+
+  def diff(that: scala.collection.Set[A]): scala.collection.Set[A] = toSet[A].diff(that)
+}
@@ -0,0 +1,39 @@
+package com.twitter.scrooge.internal
+
+import com.twitter.scrooge.LazyTProtocol
+import java.nio.ByteBuffer
+
+/**
+ * Support for comparing lazily decoded structs by the bytes they were decoded
+ * from, without decoding their fields.
+ *
+ * Equal bytes read with protocols of the same wire format decode to equal
+ * structs, but the converse does not hold: the encoding of a struct is not
+ * canonical. Fields may be written in any order, a field holding its default
+ * value may be written or left out, and passthrough fields are kept as they
+ * were read. Bytes that differ therefore say nothing about the structs, and
+ * the hash code of a struct cannot be computed from its bytes while staying
+ * consistent with the equality of its fields.
+ */
+object EncodedBytes {
+
+  /**
+   * Whether `a(aFrom until aTo)`, read by `aProto`, and `b(bFrom until bTo)`,
+   * read by `bProto`, are the same bytes of the same wire format.
+   */
+  def sameEncoding(
+    aProto: LazyTProtocol,
+    a: Array[Byte],
+    aFrom: Int,
+    aTo: Int,
+    bProto: LazyTProtocol,
+    b: Array[Byte],
+    bFrom: Int,
+    bTo: Int
+  ): Boolean =
+    aTo - aFrom == bTo - bFrom &&
+      aProto.canWriteRawFrom(bProto) &&
+      ((a.eq(b) && aFrom == bFrom) ||
+      // ByteBuffer.equals compares many bytes at a time from JDK 11 on
+      ByteBuffer.wrap(a, aFrom, aTo - aFrom).equals(ByteBuffer.wrap(b, bFrom, bTo - bFrom)))
+}
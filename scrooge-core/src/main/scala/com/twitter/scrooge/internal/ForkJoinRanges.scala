@@ -0,0 +1,57 @@
+package com.twitter.scrooge.internal
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Splits index ranges across the workers of a ForkJoinPool.
+ *
+ * A range is split in halves while there are few queued tasks for idle
+ * workers to steal, down to a chunk size derived from the pool's
+ * parallelism, so that chunks are large when all workers are busy and
+ * small enough to balance uneven elements otherwise.
+ *
+ * @note this object, while public, is not intended to be used outside of
+ *       scrooge.
+ */
+object ForkJoinRanges {
+
+  // Number of chunks per worker a range is at most split into.
+  private val ChunksPerWorker = 8
+
+  // Stop splitting when this many tasks are already queued by the worker.
+  private val MaxSurplusTasks = 3
+
+  private final class RangeTask(lo: Int, hi: Int, minChunk: Int, f: (Int, Int) => Unit)
+      extends RecursiveAction {
+    def compute(): Unit =
+      if (hi - lo <= minChunk || ForkJoinTask.getSurplusQueuedTaskCount > MaxSurplusTasks) {
+        f(lo, hi)
+      } else {
+        val mid = (lo + hi) >>> 1
+        ForkJoinTask.invokeAll(
+          new RangeTask(lo, mid, minChunk, f),
+          new RangeTask(mid, hi, minChunk, f)
+        )
+      }
+  }
+
+  /**
+   * Calls `f` with disjoint ranges `[lo, hi)` covering 0 until `size` on
+   * `pool`, returning once all calls are done. Sizes below `minParallelSize`
+   * are handed to `f` at once by the calling thread. The first exception
+   * thrown by `f` is rethrown.
+   */
+  def foreachRange(size: Int, pool: ForkJoinPool, minParallelSize: Int)(
+    f: (Int, Int) => Unit
+  ): Unit = {
+    val parallelism = pool.getParallelism
+    if (size < minParallelSize || parallelism == 1) {
+      if (size > 0) f(0, size)
+    } else {
+      val minChunk = Math.max(1, size / (parallelism * ChunksPerWorker))
+      pool.invoke(new RangeTask(0, size, minChunk, f))
+    }
+  }
+}
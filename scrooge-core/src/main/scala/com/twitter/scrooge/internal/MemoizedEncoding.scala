@@ -0,0 +1,78 @@
+package com.twitter.scrooge.internal
+
+import com.twitter.scrooge.LazyTProtocol
+import com.twitter.scrooge.TArrayByteTransport
+import com.twitter.scrooge.TLazyBinaryProtocol
+import com.twitter.scrooge.TLazyCompactProtocol
+import com.twitter.scrooge.TSizeProtocol
+import org.apache.thrift.protocol.TCompactProtocol
+import org.apache.thrift.protocol.TProtocol
+
+/**
+ * Support for the structs annotated with
+ * `(com.twitter.scrooge.scala.memoizeEncodedBytes = "<max bytes>")`. Their
+ * immutable instances keep the bytes they encode to with the lazy protocols,
+ * and copy them as they are on later writes to a [[LazyTProtocol]], or
+ * count their length on later writes to a [[TSizeProtocol]].
+ *
+ * Only encodings of at most `maxBytes` bytes are kept, larger structs are
+ * encoded on every write.
+ */
+object MemoizedEncoding {
+
+  /**
+   * The bound used when the annotation's value is "true".
+   */
+  val DefaultMaxBytes: Int = 4 * 1024
+
+  // Memo of the structs encoding to more than maxBytes
+  private[this] val TooLarge: Array[Byte] = new Array[Byte](0)
+
+  /**
+   * Writes a struct to `oprot`, given `memo`, the value returned by the
+   * previous call for the struct and the wire format of `oprot`, or null.
+   * Without a memo, the struct is first encoded by `write` into a new array.
+   *
+   * @return the memo to keep for the next write.
+   */
+  def write(
+    oprot: LazyTProtocol,
+    memo: Array[Byte],
+    maxBytes: Int
+  )(
+    write: TProtocol => Unit
+  ): Array[Byte] = {
+    val bytes =
+      if (memo ne null) memo
+      else encode(oprot.isInstanceOf[TCompactProtocol], maxBytes, write)
+    if (bytes eq TooLarge) write(oprot)
+    else oprot.writeRaw(bytes, 0, bytes.length)
+    bytes
+  }
+
+  /**
+   * Counts a struct to `sizes`, given `memo`, the value returned by `write`
+   * for the struct and the wire format counted by `sizes`, or null. Without
+   * a memo, or if the struct is too large to keep, `count` counts it.
+   */
+  def writeSize(sizes: TSizeProtocol, memo: Array[Byte])(count: => Unit): Unit =
+    if ((memo ne null) && (memo ne TooLarge)) sizes.writeRaw(memo.length)
+    else count
+
+  // The size is counted first so that structs too large to keep are never encoded twice.
+  private[this] def encode(compact: Boolean, maxBytes: Int, write: TProtocol => Unit): Array[Byte] = {
+    val transport = new TArrayByteTransport(0)
+    val proto =
+      if (compact) new TLazyCompactProtocol(transport)
+      else new TLazyBinaryProtocol(transport)
+    val sizes = TSizeProtocol(proto)
+    write(sizes)
+    if (sizes.size > maxBytes) {
+      TooLarge
+    } else {
+      transport.reset(new Array[Byte](sizes.size.toInt))
+      write(proto)
+      transport.toByteArray
+    }
+  }
+}
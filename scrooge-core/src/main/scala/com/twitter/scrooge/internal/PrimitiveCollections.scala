@@ -0,0 +1,238 @@
+package com.twitter.scrooge.internal
+
+import org.apache.thrift.protocol.TProtocol
+import scala.collection.immutable
+
+/**
+ * An immutable `Seq` backed by an unboxed array, produced by
+ * `TProtocols.readI32List`, `readI64List` and `readDoubleList`.
+ *
+ * Elements are boxed only when accessed through the `Seq` interface,
+ * so a decoded list retains a single array instead of one object per
+ * element.
+ *
+ * @note this class, while public, is not intended to be
+ *       used outside of generated code.
+ */
+sealed abstract class PrimitiveArraySeq[A] extends immutable.IndexedSeq[A] {
+
+  /** Writes the elements, without the list header, to `protocol`. */
+  private[internal] def writeElements(protocol: TProtocol): Unit
+}
+
+final class IntArraySeq private[scrooge] (array: Array[Int]) extends PrimitiveArraySeq[Int] {
+  def length: Int = array.length
+  def apply(idx: Int): Int = array(idx)
+
+  /** A copy of the elements. */
+  def toIntArray: Array[Int] = array.clone()
+
+  private[internal] def writeElements(protocol: TProtocol): Unit = {
+    var i = 0
+    while (i < array.length) {
+      protocol.writeI32(array(i))
+      i += 1
+    }
+  }
+}
+
+final class LongArraySeq private[scrooge] (array: Array[Long]) extends PrimitiveArraySeq[Long] {
+  def length: Int = array.length
+  def apply(idx: Int): Long = array(idx)
+
+  /** A copy of the elements. */
+  def toLongArray: Array[Long] = array.clone()
+
+  private[internal] def writeElements(protocol: TProtocol): Unit = {
+    var i = 0
+    while (i < array.length) {
+      protocol.writeI64(array(i))
+      i += 1
+    }
+  }
+}
+
+final class DoubleArraySeq private[scrooge] (array: Array[Double])
+    extends PrimitiveArraySeq[Double] {
+  def length: Int = array.length
+  def apply(idx: Int): Double = array(idx)
+
+  /** A copy of the elements. */
+  def toDoubleArray: Array[Double] = array.clone()
+
+  private[internal] def writeElements(protocol: TProtocol): Unit = {
+    var i = 0
+    while (i < array.length) {
+      protocol.writeDouble(array(i))
+      i += 1
+    }
+  }
+}
+
+/**
+ * A read-only `Set` of numbers stored as `Long` keys in an open addressing
+ * table with linear probing, produced by `TProtocols.readI32Set`,
+ * `readI64Set` and `readDoubleSet`.
+ *
+ * The table is filled while decoding and is not modified once the set
+ * has been handed out; adding or removing elements returns a regular
+ * immutable `Set`.
+ *
+ * @note this class, while public, is not intended to be
+ *       used outside of generated code.
+ */
+sealed abstract class PrimitiveHashSet[A] private[internal] (expectedSize: Int)
+    extends scala.collection.AbstractSet[A] {
+  import PrimitiveHashSet._
+
+  // Keep the load factor at or below one half. Zero marks an empty slot,
+  // so a zero key is tracked separately. The expected size comes from the
+  // wire, so the table is presized for at most `MaxPresize` keys and grows
+  // as keys are actually added.
+  private[this] var table: Array[Long] =
+    new Array[Long](tableSize(math.min(expectedSize, MaxPresize)))
+  private[this] var shift: Int = 64 - Integer.numberOfTrailingZeros(table.length)
+  private[this] var hasZero: Boolean = false
+  private[this] var count: Int = 0
+
+  protected def toKey(elem: A): Long
+  protected def fromKey(key: Long): A
+  protected def writeKey(protocol: TProtocol, key: Long): Unit
+
+  private[this] def slot(key: Long): Int =
+    ((key * 0x9e3779b97f4a7c15L) >>> shift).toInt
+
+  private[this] def indexOf(key: Long): Int = {
+    val mask = table.length - 1
+    var i = slot(key)
+    while (table(i) != 0L && table(i) != key) {
+      i = (i + 1) & mask
+    }
+    i
+  }
+
+  private[this] def grow(): Unit = {
+    if (table.length >= MaxTableSize)
+      throw new IllegalStateException(s"PrimitiveHashSet is full: $count")
+    val old = table
+    table = new Array[Long](old.length * 2)
+    shift -= 1
+    var j = 0
+    while (j < old.length) {
+      if (old(j) != 0L) table(indexOf(old(j))) = old(j)
+      j += 1
+    }
+  }
+
+  /** Only called while decoding, before the set is published. */
+  private[internal] def addKey(key: Long): Unit = {
+    if (key == 0L) {
+      if (!hasZero) {
+        hasZero = true
+        count += 1
+      }
+    } else {
+      var i = indexOf(key)
+      if (table(i) == 0L) {
+        val nonZero = if (hasZero) count - 1 else count
+        if ((nonZero + 1) * 2 > table.length) {
+          grow()
+          i = indexOf(key)
+        }
+        table(i) = key
+        count += 1
+      }
+    }
+  }
+
+  private[this] def containsKey(key: Long): Boolean =
+    if (key == 0L) hasZero
+    else table(indexOf(key)) != 0L
+
+  /** Writes the elements, without the set header, to `protocol`. */
+  private[internal] def writeElements(protocol: TProtocol): Unit = {
+    if (hasZero) writeKey(protocol, 0L)
+    var i = 0
+    while (i < table.length) {
+      if (table(i) != 0L) writeKey(protocol, table(i))
+      i += 1
+    }
+  }
+
+  def contains(elem: A): Boolean = containsKey(toKey(elem))
+
+  override def size: Int = count
+
+  override def isEmpty: Boolean = count == 0
+
+  def iterator: Iterator[A] = new Iterator[A] {
+    private[this] var zeroPending = hasZero
+    private[this] var i = 0
+    private[this] def advance(): Unit =
+      while (i < table.length && table(i) == 0L) i += 1
+
+    def hasNext: Boolean = zeroPending || { advance(); i < table.length }
+
+    def next(): A = {
+      if (zeroPending) {
+        zeroPending = false
+        fromKey(0L)
+      } else {
+        advance()
+        if (i >= table.length) throw new NoSuchElementException("next on empty iterator")
+        val key = table(i)
+        i += 1
+        fromKey(key)
+      }
+    }
+  }
+
+  override def +(elem: A): scala.collection.Set[A] = toSet[A] + elem
+
+  override def -(elem: A): scala.collection.Set[A] = toSet[A] - elem
+
+  def diff(that: scala.collection.Set[A]): scala.collection.Set[A] = toSet[A].diff(that)
+}
+
+private[internal] object PrimitiveHashSet {
+
+  /** The most keys a table is sized for before any key is added. */
+  val MaxPresize: Int = 1024
+
+  val MaxTableSize: Int = 1 << 30
+
+  /** The table size for `expectedSize` keys, a power of two of at least 4. */
+  def tableSize(expectedSize: Int): Int =
+    math.max(4, Integer.highestOneBit(math.max(expectedSize, 1) * 4 - 1))
+}
+
+final class IntHashSet private[scrooge] (expectedSize: Int)
+    extends PrimitiveHashSet[Int](expectedSize) {
+  protected def toKey(elem: Int): Long = elem.toLong
+  protected def fromKey(key: Long): Int = key.toInt
+  protected def writeKey(protocol: TProtocol, key: Long): Unit = protocol.writeI32(key.toInt)
+  private[internal] def add(elem: Int): Unit = addKey(elem.toLong)
+}
+
+final class LongHashSet private[scrooge] (expectedSize: Int)
+    extends PrimitiveHashSet[Long](expectedSize) {
+  protected def toKey(elem: Long): Long = elem
+  protected def fromKey(key: Long): Long = key
+  protected def writeKey(protocol: TProtocol, key: Long): Unit = protocol.writeI64(key)
+  private[internal] def add(elem: Long): Unit = addKey(elem)
+}
+
+/**
+ * Doubles are keyed by their bits, with `-0.0` folded into `0.0` and all
+ * NaNs into the canonical NaN. Unlike a `Set[Double]` of boxed values,
+ * this set therefore holds at most one NaN.
+ */
+final class DoubleHashSet private[scrooge] (expectedSize: Int)
+    extends PrimitiveHashSet[Double](expectedSize) {
+  protected def toKey(elem: Double): Long =
+    java.lang.Double.doubleToLongBits(if (elem == 0.0) 0.0 else elem)
+  protected def fromKey(key: Long): Double = java.lang.Double.longBitsToDouble(key)
+  protected def writeKey(protocol: TProtocol, key: Long): Unit =
+    protocol.writeDouble(java.lang.Double.longBitsToDouble(key))
+  private[internal] def add(elem: Double): Unit = addKey(toKey(elem))
+}
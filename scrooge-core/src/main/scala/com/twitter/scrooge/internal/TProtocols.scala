@@ -1,10 +1,13 @@
 package com.twitter.scrooge.internal
 
+import com.twitter.scrooge.ContainerSource
+import com.twitter.scrooge.LazyTProtocol
 import com.twitter.scrooge.TFieldBlob
 import com.twitter.scrooge.ThriftEnum
 import com.twitter.scrooge.ThriftUnion
 import java.nio.ByteBuffer
 import org.apache.thrift.protocol._
+import org.apache.thrift.transport.TMemoryBuffer
 import scala.collection.immutable
 import scala.collection.mutable
 
@@ -23,17 +26,21 @@ import scala.collection.mutable
  */
 final class TProtocols private[TProtocols] {
 
+  /**
+   * Reads a set into a [[CompactSet]] presized for the number of elements
+   * announced by the protocol, up to a limit.
+   */
   def readSet[T](protocol: TProtocol, readElement: TProtocol => T): collection.Set[T] = {
     val tset: TSet = protocol.readSetBegin()
     if (tset.size == 0) {
       protocol.readSetEnd()
       Set.empty[T]
     } else {
-      val set = new mutable.HashSet[T]()
+      val set = new CompactSet[T](tset.size)
       var i = 0
       do {
         val element = readElement(protocol)
-        set += element
+        set.add(element)
         i += 1
       } while (i < tset.size)
       protocol.readSetEnd()
@@ -41,11 +48,19 @@ final class TProtocols private[TProtocols] {
     }
   }
 
+  /**
+   * Reads a list. Lists of structs read by a [[LazyTProtocol]] with a
+   * `parallelListDecoding` of at most their size are decoded in parallel.
+   */
   def readList[T](protocol: TProtocol, readElement: TProtocol => T): Seq[T] = {
     val tlist: TList = protocol.readListBegin()
     if (tlist.size == 0) {
       protocol.readListEnd()
       Nil
+    } else if (tlist.elemType == TType.STRUCT && isParallel(protocol, tlist.size)) {
+      val list = readListInParallel(protocol.asInstanceOf[LazyTProtocol], tlist.size, readElement)
+      protocol.readListEnd()
+      list
     } else {
       val buff = new mutable.ArrayBuffer[T](tlist.size)
       var i = 0
@@ -59,6 +74,48 @@ final class TProtocols private[TProtocols] {
     }
   }
 
+  private[this] def isParallel(protocol: TProtocol, size: Int): Boolean =
+    protocol match {
+      case lazyProtocol: LazyTProtocol =>
+        lazyProtocol.parallelListDecoding match {
+          case Some(settings) => size >= settings.minSize
+          case None => false
+        }
+      case _ => false
+    }
+
+  // Skips the `size` structs of a list to find where each starts, then
+  // decodes them a range at a time, each range with its own reader.
+  private[this] def readListInParallel[T](
+    protocol: LazyTProtocol,
+    size: Int,
+    readElement: TProtocol => T
+  ): Seq[T] = {
+    val settings = protocol.parallelListDecoding.get
+    val offsets = new Array[Int](size + 1)
+    var i = 0
+    while (i < size) {
+      offsets(i) = protocol.offsetSkipStruct()
+      i += 1
+    }
+    offsets(size) = protocol.offset
+    val buf = protocol.buffer
+    val elements = new Array[AnyRef](size)
+    ForkJoinRanges.foreachRange(size, settings.pool, settings.minSize) { (lo, hi) =>
+      val reader = protocol.readerAt(buf, offsets(lo), offsets(hi) - offsets(lo))
+      var j = lo
+      while (j < hi) {
+        elements(j) = readElement(reader).asInstanceOf[AnyRef]
+        j += 1
+      }
+    }
+    ArrayWrapping.unsafeWrap(elements).asInstanceOf[Seq[T]]
+  }
+
+  /**
+   * Reads a map into a [[CompactMap]] presized for the number of entries
+   * announced by the protocol, up to a limit.
+   */
   def readMap[K, V](
     protocol: TProtocol,
     readKey: TProtocol => K,
@@ -69,12 +126,12 @@ final class TProtocols private[TProtocols] {
       protocol.readMapEnd()
       Map.empty[K, V]
     } else {
-      val map = new mutable.HashMap[K, V]()
+      val map = new CompactMap[K, V](tmap.size)
       var i = 0
       do {
         val key = readKey(protocol)
         val value = readValue(protocol)
-        map(key) = value
+        map.add(key, value)
         i += 1
       } while (i < tmap.size)
       protocol.readMapEnd()
@@ -82,6 +139,126 @@ final class TProtocols private[TProtocols] {
     }
   }
 
+  /**
+   * Reads a `list<i32>` into an [[IntArraySeq]], without boxing the elements.
+   */
+  def readI32List(protocol: TProtocol): immutable.Seq[Int] = {
+    val tlist: TList = protocol.readListBegin()
+    if (tlist.size == 0) {
+      protocol.readListEnd()
+      Nil
+    } else {
+      val array = new Array[Int](tlist.size)
+      var i = 0
+      while (i < array.length) {
+        array(i) = protocol.readI32()
+        i += 1
+      }
+      protocol.readListEnd()
+      new IntArraySeq(array)
+    }
+  }
+
+  /**
+   * Reads a `list<i64>` into a [[LongArraySeq]], without boxing the elements.
+   */
+  def readI64List(protocol: TProtocol): immutable.Seq[Long] = {
+    val tlist: TList = protocol.readListBegin()
+    if (tlist.size == 0) {
+      protocol.readListEnd()
+      Nil
+    } else {
+      val array = new Array[Long](tlist.size)
+      var i = 0
+      while (i < array.length) {
+        array(i) = protocol.readI64()
+        i += 1
+      }
+      protocol.readListEnd()
+      new LongArraySeq(array)
+    }
+  }
+
+  /**
+   * Reads a `list<double>` into a [[DoubleArraySeq]], without boxing the elements.
+   */
+  def readDoubleList(protocol: TProtocol): immutable.Seq[Double] = {
+    val tlist: TList = protocol.readListBegin()
+    if (tlist.size == 0) {
+      protocol.readListEnd()
+      Nil
+    } else {
+      val array = new Array[Double](tlist.size)
+      var i = 0
+      while (i < array.length) {
+        array(i) = protocol.readDouble()
+        i += 1
+      }
+      protocol.readListEnd()
+      new DoubleArraySeq(array)
+    }
+  }
+
+  /**
+   * Reads a `set<i32>` into an [[IntHashSet]], without boxing the elements.
+   */
+  def readI32Set(protocol: TProtocol): collection.Set[Int] = {
+    val tset: TSet = protocol.readSetBegin()
+    if (tset.size == 0) {
+      protocol.readSetEnd()
+      Set.empty[Int]
+    } else {
+      val set = new IntHashSet(tset.size)
+      var i = 0
+      while (i < tset.size) {
+        set.add(protocol.readI32())
+        i += 1
+      }
+      protocol.readSetEnd()
+      set
+    }
+  }
+
+  /**
+   * Reads a `set<i64>` into a [[LongHashSet]], without boxing the elements.
+   */
+  def readI64Set(protocol: TProtocol): collection.Set[Long] = {
+    val tset: TSet = protocol.readSetBegin()
+    if (tset.size == 0) {
+      protocol.readSetEnd()
+      Set.empty[Long]
+    } else {
+      val set = new LongHashSet(tset.size)
+      var i = 0
+      while (i < tset.size) {
+        set.add(protocol.readI64())
+        i += 1
+      }
+      protocol.readSetEnd()
+      set
+    }
+  }
+
+  /**
+   * Reads a `set<double>` into a [[DoubleHashSet]], without boxing the elements.
+   */
+  def readDoubleSet(protocol: TProtocol): collection.Set[Double] = {
+    val tset: TSet = protocol.readSetBegin()
+    if (tset.size == 0) {
+      protocol.readSetEnd()
+      Set.empty[Double]
+    } else {
+      val set = new DoubleHashSet(tset.size)
+      var i = 0
+      while (i < tset.size) {
+        set.add(protocol.readDouble())
+        i += 1
+      }
+      protocol.readSetEnd()
+      set
+    }
+  }
+
   /** ENUMs are written as I32s */
   private[this] def typeForCollection(elementType: Byte): Byte =
     if (elementType == TType.ENUM) TType.I32
@@ -95,6 +272,8 @@ final class TProtocols private[TProtocols] {
   ): Unit = {
     protocol.writeListBegin(new TList(typeForCollection(elementType), list.size))
     list match {
+      case primitives: PrimitiveArraySeq[_] =>
+        primitives.writeElements(protocol)
       case _: IndexedSeq[_] =>
         var i = 0
         while (i < list.size) {
@@ -116,8 +295,136 @@ final class TProtocols private[TProtocols] {
     writeElement: (TProtocol, T) => Unit
   ): Unit = {
     protocol.writeSetBegin(new TSet(typeForCollection(elementType), set.size))
-    set.foreach { element =>
-      writeElement(protocol, element)
+    set match {
+      case primitives: PrimitiveHashSet[_] =>
+        primitives.writeElements(protocol)
+      case _ =>
+        set.foreach { element =>
+          writeElement(protocol, element)
+        }
+    }
+    protocol.writeSetEnd()
+  }
+
+  /**
+   * Writes a `list<i32>` without a per element write function.
+   */
+  def writeI32List(protocol: TProtocol, list: collection.Seq[Int]): Unit = {
+    protocol.writeListBegin(new TList(TType.I32, list.size))
+    list match {
+      case primitives: PrimitiveArraySeq[_] =>
+        primitives.writeElements(protocol)
+      case _: IndexedSeq[_] =>
+        val size = list.size
+        var i = 0
+        while (i < size) {
+          protocol.writeI32(list(i))
+          i += 1
+        }
+      case _ =>
+        val iter = list.iterator
+        while (iter.hasNext) {
+          protocol.writeI32(iter.next())
+        }
+    }
+    protocol.writeListEnd()
+  }
+
+  /**
+   * Writes a `list<i64>` without a per element write function.
+   */
+  def writeI64List(protocol: TProtocol, list: collection.Seq[Long]): Unit = {
+    protocol.writeListBegin(new TList(TType.I64, list.size))
+    list match {
+      case primitives: PrimitiveArraySeq[_] =>
+        primitives.writeElements(protocol)
+      case _: IndexedSeq[_] =>
+        val size = list.size
+        var i = 0
+        while (i < size) {
+          protocol.writeI64(list(i))
+          i += 1
+        }
+      case _ =>
+        val iter = list.iterator
+        while (iter.hasNext) {
+          protocol.writeI64(iter.next())
+        }
+    }
+    protocol.writeListEnd()
+  }
+
+  /**
+   * Writes a `list<double>` without a per element write function.
+   */
+  def writeDoubleList(protocol: TProtocol, list: collection.Seq[Double]): Unit = {
+    protocol.writeListBegin(new TList(TType.DOUBLE, list.size))
+    list match {
+      case primitives: PrimitiveArraySeq[_] =>
+        primitives.writeElements(protocol)
+      case _: IndexedSeq[_] =>
+        val size = list.size
+        var i = 0
+        while (i < size) {
+          protocol.writeDouble(list(i))
+          i += 1
+        }
+      case _ =>
+        val iter = list.iterator
+        while (iter.hasNext) {
+          protocol.writeDouble(iter.next())
+        }
+    }
+    protocol.writeListEnd()
+  }
+
+  /**
+   * Writes a `set<i32>` without a per element write function.
+   */
+  def writeI32Set(protocol: TProtocol, set: collection.Set[Int]): Unit = {
+    protocol.writeSetBegin(new TSet(TType.I32, set.size))
+    set match {
+      case primitives: PrimitiveHashSet[_] =>
+        primitives.writeElements(protocol)
+      case _ =>
+        val iter = set.iterator
+        while (iter.hasNext) {
+          protocol.writeI32(iter.next())
+        }
+    }
+    protocol.writeSetEnd()
+  }
+
+  /**
+   * Writes a `set<i64>` without a per element write function.
+   */
+  def writeI64Set(protocol: TProtocol, set: collection.Set[Long]): Unit = {
+    protocol.writeSetBegin(new TSet(TType.I64, set.size))
+    set match {
+      case primitives: PrimitiveHashSet[_] =>
+        primitives.writeElements(protocol)
+      case _ =>
+        val iter = set.iterator
+        while (iter.hasNext) {
+          protocol.writeI64(iter.next())
+        }
+    }
+    protocol.writeSetEnd()
+  }
+
+  /**
+   * Writes a `set<double>` without a per element write function.
+   */
+  def writeDoubleSet(protocol: TProtocol, set: collection.Set[Double]): Unit = {
+    protocol.writeSetBegin(new TSet(TType.DOUBLE, set.size))
+    set match {
+      case primitives: PrimitiveHashSet[_] =>
+        primitives.writeElements(protocol)
+      case _ =>
+        val iter = set.iterator
+        while (iter.hasNext) {
+          protocol.writeDouble(iter.next())
+        }
     }
     protocol.writeSetEnd()
   }
@@ -132,13 +439,125 @@ final class TProtocols private[TProtocols] {
   ): Unit = {
     protocol.writeMapBegin(
       new TMap(typeForCollection(keyType), typeForCollection(valueType), map.size))
-    map.foreach {
-      case (key, value) =>
-        writeKey(protocol, key)
-        writeValue(protocol, value)
+    map match {
+      case compact: CompactMap[K, V] =>
+        compact.foreachKeyValue { (key, value) =>
+          writeKey(protocol, key)
+          writeValue(protocol, value)
+        }
+      case _ =>
+        map.foreach {
+          case (key, value) =>
+            writeKey(protocol, key)
+            writeValue(protocol, value)
+        }
+    }
+    protocol.writeMapEnd()
+  }
+
+  /**
+   * Writes a list whose elements are produced by `source`.
+   */
+  def writeListSource[T](
+    protocol: TProtocol,
+    source: ContainerSource[T],
+    elementType: Byte,
+    writeElement: (TProtocol, T) => Unit
+  ): Unit = {
+    val tpe = typeForCollection(elementType)
+    writeSource(protocol, source, writeElement) { size =>
+      protocol.writeListBegin(new TList(tpe, size))
+    }
+    protocol.writeListEnd()
+  }
+
+  /**
+   * Writes a set whose elements are produced by `source`. They are not
+   * checked for duplicates.
+   */
+  def writeSetSource[T](
+    protocol: TProtocol,
+    source: ContainerSource[T],
+    elementType: Byte,
+    writeElement: (TProtocol, T) => Unit
+  ): Unit = {
+    val tpe = typeForCollection(elementType)
+    writeSource(protocol, source, writeElement) { size =>
+      protocol.writeSetBegin(new TSet(tpe, size))
+    }
+    protocol.writeSetEnd()
+  }
+
+  /**
+   * Writes a map whose entries are produced by `source`. Their keys are
+   * not checked for duplicates.
+   */
+  def writeMapSource[K, V](
+    protocol: TProtocol,
+    source: ContainerSource[(K, V)],
+    keyType: Byte,
+    writeKey: (TProtocol, K) => Unit,
+    valueType: Byte,
+    writeValue: (TProtocol, V) => Unit
+  ): Unit = {
+    val ktpe = typeForCollection(keyType)
+    val vtpe = typeForCollection(valueType)
+    val writeEntry: (TProtocol, (K, V)) => Unit = { (proto, entry) =>
+      writeKey(proto, entry._1)
+      writeValue(proto, entry._2)
+    }
+    writeSource(protocol, source, writeEntry) { size =>
+      protocol.writeMapBegin(new TMap(ktpe, vtpe, size))
     }
     protocol.writeMapEnd()
   }
+
+  // Writes the container header with `writeBegin`, then the elements. When
+  // the size is unknown, the elements are encoded into a buffer, or
+  // collected, until it is.
+  private[this] def writeSource[T](
+    protocol: TProtocol,
+    source: ContainerSource[T],
+    writeElement: (TProtocol, T) => Unit
+  )(
+    writeBegin: Int => Unit
+  ): Unit = {
+    val elements = source.elements
+    if (source.size >= 0) {
+      writeBegin(source.size)
+      var i = 0
+      while (i < source.size && elements.hasNext) {
+        writeElement(protocol, elements.next())
+        i += 1
+      }
+      if (i != source.size || elements.hasNext)
+        throw new TProtocolException(
+          TProtocolException.INVALID_DATA,
+          s"ContainerSource of size ${source.size} has " +
+            (if (i < source.size) s"$i elements" else "more elements")
+        )
+    } else {
+      val buffer = new TMemoryBuffer(1024)
+      val bufferProtocol = protocol match {
+        case _: TCompactProtocol => new TCompactProtocol(buffer)
+        case _: TBinaryProtocol => new TBinaryProtocol(buffer)
+        case _ => null
+      }
+      if (bufferProtocol != null) {
+        var size = 0
+        while (elements.hasNext) {
+          writeElement(bufferProtocol, elements.next())
+          size += 1
+        }
+        writeBegin(size)
+        protocol.getTransport.write(buffer.getArray, 0, buffer.length)
+      } else {
+        val collected = elements.toVector
+        writeBegin(collected.size)
+        collected.foreach { element => writeElement(protocol, element) }
+      }
+    }
+  }
 }
 
 object TProtocols {
@@ -255,6 +674,30 @@ object TProtocols {
     builder += field.id -> value
   }
 
+  /**
+   * Skips the value of a field of type `fieldType`. A [[LazyTProtocol]] skips
+   * over its bytes, other protocols read the value and drop it.
+   */
+  def skipField(protocol: TProtocol, fieldType: Byte): Unit = protocol match {
+    case lazyProt: LazyTProtocol =>
+      fieldType match {
+        case TType.BOOL => lazyProt.offsetSkipBool()
+        case TType.BYTE => lazyProt.offsetSkipByte()
+        case TType.I16 => lazyProt.offsetSkipI16()
+        case TType.I32 | TType.ENUM => lazyProt.offsetSkipI32()
+        case TType.I64 => lazyProt.offsetSkipI64()
+        case TType.DOUBLE => lazyProt.offsetSkipDouble()
+        case TType.STRING => lazyProt.offsetSkipString()
+        case TType.STRUCT => lazyProt.offsetSkipStruct()
+        case TType.LIST => lazyProt.offsetSkipList()
+        case TType.SET => lazyProt.offsetSkipSet()
+        case TType.MAP => lazyProt.offsetSkipMap()
+        case _ => TProtocolUtil.skip(protocol, fieldType)
+      }
+    case _ =>
+      TProtocolUtil.skip(protocol, fieldType)
+  }
+
   /**
    * Note: `result` may be `null`.
    *
@@ -0,0 +1,98 @@
+package com.twitter.scrooge
+
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.concurrent.CountDownLatch
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ReusablePoolTest extends AnyFunSuite {
+
+  private[this] class Resource(val size: Int)
+
+  test("striped pool reuses released objects and counts hits and misses") {
+    val pool = ReusablePool(() => new Resource(1), stripes = 1)
+    val first = pool.acquire()
+    pool.release(first)
+    assert(pool.acquire() eq first)
+    assert(pool.stats.hits == 1)
+    assert(pool.stats.misses == 1)
+    assert(pool.stats.oversize == 0)
+  }
+
+  test("striped pool drops oversized objects") {
+    var size = 1
+    val pool = ReusablePool[Resource](() => new Resource(size), _.size > 10, stripes = 1)
+    size = 11
+    val big = pool.acquire()
+    pool.release(big)
+    assert(pool.stats.oversize == 1)
+    size = 1
+    assert(pool.acquire() ne big)
+    assert(pool.stats.misses == 2)
+  }
+
+  test("striped pool is bounded") {
+    val pool = ReusablePool(() => new Resource(1), stripes = 1, slotsPerStripe = 2)
+    val resources = Seq.fill(5)(pool.acquire())
+    resources.foreach(pool.release)
+    val reacquired = Seq.fill(5)(pool.acquire())
+    assert(pool.stats.hits == 2)
+    assert(reacquired.count(r => resources.exists(_ eq r)) == 2)
+  }
+
+  test("striped pool never hands the same object to two threads") {
+    val pool = ReusablePool(() => new Resource(1), stripes = 2, slotsPerStripe = 2)
+    val inUse = Collections.newSetFromMap(new IdentityHashMap[Resource, java.lang.Boolean])
+    @volatile var failed = false
+    val start = new CountDownLatch(1)
+    val threads = Seq.fill(8) {
+      new Thread(new Runnable {
+        def run(): Unit = {
+          start.await()
+          for (_ <- 0 until 10000) {
+            val r = pool.acquire()
+            inUse.synchronized {
+              if (!inUse.add(r)) failed = true
+            }
+            inUse.synchronized { inUse.remove(r) }
+            pool.release(r)
+          }
+        }
+      })
+    }
+    threads.foreach(_.start())
+    start.countDown()
+    threads.foreach(_.join())
+    assert(!failed)
+    assert(pool.stats.hits + pool.stats.misses == 80000)
+  }
+
+  test("thread local pool keeps one object per thread") {
+    val pool = ReusablePool.threadLocal(() => new Resource(1))
+    val first = pool.acquire()
+    assert(pool.acquire() ne first)
+    pool.release(first)
+    assert(pool.acquire() eq first)
+    assert(pool.stats.hits == 1)
+    assert(pool.stats.misses == 2)
+  }
+
+  test("TReusableBuffer returns its buffer to the pool on reset") {
+    val reusableBuffer = TReusableBuffer(initialSize = 16, maxThriftBufferSize = 64)
+    val buffer = reusableBuffer.get()
+    buffer.write(Array[Byte](1, 2, 3), 0, 3)
+    assert(reusableBuffer.get() eq buffer)
+    assert(buffer.length() == 0)
+    reusableBuffer.reset()
+
+    val again = reusableBuffer.get()
+    assert(again.length() == 0)
+    again.write(new Array[Byte](100), 0, 100)
+    reusableBuffer.reset()
+    assert(reusableBuffer.stats.oversize == 1)
+    assert(reusableBuffer.get() ne again)
+  }
+}
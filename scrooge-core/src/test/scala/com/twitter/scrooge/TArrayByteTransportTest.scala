@@ -0,0 +1,126 @@
+package com.twitter.scrooge
+
+import com.twitter.io.Buf
+import java.io.ByteArrayOutputStream
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class TArrayByteTransportTest extends AnyFunSuite {
+
+  // Writes spanning several segments of a transport with 8 byte initial segments
+  private[this] def writeChunks(transport: TArrayByteTransport): Array[Byte] = {
+    val expected = new ByteArrayOutputStream
+    for (i <- 1 to 20) {
+      val chunk = Array.tabulate[Byte](i)(j => (i * 31 + j).toByte)
+      transport.write(chunk, 0, chunk.length)
+      expected.write(chunk)
+    }
+    expected.toByteArray
+  }
+
+  test("writeTo and toBuf emit the same bytes as toByteArray") {
+    val transport = new TArrayByteTransport(8)
+    val expected = writeChunks(transport)
+    assert(transport.toByteArray.sameElements(expected))
+    assert(transport.writtenLength == expected.length)
+    assert(transport.toByteBuffers.length > 1)
+
+    val out = new ByteArrayOutputStream
+    transport.writeTo(out)
+    assert(out.toByteArray.sameElements(expected))
+
+    val channelOut = new ByteArrayOutputStream
+    transport.writeTo(Channels.newChannel(channelOut))
+    assert(channelOut.toByteArray.sameElements(expected))
+
+    val dst = ByteBuffer.allocate(expected.length + 2)
+    dst.put(1: Byte)
+    transport.writeTo(dst)
+    assert(dst.position() == expected.length + 1)
+    assert(dst.array.slice(1, expected.length + 1).sameElements(expected))
+
+    assert(transport.toBuf == Buf.ByteArray.Owned(expected))
+  }
+
+  test("writeTo(ByteBuffer) writes nothing when the buffer is too small") {
+    val transport = new TArrayByteTransport(8)
+    val expected = writeChunks(transport)
+    val dst = ByteBuffer.allocate(expected.length - 1)
+    intercept[BufferOverflowException] {
+      transport.writeTo(dst)
+    }
+    assert(dst.position() == 0)
+  }
+
+  test("reset pools segments for later writes") {
+    val transport = new TArrayByteTransport(8)
+    writeChunks(transport)
+    val firstSegments = transport.toByteBuffers.map(_.array).toSet
+
+    transport.reset()
+    assert(transport.writtenLength == 0)
+    assert(transport.toByteArray.isEmpty)
+
+    val expected = writeChunks(transport)
+    assert(transport.toByteArray.sameElements(expected))
+    val secondSegments = transport.toByteBuffers.map(_.array)
+    assert(secondSegments.forall(firstSegments.contains))
+  }
+
+  test("reset keeps at most maxPooledBytes") {
+    val transport = new TArrayByteTransport(8, maxPooledBytes = 16)
+    writeChunks(transport)
+    val firstSegments = transport.toByteBuffers.map(_.array).toSet
+
+    transport.reset()
+    val expected = writeChunks(transport)
+    assert(transport.toByteArray.sameElements(expected))
+    val reused = transport.toByteBuffers.map(_.array).filter(firstSegments.contains)
+    assert(reused.map(_.length).sum <= 16)
+  }
+
+  test("reset(dest) writes a message of the expected size straight into dest") {
+    val transport = new TArrayByteTransport(8)
+    val expected = writeChunks(transport)
+    transport.reset()
+    writeChunks(transport)
+    val pooled = transport.toByteBuffers.map(_.array).toSet
+
+    val dest = new Array[Byte](expected.length)
+    transport.reset(dest)
+    writeChunks(transport)
+    assert(transport.toByteArray eq dest)
+    assert(dest.sameElements(expected))
+
+    // dest is handed over, the pooled segments are kept and dest is not
+    transport.reset()
+    writeChunks(transport)
+    val segments = transport.toByteBuffers.map(_.array)
+    assert(segments.forall(pooled.contains))
+    assert(!segments.exists(_ eq dest))
+  }
+
+  test("reset(dest) copies messages of another size") {
+    val transport = new TArrayByteTransport(8)
+    val expected = writeChunks(transport)
+
+    val smaller = new Array[Byte](expected.length - 1)
+    transport.reset(smaller)
+    writeChunks(transport)
+    val spilled = transport.toByteArray
+    assert(spilled.sameElements(expected))
+    assert(spilled ne smaller)
+
+    val larger = new Array[Byte](expected.length + 1)
+    transport.reset(larger)
+    writeChunks(transport)
+    val partial = transport.toByteArray
+    assert(partial.sameElements(expected))
+    assert(partial ne larger)
+  }
+}
@@ -0,0 +1,153 @@
+package com.twitter.scrooge
+
+import java.nio.ByteBuffer
+import org.apache.thrift.protocol._
+import org.apache.thrift.transport.TMemoryBuffer
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class TSizeProtocolTest extends AnyFunSuite {
+
+  private[this] val Struct = new TStruct("Struct")
+
+  private[this] def field(ttype: Byte, id: Int): TField = new TField("", ttype, id.toShort)
+
+  private[this] def checkSizes(write: TProtocol => Unit): Unit = {
+    val binary = new TMemoryBuffer(16)
+    write(new TBinaryProtocol(binary))
+    val binarySizes = TSizeProtocol.binary()
+    write(binarySizes)
+    assert(binarySizes.size == binary.length)
+
+    val compact = new TMemoryBuffer(16)
+    write(new TCompactProtocol(compact))
+    val compactSizes = TSizeProtocol.compact()
+    write(compactSizes)
+    assert(compactSizes.size == compact.length)
+  }
+
+  test("counts the bytes of values") {
+    checkSizes { prot =>
+      prot.writeBool(true)
+      prot.writeByte(-1)
+      Seq[Short](0, 1, -1, 63, 64, -65, Short.MaxValue, Short.MinValue).foreach(prot.writeI16)
+      Seq(0, 1, -1, 63, 64, 8191, 8192, Int.MaxValue, Int.MinValue).foreach(prot.writeI32)
+      Seq(0L, -1L, 1L << 20, 1L << 55, Long.MaxValue, Long.MinValue).foreach(prot.writeI64)
+      prot.writeDouble(-0.5)
+      Seq("", "ascii", "été 東京 😀", "x" * 200).foreach(prot.writeString)
+      prot.writeBinary(ByteBuffer.wrap(new Array[Byte](300), 10, 150))
+    }
+  }
+
+  test("counts the bytes of fields, including compact field id deltas and boolean fields") {
+    checkSizes { prot =>
+      prot.writeStructBegin(Struct)
+      Seq(1, 2, 17, 16, 300, -5, 4000).foreach { id =>
+        prot.writeFieldBegin(field(TType.I32, id))
+        prot.writeI32(id)
+        prot.writeFieldEnd()
+        prot.writeFieldBegin(field(TType.BOOL, id + 1))
+        prot.writeBool(id % 2 == 0)
+        prot.writeFieldEnd()
+      }
+      prot.writeFieldBegin(field(TType.STRUCT, 3))
+      prot.writeStructBegin(Struct)
+      prot.writeFieldBegin(field(TType.I64, 40))
+      prot.writeI64(1)
+      prot.writeFieldEnd()
+      prot.writeFieldStop()
+      prot.writeStructEnd()
+      prot.writeFieldEnd()
+      // the delta is against the field preceding the nested struct
+      prot.writeFieldBegin(field(TType.BYTE, 5))
+      prot.writeByte(1)
+      prot.writeFieldEnd()
+      prot.writeFieldStop()
+      prot.writeStructEnd()
+    }
+  }
+
+  test("counts the bytes of containers") {
+    checkSizes { prot =>
+      Seq(0, 1, 14, 15, 200, 20000).foreach { size =>
+        prot.writeListBegin(new TList(TType.BOOL, size))
+        (0 until size).foreach(i => prot.writeBool(i % 3 == 0))
+        prot.writeListEnd()
+        prot.writeSetBegin(new TSet(TType.I32, size))
+        (0 until size).foreach(prot.writeI32)
+        prot.writeSetEnd()
+        prot.writeMapBegin(new TMap(TType.I16, TType.STRING, size))
+        (0 until size).foreach { i =>
+          prot.writeI16(i.toShort)
+          prot.writeString(i.toString)
+        }
+        prot.writeMapEnd()
+      }
+    }
+  }
+
+  test("counts the bytes of messages") {
+    checkSizes { prot =>
+      Seq(0, 1, 300, -1).foreach { seqid =>
+        prot.writeMessageBegin(new TMessage("method", TMessageType.CALL, seqid))
+        prot.writeStructBegin(Struct)
+        prot.writeFieldStop()
+        prot.writeStructEnd()
+        prot.writeMessageEnd()
+      }
+    }
+  }
+
+  test("writeCachedStruct only reuses sizes counted for the same kind of protocol") {
+    def writeStruct(prot: TProtocol): Unit = {
+      prot.writeStructBegin(Struct)
+      prot.writeFieldBegin(field(TType.I64, 1))
+      prot.writeI64(1)
+      prot.writeFieldEnd()
+      prot.writeFieldStop()
+      prot.writeStructEnd()
+    }
+    var writes = 0
+    def countedStruct(prot: TSizeProtocol, cache: Int): Int =
+      prot.writeCachedStruct(cache) {
+        writes += 1
+        writeStruct(prot)
+      }
+
+    val binary = TSizeProtocol.binary()
+    val binaryCache = countedStruct(binary, 0)
+    assert(writes == 1)
+    assert(binary.size == 3 + 8 + 1)
+    binary.reset()
+    assert(countedStruct(binary, binaryCache) == binaryCache)
+    assert(writes == 1)
+    assert(binary.size == 3 + 8 + 1)
+
+    val compact = TSizeProtocol.compact()
+    val compactCache = countedStruct(compact, binaryCache)
+    assert(writes == 2)
+    assert(compact.size == 1 + 1 + 1)
+    assert(countedStruct(compact, compactCache) == compactCache)
+    assert(writes == 2)
+    assert(compact.size == 2 * 3)
+  }
+
+  test("only lazy protocols write raw bytes") {
+    val lazyBinary = new TLazyBinaryProtocol(new TArrayByteTransport)
+    val lazyCompact = new TLazyCompactProtocol(new TArrayByteTransport)
+    assert(!TSizeProtocol.binary().canWriteRawFrom(lazyBinary))
+    assert(!TSizeProtocol.compact().canWriteRawFrom(lazyCompact))
+    assert(TSizeProtocol(lazyBinary).canWriteRawFrom(lazyBinary))
+    assert(!TSizeProtocol(lazyBinary).canWriteRawFrom(lazyCompact))
+    assert(TSizeProtocol(lazyCompact).canWriteRawFrom(lazyCompact))
+    assert(TSizeProtocol(lazyCompact).countedProtocol.contains(lazyCompact))
+  }
+
+  test("recognizes the binary and compact protocol factories") {
+    assert(TSizeProtocol(new TBinaryProtocol.Factory).exists(!_.isCompact))
+    assert(TSizeProtocol(new TCompactProtocol.Factory).exists(_.isCompact))
+    assert(TSizeProtocol(new TJSONProtocol.Factory).isEmpty)
+  }
+}
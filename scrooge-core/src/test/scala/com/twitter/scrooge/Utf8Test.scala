@@ -0,0 +1,66 @@
+package com.twitter.scrooge
+
+import java.nio.charset.StandardCharsets
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TCompactProtocol
+import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.transport.TMemoryBuffer
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+import scala.util.Random
+
+@RunWith(classOf[JUnitRunner])
+class Utf8Test extends AnyFunSuite {
+
+  private[this] val strings: Seq[String] = {
+    val rng = new Random(1337)
+    Seq(
+      "",
+      "ascii only",
+      "x" * 127,
+      "x" * 128,
+      "café crème brûlée",
+      "東京都渋谷区",
+      "emoji 😀 and 🎉",
+      "߿ࠀ￿",
+      "unpaired \ud83d high",
+      "unpaired \ude00 low",
+      "trailing high \ud83d",
+      "\ude00\ud83d reversed pair"
+    ) ++ Seq.fill(50)(rng.nextString(rng.nextInt(300)))
+  }
+
+  test("encodedLength and encode match String.getBytes") {
+    strings.foreach { str =>
+      val expected = str.getBytes(StandardCharsets.UTF_8)
+      assert(Utf8.encodedLength(str) == expected.length, str)
+      val dest = new Array[Byte](expected.length + 5)
+      assert(Utf8.encode(str, dest, 3) == expected.length + 3)
+      assert(dest.slice(3, expected.length + 3).sameElements(expected), str)
+    }
+  }
+
+  private[this] def checkWireCompatible(
+    lazyProtocol: TArrayByteTransport => TProtocol,
+    protocol: TMemoryBuffer => TProtocol
+  ): Unit = {
+    val transport = new TArrayByteTransport(16)
+    val lazyProt = lazyProtocol(transport)
+    val buffer = new TMemoryBuffer(16)
+    val prot = protocol(buffer)
+    strings.foreach { str =>
+      lazyProt.writeString(str)
+      prot.writeString(str)
+    }
+    assert(transport.toByteArray.sameElements(buffer.getArray.take(buffer.length)))
+  }
+
+  test("TLazyBinaryProtocol writes strings like TBinaryProtocol") {
+    checkWireCompatible(new TLazyBinaryProtocol(_), new TBinaryProtocol(_))
+  }
+
+  test("TLazyCompactProtocol writes strings like TCompactProtocol") {
+    checkWireCompatible(new TLazyCompactProtocol(_), new TCompactProtocol(_))
+  }
+}
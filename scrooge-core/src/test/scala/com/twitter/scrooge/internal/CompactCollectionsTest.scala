@@ -0,0 +1,115 @@
+package com.twitter.scrooge.internal
+
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.protocol.TType
+import org.apache.thrift.transport.TMemoryBuffer
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class CompactCollectionsTest extends AnyFunSuite {
+
+  private[this] val protos = TProtocols()
+
+  private[this] def protocol(): TProtocol = new TBinaryProtocol(new TMemoryBuffer(64))
+
+  // flat and hashed layouts, around the switch between them
+  private[this] val sizes = Seq(1, 2, 7, 8, 9, 12, 13, 100, 5000)
+
+  test("readMap returns a CompactMap equal to the written map") {
+    sizes.foreach { size =>
+      val proto = protocol()
+      val map = (0 until size).map(i => i.toLong * 31 -> i.toString).toMap
+      protos.writeMap(proto, map, TType.I64, TProtocols.writeI64Fn, TType.STRING, TProtocols.writeStringFn)
+      val read = protos.readMap(proto, TProtocols.readI64Fn, TProtocols.readStringFn)
+
+      assert(read.isInstanceOf[CompactMap[_, _]])
+      assert(read == map)
+      assert(map == read)
+      assert(read.hashCode == map.hashCode)
+      assert(read.size == size)
+      map.foreach {
+        case (k, v) =>
+          assert(read.get(k) == Some(v))
+          assert(read(k) == v)
+          assert(read.contains(k))
+      }
+      assert(read.get(-1L).isEmpty)
+      assert(read.getOrElse(-1L, "missing") == "missing")
+      intercept[NoSuchElementException](read(-1L))
+    }
+  }
+
+  test("readSet returns a CompactSet equal to the written set") {
+    sizes.foreach { size =>
+      val proto = protocol()
+      val set = (0 until size).map(i => s"elem-$i").toSet
+      protos.writeSet(proto, set, TType.STRING, TProtocols.writeStringFn)
+      val read = protos.readSet(proto, TProtocols.readStringFn)
+
+      assert(read.isInstanceOf[CompactSet[_]])
+      assert(read == set)
+      assert(read.hashCode == set.hashCode)
+      assert(read.size == size)
+      assert(set.forall(read.contains))
+      assert(!read.contains("missing"))
+      assert(read.iterator.toSet == set)
+    }
+  }
+
+  test("duplicate keys keep the last value") {
+    sizes.foreach { size =>
+      val map = new CompactMap[String, Int](size)
+      (0 until size).foreach(i => map.add((i % 3).toString, i))
+      val expected = (0 until size).map(i => (i % 3).toString -> i).toMap
+      assert(map == expected)
+    }
+  }
+
+  test("maps and sets grow past their expected size") {
+    Seq(0, 2, 9, 100000000).foreach { expectedSize =>
+      val map = new CompactMap[Int, String](expectedSize)
+      val set = new CompactSet[Int](expectedSize)
+      (0 until 3000).foreach { i =>
+        map.add(i, i.toString)
+        set.add(i)
+      }
+      assert(map == (0 until 3000).map(i => i -> i.toString).toMap)
+      assert(set == (0 until 3000).toSet)
+    }
+  }
+
+  test("null keys and elements are supported") {
+    Seq(2, 20).foreach { size =>
+      val map = new CompactMap[String, String](size)
+      map.add(null, "null")
+      map.add("a", null)
+      assert(map.get(null) == Some("null"))
+      assert(map.get("a") == Some(null))
+      assert(map.toMap == Map((null, "null"), ("a", null)))
+
+      val set = new CompactSet[String](size)
+      set.add(null)
+      assert(set.contains(null))
+      assert(set.toList == List(null))
+    }
+  }
+
+  test("adding or removing returns a new map or set") {
+    val map = new CompactMap[Int, Int](2)
+    map.add(1, 1)
+    map.add(2, 2)
+    assert(map + (3 -> 3) == Map(1 -> 1, 2 -> 2, 3 -> 3))
+    assert(map - 1 == Map(2 -> 2))
+    assert(map == Map(1 -> 1, 2 -> 2))
+
+    val set = new CompactSet[Int](2)
+    set.add(1)
+    set.add(2)
+    assert(set + 3 == Set(1, 2, 3))
+    assert(set - 1 == Set(2))
+    assert(set == Set(1, 2))
+  }
+}
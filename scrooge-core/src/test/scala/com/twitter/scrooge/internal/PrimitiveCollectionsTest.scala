@@ -0,0 +1,113 @@
+package com.twitter.scrooge.internal
+
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.protocol.TSet
+import org.apache.thrift.protocol.TType
+import org.apache.thrift.transport.TMemoryBuffer
+import org.apache.thrift.transport.TTransportException
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class PrimitiveCollectionsTest extends AnyFunSuite {
+
+  private[this] val protos = TProtocols()
+
+  private[this] def protocol(): TProtocol = new TBinaryProtocol(new TMemoryBuffer(64))
+
+  test("numeric lists round trip through unboxed arrays") {
+    val proto = protocol()
+    val longs = Seq(0L, -1L, Long.MaxValue, 42L, 42L)
+    val ints = Vector(3, Int.MinValue, 0)
+    val doubles = List(1.5, -0.0, Double.NaN)
+    protos.writeI64List(proto, longs)
+    protos.writeI32List(proto, ints)
+    protos.writeDoubleList(proto, doubles)
+
+    val readLongs = protos.readI64List(proto)
+    val readInts = protos.readI32List(proto)
+    val readDoubles = protos.readDoubleList(proto)
+    assert(readLongs.isInstanceOf[LongArraySeq])
+    assert(readLongs == longs)
+    assert(readInts.isInstanceOf[IntArraySeq])
+    assert(readInts == ints)
+    assert(readDoubles.isInstanceOf[DoubleArraySeq])
+    assert(readDoubles.take(2) == doubles.take(2))
+    assert(readDoubles(2).isNaN)
+  }
+
+  test("empty numeric collections are read as empty") {
+    val proto = protocol()
+    protos.writeI64List(proto, Nil)
+    protos.writeI64Set(proto, Set.empty)
+    assert(protos.readI64List(proto).isEmpty)
+    assert(protos.readI64Set(proto).isEmpty)
+  }
+
+  test("numeric sets round trip through open addressing tables") {
+    val proto = protocol()
+    val longs = Set(0L, 1L, -1L, Long.MinValue) ++ (1L to 100L).map(_ * 1024)
+    val ints = Set(0, 7, -7)
+    val doubles = Set(0.0, 2.5, Double.NegativeInfinity)
+    protos.writeI64Set(proto, longs)
+    protos.writeI32Set(proto, ints)
+    protos.writeDoubleSet(proto, doubles)
+
+    val readLongs = protos.readI64Set(proto)
+    val readInts = protos.readI32Set(proto)
+    val readDoubles = protos.readDoubleSet(proto)
+    assert(readLongs.isInstanceOf[LongHashSet])
+    assert(readLongs == longs)
+    assert(readLongs.hashCode == longs.hashCode)
+    assert(readInts == ints)
+    assert(readDoubles == doubles)
+    assert(readDoubles.contains(-0.0))
+    assert(!readLongs.contains(2L))
+  }
+
+  test("decoded sets drop duplicates and return regular sets when modified") {
+    val proto = protocol()
+    protos.writeI64List(proto, Seq(5L, 5L, 0L, 0L))
+    val set = protos.readI64Set(proto)
+    assert(set.size == 2)
+    assert(set.toList.sorted == List(0L, 5L))
+    assert(set + 6L == Set(0L, 5L, 6L))
+    assert(set - 5L == Set(0L))
+    assert(set == Set(0L, 5L))
+  }
+
+  test("generic writes take the bulk path for primitive collections") {
+    val proto = protocol()
+    protos.writeI64List(proto, Seq(1L, 2L))
+    protos.writeI32Set(proto, Set(3, 4))
+    val list = protos.readI64List(proto)
+    val set = protos.readI32Set(proto)
+
+    protos.writeList(proto, list, TType.I64, TProtocols.writeI64Fn)
+    protos.writeSet(proto, set, TType.I32, TProtocols.writeI32Fn)
+    assert(protos.readList(proto, TProtocols.readI64Fn) == Seq(1L, 2L))
+    assert(protos.readSet(proto, TProtocols.readI32Fn) == Set(3, 4))
+  }
+
+  test("numeric sets grow past their presized table") {
+    val proto = protocol()
+    val longs = (1L to 10000L).map(_ * 7919).toSet + 0L
+    protos.writeI64Set(proto, longs)
+    val read = protos.readI64Set(proto)
+    assert(read.size == longs.size)
+    assert(read == longs)
+  }
+
+  test("a numeric set header larger than its elements fails on the missing elements") {
+    Seq(1 << 29, 1 << 30, Int.MaxValue).foreach { size =>
+      val proto = protocol()
+      proto.writeSetBegin(new TSet(TType.I32, size))
+      (1 to 5).foreach(proto.writeI32)
+      intercept[TTransportException] {
+        protos.readI32Set(proto)
+      }
+    }
+  }
+}
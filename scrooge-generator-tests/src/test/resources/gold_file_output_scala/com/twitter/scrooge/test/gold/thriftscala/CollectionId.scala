@@ -14,6 +14,7 @@ import com.twitter.scrooge.{
   StructBuilder,
   StructBuilderFactory,
   TFieldBlob,
+  TSizeProtocol,
   ThriftStruct,
   ThriftStructCodec3,
   ThriftStructField,
@@ -22,7 +23,7 @@ import com.twitter.scrooge.{
   ValidatingThriftStruct,
   ValidatingThriftStructCodec3
 }
-import com.twitter.scrooge.adapt.{AccessRecorder, AdaptTProtocol, Decoder}
+import com.twitter.scrooge.adapt.{AccessRecorder, AdaptDecoderHolder, AdaptTProtocol, AdaptiveDecoding, Decoder}
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TMemoryBuffer
 import scala.collection.immutable.{Map => immutable$Map}
@@ -30,7 +31,7 @@ import scala.collection.mutable.Builder
 import scala.reflect.{ClassTag, classTag}
 
 
-object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with StructBuilderFactory[CollectionId] {
+object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with StructBuilderFactory[CollectionId] with AdaptiveDecoding[CollectionId] {
   val Struct: TStruct = new TStruct("CollectionId")
   val CollectionLongIdField: TField = new TField("collectionLongId", TType.I64, 1)
   val CollectionLongIdFieldManifest: Manifest[Long] = manifest[Long]
@@ -122,7 +123,7 @@ object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with Stru
     _item.write(_oproto)
   }
 
-  @volatile private[this] var adaptiveDecoder: Decoder[CollectionId] = _
+  private[this] val adaptiveDecoder = new AdaptDecoderHolder[CollectionId]("")
 
   private[this] val accessRecordingDecoderBuilder: AccessRecorder => Decoder[CollectionId] = { accessRecorder =>
     new Decoder[CollectionId] {
@@ -132,16 +133,9 @@ object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with Stru
   private[this] val fallbackDecoder = new Decoder[CollectionId] {
     def apply(prot: AdaptTProtocol): CollectionId = decodeInternal(prot, true)
   }
-  private[this] def adaptiveDecode(_iprot: AdaptTProtocol): CollectionId = {
-    val adaptContext = _iprot.adaptContext
-    val reloadRequired = adaptContext.shouldReloadDecoder
-    synchronized {
-      if ((adaptiveDecoder eq null) || reloadRequired) {
-        adaptiveDecoder = adaptContext.buildDecoder(this, fallbackDecoder, accessRecordingDecoderBuilder)
-      }
-    }
-    adaptiveDecoder(_iprot)
-  }
+
+  def adaptiveDecode(_iprot: AdaptTProtocol, holder: AdaptDecoderHolder[CollectionId]): CollectionId =
+    holder(_iprot, this, fallbackDecoder, accessRecordingDecoderBuilder)(_iprot)
 
   /**
    * AccessRecordingWrapper keeps track of fields that are accessed while
@@ -158,10 +152,11 @@ object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with Stru
   }
 
   override def decode(_iprot: TProtocol): CollectionId = {
-    if (_iprot.isInstanceOf[LazyTProtocol]) {
+    // AdaptTProtocol is a LazyTProtocol, it has to be checked first
+    if (_iprot.isInstanceOf[AdaptTProtocol]) {
+      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol], adaptiveDecoder)
+    } else if (_iprot.isInstanceOf[LazyTProtocol]) {
       decodeInternal(_iprot, true)
-    } else if (_iprot.isInstanceOf[AdaptTProtocol]) {
-      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol])
     } else {
       decodeInternal(_iprot, false)
     }
@@ -222,6 +217,68 @@ object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with Stru
     }
   }
 
+  /**
+   * Decodes the fields included by `_mask`, see [[_root_.com.twitter.scrooge.FieldMask]].
+   */
+  override def decode(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): CollectionId =
+    if (_mask.includesAll) {
+      decode(_iprot)
+    } else {
+      val _item = decodeMasked(_iprot, _mask)
+      if (_mask.isStrict) new MaskedImmutable(_item, _mask) else _item
+    }
+
+  private[this] def decodeMasked(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): CollectionId = {
+    var collectionLongId: Long = 0L
+    var _got_collectionLongId = false
+    var _done = false
+
+    _iprot.readStructBegin()
+    do {
+      val _field = _iprot.readFieldBegin()
+      val _fieldType = _field.`type`
+      if (_fieldType == TType.STOP) {
+        _done = true
+      } else {
+        if (!_mask.contains(_field.id)) {
+          _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+        } else {
+          _field.id match {
+            case 1 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "collectionLongId")
+              collectionLongId = _iprot.readI64()
+              _got_collectionLongId = true
+            case _ =>
+              _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+          }
+        }
+        _iprot.readFieldEnd()
+      }
+    } while (!_done)
+    _iprot.readStructEnd()
+
+    if (!_got_collectionLongId && _mask.contains(1)) _root_.com.twitter.scrooge.internal.TProtocols.throwMissingRequiredField("CollectionId", "collectionLongId")
+
+    new Immutable(
+      collectionLongId,
+      _root_.com.twitter.scrooge.internal.TProtocols.NoPassthroughFields
+    )
+  }
+
+  /**
+   * A struct decoded with a strict FieldMask, which throws on access to the
+   * fields which were not decoded.
+   */
+  private[this] class MaskedImmutable(_underlying: CollectionId, _mask: _root_.com.twitter.scrooge.FieldMask) extends CollectionId {
+    override def collectionLongId: Long = {
+      if (!_mask.contains(1)) throw new _root_.com.twitter.scrooge.MaskedFieldException("CollectionId", "collectionLongId")
+      _underlying.collectionLongId
+    }
+    override def write(_oprot: TProtocol): Unit = _underlying.write(_oprot)
+
+    override def _passthroughFields: immutable$Map[Short, TFieldBlob] = _underlying._passthroughFields
+  }
+
   def apply(
     collectionLongId: Long
   ): CollectionId =
@@ -254,30 +311,64 @@ object CollectionId extends ValidatingThriftStructCodec3[CollectionId] with Stru
       collectionLongId,
       immutable$Map.empty[Short, TFieldBlob]
     )
+
+    // The fields can't change, so the serialized size is cached.
+    private[this] var _serializedSize: Int = 0
+
+    override def write(_oprot: TProtocol): Unit = _oprot match {
+      case _sizes: TSizeProtocol =>
+        _serializedSize = _sizes.writeCachedStruct(_serializedSize)(super.write(_sizes))
+      case _ =>
+        super.write(_oprot)
+    }
   }
 
   /**
-   * This is another Immutable, this however keeps strings as lazy values that are lazily decoded from the backing
-   * array byte on read.
+   * This is another Immutable, this however keeps strings, binaries, nested structs and containers as lazy values
+   * that are lazily decoded from the backing array byte on read.
    */
   private[this] class LazyImmutable(
-      _proto: LazyTProtocol,
-      _buf: Array[Byte],
-      _start_offset: Int,
-      _end_offset: Int,
+      private val _proto: LazyTProtocol,
+      private val _buf: Array[Byte],
+      private val _start_offset: Int,
+      private val _end_offset: Int,
       val collectionLongId: Long,
       override val _passthroughFields: immutable$Map[Short, TFieldBlob])
     extends CollectionId {
 
+    private[this] var _serializedSize: Int = 0
+
     override def write(_oprot: TProtocol): Unit = {
-      if (_oprot.isInstanceOf[LazyTProtocol]) {
+      if (_oprot.isInstanceOf[LazyTProtocol] && _oprot.asInstanceOf[LazyTProtocol].canWriteRawFrom(_proto)) {
         _oprot.asInstanceOf[LazyTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+      } else if (_oprot.isInstanceOf[TSizeProtocol]) {
+        val _sizes = _oprot.asInstanceOf[TSizeProtocol]
+        if (_sizes.canWriteRawFrom(_proto)) {
+          _sizes.writeRaw(_end_offset - _start_offset)
+        } else {
+          _serializedSize = _sizes.writeCachedStruct(_serializedSize)(super.write(_sizes))
+        }
       } else {
         super.write(_oprot)
       }
     }
 
 
+    /**
+     * Structs decoded from the same bytes are equal without decoding their fields.
+     * Encodings are not canonical, so when the bytes differ the fields are compared,
+     * and the hash code is still computed from the fields.
+     */
+    override def equals(other: Any): Boolean = other match {
+      case that: LazyImmutable
+          if _root_.com.twitter.scrooge.internal.EncodedBytes.sameEncoding(
+            _proto, _buf, _start_offset, _end_offset,
+            that._proto, that._buf, that._start_offset, that._end_offset) =>
+        true
+      case _ =>
+        super.equals(other)
+    }
+
     /**
      * Override the super hash code to make it a lazy val rather than def.
      *
@@ -468,18 +559,23 @@ private[thriftscala] class CollectionIdStructBuilder(instance: _root_.scala.Opti
   }
 }
 
-private class CollectionId__AdaptDecoder {
+private class CollectionId__AdaptDecoder(accessRecorder: AccessRecorder) extends Decoder[CollectionId] {
+
+  def apply(_iprot: AdaptTProtocol): CollectionId = decode(_iprot)
 
+  // This method gets pruned and reloaded at runtime.
   def decode(_iprot: AdaptTProtocol): CollectionId = {
     import CollectionId._
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
     var _done = false
     val _start_offset = _iprot.offset
+    var _skipped_bytes = 0
 
     val adapt = new CollectionId__Adapt(
       _iprot,
       _iprot.buffer,
-      _start_offset)
+      _start_offset,
+      accessRecorder)
 
     var _got_collectionLongId = false
     AdaptTProtocol.usedStartMarker(1)
@@ -500,7 +596,9 @@ private class CollectionId__AdaptDecoder {
               collectionLongId = _iprot.readI64()
               AdaptTProtocol.usedEndMarker(1)
               AdaptTProtocol.unusedStartMarker(1)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(1)
               _got_collectionLongId = true
             } else {
@@ -529,6 +627,7 @@ private class CollectionId__AdaptDecoder {
     if (_passthroughFields ne null) {
       adapt.set__passthroughFields(_passthroughFields.result())
     }
+    accessRecorder.structDecoded(_iprot.offset - _start_offset, _skipped_bytes)
     adapt
   }
 }
@@ -540,23 +639,33 @@ private class CollectionId__AdaptDecoder {
 private class CollectionId__Adapt(
     _proto: AdaptTProtocol,
     _buf: Array[Byte],
-    _start_offset: Int) extends CollectionId {
+    _start_offset: Int,
+    _accessRecorder: AccessRecorder) extends CollectionId {
 
   /**
    * In case any unexpected field is accessed, fallback to eager decoding.
    */
   private[this] lazy val delegate: CollectionId = {
-    val bytes = _root_.java.util.Arrays.copyOfRange(_buf, _start_offset, _end_offset)
-    val proto = _proto.withBytes(bytes)
+    val proto = _proto.withBytes(_buf, _start_offset, _end_offset - _start_offset)
     CollectionId.eagerDecode(proto)
   }
 
+  // Only approximately once per struct, racing threads may both report it.
+  private[this] var _delegated: Boolean = false
+  private[this] def delegateFor(fieldId: Short): CollectionId = {
+    if (!_delegated) {
+      _delegated = true
+      _accessRecorder.unusedFieldAccessed(fieldId)
+    }
+    delegate
+  }
+
   private[this] var m_collectionLongId: Long = _
   def set_collectionLongId(collectionLongId: Long): Unit = m_collectionLongId = collectionLongId
   // This will be removed by ASM if field is unused.
   def collectionLongId: Long = m_collectionLongId
   // This will be removed by ASM if field is used otherwise renamed to collectionLongId.
-  def delegated_collectionLongId: Long = delegate.collectionLongId
+  def delegated_collectionLongId: Long = delegateFor(1).collectionLongId
 
 
   private[this] var _end_offset: Int = _
@@ -582,8 +691,11 @@ private class CollectionId__Adapt(
   override lazy val hashCode: Int = super.hashCode
 
   override def write(_oprot: TProtocol): Unit = {
-    if (_oprot.isInstanceOf[AdaptTProtocol]) {
+    if (_oprot.isInstanceOf[AdaptTProtocol] && _oprot.asInstanceOf[AdaptTProtocol].canWriteRawFrom(_proto)) {
       _oprot.asInstanceOf[AdaptTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+    } else if (_oprot.isInstanceOf[TSizeProtocol] && _oprot.asInstanceOf[TSizeProtocol].countedProtocol.exists(_.isInstanceOf[AdaptTProtocol]) &&
+      _oprot.asInstanceOf[TSizeProtocol].canWriteRawFrom(_proto)) {
+      _oprot.asInstanceOf[TSizeProtocol].writeRaw(_end_offset - _start_offset)
     } else {
       super.write(_oprot)
     }
@@ -1068,6 +1068,19 @@ object PlatinumService extends _root_.com.twitter.finagle.thrift.GeneratedThrift
 
     private[this] val tlReusableBuffer: TReusableBuffer = TReusableBuffer(maxThriftBufferSize = serverParam.maxThriftBufferSize)
 
+    // Held on to so that the gauges are not garbage collected
+    private[thriftscala] val reusableBufferGauges: Seq[_root_.com.twitter.finagle.stats.Gauge] =
+      if (stats.isNull) Nil
+      else {
+        val bufferStats = tlReusableBuffer.stats
+        val scoped = (if (serviceName != "") stats.scope(serviceName) else stats).scope("reusable_buffer")
+        Seq(
+          scoped.addGauge("hits") { bufferStats.hits.toFloat },
+          scoped.addGauge("misses") { bufferStats.misses.toFloat },
+          scoped.addGauge("oversize") { bufferStats.oversize.toFloat }
+        )
+      }
+
     private[thriftscala] def exception(name: String, seqid: Int, code: Int, message: String): Buf = {
       val x = new TApplicationException(code, message)
       val memoryBuffer = tlReusableBuffer.get()
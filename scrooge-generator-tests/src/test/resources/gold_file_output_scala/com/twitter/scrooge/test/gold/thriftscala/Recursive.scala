@@ -14,6 +14,7 @@ import com.twitter.scrooge.{
   StructBuilder,
   StructBuilderFactory,
   TFieldBlob,
+  TSizeProtocol,
   ThriftStruct,
   ThriftStructCodec3,
   ThriftStructField,
@@ -22,7 +23,7 @@ import com.twitter.scrooge.{
   ValidatingThriftStruct,
   ValidatingThriftStructCodec3
 }
-import com.twitter.scrooge.adapt.{AccessRecorder, AdaptTProtocol, Decoder}
+import com.twitter.scrooge.adapt.{AccessRecorder, AdaptDecoderHolder, AdaptTProtocol, AdaptiveDecoding, Decoder}
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TMemoryBuffer
 import scala.collection.immutable.{Map => immutable$Map}
@@ -30,7 +31,7 @@ import scala.collection.mutable.Builder
 import scala.reflect.{ClassTag, classTag}
 
 
-object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuilderFactory[Recursive] {
+object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuilderFactory[Recursive] with AdaptiveDecoding[Recursive] {
   val Struct: TStruct = new TStruct("Recursive")
   val IdField: TField = new TField("id", TType.I64, 1)
   val IdFieldManifest: Manifest[Long] = manifest[Long]
@@ -154,7 +155,9 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
     _item.write(_oproto)
   }
 
-  @volatile private[this] var adaptiveDecoder: Decoder[Recursive] = _
+  private[this] val adaptiveDecoder = new AdaptDecoderHolder[Recursive]("")
+  private[thriftscala] val RecRequestFieldAdaptDecoder: AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request] =
+    new AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request](this.getClass.getName.stripSuffix("$") + ".recRequest")
 
   private[this] val accessRecordingDecoderBuilder: AccessRecorder => Decoder[Recursive] = { accessRecorder =>
     new Decoder[Recursive] {
@@ -164,16 +167,9 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
   private[this] val fallbackDecoder = new Decoder[Recursive] {
     def apply(prot: AdaptTProtocol): Recursive = decodeInternal(prot, true)
   }
-  private[this] def adaptiveDecode(_iprot: AdaptTProtocol): Recursive = {
-    val adaptContext = _iprot.adaptContext
-    val reloadRequired = adaptContext.shouldReloadDecoder
-    synchronized {
-      if ((adaptiveDecoder eq null) || reloadRequired) {
-        adaptiveDecoder = adaptContext.buildDecoder(this, fallbackDecoder, accessRecordingDecoderBuilder)
-      }
-    }
-    adaptiveDecoder(_iprot)
-  }
+
+  def adaptiveDecode(_iprot: AdaptTProtocol, holder: AdaptDecoderHolder[Recursive]): Recursive =
+    holder(_iprot, this, fallbackDecoder, accessRecordingDecoderBuilder)(_iprot)
 
   /**
    * AccessRecordingWrapper keeps track of fields that are accessed while
@@ -194,10 +190,11 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
   }
 
   override def decode(_iprot: TProtocol): Recursive = {
-    if (_iprot.isInstanceOf[LazyTProtocol]) {
+    // AdaptTProtocol is a LazyTProtocol, it has to be checked first
+    if (_iprot.isInstanceOf[AdaptTProtocol]) {
+      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol], adaptiveDecoder)
+    } else if (_iprot.isInstanceOf[LazyTProtocol]) {
       decodeInternal(_iprot, true)
-    } else if (_iprot.isInstanceOf[AdaptTProtocol]) {
-      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol])
     } else {
       decodeInternal(_iprot, false)
     }
@@ -209,6 +206,7 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
 
   private[this] def decodeInternal(_iprot: TProtocol, lazily: Boolean): Recursive = {
     var id: Long = 0L
+    var recRequestOffset: Int = -1
     var recRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Request] = None
 
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
@@ -228,7 +226,10 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
             id = _iprot.readI64()
           case 2 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "recRequest")
-            recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+            if (lazily)
+              recRequestOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipStruct()
+            else
+              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
           case _ =>
             _passthroughFields = _root_.com.twitter.scrooge.internal.TProtocols.readPassthroughField(_iprot, _field, _passthroughFields)
         }
@@ -249,7 +250,7 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
         _start_offset,
         _lazyProt.offset,
         id,
-        recRequest,
+        recRequestOffset,
         _passthroughFieldsResult
       )
     } else {
@@ -261,6 +262,74 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
     }
   }
 
+  /**
+   * Decodes the fields included by `_mask`, see [[_root_.com.twitter.scrooge.FieldMask]].
+   */
+  override def decode(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Recursive =
+    if (_mask.includesAll) {
+      decode(_iprot)
+    } else {
+      val _item = decodeMasked(_iprot, _mask)
+      if (_mask.isStrict) new MaskedImmutable(_item, _mask) else _item
+    }
+
+  private[this] def decodeMasked(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Recursive = {
+    var id: Long = 0L
+    var recRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Request] = None
+    var _done = false
+
+    _iprot.readStructBegin()
+    do {
+      val _field = _iprot.readFieldBegin()
+      val _fieldType = _field.`type`
+      if (_fieldType == TType.STOP) {
+        _done = true
+      } else {
+        if (!_mask.contains(_field.id)) {
+          _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+        } else {
+          _field.id match {
+            case 1 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "id")
+              id = _iprot.readI64()
+            case 2 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "recRequest")
+              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot, _mask.nested(2)))
+            case _ =>
+              _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+          }
+        }
+        _iprot.readFieldEnd()
+      }
+    } while (!_done)
+    _iprot.readStructEnd()
+
+
+    new Immutable(
+      id,
+      recRequest,
+      _root_.com.twitter.scrooge.internal.TProtocols.NoPassthroughFields
+    )
+  }
+
+  /**
+   * A struct decoded with a strict FieldMask, which throws on access to the
+   * fields which were not decoded.
+   */
+  private[this] class MaskedImmutable(_underlying: Recursive, _mask: _root_.com.twitter.scrooge.FieldMask) extends Recursive {
+    override def id: Long = {
+      if (!_mask.contains(1)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Recursive", "id")
+      _underlying.id
+    }
+    override def recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = {
+      if (!_mask.contains(2)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Recursive", "recRequest")
+      _underlying.recRequest
+    }
+    override def write(_oprot: TProtocol): Unit = _underlying.write(_oprot)
+
+    override def _passthroughFields: immutable$Map[Short, TFieldBlob] = _underlying._passthroughFields
+  }
+
   def apply(
     id: Long,
     recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = _root_.scala.None
@@ -301,27 +370,58 @@ object Recursive extends ValidatingThriftStructCodec3[Recursive] with StructBuil
   }
 
   /**
-   * This is another Immutable, this however keeps strings as lazy values that are lazily decoded from the backing
-   * array byte on read.
+   * This is another Immutable, this however keeps strings, binaries, nested structs and containers as lazy values
+   * that are lazily decoded from the backing array byte on read.
    */
   private[this] class LazyImmutable(
-      _proto: LazyTProtocol,
-      _buf: Array[Byte],
-      _start_offset: Int,
-      _end_offset: Int,
+      private val _proto: LazyTProtocol,
+      private val _buf: Array[Byte],
+      private val _start_offset: Int,
+      private val _end_offset: Int,
       val id: Long,
-      val recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request],
+      recRequestOffset: Int,
       override val _passthroughFields: immutable$Map[Short, TFieldBlob])
     extends Recursive {
 
+    private[this] var _serializedSize: Int = 0
+
     override def write(_oprot: TProtocol): Unit = {
-      if (_oprot.isInstanceOf[LazyTProtocol]) {
+      if (_oprot.isInstanceOf[LazyTProtocol] && _oprot.asInstanceOf[LazyTProtocol].canWriteRawFrom(_proto)) {
         _oprot.asInstanceOf[LazyTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+      } else if (_oprot.isInstanceOf[TSizeProtocol]) {
+        val _sizes = _oprot.asInstanceOf[TSizeProtocol]
+        if (_sizes.canWriteRawFrom(_proto)) {
+          _sizes.writeRaw(_end_offset - _start_offset)
+        } else {
+          _serializedSize = _sizes.writeCachedStruct(_serializedSize)(super.write(_sizes))
+        }
       } else {
         super.write(_oprot)
       }
     }
 
+    lazy val recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] =
+      if (recRequestOffset == -1)
+        None
+      else {
+        val _iprot = _proto.readerAt(_buf, recRequestOffset, _end_offset - recRequestOffset)
+        Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+      }
+
+    /**
+     * Structs decoded from the same bytes are equal without decoding their fields.
+     * Encodings are not canonical, so when the bytes differ the fields are compared,
+     * and the hash code is still computed from the fields.
+     */
+    override def equals(other: Any): Boolean = other match {
+      case that: LazyImmutable
+          if _root_.com.twitter.scrooge.internal.EncodedBytes.sameEncoding(
+            _proto, _buf, _start_offset, _end_offset,
+            that._proto, that._buf, that._start_offset, that._end_offset) =>
+        true
+      case _ =>
+        super.equals(other)
+    }
 
     /**
      * Override the super hash code to make it a lazy val rather than def.
@@ -548,18 +648,23 @@ private[thriftscala] class RecursiveStructBuilder(instance: _root_.scala.Option[
   }
 }
 
-private class Recursive__AdaptDecoder {
+private class Recursive__AdaptDecoder(accessRecorder: AccessRecorder) extends Decoder[Recursive] {
 
+  def apply(_iprot: AdaptTProtocol): Recursive = decode(_iprot)
+
+  // This method gets pruned and reloaded at runtime.
   def decode(_iprot: AdaptTProtocol): Recursive = {
     import Recursive._
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
     var _done = false
     val _start_offset = _iprot.offset
+    var _skipped_bytes = 0
 
     val adapt = new Recursive__Adapt(
       _iprot,
       _iprot.buffer,
-      _start_offset)
+      _start_offset,
+      accessRecorder)
 
     AdaptTProtocol.usedStartMarker(1)
     var id: Long = 0L
@@ -585,7 +690,9 @@ private class Recursive__AdaptDecoder {
               id = _iprot.readI64()
               AdaptTProtocol.usedEndMarker(1)
               AdaptTProtocol.unusedStartMarker(1)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(1)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -601,10 +708,12 @@ private class Recursive__AdaptDecoder {
           case 2 => {
             if (_fieldType == TType.STRUCT) {
               AdaptTProtocol.usedStartMarker(2)
-              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+              recRequest = _root_.scala.Some(RecRequestFieldAdaptDecoder.decode(_iprot, com.twitter.scrooge.test.gold.thriftscala.Request))
               AdaptTProtocol.usedEndMarker(2)
               AdaptTProtocol.unusedStartMarker(2)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipStruct()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(2)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -631,6 +740,7 @@ private class Recursive__AdaptDecoder {
     if (_passthroughFields ne null) {
       adapt.set__passthroughFields(_passthroughFields.result())
     }
+    accessRecorder.structDecoded(_iprot.offset - _start_offset, _skipped_bytes)
     adapt
   }
 }
@@ -642,30 +752,40 @@ private class Recursive__AdaptDecoder {
 private class Recursive__Adapt(
     _proto: AdaptTProtocol,
     _buf: Array[Byte],
-    _start_offset: Int) extends Recursive {
+    _start_offset: Int,
+    _accessRecorder: AccessRecorder) extends Recursive {
 
   /**
    * In case any unexpected field is accessed, fallback to eager decoding.
    */
   private[this] lazy val delegate: Recursive = {
-    val bytes = _root_.java.util.Arrays.copyOfRange(_buf, _start_offset, _end_offset)
-    val proto = _proto.withBytes(bytes)
+    val proto = _proto.withBytes(_buf, _start_offset, _end_offset - _start_offset)
     Recursive.eagerDecode(proto)
   }
 
+  // Only approximately once per struct, racing threads may both report it.
+  private[this] var _delegated: Boolean = false
+  private[this] def delegateFor(fieldId: Short): Recursive = {
+    if (!_delegated) {
+      _delegated = true
+      _accessRecorder.unusedFieldAccessed(fieldId)
+    }
+    delegate
+  }
+
   private[this] var m_id: Long = _
   def set_id(id: Long): Unit = m_id = id
   // This will be removed by ASM if field is unused.
   def id: Long = m_id
   // This will be removed by ASM if field is used otherwise renamed to id.
-  def delegated_id: Long = delegate.id
+  def delegated_id: Long = delegateFor(1).id
 
   private[this] var m_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = _
   def set_recRequest(recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request]): Unit = m_recRequest = recRequest
   // This will be removed by ASM if field is unused.
   def recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = m_recRequest
   // This will be removed by ASM if field is used otherwise renamed to recRequest.
-  def delegated_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = delegate.recRequest
+  def delegated_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = delegateFor(2).recRequest
 
 
   private[this] var _end_offset: Int = _
@@ -691,8 +811,11 @@ private class Recursive__Adapt(
   override lazy val hashCode: Int = super.hashCode
 
   override def write(_oprot: TProtocol): Unit = {
-    if (_oprot.isInstanceOf[AdaptTProtocol]) {
+    if (_oprot.isInstanceOf[AdaptTProtocol] && _oprot.asInstanceOf[AdaptTProtocol].canWriteRawFrom(_proto)) {
       _oprot.asInstanceOf[AdaptTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+    } else if (_oprot.isInstanceOf[TSizeProtocol] && _oprot.asInstanceOf[TSizeProtocol].countedProtocol.exists(_.isInstanceOf[AdaptTProtocol]) &&
+      _oprot.asInstanceOf[TSizeProtocol].canWriteRawFrom(_proto)) {
+      _oprot.asInstanceOf[TSizeProtocol].writeRaw(_end_offset - _start_offset)
     } else {
       super.write(_oprot)
     }
@@ -14,6 +14,7 @@ import com.twitter.scrooge.{
   StructBuilder,
   StructBuilderFactory,
   TFieldBlob,
+  TSizeProtocol,
   ThriftStruct,
   ThriftStructCodec3,
   ThriftStructField,
@@ -22,7 +23,7 @@ import com.twitter.scrooge.{
   ValidatingThriftStruct,
   ValidatingThriftStructCodec3
 }
-import com.twitter.scrooge.adapt.{AccessRecorder, AdaptTProtocol, Decoder}
+import com.twitter.scrooge.adapt.{AccessRecorder, AdaptDecoderHolder, AdaptTProtocol, AdaptiveDecoding, Decoder}
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TMemoryBuffer
 import scala.collection.immutable.{Map => immutable$Map}
@@ -32,7 +33,7 @@ import scala.reflect.{ClassTag, classTag}
 /**
  * Request struct docstring
  */
-object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderFactory[Request] {
+object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderFactory[Request] with AdaptiveDecoding[Request] {
   val Struct: TStruct = new TStruct("Request")
   val AListField: TField = new TField("aList", TType.LIST, 1)
   val AListFieldManifest: Manifest[_root_.scala.collection.Seq[String]] = manifest[_root_.scala.collection.Seq[String]]
@@ -552,7 +553,13 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
     _item.write(_oproto)
   }
 
-  @volatile private[this] var adaptiveDecoder: Decoder[Request] = _
+  private[this] val adaptiveDecoder = new AdaptDecoderHolder[Request]("")
+  private[thriftscala] val ARequestFieldAdaptDecoder: AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request] =
+    new AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request](this.getClass.getName.stripSuffix("$") + ".aRequest")
+  private[thriftscala] val SubRequestsFieldAdaptDecoder: AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request] =
+    new AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Request](this.getClass.getName.stripSuffix("$") + ".subRequests")
+  private[thriftscala] val RecRequestFieldAdaptDecoder: AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Recursive] =
+    new AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.Recursive](this.getClass.getName.stripSuffix("$") + ".recRequest")
 
   private[this] val accessRecordingDecoderBuilder: AccessRecorder => Decoder[Request] = { accessRecorder =>
     new Decoder[Request] {
@@ -562,16 +569,9 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
   private[this] val fallbackDecoder = new Decoder[Request] {
     def apply(prot: AdaptTProtocol): Request = decodeInternal(prot, true)
   }
-  private[this] def adaptiveDecode(_iprot: AdaptTProtocol): Request = {
-    val adaptContext = _iprot.adaptContext
-    val reloadRequired = adaptContext.shouldReloadDecoder
-    synchronized {
-      if ((adaptiveDecoder eq null) || reloadRequired) {
-        adaptiveDecoder = adaptContext.buildDecoder(this, fallbackDecoder, accessRecordingDecoderBuilder)
-      }
-    }
-    adaptiveDecoder(_iprot)
-  }
+
+  def adaptiveDecode(_iprot: AdaptTProtocol, holder: AdaptDecoderHolder[Request]): Request =
+    holder(_iprot, this, fallbackDecoder, accessRecordingDecoderBuilder)(_iprot)
 
   /**
    * AccessRecordingWrapper keeps track of fields that are accessed while
@@ -648,10 +648,11 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
   }
 
   override def decode(_iprot: TProtocol): Request = {
-    if (_iprot.isInstanceOf[LazyTProtocol]) {
+    // AdaptTProtocol is a LazyTProtocol, it has to be checked first
+    if (_iprot.isInstanceOf[AdaptTProtocol]) {
+      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol], adaptiveDecoder)
+    } else if (_iprot.isInstanceOf[LazyTProtocol]) {
       decodeInternal(_iprot, true)
-    } else if (_iprot.isInstanceOf[AdaptTProtocol]) {
-      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol])
     } else {
       decodeInternal(_iprot, false)
     }
@@ -662,10 +663,15 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
   }
 
   private[this] def decodeInternal(_iprot: TProtocol, lazily: Boolean): Request = {
+    var aListOffset: Int = -1
     var aList: _root_.scala.collection.Seq[String] = _root_.scala.collection.immutable.Nil
+    var aSetOffset: Int = -1
     var aSet: _root_.scala.collection.Set[Int] = _root_.scala.collection.immutable.Set.empty[Int]
+    var aMapOffset: Int = -1
     var aMap: _root_.scala.collection.Map[Long, Long] = _root_.scala.collection.immutable.Map.empty[Long, Long]
+    var aRequestOffset: Int = -1
     var aRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Request] = None
+    var subRequestsOffset: Int = -1
     var subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = _root_.scala.collection.immutable.Nil
     var _defaultOffset: Int = -1
     var _default: String = "the_default"
@@ -679,6 +685,7 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
     var singleAsteriskComment: Option[Long] = None
     var docStringCommentOffset: Int = -1
     var docStringComment: Option[Long] = None
+    var recRequestOffset: Int = -1
     var recRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = None
     var requiredFieldOffset: Int = -1
     var requiredField: String = null
@@ -687,6 +694,7 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
     var constructionRequiredField: Option[Long] = None
     var anInt8Offset: Int = -1
     var anInt8: Option[Byte] = None
+    var aBinaryFieldOffset: Int = -1
     var aBinaryField: Option[_root_.java.nio.ByteBuffer] = None
 
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
@@ -703,19 +711,34 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
         _field.id match {
           case 1 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.LIST, _fieldType, "aList")
-            aList = readAListValue(_iprot)
+            if (lazily)
+              aListOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipList()
+            else
+              aList = readAListValue(_iprot)
           case 2 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.SET, _fieldType, "aSet")
-            aSet = readASetValue(_iprot)
+            if (lazily)
+              aSetOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipSet()
+            else
+              aSet = readASetValue(_iprot)
           case 3 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.MAP, _fieldType, "aMap")
-            aMap = readAMapValue(_iprot)
+            if (lazily)
+              aMapOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipMap()
+            else
+              aMap = readAMapValue(_iprot)
           case 4 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "aRequest")
-            aRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+            if (lazily)
+              aRequestOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipStruct()
+            else
+              aRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
           case 5 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.LIST, _fieldType, "subRequests")
-            subRequests = readSubRequestsValue(_iprot)
+            if (lazily)
+              subRequestsOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipList()
+            else
+              subRequests = readSubRequestsValue(_iprot)
           case 6 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "_default")
             if (lazily)
@@ -754,7 +777,10 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
               docStringComment = _root_.scala.Some(_iprot.readI64())
           case 12 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "recRequest")
-            recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Recursive.decode(_iprot))
+            if (lazily)
+              recRequestOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipStruct()
+            else
+              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Recursive.decode(_iprot))
           case 13 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "requiredField")
             if (lazily)
@@ -776,7 +802,10 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
               anInt8 = _root_.scala.Some(_iprot.readByte())
           case 16 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "aBinaryField")
-            aBinaryField = _root_.scala.Some(_iprot.readBinary())
+            if (lazily)
+              aBinaryFieldOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipBinary()
+            else
+              aBinaryField = _root_.scala.Some(_iprot.readBinary())
           case _ =>
             _passthroughFields = _root_.com.twitter.scrooge.internal.TProtocols.readPassthroughField(_iprot, _field, _passthroughFields)
         }
@@ -797,22 +826,22 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
         _lazyProt.buffer,
         _start_offset,
         _lazyProt.offset,
-        aList,
-        aSet,
-        aMap,
-        aRequest,
-        subRequests,
+        aListOffset,
+        aSetOffset,
+        aMapOffset,
+        aRequestOffset,
+        subRequestsOffset,
         _defaultOffset,
         noCommentOffset,
         doubleSlashCommentOffset,
         hashtagCommentOffset,
         singleAsteriskCommentOffset,
         docStringCommentOffset,
-        recRequest,
+        recRequestOffset,
         requiredFieldOffset,
         constructionRequiredFieldOffset,
         anInt8Offset,
-        aBinaryField,
+        aBinaryFieldOffset,
         _passthroughFieldsResult
       )
     } else {
@@ -838,6 +867,203 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
     }
   }
 
+  /**
+   * Decodes the fields included by `_mask`, see [[_root_.com.twitter.scrooge.FieldMask]].
+   */
+  override def decode(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Request =
+    if (_mask.includesAll) {
+      decode(_iprot)
+    } else {
+      val _item = decodeMasked(_iprot, _mask)
+      if (_mask.isStrict) new MaskedImmutable(_item, _mask) else _item
+    }
+
+  private[this] def decodeMasked(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Request = {
+    var aList: _root_.scala.collection.Seq[String] = _root_.scala.collection.immutable.Nil
+    var aSet: _root_.scala.collection.Set[Int] = _root_.scala.collection.immutable.Set.empty[Int]
+    var aMap: _root_.scala.collection.Map[Long, Long] = _root_.scala.collection.immutable.Map.empty[Long, Long]
+    var aRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Request] = None
+    var subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = _root_.scala.collection.immutable.Nil
+    var _default: String = "the_default"
+    var noComment: Option[Long] = None
+    var doubleSlashComment: Option[Long] = None
+    var hashtagComment: Option[Long] = None
+    var singleAsteriskComment: Option[Long] = None
+    var docStringComment: Option[Long] = None
+    var recRequest: Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = None
+    var requiredField: String = null
+    var _got_requiredField = false
+    var constructionRequiredField: Option[Long] = None
+    var anInt8: Option[Byte] = None
+    var aBinaryField: Option[_root_.java.nio.ByteBuffer] = None
+    var _done = false
+
+    _iprot.readStructBegin()
+    do {
+      val _field = _iprot.readFieldBegin()
+      val _fieldType = _field.`type`
+      if (_fieldType == TType.STOP) {
+        _done = true
+      } else {
+        if (!_mask.contains(_field.id)) {
+          _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+        } else {
+          _field.id match {
+            case 1 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.LIST, _fieldType, "aList")
+              aList = readAListValue(_iprot)
+            case 2 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.SET, _fieldType, "aSet")
+              aSet = readASetValue(_iprot)
+            case 3 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.MAP, _fieldType, "aMap")
+              aMap = readAMapValue(_iprot)
+            case 4 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "aRequest")
+              aRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot, _mask.nested(4)))
+            case 5 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.LIST, _fieldType, "subRequests")
+              subRequests = { val _nested = _mask.nested(5); _root_.com.twitter.scrooge.internal.TProtocols().readList(_iprot, proto => com.twitter.scrooge.test.gold.thriftscala.Request.decode(proto, _nested)) }
+            case 6 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "_default")
+              _default = _iprot.readString()
+            case 7 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "noComment")
+              noComment = _root_.scala.Some(_iprot.readI64())
+            case 8 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "doubleSlashComment")
+              doubleSlashComment = _root_.scala.Some(_iprot.readI64())
+            case 9 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "hashtagComment")
+              hashtagComment = _root_.scala.Some(_iprot.readI64())
+            case 10 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "singleAsteriskComment")
+              singleAsteriskComment = _root_.scala.Some(_iprot.readI64())
+            case 11 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "docStringComment")
+              docStringComment = _root_.scala.Some(_iprot.readI64())
+            case 12 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "recRequest")
+              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Recursive.decode(_iprot, _mask.nested(12)))
+            case 13 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "requiredField")
+              requiredField = _iprot.readString()
+              _got_requiredField = true
+            case 14 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I64, _fieldType, "constructionRequiredField")
+              constructionRequiredField = _root_.scala.Some(_iprot.readI64())
+            case 15 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.BYTE, _fieldType, "anInt8")
+              anInt8 = _root_.scala.Some(_iprot.readByte())
+            case 16 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRING, _fieldType, "aBinaryField")
+              aBinaryField = _root_.scala.Some(_iprot.readBinary())
+            case _ =>
+              _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+          }
+        }
+        _iprot.readFieldEnd()
+      }
+    } while (!_done)
+    _iprot.readStructEnd()
+
+    if (!_got_requiredField && _mask.contains(13)) _root_.com.twitter.scrooge.internal.TProtocols.throwMissingRequiredField("Request", "requiredField")
+
+    new Immutable(
+      aList,
+      aSet,
+      aMap,
+      aRequest,
+      subRequests,
+      _default,
+      noComment,
+      doubleSlashComment,
+      hashtagComment,
+      singleAsteriskComment,
+      docStringComment,
+      recRequest,
+      requiredField,
+      constructionRequiredField,
+      anInt8,
+      aBinaryField,
+      _root_.com.twitter.scrooge.internal.TProtocols.NoPassthroughFields
+    )
+  }
+
+  /**
+   * A struct decoded with a strict FieldMask, which throws on access to the
+   * fields which were not decoded.
+   */
+  private[this] class MaskedImmutable(_underlying: Request, _mask: _root_.com.twitter.scrooge.FieldMask) extends Request {
+    override def aList: _root_.scala.collection.Seq[String] = {
+      if (!_mask.contains(1)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "aList")
+      _underlying.aList
+    }
+    override def aSet: _root_.scala.collection.Set[Int] = {
+      if (!_mask.contains(2)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "aSet")
+      _underlying.aSet
+    }
+    override def aMap: _root_.scala.collection.Map[Long, Long] = {
+      if (!_mask.contains(3)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "aMap")
+      _underlying.aMap
+    }
+    override def aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = {
+      if (!_mask.contains(4)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "aRequest")
+      _underlying.aRequest
+    }
+    override def subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = {
+      if (!_mask.contains(5)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "subRequests")
+      _underlying.subRequests
+    }
+    override def _default: String = {
+      if (!_mask.contains(6)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "_default")
+      _underlying._default
+    }
+    override def noComment: _root_.scala.Option[Long] = {
+      if (!_mask.contains(7)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "noComment")
+      _underlying.noComment
+    }
+    override def doubleSlashComment: _root_.scala.Option[Long] = {
+      if (!_mask.contains(8)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "doubleSlashComment")
+      _underlying.doubleSlashComment
+    }
+    override def hashtagComment: _root_.scala.Option[Long] = {
+      if (!_mask.contains(9)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "hashtagComment")
+      _underlying.hashtagComment
+    }
+    override def singleAsteriskComment: _root_.scala.Option[Long] = {
+      if (!_mask.contains(10)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "singleAsteriskComment")
+      _underlying.singleAsteriskComment
+    }
+    override def docStringComment: _root_.scala.Option[Long] = {
+      if (!_mask.contains(11)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "docStringComment")
+      _underlying.docStringComment
+    }
+    override def recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = {
+      if (!_mask.contains(12)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "recRequest")
+      _underlying.recRequest
+    }
+    override def requiredField: String = {
+      if (!_mask.contains(13)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "requiredField")
+      _underlying.requiredField
+    }
+    override def constructionRequiredField: _root_.scala.Option[Long] = {
+      if (!_mask.contains(14)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "constructionRequiredField")
+      _underlying.constructionRequiredField
+    }
+    override def anInt8: _root_.scala.Option[Byte] = {
+      if (!_mask.contains(15)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "anInt8")
+      _underlying.anInt8
+    }
+    override def aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = {
+      if (!_mask.contains(16)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Request", "aBinaryField")
+      _underlying.aBinaryField
+    }
+    override def write(_oprot: TProtocol): Unit = _underlying.write(_oprot)
+
+    override def _passthroughFields: immutable$Map[Short, TFieldBlob] = _underlying._passthroughFields
+  }
+
   def apply(
     aList: _root_.scala.collection.Seq[String] = _root_.scala.collection.immutable.Nil,
     aSet: _root_.scala.collection.Set[Int] = _root_.scala.collection.immutable.Set.empty[Int],
@@ -877,6 +1103,115 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
 
   def unapply(_item: Request): _root_.scala.Option[_root_.scala.Tuple16[_root_.scala.collection.Seq[String], _root_.scala.collection.Set[Int], _root_.scala.collection.Map[Long, Long], Option[com.twitter.scrooge.test.gold.thriftscala.Request], _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request], String, Option[Long], Option[Long], Option[Long], Option[Long], Option[Long], Option[com.twitter.scrooge.test.gold.thriftscala.Recursive], String, Option[Long], Option[Byte], Option[_root_.java.nio.ByteBuffer]]] = _root_.scala.Some(_item.toTuple)
 
+  /**
+   * Writes a Request without building it, with the elements of its list, set and
+   * map fields produced by [[com.twitter.scrooge.ContainerSource]]s while they are written.
+   */
+  def writeStreaming(
+    _oprot: TProtocol,
+    aList: _root_.com.twitter.scrooge.ContainerSource[String],
+    aSet: _root_.com.twitter.scrooge.ContainerSource[Int],
+    aMap: _root_.com.twitter.scrooge.ContainerSource[(Long, Long)],
+    aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = _root_.scala.None,
+    subRequests: _root_.com.twitter.scrooge.ContainerSource[com.twitter.scrooge.test.gold.thriftscala.Request],
+    _default: String,
+    noComment: _root_.scala.Option[Long] = _root_.scala.None,
+    doubleSlashComment: _root_.scala.Option[Long] = _root_.scala.None,
+    hashtagComment: _root_.scala.Option[Long] = _root_.scala.None,
+    singleAsteriskComment: _root_.scala.Option[Long] = _root_.scala.None,
+    docStringComment: _root_.scala.Option[Long] = _root_.scala.None,
+    recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = _root_.scala.None,
+    requiredField: String,
+    constructionRequiredField: _root_.scala.Option[Long] = _root_.scala.None,
+    anInt8: _root_.scala.Option[Byte] = _root_.scala.None,
+    aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = _root_.scala.None
+  ): Unit = {
+    if (requiredField eq null) throw new TProtocolException("Required field requiredField cannot be null")
+    _oprot.writeStructBegin(Struct)
+    if (aList ne null) {
+      _oprot.writeFieldBegin(AListField)
+      _root_.com.twitter.scrooge.internal.TProtocols().writeListSource(_oprot, aList, TType.STRING, _root_.com.twitter.scrooge.internal.TProtocols.writeStringFn)
+      _oprot.writeFieldEnd()
+    }
+    if (aSet ne null) {
+      _oprot.writeFieldBegin(ASetField)
+      _root_.com.twitter.scrooge.internal.TProtocols().writeSetSource(_oprot, aSet, TType.I32, _root_.com.twitter.scrooge.internal.TProtocols.writeI32Fn)
+      _oprot.writeFieldEnd()
+    }
+    if (aMap ne null) {
+      _oprot.writeFieldBegin(AMapField)
+      _root_.com.twitter.scrooge.internal.TProtocols().writeMapSource(_oprot, aMap, TType.I64, _root_.com.twitter.scrooge.internal.TProtocols.writeI64Fn, TType.I64, _root_.com.twitter.scrooge.internal.TProtocols.writeI64Fn)
+      _oprot.writeFieldEnd()
+    }
+    if (aRequest.isDefined) {
+      _oprot.writeFieldBegin(ARequestField)
+      aRequest.get.write(_oprot)
+      _oprot.writeFieldEnd()
+    }
+    if (subRequests ne null) {
+      _oprot.writeFieldBegin(SubRequestsField)
+      _root_.com.twitter.scrooge.internal.TProtocols().writeListSource(_oprot, subRequests, TType.STRUCT, (proto, elem: com.twitter.scrooge.test.gold.thriftscala.Request) => elem.write(proto))
+      _oprot.writeFieldEnd()
+    }
+    if (_default ne null) {
+      _oprot.writeFieldBegin(_DefaultField)
+      _oprot.writeString(_default)
+      _oprot.writeFieldEnd()
+    }
+    if (noComment.isDefined) {
+      _oprot.writeFieldBegin(NoCommentField)
+      _oprot.writeI64(noComment.get)
+      _oprot.writeFieldEnd()
+    }
+    if (doubleSlashComment.isDefined) {
+      _oprot.writeFieldBegin(DoubleSlashCommentField)
+      _oprot.writeI64(doubleSlashComment.get)
+      _oprot.writeFieldEnd()
+    }
+    if (hashtagComment.isDefined) {
+      _oprot.writeFieldBegin(HashtagCommentField)
+      _oprot.writeI64(hashtagComment.get)
+      _oprot.writeFieldEnd()
+    }
+    if (singleAsteriskComment.isDefined) {
+      _oprot.writeFieldBegin(SingleAsteriskCommentField)
+      _oprot.writeI64(singleAsteriskComment.get)
+      _oprot.writeFieldEnd()
+    }
+    if (docStringComment.isDefined) {
+      _oprot.writeFieldBegin(DocStringCommentField)
+      _oprot.writeI64(docStringComment.get)
+      _oprot.writeFieldEnd()
+    }
+    if (recRequest.isDefined) {
+      _oprot.writeFieldBegin(RecRequestField)
+      recRequest.get.write(_oprot)
+      _oprot.writeFieldEnd()
+    }
+    if (requiredField ne null) {
+      _oprot.writeFieldBegin(RequiredFieldField)
+      _oprot.writeString(requiredField)
+      _oprot.writeFieldEnd()
+    }
+    if (constructionRequiredField.isDefined) {
+      _oprot.writeFieldBegin(ConstructionRequiredFieldField)
+      _oprot.writeI64(constructionRequiredField.get)
+      _oprot.writeFieldEnd()
+    }
+    if (anInt8.isDefined) {
+      _oprot.writeFieldBegin(AnInt8Field)
+      _oprot.writeByte(anInt8.get)
+      _oprot.writeFieldEnd()
+    }
+    if (aBinaryField.isDefined) {
+      _oprot.writeFieldBegin(ABinaryFieldField)
+      _oprot.writeBinary(aBinaryField.get)
+      _oprot.writeFieldEnd()
+    }
+    _oprot.writeFieldStop()
+    _oprot.writeStructEnd()
+  }
+
 
   private[thriftscala] def readAListValue(_iprot: TProtocol): _root_.scala.collection.Seq[String] = {
     _root_.com.twitter.scrooge.internal.TProtocols().readList(_iprot, _root_.com.twitter.scrooge.internal.TProtocols.readStringFn)
@@ -1053,41 +1388,85 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
   }
 
   /**
-   * This is another Immutable, this however keeps strings as lazy values that are lazily decoded from the backing
-   * array byte on read.
+   * This is another Immutable, this however keeps strings, binaries, nested structs and containers as lazy values
+   * that are lazily decoded from the backing array byte on read.
    */
   private[this] class LazyImmutable(
-      _proto: LazyTProtocol,
-      _buf: Array[Byte],
-      _start_offset: Int,
-      _end_offset: Int,
-      val aList: _root_.scala.collection.Seq[String],
-      val aSet: _root_.scala.collection.Set[Int],
-      val aMap: _root_.scala.collection.Map[Long, Long],
-      val aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request],
-      val subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request],
+      private val _proto: LazyTProtocol,
+      private val _buf: Array[Byte],
+      private val _start_offset: Int,
+      private val _end_offset: Int,
+      aListOffset: Int,
+      aSetOffset: Int,
+      aMapOffset: Int,
+      aRequestOffset: Int,
+      subRequestsOffset: Int,
       _defaultOffset: Int,
       noCommentOffset: Int,
       doubleSlashCommentOffset: Int,
       hashtagCommentOffset: Int,
       singleAsteriskCommentOffset: Int,
       docStringCommentOffset: Int,
-      val recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive],
+      recRequestOffset: Int,
       requiredFieldOffset: Int,
       constructionRequiredFieldOffset: Int,
       anInt8Offset: Int,
-      val aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer],
+      aBinaryFieldOffset: Int,
       override val _passthroughFields: immutable$Map[Short, TFieldBlob])
     extends Request {
 
+    private[this] var _serializedSize: Int = 0
+
     override def write(_oprot: TProtocol): Unit = {
-      if (_oprot.isInstanceOf[LazyTProtocol]) {
+      if (_oprot.isInstanceOf[LazyTProtocol] && _oprot.asInstanceOf[LazyTProtocol].canWriteRawFrom(_proto)) {
         _oprot.asInstanceOf[LazyTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+      } else if (_oprot.isInstanceOf[TSizeProtocol]) {
+        val _sizes = _oprot.asInstanceOf[TSizeProtocol]
+        if (_sizes.canWriteRawFrom(_proto)) {
+          _sizes.writeRaw(_end_offset - _start_offset)
+        } else {
+          _serializedSize = _sizes.writeCachedStruct(_serializedSize)(super.write(_sizes))
+        }
       } else {
         super.write(_oprot)
       }
     }
 
+    lazy val aList: _root_.scala.collection.Seq[String] =
+      if (aListOffset == -1)
+        _root_.scala.collection.immutable.Nil
+      else {
+        val _iprot = _proto.readerAt(_buf, aListOffset, _end_offset - aListOffset)
+        readAListValue(_iprot)
+      }
+    lazy val aSet: _root_.scala.collection.Set[Int] =
+      if (aSetOffset == -1)
+        _root_.scala.collection.immutable.Set.empty[Int]
+      else {
+        val _iprot = _proto.readerAt(_buf, aSetOffset, _end_offset - aSetOffset)
+        readASetValue(_iprot)
+      }
+    lazy val aMap: _root_.scala.collection.Map[Long, Long] =
+      if (aMapOffset == -1)
+        _root_.scala.collection.immutable.Map.empty[Long, Long]
+      else {
+        val _iprot = _proto.readerAt(_buf, aMapOffset, _end_offset - aMapOffset)
+        readAMapValue(_iprot)
+      }
+    lazy val aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] =
+      if (aRequestOffset == -1)
+        None
+      else {
+        val _iprot = _proto.readerAt(_buf, aRequestOffset, _end_offset - aRequestOffset)
+        Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+      }
+    lazy val subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] =
+      if (subRequestsOffset == -1)
+        _root_.scala.collection.immutable.Nil
+      else {
+        val _iprot = _proto.readerAt(_buf, subRequestsOffset, _end_offset - subRequestsOffset)
+        readSubRequestsValue(_iprot)
+      }
     lazy val _default: String =
       if (_defaultOffset == -1)
         "the_default"
@@ -1124,6 +1503,13 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
       else {
         Some(_proto.decodeI64(_buf, docStringCommentOffset))
       }
+    lazy val recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] =
+      if (recRequestOffset == -1)
+        None
+      else {
+        val _iprot = _proto.readerAt(_buf, recRequestOffset, _end_offset - recRequestOffset)
+        Some(com.twitter.scrooge.test.gold.thriftscala.Recursive.decode(_iprot))
+      }
     lazy val requiredField: String =
       if (requiredFieldOffset == -1)
         null
@@ -1142,6 +1528,27 @@ object Request extends ValidatingThriftStructCodec3[Request] with StructBuilderF
       else {
         Some(_proto.decodeByte(_buf, anInt8Offset))
       }
+    lazy val aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] =
+      if (aBinaryFieldOffset == -1)
+        None
+      else {
+        Some(_proto.decodeBinary(_buf, aBinaryFieldOffset))
+      }
+
+    /**
+     * Structs decoded from the same bytes are equal without decoding their fields.
+     * Encodings are not canonical, so when the bytes differ the fields are compared,
+     * and the hash code is still computed from the fields.
+     */
+    override def equals(other: Any): Boolean = other match {
+      case that: LazyImmutable
+          if _root_.com.twitter.scrooge.internal.EncodedBytes.sameEncoding(
+            _proto, _buf, _start_offset, _end_offset,
+            that._proto, that._buf, that._start_offset, that._end_offset) =>
+        true
+      case _ =>
+        super.equals(other)
+    }
 
     /**
      * Override the super hash code to make it a lazy val rather than def.
@@ -1853,18 +2260,23 @@ private[thriftscala] class RequestStructBuilder(instance: _root_.scala.Option[Re
   }
 }
 
-private class Request__AdaptDecoder {
+private class Request__AdaptDecoder(accessRecorder: AccessRecorder) extends Decoder[Request] {
+
+  def apply(_iprot: AdaptTProtocol): Request = decode(_iprot)
 
+  // This method gets pruned and reloaded at runtime.
   def decode(_iprot: AdaptTProtocol): Request = {
     import Request._
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
     var _done = false
     val _start_offset = _iprot.offset
+    var _skipped_bytes = 0
 
     val adapt = new Request__Adapt(
       _iprot,
       _iprot.buffer,
-      _start_offset)
+      _start_offset,
+      accessRecorder)
 
     AdaptTProtocol.usedStartMarker(1)
     var aList: _root_.scala.collection.Seq[String] = _root_.scala.collection.immutable.Nil
@@ -1975,7 +2387,9 @@ private class Request__AdaptDecoder {
               aList = readAListValue(_iprot)
               AdaptTProtocol.usedEndMarker(1)
               AdaptTProtocol.unusedStartMarker(1)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipList()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(1)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -1994,7 +2408,9 @@ private class Request__AdaptDecoder {
               aSet = readASetValue(_iprot)
               AdaptTProtocol.usedEndMarker(2)
               AdaptTProtocol.unusedStartMarker(2)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipSet()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(2)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2013,7 +2429,9 @@ private class Request__AdaptDecoder {
               aMap = readAMapValue(_iprot)
               AdaptTProtocol.usedEndMarker(3)
               AdaptTProtocol.unusedStartMarker(3)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipMap()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(3)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2029,10 +2447,12 @@ private class Request__AdaptDecoder {
           case 4 => {
             if (_fieldType == TType.STRUCT) {
               AdaptTProtocol.usedStartMarker(4)
-              aRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Request.decode(_iprot))
+              aRequest = _root_.scala.Some(ARequestFieldAdaptDecoder.decode(_iprot, com.twitter.scrooge.test.gold.thriftscala.Request))
               AdaptTProtocol.usedEndMarker(4)
               AdaptTProtocol.unusedStartMarker(4)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipStruct()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(4)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2048,10 +2468,12 @@ private class Request__AdaptDecoder {
           case 5 => {
             if (_fieldType == TType.LIST) {
               AdaptTProtocol.usedStartMarker(5)
-              subRequests = readSubRequestsValue(_iprot)
+              subRequests = _root_.com.twitter.scrooge.internal.TProtocols().readList(_iprot, proto => SubRequestsFieldAdaptDecoder.decode(proto.asInstanceOf[AdaptTProtocol], com.twitter.scrooge.test.gold.thriftscala.Request))
               AdaptTProtocol.usedEndMarker(5)
               AdaptTProtocol.unusedStartMarker(5)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipList()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(5)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2070,7 +2492,9 @@ private class Request__AdaptDecoder {
               _default = _iprot.readString()
               AdaptTProtocol.usedEndMarker(6)
               AdaptTProtocol.unusedStartMarker(6)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipString()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(6)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2089,7 +2513,9 @@ private class Request__AdaptDecoder {
               noComment = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(7)
               AdaptTProtocol.unusedStartMarker(7)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(7)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2108,7 +2534,9 @@ private class Request__AdaptDecoder {
               doubleSlashComment = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(8)
               AdaptTProtocol.unusedStartMarker(8)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(8)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2127,7 +2555,9 @@ private class Request__AdaptDecoder {
               hashtagComment = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(9)
               AdaptTProtocol.unusedStartMarker(9)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(9)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2146,7 +2576,9 @@ private class Request__AdaptDecoder {
               singleAsteriskComment = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(10)
               AdaptTProtocol.unusedStartMarker(10)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(10)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2165,7 +2597,9 @@ private class Request__AdaptDecoder {
               docStringComment = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(11)
               AdaptTProtocol.unusedStartMarker(11)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(11)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2181,10 +2615,12 @@ private class Request__AdaptDecoder {
           case 12 => {
             if (_fieldType == TType.STRUCT) {
               AdaptTProtocol.usedStartMarker(12)
-              recRequest = _root_.scala.Some(com.twitter.scrooge.test.gold.thriftscala.Recursive.decode(_iprot))
+              recRequest = _root_.scala.Some(RecRequestFieldAdaptDecoder.decode(_iprot, com.twitter.scrooge.test.gold.thriftscala.Recursive))
               AdaptTProtocol.usedEndMarker(12)
               AdaptTProtocol.unusedStartMarker(12)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipStruct()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(12)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2203,7 +2639,9 @@ private class Request__AdaptDecoder {
               requiredField = _iprot.readString()
               AdaptTProtocol.usedEndMarker(13)
               AdaptTProtocol.unusedStartMarker(13)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipString()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(13)
               _got_requiredField = true
             } else {
@@ -2223,7 +2661,9 @@ private class Request__AdaptDecoder {
               constructionRequiredField = _root_.scala.Some(_iprot.readI64())
               AdaptTProtocol.usedEndMarker(14)
               AdaptTProtocol.unusedStartMarker(14)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI64()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(14)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2242,7 +2682,9 @@ private class Request__AdaptDecoder {
               anInt8 = _root_.scala.Some(_iprot.readByte())
               AdaptTProtocol.usedEndMarker(15)
               AdaptTProtocol.unusedStartMarker(15)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipBool()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(15)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2261,7 +2703,9 @@ private class Request__AdaptDecoder {
               aBinaryField = _root_.scala.Some(_iprot.readBinary())
               AdaptTProtocol.usedEndMarker(16)
               AdaptTProtocol.unusedStartMarker(16)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipBinary()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(16)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -2289,6 +2733,7 @@ private class Request__AdaptDecoder {
     if (_passthroughFields ne null) {
       adapt.set__passthroughFields(_passthroughFields.result())
     }
+    accessRecorder.structDecoded(_iprot.offset - _start_offset, _skipped_bytes)
     adapt
   }
 }
@@ -2300,128 +2745,138 @@ private class Request__AdaptDecoder {
 private class Request__Adapt(
     _proto: AdaptTProtocol,
     _buf: Array[Byte],
-    _start_offset: Int) extends Request {
+    _start_offset: Int,
+    _accessRecorder: AccessRecorder) extends Request {
 
   /**
    * In case any unexpected field is accessed, fallback to eager decoding.
    */
   private[this] lazy val delegate: Request = {
-    val bytes = _root_.java.util.Arrays.copyOfRange(_buf, _start_offset, _end_offset)
-    val proto = _proto.withBytes(bytes)
+    val proto = _proto.withBytes(_buf, _start_offset, _end_offset - _start_offset)
     Request.eagerDecode(proto)
   }
 
+  // Only approximately once per struct, racing threads may both report it.
+  private[this] var _delegated: Boolean = false
+  private[this] def delegateFor(fieldId: Short): Request = {
+    if (!_delegated) {
+      _delegated = true
+      _accessRecorder.unusedFieldAccessed(fieldId)
+    }
+    delegate
+  }
+
   private[this] var m_aList: _root_.scala.collection.Seq[String] = _
   def set_aList(aList: _root_.scala.collection.Seq[String]): Unit = m_aList = aList
   // This will be removed by ASM if field is unused.
   def aList: _root_.scala.collection.Seq[String] = m_aList
   // This will be removed by ASM if field is used otherwise renamed to aList.
-  def delegated_aList: _root_.scala.collection.Seq[String] = delegate.aList
+  def delegated_aList: _root_.scala.collection.Seq[String] = delegateFor(1).aList
 
   private[this] var m_aSet: _root_.scala.collection.Set[Int] = _
   def set_aSet(aSet: _root_.scala.collection.Set[Int]): Unit = m_aSet = aSet
   // This will be removed by ASM if field is unused.
   def aSet: _root_.scala.collection.Set[Int] = m_aSet
   // This will be removed by ASM if field is used otherwise renamed to aSet.
-  def delegated_aSet: _root_.scala.collection.Set[Int] = delegate.aSet
+  def delegated_aSet: _root_.scala.collection.Set[Int] = delegateFor(2).aSet
 
   private[this] var m_aMap: _root_.scala.collection.Map[Long, Long] = _
   def set_aMap(aMap: _root_.scala.collection.Map[Long, Long]): Unit = m_aMap = aMap
   // This will be removed by ASM if field is unused.
   def aMap: _root_.scala.collection.Map[Long, Long] = m_aMap
   // This will be removed by ASM if field is used otherwise renamed to aMap.
-  def delegated_aMap: _root_.scala.collection.Map[Long, Long] = delegate.aMap
+  def delegated_aMap: _root_.scala.collection.Map[Long, Long] = delegateFor(3).aMap
 
   private[this] var m_aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = _
   def set_aRequest(aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request]): Unit = m_aRequest = aRequest
   // This will be removed by ASM if field is unused.
   def aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = m_aRequest
   // This will be removed by ASM if field is used otherwise renamed to aRequest.
-  def delegated_aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = delegate.aRequest
+  def delegated_aRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Request] = delegateFor(4).aRequest
 
   private[this] var m_subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = _
   def set_subRequests(subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request]): Unit = m_subRequests = subRequests
   // This will be removed by ASM if field is unused.
   def subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = m_subRequests
   // This will be removed by ASM if field is used otherwise renamed to subRequests.
-  def delegated_subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = delegate.subRequests
+  def delegated_subRequests: _root_.scala.collection.Seq[com.twitter.scrooge.test.gold.thriftscala.Request] = delegateFor(5).subRequests
 
   private[this] var m__default: String = _
   def set__default(_default: String): Unit = m__default = _default
   // This will be removed by ASM if field is unused.
   def _default: String = m__default
   // This will be removed by ASM if field is used otherwise renamed to _default.
-  def delegated__default: String = delegate._default
+  def delegated__default: String = delegateFor(6)._default
 
   private[this] var m_noComment: _root_.scala.Option[Long] = _
   def set_noComment(noComment: _root_.scala.Option[Long]): Unit = m_noComment = noComment
   // This will be removed by ASM if field is unused.
   def noComment: _root_.scala.Option[Long] = m_noComment
   // This will be removed by ASM if field is used otherwise renamed to noComment.
-  def delegated_noComment: _root_.scala.Option[Long] = delegate.noComment
+  def delegated_noComment: _root_.scala.Option[Long] = delegateFor(7).noComment
 
   private[this] var m_doubleSlashComment: _root_.scala.Option[Long] = _
   def set_doubleSlashComment(doubleSlashComment: _root_.scala.Option[Long]): Unit = m_doubleSlashComment = doubleSlashComment
   // This will be removed by ASM if field is unused.
   def doubleSlashComment: _root_.scala.Option[Long] = m_doubleSlashComment
   // This will be removed by ASM if field is used otherwise renamed to doubleSlashComment.
-  def delegated_doubleSlashComment: _root_.scala.Option[Long] = delegate.doubleSlashComment
+  def delegated_doubleSlashComment: _root_.scala.Option[Long] = delegateFor(8).doubleSlashComment
 
   private[this] var m_hashtagComment: _root_.scala.Option[Long] = _
   def set_hashtagComment(hashtagComment: _root_.scala.Option[Long]): Unit = m_hashtagComment = hashtagComment
   // This will be removed by ASM if field is unused.
   def hashtagComment: _root_.scala.Option[Long] = m_hashtagComment
   // This will be removed by ASM if field is used otherwise renamed to hashtagComment.
-  def delegated_hashtagComment: _root_.scala.Option[Long] = delegate.hashtagComment
+  def delegated_hashtagComment: _root_.scala.Option[Long] = delegateFor(9).hashtagComment
 
   private[this] var m_singleAsteriskComment: _root_.scala.Option[Long] = _
   def set_singleAsteriskComment(singleAsteriskComment: _root_.scala.Option[Long]): Unit = m_singleAsteriskComment = singleAsteriskComment
   // This will be removed by ASM if field is unused.
   def singleAsteriskComment: _root_.scala.Option[Long] = m_singleAsteriskComment
   // This will be removed by ASM if field is used otherwise renamed to singleAsteriskComment.
-  def delegated_singleAsteriskComment: _root_.scala.Option[Long] = delegate.singleAsteriskComment
+  def delegated_singleAsteriskComment: _root_.scala.Option[Long] = delegateFor(10).singleAsteriskComment
 
   private[this] var m_docStringComment: _root_.scala.Option[Long] = _
   def set_docStringComment(docStringComment: _root_.scala.Option[Long]): Unit = m_docStringComment = docStringComment
   // This will be removed by ASM if field is unused.
   def docStringComment: _root_.scala.Option[Long] = m_docStringComment
   // This will be removed by ASM if field is used otherwise renamed to docStringComment.
-  def delegated_docStringComment: _root_.scala.Option[Long] = delegate.docStringComment
+  def delegated_docStringComment: _root_.scala.Option[Long] = delegateFor(11).docStringComment
 
   private[this] var m_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = _
   def set_recRequest(recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive]): Unit = m_recRequest = recRequest
   // This will be removed by ASM if field is unused.
   def recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = m_recRequest
   // This will be removed by ASM if field is used otherwise renamed to recRequest.
-  def delegated_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = delegate.recRequest
+  def delegated_recRequest: _root_.scala.Option[com.twitter.scrooge.test.gold.thriftscala.Recursive] = delegateFor(12).recRequest
 
   private[this] var m_requiredField: String = _
   def set_requiredField(requiredField: String): Unit = m_requiredField = requiredField
   // This will be removed by ASM if field is unused.
   def requiredField: String = m_requiredField
   // This will be removed by ASM if field is used otherwise renamed to requiredField.
-  def delegated_requiredField: String = delegate.requiredField
+  def delegated_requiredField: String = delegateFor(13).requiredField
 
   private[this] var m_constructionRequiredField: _root_.scala.Option[Long] = _
   def set_constructionRequiredField(constructionRequiredField: _root_.scala.Option[Long]): Unit = m_constructionRequiredField = constructionRequiredField
   // This will be removed by ASM if field is unused.
   def constructionRequiredField: _root_.scala.Option[Long] = m_constructionRequiredField
   // This will be removed by ASM if field is used otherwise renamed to constructionRequiredField.
-  def delegated_constructionRequiredField: _root_.scala.Option[Long] = delegate.constructionRequiredField
+  def delegated_constructionRequiredField: _root_.scala.Option[Long] = delegateFor(14).constructionRequiredField
 
   private[this] var m_anInt8: _root_.scala.Option[Byte] = _
   def set_anInt8(anInt8: _root_.scala.Option[Byte]): Unit = m_anInt8 = anInt8
   // This will be removed by ASM if field is unused.
   def anInt8: _root_.scala.Option[Byte] = m_anInt8
   // This will be removed by ASM if field is used otherwise renamed to anInt8.
-  def delegated_anInt8: _root_.scala.Option[Byte] = delegate.anInt8
+  def delegated_anInt8: _root_.scala.Option[Byte] = delegateFor(15).anInt8
 
   private[this] var m_aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = _
   def set_aBinaryField(aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer]): Unit = m_aBinaryField = aBinaryField
   // This will be removed by ASM if field is unused.
   def aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = m_aBinaryField
   // This will be removed by ASM if field is used otherwise renamed to aBinaryField.
-  def delegated_aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = delegate.aBinaryField
+  def delegated_aBinaryField: _root_.scala.Option[_root_.java.nio.ByteBuffer] = delegateFor(16).aBinaryField
 
 
   private[this] var _end_offset: Int = _
@@ -2447,8 +2902,11 @@ private class Request__Adapt(
   override lazy val hashCode: Int = super.hashCode
 
   override def write(_oprot: TProtocol): Unit = {
-    if (_oprot.isInstanceOf[AdaptTProtocol]) {
+    if (_oprot.isInstanceOf[AdaptTProtocol] && _oprot.asInstanceOf[AdaptTProtocol].canWriteRawFrom(_proto)) {
       _oprot.asInstanceOf[AdaptTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+    } else if (_oprot.isInstanceOf[TSizeProtocol] && _oprot.asInstanceOf[TSizeProtocol].countedProtocol.exists(_.isInstanceOf[AdaptTProtocol]) &&
+      _oprot.asInstanceOf[TSizeProtocol].canWriteRawFrom(_proto)) {
+      _oprot.asInstanceOf[TSizeProtocol].writeRaw(_end_offset - _start_offset)
     } else {
       super.write(_oprot)
     }
@@ -14,6 +14,7 @@ import com.twitter.scrooge.{
   StructBuilder,
   StructBuilderFactory,
   TFieldBlob,
+  TSizeProtocol,
   ThriftStruct,
   ThriftStructCodec3,
   ThriftStructField,
@@ -22,7 +23,7 @@ import com.twitter.scrooge.{
   ValidatingThriftStruct,
   ValidatingThriftStructCodec3
 }
-import com.twitter.scrooge.adapt.{AccessRecorder, AdaptTProtocol, Decoder}
+import com.twitter.scrooge.adapt.{AccessRecorder, AdaptDecoderHolder, AdaptTProtocol, AdaptiveDecoding, Decoder}
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TMemoryBuffer
 import scala.collection.immutable.{Map => immutable$Map}
@@ -30,7 +31,7 @@ import scala.collection.mutable.Builder
 import scala.reflect.{ClassTag, classTag}
 
 
-object Response extends ValidatingThriftStructCodec3[Response] with StructBuilderFactory[Response] {
+object Response extends ValidatingThriftStructCodec3[Response] with StructBuilderFactory[Response] with AdaptiveDecoding[Response] {
   val Struct: TStruct = new TStruct("Response")
   val StatusCodeField: TField = new TField("statusCode", TType.I32, 1)
   val StatusCodeFieldManifest: Manifest[Int] = manifest[Int]
@@ -154,7 +155,9 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
     _item.write(_oproto)
   }
 
-  @volatile private[this] var adaptiveDecoder: Decoder[Response] = _
+  private[this] val adaptiveDecoder = new AdaptDecoderHolder[Response]("")
+  private[thriftscala] val ResponseUnionFieldAdaptDecoder: AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.ResponseUnion] =
+    new AdaptDecoderHolder[com.twitter.scrooge.test.gold.thriftscala.ResponseUnion](this.getClass.getName.stripSuffix("$") + ".responseUnion")
 
   private[this] val accessRecordingDecoderBuilder: AccessRecorder => Decoder[Response] = { accessRecorder =>
     new Decoder[Response] {
@@ -164,16 +167,9 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
   private[this] val fallbackDecoder = new Decoder[Response] {
     def apply(prot: AdaptTProtocol): Response = decodeInternal(prot, true)
   }
-  private[this] def adaptiveDecode(_iprot: AdaptTProtocol): Response = {
-    val adaptContext = _iprot.adaptContext
-    val reloadRequired = adaptContext.shouldReloadDecoder
-    synchronized {
-      if ((adaptiveDecoder eq null) || reloadRequired) {
-        adaptiveDecoder = adaptContext.buildDecoder(this, fallbackDecoder, accessRecordingDecoderBuilder)
-      }
-    }
-    adaptiveDecoder(_iprot)
-  }
+
+  def adaptiveDecode(_iprot: AdaptTProtocol, holder: AdaptDecoderHolder[Response]): Response =
+    holder(_iprot, this, fallbackDecoder, accessRecordingDecoderBuilder)(_iprot)
 
   /**
    * AccessRecordingWrapper keeps track of fields that are accessed while
@@ -194,10 +190,11 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
   }
 
   override def decode(_iprot: TProtocol): Response = {
-    if (_iprot.isInstanceOf[LazyTProtocol]) {
+    // AdaptTProtocol is a LazyTProtocol, it has to be checked first
+    if (_iprot.isInstanceOf[AdaptTProtocol]) {
+      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol], adaptiveDecoder)
+    } else if (_iprot.isInstanceOf[LazyTProtocol]) {
       decodeInternal(_iprot, true)
-    } else if (_iprot.isInstanceOf[AdaptTProtocol]) {
-      adaptiveDecode(_iprot.asInstanceOf[AdaptTProtocol])
     } else {
       decodeInternal(_iprot, false)
     }
@@ -209,6 +206,7 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
 
   private[this] def decodeInternal(_iprot: TProtocol, lazily: Boolean): Response = {
     var statusCode: Int = 0
+    var responseUnionOffset: Int = -1
     var responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = null
 
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
@@ -228,7 +226,10 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
             statusCode = _iprot.readI32()
           case 2 =>
             _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "responseUnion")
-            responseUnion = com.twitter.scrooge.test.gold.thriftscala.ResponseUnion.decode(_iprot)
+            if (lazily)
+              responseUnionOffset = _iprot.asInstanceOf[LazyTProtocol].offsetSkipStruct()
+            else
+              responseUnion = com.twitter.scrooge.test.gold.thriftscala.ResponseUnion.decode(_iprot)
           case _ =>
             _passthroughFields = _root_.com.twitter.scrooge.internal.TProtocols.readPassthroughField(_iprot, _field, _passthroughFields)
         }
@@ -249,7 +250,7 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
         _start_offset,
         _lazyProt.offset,
         statusCode,
-        responseUnion,
+        responseUnionOffset,
         _passthroughFieldsResult
       )
     } else {
@@ -261,6 +262,74 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
     }
   }
 
+  /**
+   * Decodes the fields included by `_mask`, see [[_root_.com.twitter.scrooge.FieldMask]].
+   */
+  override def decode(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Response =
+    if (_mask.includesAll) {
+      decode(_iprot)
+    } else {
+      val _item = decodeMasked(_iprot, _mask)
+      if (_mask.isStrict) new MaskedImmutable(_item, _mask) else _item
+    }
+
+  private[this] def decodeMasked(_iprot: TProtocol, _mask: _root_.com.twitter.scrooge.FieldMask): Response = {
+    var statusCode: Int = 0
+    var responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = null
+    var _done = false
+
+    _iprot.readStructBegin()
+    do {
+      val _field = _iprot.readFieldBegin()
+      val _fieldType = _field.`type`
+      if (_fieldType == TType.STOP) {
+        _done = true
+      } else {
+        if (!_mask.contains(_field.id)) {
+          _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+        } else {
+          _field.id match {
+            case 1 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.I32, _fieldType, "statusCode")
+              statusCode = _iprot.readI32()
+            case 2 =>
+              _root_.com.twitter.scrooge.internal.TProtocols.validateFieldType(TType.STRUCT, _fieldType, "responseUnion")
+              responseUnion = com.twitter.scrooge.test.gold.thriftscala.ResponseUnion.decode(_iprot, _mask.nested(2))
+            case _ =>
+              _root_.com.twitter.scrooge.internal.TProtocols.skipField(_iprot, _fieldType)
+          }
+        }
+        _iprot.readFieldEnd()
+      }
+    } while (!_done)
+    _iprot.readStructEnd()
+
+
+    new Immutable(
+      statusCode,
+      responseUnion,
+      _root_.com.twitter.scrooge.internal.TProtocols.NoPassthroughFields
+    )
+  }
+
+  /**
+   * A struct decoded with a strict FieldMask, which throws on access to the
+   * fields which were not decoded.
+   */
+  private[this] class MaskedImmutable(_underlying: Response, _mask: _root_.com.twitter.scrooge.FieldMask) extends Response {
+    override def statusCode: Int = {
+      if (!_mask.contains(1)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Response", "statusCode")
+      _underlying.statusCode
+    }
+    override def responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = {
+      if (!_mask.contains(2)) throw new _root_.com.twitter.scrooge.MaskedFieldException("Response", "responseUnion")
+      _underlying.responseUnion
+    }
+    override def write(_oprot: TProtocol): Unit = _underlying.write(_oprot)
+
+    override def _passthroughFields: immutable$Map[Short, TFieldBlob] = _underlying._passthroughFields
+  }
+
   def apply(
     statusCode: Int,
     responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion
@@ -301,27 +370,58 @@ object Response extends ValidatingThriftStructCodec3[Response] with StructBuilde
   }
 
   /**
-   * This is another Immutable, this however keeps strings as lazy values that are lazily decoded from the backing
-   * array byte on read.
+   * This is another Immutable, this however keeps strings, binaries, nested structs and containers as lazy values
+   * that are lazily decoded from the backing array byte on read.
    */
   private[this] class LazyImmutable(
-      _proto: LazyTProtocol,
-      _buf: Array[Byte],
-      _start_offset: Int,
-      _end_offset: Int,
+      private val _proto: LazyTProtocol,
+      private val _buf: Array[Byte],
+      private val _start_offset: Int,
+      private val _end_offset: Int,
       val statusCode: Int,
-      val responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion,
+      responseUnionOffset: Int,
       override val _passthroughFields: immutable$Map[Short, TFieldBlob])
     extends Response {
 
+    private[this] var _serializedSize: Int = 0
+
     override def write(_oprot: TProtocol): Unit = {
-      if (_oprot.isInstanceOf[LazyTProtocol]) {
+      if (_oprot.isInstanceOf[LazyTProtocol] && _oprot.asInstanceOf[LazyTProtocol].canWriteRawFrom(_proto)) {
         _oprot.asInstanceOf[LazyTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+      } else if (_oprot.isInstanceOf[TSizeProtocol]) {
+        val _sizes = _oprot.asInstanceOf[TSizeProtocol]
+        if (_sizes.canWriteRawFrom(_proto)) {
+          _sizes.writeRaw(_end_offset - _start_offset)
+        } else {
+          _serializedSize = _sizes.writeCachedStruct(_serializedSize)(super.write(_sizes))
+        }
       } else {
         super.write(_oprot)
       }
     }
 
+    lazy val responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion =
+      if (responseUnionOffset == -1)
+        null
+      else {
+        val _iprot = _proto.readerAt(_buf, responseUnionOffset, _end_offset - responseUnionOffset)
+        com.twitter.scrooge.test.gold.thriftscala.ResponseUnion.decode(_iprot)
+      }
+
+    /**
+     * Structs decoded from the same bytes are equal without decoding their fields.
+     * Encodings are not canonical, so when the bytes differ the fields are compared,
+     * and the hash code is still computed from the fields.
+     */
+    override def equals(other: Any): Boolean = other match {
+      case that: LazyImmutable
+          if _root_.com.twitter.scrooge.internal.EncodedBytes.sameEncoding(
+            _proto, _buf, _start_offset, _end_offset,
+            that._proto, that._buf, that._start_offset, that._end_offset) =>
+        true
+      case _ =>
+        super.equals(other)
+    }
 
     /**
      * Override the super hash code to make it a lazy val rather than def.
@@ -559,18 +659,23 @@ private[thriftscala] class ResponseStructBuilder(instance: _root_.scala.Option[R
   }
 }
 
-private class Response__AdaptDecoder {
+private class Response__AdaptDecoder(accessRecorder: AccessRecorder) extends Decoder[Response] {
 
+  def apply(_iprot: AdaptTProtocol): Response = decode(_iprot)
+
+  // This method gets pruned and reloaded at runtime.
   def decode(_iprot: AdaptTProtocol): Response = {
     import Response._
     var _passthroughFields: Builder[(Short, TFieldBlob), immutable$Map[Short, TFieldBlob]] = null
     var _done = false
     val _start_offset = _iprot.offset
+    var _skipped_bytes = 0
 
     val adapt = new Response__Adapt(
       _iprot,
       _iprot.buffer,
-      _start_offset)
+      _start_offset,
+      accessRecorder)
 
     AdaptTProtocol.usedStartMarker(1)
     var statusCode: Int = 0
@@ -594,7 +699,9 @@ private class Response__AdaptDecoder {
               statusCode = _iprot.readI32()
               AdaptTProtocol.usedEndMarker(1)
               AdaptTProtocol.unusedStartMarker(1)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipI32()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(1)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -610,10 +717,12 @@ private class Response__AdaptDecoder {
           case 2 => {
             if (_fieldType == TType.STRUCT) {
               AdaptTProtocol.usedStartMarker(2)
-              responseUnion = com.twitter.scrooge.test.gold.thriftscala.ResponseUnion.decode(_iprot)
+              responseUnion = ResponseUnionFieldAdaptDecoder.decode(_iprot, com.twitter.scrooge.test.gold.thriftscala.ResponseUnion)
               AdaptTProtocol.usedEndMarker(2)
               AdaptTProtocol.unusedStartMarker(2)
+              _skipped_bytes -= _iprot.offset
               _iprot.offsetSkipStruct()
+              _skipped_bytes += _iprot.offset
               AdaptTProtocol.unusedEndMarker(2)
             } else {
               throw AdaptTProtocol.unexpectedTypeException(
@@ -640,6 +749,7 @@ private class Response__AdaptDecoder {
     if (_passthroughFields ne null) {
       adapt.set__passthroughFields(_passthroughFields.result())
     }
+    accessRecorder.structDecoded(_iprot.offset - _start_offset, _skipped_bytes)
     adapt
   }
 }
@@ -651,30 +761,40 @@ private class Response__AdaptDecoder {
 private class Response__Adapt(
     _proto: AdaptTProtocol,
     _buf: Array[Byte],
-    _start_offset: Int) extends Response {
+    _start_offset: Int,
+    _accessRecorder: AccessRecorder) extends Response {
 
   /**
    * In case any unexpected field is accessed, fallback to eager decoding.
    */
   private[this] lazy val delegate: Response = {
-    val bytes = _root_.java.util.Arrays.copyOfRange(_buf, _start_offset, _end_offset)
-    val proto = _proto.withBytes(bytes)
+    val proto = _proto.withBytes(_buf, _start_offset, _end_offset - _start_offset)
     Response.eagerDecode(proto)
   }
 
+  // Only approximately once per struct, racing threads may both report it.
+  private[this] var _delegated: Boolean = false
+  private[this] def delegateFor(fieldId: Short): Response = {
+    if (!_delegated) {
+      _delegated = true
+      _accessRecorder.unusedFieldAccessed(fieldId)
+    }
+    delegate
+  }
+
   private[this] var m_statusCode: Int = _
   def set_statusCode(statusCode: Int): Unit = m_statusCode = statusCode
   // This will be removed by ASM if field is unused.
   def statusCode: Int = m_statusCode
   // This will be removed by ASM if field is used otherwise renamed to statusCode.
-  def delegated_statusCode: Int = delegate.statusCode
+  def delegated_statusCode: Int = delegateFor(1).statusCode
 
   private[this] var m_responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = _
   def set_responseUnion(responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion): Unit = m_responseUnion = responseUnion
   // This will be removed by ASM if field is unused.
   def responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = m_responseUnion
   // This will be removed by ASM if field is used otherwise renamed to responseUnion.
-  def delegated_responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = delegate.responseUnion
+  def delegated_responseUnion: com.twitter.scrooge.test.gold.thriftscala.ResponseUnion = delegateFor(2).responseUnion
 
 
   private[this] var _end_offset: Int = _
@@ -700,8 +820,11 @@ private class Response__Adapt(
   override lazy val hashCode: Int = super.hashCode
 
   override def write(_oprot: TProtocol): Unit = {
-    if (_oprot.isInstanceOf[AdaptTProtocol]) {
+    if (_oprot.isInstanceOf[AdaptTProtocol] && _oprot.asInstanceOf[AdaptTProtocol].canWriteRawFrom(_proto)) {
       _oprot.asInstanceOf[AdaptTProtocol].writeRaw(_buf, _start_offset, _end_offset - _start_offset)
+    } else if (_oprot.isInstanceOf[TSizeProtocol] && _oprot.asInstanceOf[TSizeProtocol].countedProtocol.exists(_.isInstanceOf[AdaptTProtocol]) &&
+      _oprot.asInstanceOf[TSizeProtocol].canWriteRawFrom(_proto)) {
+      _oprot.asInstanceOf[TSizeProtocol].writeRaw(_end_offset - _start_offset)
     } else {
       super.write(_oprot)
     }
@@ -3,6 +3,7 @@ package com.twitter.scrooge.backend
 import com.twitter.conversions.DurationOps._
 import com.twitter.finagle.Service
 import com.twitter.finagle.SourcedException
+import com.twitter.scrooge.backend.primitive.thriftscala.PrimitiveCollections
 import com.twitter.scrooge.backend.thriftscala.ConstructorRequiredStruct
 import com.twitter.scrooge.backend.thriftscala.ConstructorRequiredStructPackageProtected
 import com.twitter.scrooge.backend.thriftscala.DeepValidationStruct
@@ -15,6 +16,13 @@ import com.twitter.scrooge.ast.ListType
 import com.twitter.scrooge.ast.TString
 import com.twitter.scrooge.frontend.ResolvedDocument
 import com.twitter.scrooge.frontend.TypeResolver
+import com.twitter.scrooge.internal.DoubleArraySeq
+import com.twitter.scrooge.internal.DoubleHashSet
+import com.twitter.scrooge.internal.IntArraySeq
+import com.twitter.scrooge.internal.IntHashSet
+import com.twitter.scrooge.internal.LongArraySeq
+import com.twitter.scrooge.internal.LongHashSet
+import com.twitter.scrooge.internal.PrimitiveArraySeq
 import com.twitter.scrooge.mustache.HandlebarLoader
 import com.twitter.scrooge.validation.MissingConstructionRequiredField
 import com.twitter.scrooge.validation.MissingRequiredField
@@ -1839,5 +1847,36 @@ class ScalaGeneratorSpec extends JMockSpec with EvalHelper {
         val generatedList = scalaGenerator.genType(ListType(TString, None))
         assert(generatedList.data == "_root_.scala.collection.immutable.Seq[String]")
     }
+
+    "read and write numeric lists and sets without boxing when passing in `primitive-collections` as a parameter to `language-flag`" in {
+      _ =>
+        val struct = PrimitiveCollections(
+          intList = Seq(1, -2, 3),
+          intSet = Set(0, 4, Int.MinValue),
+          longList = Seq(Long.MaxValue, 0L),
+          longSet = Set(5L, -5L),
+          doubleList = Seq(1.5, -0.0),
+          doubleSet = Set(0.0, 2.5),
+          optionalLongList = Some(Seq(7L)),
+          stringList = Seq("a", "b")
+        )
+        val buffer = new TMemoryBuffer(256)
+        PrimitiveCollections.encode(struct, new TBinaryProtocol(buffer))
+        val decoded = PrimitiveCollections.decode(new TBinaryProtocol(buffer))
+
+        decoded must be(struct)
+        assert(decoded.intList.isInstanceOf[IntArraySeq])
+        assert(decoded.intSet.isInstanceOf[IntHashSet])
+        assert(decoded.longList.isInstanceOf[LongArraySeq])
+        assert(decoded.longSet.isInstanceOf[LongHashSet])
+        assert(decoded.doubleList.isInstanceOf[DoubleArraySeq])
+        assert(decoded.doubleSet.isInstanceOf[DoubleHashSet])
+        assert(decoded.optionalLongList.get.isInstanceOf[LongArraySeq])
+        assert(!decoded.stringList.isInstanceOf[PrimitiveArraySeq[_]])
+
+        val reencoded = new TMemoryBuffer(256)
+        PrimitiveCollections.encode(decoded, new TBinaryProtocol(reencoded))
+        PrimitiveCollections.decode(new TBinaryProtocol(reencoded)) must be(struct)
+    }
   }
 }
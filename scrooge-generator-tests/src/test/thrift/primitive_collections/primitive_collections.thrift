@@ -0,0 +1,12 @@
+#@namespace scala com.twitter.scrooge.backend.primitive.thriftscala
+
+struct PrimitiveCollections {
+  1: list<i32> intList
+  2: set<i32> intSet
+  3: list<i64> longList
+  4: set<i64> longSet
+  5: list<double> doubleList
+  6: set<double> doubleSet
+  7: optional list<i64> optionalLongList
+  8: list<string> stringList
+}
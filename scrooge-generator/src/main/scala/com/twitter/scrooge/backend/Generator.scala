@@ -306,7 +306,8 @@ abstract class TemplateGenerator(val resolvedDoc: ResolvedDocument)
   def isLazyReadEnabled(t: FunctionType, optional: Boolean): Boolean = {
     t match {
       case at: AnnotatedFieldType => isLazyReadEnabled(at.unwrap, optional)
-      case TString => true
+      case TString | TBinary => true
+      case _: StructType | _: ContainerType => true
       case Void | TBool | TByte | TI16 | TI32 | TI64 | TDouble => optional
       case _ => false
     }
@@ -523,6 +524,10 @@ abstract class TemplateGenerator(val resolvedDoc: ResolvedDocument)
       case TDouble => "offsetSkipDouble"
       case TString => "offsetSkipString"
       case TBinary => "offsetSkipBinary"
+      case _: StructType => "offsetSkipStruct"
+      case _: ListType => "offsetSkipList"
+      case _: SetType => "offsetSkipSet"
+      case _: MapType => "offsetSkipMap"
       case x =>
         s"""Invalid type passed($x) for genOffsetSkipProtocolMethod method. Compile will fail here."""
     }
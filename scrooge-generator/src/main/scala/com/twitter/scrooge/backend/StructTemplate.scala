@@ -38,6 +38,107 @@ trait StructTemplate { self: TemplateGenerator =>
 
   private val rootProtos = "_root_.com.twitter.scrooge.internal.TProtocols()"
 
+  private val MemoizeEncodedBytesAnnotation = "com.twitter.scrooge.scala.memoizeEncodedBytes"
+
+  /**
+   * With the "primitive-collections" language flag, lists and sets of
+   * i32, i64 and double are read into unboxed arrays and hash tables
+   * and written without a per element function.
+   *
+   * Returns the name of the `TProtocols` methods for such an element type.
+   */
+  @scala.annotation.tailrec
+  private[this] def primitiveCollectionName(eltType: FieldType): Option[String] =
+    eltType match {
+      case _ if !languageFlags.contains("primitive-collections") => None
+      case at: AnnotatedFieldType => primitiveCollectionName(at.unwrap)
+      case TI32 => Some("I32")
+      case TI64 => Some("I64")
+      case TDouble => Some("Double")
+      case _ => None
+    }
+
+  // Whether a field of type `t` holds a value which can't change, so that the
+  // serialized size of a struct made of such fields can be cached.
+  private[this] def isImmutableValue(t: FieldType): Boolean =
+    t match {
+      case at: AnnotatedFieldType => isImmutableValue(at.unwrap)
+      case TBool | TByte | TI16 | TI32 | TI64 | TDouble | TString => true
+      case _: EnumType => true
+      case _ => false
+    }
+
+  private[this] def isContainer(t: FieldType): Boolean =
+    unwrapAnnotated(t).isInstanceOf[ContainerType]
+
+  @scala.annotation.tailrec
+  private[this] def unwrapAnnotated(t: FieldType): FieldType =
+    t match {
+      case at: AnnotatedFieldType => unwrapAnnotated(at.unwrap)
+      case _ => t
+    }
+
+  // The struct decoded from a field of type `t` by the adaptive decoder of
+  // its parent, or with the field's nested FieldMask, either the field's
+  // value or the elements of a list or a set.
+  private[this] def nestedStructType(t: FieldType): Option[StructType] = {
+    def struct(t: FieldType): Option[StructType] =
+      unwrapAnnotated(t) match {
+        case st: StructType => Some(st)
+        case _ => None
+      }
+    unwrapAnnotated(t) match {
+      case ListType(eltType, _) => struct(eltType)
+      case SetType(eltType, _) => struct(eltType)
+      case other => struct(other)
+    }
+  }
+
+  /**
+   * Generates the code reading a field in the adaptive decoder. Nested
+   * structs are decoded by the adaptive decoder the parent keeps for the
+   * field, named `adaptDecoderName`.
+   */
+  private[this] def genAdaptReadValue(field: Field, adaptDecoderName: CodeFragment): CodeFragment =
+    nestedStructType(field.fieldType) match {
+      case Some(st) =>
+        def decode(proto: String): String =
+          s"${adaptDecoderName.toData}.decode($proto, ${genType(st).toData})"
+        val readElement = decode("proto.asInstanceOf[AdaptTProtocol]")
+        unwrapAnnotated(field.fieldType) match {
+          case _: ListType =>
+            v(s"_root_.com.twitter.scrooge.internal.TProtocols().readList(_iprot, proto => $readElement)")
+          case _: SetType =>
+            v(s"_root_.com.twitter.scrooge.internal.TProtocols().readSet(_iprot, proto => $readElement)")
+          case _ =>
+            v(decode("_iprot"))
+        }
+      case None =>
+        genReadValueOrMethod(field.sid, field.fieldType, "_iprot")
+    }
+
+  /**
+   * Generates the code reading a field included by the FieldMask `_mask`.
+   * Nested structs are decoded with the field's own mask.
+   */
+  private[this] def genMaskReadValue(field: Field): CodeFragment =
+    nestedStructType(field.fieldType) match {
+      case Some(st) =>
+        val nestedMask = s"_mask.nested(${field.index})"
+        def decode(proto: String, mask: String): String =
+          s"${genType(st).toData}.decode($proto, $mask)"
+        unwrapAnnotated(field.fieldType) match {
+          case _: ListType =>
+            v(s"{ val _nested = $nestedMask; _root_.com.twitter.scrooge.internal.TProtocols().readList(_iprot, proto => ${decode("proto", "_nested")}) }")
+          case _: SetType =>
+            v(s"{ val _nested = $nestedMask; _root_.com.twitter.scrooge.internal.TProtocols().readSet(_iprot, proto => ${decode("proto", "_nested")}) }")
+          case _ =>
+            v(decode("_iprot", nestedMask))
+        }
+      case None =>
+        genReadValueOrMethod(field.sid, field.fieldType, "_iprot")
+    }
+
   def genWireConstType(t: FunctionType): CodeFragment = t match {
     case _: EnumType => v("I32")
     case _ => genConstType(t)
@@ -169,6 +270,10 @@ trait StructTemplate { self: TemplateGenerator =>
       case TBinary => v(s"$protoName.readBinary()")
       case _: StructType => genType(fieldType).append(s".decode($protoName)")
       case _: EnumType => genType(fieldType).append(s".getOrUnknown($protoName.readI32())")
+      case t: SetType if primitiveCollectionName(t.eltType).isDefined =>
+        v(s"$rootProtos.read${primitiveCollectionName(t.eltType).get}Set($protoName)")
+      case t: ListType if primitiveCollectionName(t.eltType).isDefined =>
+        v(s"$rootProtos.read${primitiveCollectionName(t.eltType).get}List($protoName)")
       case t: SetType =>
         val readElement = genReadValueFn1(t.eltType)
         v(s"$rootProtos.readSet($protoName, $readElement)")
@@ -301,6 +406,10 @@ trait StructTemplate { self: TemplateGenerator =>
         v(s"$protoName.writeI32($fieldName.value)")
       case _: StructType =>
         v(s"$fieldName.write($protoName)")
+      case t: SetType if primitiveCollectionName(t.eltType).isDefined =>
+        v(s"$rootProtos.write${primitiveCollectionName(t.eltType).get}Set($protoName, $fieldName)")
+      case t: ListType if primitiveCollectionName(t.eltType).isDefined =>
+        v(s"$rootProtos.write${primitiveCollectionName(t.eltType).get}List($protoName, $fieldName)")
       case t: SetType =>
         val elemFieldType = s"TType.${genConstType(t.eltType)}"
         val writeElement = genWriteValueFn2(t.eltType)
@@ -336,6 +445,47 @@ trait StructTemplate { self: TemplateGenerator =>
     }
   }
 
+  /**
+   * Generates the type of the `writeStreaming` parameter for a container
+   * field, a ContainerSource of its elements or entries.
+   */
+  private[this] def genContainerSourceType(fieldType: FieldType): CodeFragment = {
+    val elementType = unwrapAnnotated(fieldType) match {
+      case ListType(eltType, _) => genType(eltType).toData
+      case SetType(eltType, _) => genType(eltType).toData
+      case MapType(keyType, valueType, _) =>
+        s"(${genType(keyType).toData}, ${genType(valueType).toData})"
+      case _ => throw new IllegalArgumentException(s"Not a container: $fieldType")
+    }
+    v(s"_root_.com.twitter.scrooge.ContainerSource[$elementType]")
+  }
+
+  /**
+   * Generates the code writing a container field of `writeStreaming` from
+   * its ContainerSource.
+   */
+  private[this] def genWriteSourceValue(field: Field): CodeFragment = {
+    val source =
+      if (field.requiredness.isOptional) s"${genID(field.sid)}.get" else genID(field.sid).toData
+    unwrapAnnotated(field.fieldType) match {
+      case t: ListType =>
+        val elemType = s"TType.${genConstType(t.eltType)}"
+        val writeElement = genWriteValueFn2(t.eltType)
+        v(s"$rootProtos.writeListSource(_oprot, $source, $elemType, $writeElement)")
+      case t: SetType =>
+        val elemType = s"TType.${genConstType(t.eltType)}"
+        val writeElement = genWriteValueFn2(t.eltType)
+        v(s"$rootProtos.writeSetSource(_oprot, $source, $elemType, $writeElement)")
+      case t: MapType =>
+        val keyType = s"TType.${genConstType(t.keyType)}"
+        val valType = s"TType.${genConstType(t.valueType)}"
+        val writeKey = genWriteValueFn2(t.keyType)
+        val writeVal = genWriteValueFn2(t.valueType)
+        v(s"$rootProtos.writeMapSource(_oprot, $source, $keyType, $writeKey, $valType, $writeVal)")
+      case _ => throw new IllegalArgumentException(s"Not a container: ${field.fieldType}")
+    }
+  }
+
   def fieldsToDict(
     fields: Seq[Field],
     blacklist: Seq[String],
@@ -350,6 +500,7 @@ trait StructTemplate { self: TemplateGenerator =>
             genID(field.sid.toCamelCase)
           else
             NoValue
+        val adaptDecoderName = genID(field.sid.toTitleCase.append("FieldAdaptDecoder"))
 
         Dictionary(
           "index" -> v(index.toString),
@@ -379,6 +530,10 @@ trait StructTemplate { self: TemplateGenerator =>
           "isLazyReadEnabled" -> v(
             isLazyReadEnabled(field.fieldType, field.requiredness.isOptional)
           ),
+          "isLazyReadFromProtocol" -> v(unwrapAnnotated(field.fieldType) match {
+            case _: StructType | _: ContainerType => true
+            case _ => false
+          }),
           "primitiveFieldType" -> genPrimitiveType(field.fieldType),
           "fieldType" -> genType(field.fieldType),
           "fieldKeyType" -> v(field.fieldType match {
@@ -413,6 +568,11 @@ trait StructTemplate { self: TemplateGenerator =>
           },
           "isEnum" -> v(field.fieldType.isInstanceOf[EnumType]),
           "isStruct" -> v(field.fieldType.isInstanceOf[StructType]),
+          "isContainer" -> v(isContainer(field.fieldType)),
+          "containerSourceType" ->
+            (if (isContainer(field.fieldType)) genContainerSourceType(field.fieldType) else NoValue),
+          "writeSourceValue" ->
+            (if (isContainer(field.fieldType)) genWriteSourceValue(field) else NoValue),
           // "qualifiedFieldType" is used to generate qualified type name even if it's not
           // imported, in case other same-named entities are generated in the same file.
           "qualifiedFieldType" -> v(templates("qualifiedFieldType")),
@@ -461,6 +621,12 @@ trait StructTemplate { self: TemplateGenerator =>
           },
           "readFieldValue" -> genReadValue(field.fieldType, "_iprot"),
           "readFieldValueOrMethod" -> genReadValueOrMethod(field.sid, field.fieldType, "_iprot"),
+          "adaptNestedStruct" -> v(nestedStructType(field.fieldType).toList.map { st =>
+            Dictionary("nestedStructType" -> genType(st))
+          }),
+          "adaptDecoderName" -> adaptDecoderName,
+          "adaptReadFieldValue" -> genAdaptReadValue(field, adaptDecoderName),
+          "maskReadFieldValue" -> genMaskReadValue(field),
           "readFieldValueName" -> genID(field.sid.toTitleCase.prepend("read").append("Value")),
           "writeFieldName" -> genID(field.sid.toTitleCase.prepend("write").append("Field")),
           "writeFieldValueName" -> genID(field.sid.toTitleCase.prepend("write").append("Value")),
@@ -476,6 +642,7 @@ trait StructTemplate { self: TemplateGenerator =>
           "readUnionField" -> v(templates("readUnionField")),
           "readLazyField" -> v(templates("readLazyField")),
           "readAdaptField" -> v(templates("readAdaptField")),
+          "readMaskedField" -> v(templates("readMaskedField")),
           "readValue" -> v(templates("readValue")),
           "skipValue" -> v(templates("skipValue")),
           "writeField" -> v(templates("writeField")),
@@ -615,6 +782,19 @@ trait StructTemplate { self: TemplateGenerator =>
 
   private def basename(fqdn: String): String = fqdn.split('.').last
 
+  // The bound on the encodings kept by structs annotated with
+  // `(com.twitter.scrooge.scala.memoizeEncodedBytes = "<max bytes>")`, "true" for the default.
+  private[this] def genMemoizedEncodingMaxBytes(struct: StructLike): Option[String] =
+    struct.annotations.get(MemoizeEncodedBytesAnnotation).map {
+      case "true" => "_root_.com.twitter.scrooge.internal.MemoizedEncoding.DefaultMaxBytes"
+      case value =>
+        scala.util.Try(value.toInt).toOption.filter(_ > 0).map(_.toString).getOrElse {
+            throw new IllegalArgumentException(
+              s"$MemoizeEncodedBytesAnnotation of ${struct.originalName} must be \"true\" " +
+                s"or a positive number of bytes, not \"$value\"")
+          }
+    }
+
   def structDict(
     struct: StructLike,
     namespace: Option[Identifier],
@@ -671,6 +851,9 @@ trait StructTemplate { self: TemplateGenerator =>
 
     val structName = if (toplevel) genID(struct.sid.toTitleCase) else genID(struct.sid)
 
+    val cachesSerializedSize = struct.fields.forall(f => isImmutableValue(f.fieldType))
+    val memoizedEncodingMaxBytes = genMemoizedEncodingMaxBytes(struct)
+
     val pkg = namespace.map(genID).getOrElse(v(""))
     val pkgName = v(basename(pkg.toData))
     val thriftValidator = validator match {
@@ -720,6 +903,11 @@ trait StructTemplate { self: TemplateGenerator =>
       "arity1ThroughN" -> v(arity >= 1 && arity <= 22),
       "withFieldGettersAndSetters" -> v(isStruct || isException),
       "withTrait" -> v(isStruct),
+      "hasContainerFields" -> v(struct.fields.exists(f => isContainer(f.fieldType))),
+      "cachesSerializedSize" -> v(cachesSerializedSize),
+      "memoizesEncoding" -> v(memoizedEncodingMaxBytes.isDefined),
+      "memoizedEncodingMaxBytes" -> v(memoizedEncodingMaxBytes.getOrElse("")),
+      "overridesImmutableWrite" -> v(cachesSerializedSize || memoizedEncodingMaxBytes.isDefined),
       "adapt" -> v(genAdapt),
       "hasFailureFlags" -> v(isException && serviceOptions.contains(WithFinagle)),
       "structAnnotations" -> TemplateGenerator.renderPairs(struct.annotations),
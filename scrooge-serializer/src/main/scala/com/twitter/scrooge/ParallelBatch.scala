@@ -0,0 +1,87 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.internal.ForkJoinRanges
+import java.util.Spliterator
+import java.util.concurrent.ForkJoinPool
+import java.util.function.Consumer
+
+/**
+ * Runs the batch methods of [[ThriftStructSerializer]] on a ForkJoinPool,
+ * see [[ForkJoinRanges]] for how batches are split. Each element is written
+ * to its own index, which keeps results in input order, and each range of
+ * elements is mapped by its own function, which may reuse a protocol.
+ */
+private[scrooge] object ParallelBatch {
+
+  // Batches smaller than this are processed by the calling thread.
+  private val MinParallelSize = 32
+
+  // Number of elements per worker read ahead by the iterator methods.
+  private val IteratorElementsPerWorker = 256
+
+  /**
+   * Calls a function with every index from 0 until `size` on `pool`,
+   * returning once all calls are done. The function is made by `newF` once
+   * per range of indices run by a worker, so it may keep state across the
+   * range. The first exception thrown is rethrown.
+   */
+  def foreachIndex(size: Int, pool: ForkJoinPool)(newF: () => Int => Unit): Unit =
+    ForkJoinRanges.foreachRange(size, pool, MinParallelSize) { (lo, hi) =>
+      val f = newF()
+      var i = lo
+      while (i < hi) {
+        f(i)
+        i += 1
+      }
+    }
+
+  /**
+   * Maps `in` on `pool`, a group of elements at a time, in order. The mapping
+   * functions are made by `newF` like those of `foreachIndex`.
+   */
+  def mapIterator[A, B](in: Iterator[A], pool: ForkJoinPool)(newF: () => A => B): Iterator[B] = {
+    val groupSize = pool.getParallelism * IteratorElementsPerWorker
+    in.grouped(groupSize).flatMap { group =>
+      val inputs = group.toIndexedSeq
+      val outputs = new Array[Any](inputs.size)
+      foreachIndex(inputs.size, pool) { () =>
+        val f = newF()
+        i => outputs(i) = f(inputs(i))
+      }
+      outputs.iterator.map(_.asInstanceOf[B])
+    }
+  }
+
+  /**
+   * A Spliterator mapping the elements of `underlying`, splitting like
+   * `underlying` does. Each split makes its mapping function with `newF`,
+   * as it is traversed by one thread at a time.
+   */
+  final class MappedSpliterator[A, B](underlying: Spliterator[A], newF: () => A => B)
+      extends Spliterator[B] {
+
+    private[this] lazy val f: A => B = newF()
+
+    private[this] def mapped(action: Consumer[_ >: B]): Consumer[A] =
+      new Consumer[A] {
+        def accept(a: A): Unit = action.accept(f(a))
+      }
+
+    def tryAdvance(action: Consumer[_ >: B]): Boolean = underlying.tryAdvance(mapped(action))
+
+    override def forEachRemaining(action: Consumer[_ >: B]): Unit =
+      underlying.forEachRemaining(mapped(action))
+
+    def trySplit(): Spliterator[B] = {
+      val prefix = underlying.trySplit()
+      if (prefix == null) null else new MappedSpliterator(prefix, newF)
+    }
+
+    def estimateSize(): Long = underlying.estimateSize()
+
+    def characteristics(): Int =
+      underlying.characteristics &
+        (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED) |
+        Spliterator.NONNULL
+  }
+}
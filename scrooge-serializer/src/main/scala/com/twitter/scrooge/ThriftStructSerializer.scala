@@ -1,13 +1,22 @@
 package com.twitter.scrooge
 
 import com.twitter.app.GlobalFlag
+import com.twitter.io.Buf
+import com.twitter.scrooge.internal.ArrayWrapping
 import com.twitter.util.Base64StringEncoder
 import com.twitter.util.StringEncoder
 import java.io.ByteArrayInputStream
 import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.WritableByteChannel
+import java.nio.charset.StandardCharsets
+import java.util.Spliterator
+import java.util.concurrent.ForkJoinPool
 import java.util.concurrent.atomic.AtomicLong
 import org.apache.thrift.protocol._
 import org.apache.thrift.transport.TIOStreamTransport
+import org.apache.thrift.transport.TMemoryInputTransport
 
 object maxReusableBufferSize
     extends GlobalFlag[Int](
@@ -23,11 +32,58 @@ private object ThriftStructSerializer {
 
   private val maxRBS = maxReusableBufferSize()
 
-  val reusableTransport: ThreadLocal[TReusableMemoryTransport] =
-    new ThreadLocal[TReusableMemoryTransport] {
-      override def initialValue(): TReusableMemoryTransport =
-        TReusableMemoryTransport(maxRBS)
+  val reusableTransport: ReusablePool[TReusableMemoryTransport] =
+    ReusablePool(() => TReusableMemoryTransport(maxRBS), _.currentCapacity > maxRBS)
+
+  /**
+   * A TBinaryProtocol reading one array at a time from `transport`, which
+   * limits string and binary sizes to the length of the array like the
+   * per-array factory of `BinaryThriftStructSerializer.fromBytes`.
+   */
+  final class ArrayBinaryProtocol(transport: TMemoryInputTransport)
+      extends TBinaryProtocol(transport) {
+    private[this] var lengthLimit: Int = 0
+
+    def setBytes(bytes: Array[Byte]): Unit = {
+      transport.reset(bytes)
+      lengthLimit = bytes.length
+      reset()
+    }
+
+    private[this] def readLength(): Int = {
+      val length = readI32()
+      if (length < 0)
+        throw new TProtocolException(TProtocolException.NEGATIVE_SIZE, "Negative length: " + length)
+      if (length > lengthLimit)
+        throw new TProtocolException(TProtocolException.SIZE_LIMIT, "Length exceeded max allowed: " + length)
+      length
+    }
+
+    override def readString(): String = {
+      val length = readLength()
+      if (transport.getBytesRemainingInBuffer >= length) {
+        val string = new String(
+          transport.getBuffer,
+          transport.getBufferPosition,
+          length,
+          StandardCharsets.UTF_8
+        )
+        transport.consumeBuffer(length)
+        string
+      } else {
+        new String(readFully(length), StandardCharsets.UTF_8)
+      }
     }
+
+    override def readBinary(): ByteBuffer =
+      ByteBuffer.wrap(readFully(readLength()))
+
+    private[this] def readFully(length: Int): Array[Byte] = {
+      val bytes = new Array[Byte](length)
+      transport.readAll(bytes, 0, length)
+      bytes
+    }
+  }
 }
 
 trait ThriftStructSerializer[T <: ThriftStruct] {
@@ -38,7 +94,7 @@ trait ThriftStructSerializer[T <: ThriftStruct] {
   def encoder: StringEncoder = Base64StringEncoder
 
   def toBytes(obj: T): Array[Byte] = {
-    val trans = reusableTransport.get()
+    val trans = reusableTransport.acquire()
     try {
       val proto = protocolFactory.getProtocol(trans)
       codec.encode(obj, proto)
@@ -48,22 +104,150 @@ trait ThriftStructSerializer[T <: ThriftStruct] {
     } finally {
       if (trans.currentCapacity > maxRBS) {
         transportTooBig.incrementAndGet()
-        reusableTransport.remove()
       } else {
         trans.reset()
       }
+      // oversized transports are dropped by the pool
+      reusableTransport.release(trans)
     }
   }
 
+  /**
+   * The number of bytes `toBytes(obj)` returns.
+   *
+   * @see [[ThriftStructCodec.serializedSize]]
+   */
+  def serializedSize(obj: T): Int = codec.serializedSize(obj, protocolFactory)
+
+  /**
+   * Encode `obj` to `out`.
+   */
+  def toOutputStream(obj: T, out: OutputStream): Unit = {
+    out.write(toBytes(obj))
+  }
+
+  /**
+   * Encode `obj` to the blocking `channel`.
+   */
+  def toChannel(obj: T, channel: WritableByteChannel): Unit = {
+    val bb = ByteBuffer.wrap(toBytes(obj))
+    while (bb.hasRemaining) channel.write(bb)
+  }
+
   def fromBytes(bytes: Array[Byte]): T = {
     fromInputStream(new ByteArrayInputStream(bytes))
   }
 
+  /**
+   * Decode `length` bytes of `bytes` starting at `offset`.
+   */
+  def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T = {
+    fromInputStream(new ByteArrayInputStream(bytes, offset, length))
+  }
+
+  /**
+   * Decode the remaining bytes of `buf`, its position is left untouched.
+   * Heap buffers are decoded in place.
+   */
+  def fromByteBuffer(buf: ByteBuffer): T = {
+    if (buf.hasArray) {
+      fromBytes(buf.array, buf.arrayOffset + buf.position(), buf.remaining)
+    } else {
+      val bytes = new Array[Byte](buf.remaining)
+      buf.duplicate().get(bytes)
+      fromBytes(bytes)
+    }
+  }
+
+  /**
+   * Decode `buf`. Bufs backed by a single array or heap ByteBuffer are
+   * decoded in place.
+   */
+  def fromBuf(buf: Buf): T = buf match {
+    case Buf.ByteArray.Owned(bytes, begin, end) => fromBytes(bytes, begin, end - begin)
+    case Buf.ByteBuffer.Owned(bb) => fromByteBuffer(bb)
+    case _ => fromBytes(Buf.ByteArray.Owned.extract(buf))
+  }
+
   def fromInputStream(stream: InputStream): T = {
     val proto = protocolFactory.getProtocol(new TIOStreamTransport(stream))
     codec.decode(proto)
   }
 
+  /**
+   * Makes a function decoding arrays like `fromBytes`, for the batch methods
+   * to decode the elements run in a row by a worker. The function may reuse
+   * its transport and protocol across calls, and is only called by one
+   * thread at a time.
+   */
+  protected def newBatchDecoder(): Array[Byte] => T = fromBytes(_: Array[Byte])
+
+  /**
+   * Decode each of `batch`, in parallel on `pool`. Results are in the order
+   * of `batch`.
+   */
+  def fromBytesBatch(
+    batch: Array[Array[Byte]],
+    pool: ForkJoinPool = ForkJoinPool.commonPool()
+  ): IndexedSeq[T] = {
+    val results = new Array[ThriftStruct](batch.length)
+    ParallelBatch.foreachIndex(batch.length, pool) { () =>
+      val decode = newBatchDecoder()
+      i => results(i) = decode(batch(i))
+    }
+    ArrayWrapping.unsafeWrap(results).asInstanceOf[IndexedSeq[T]]
+  }
+
+  /**
+   * Encode each of `batch`, in parallel on `pool`. Results are in the order
+   * of `batch`.
+   */
+  def toBytesBatch(
+    batch: collection.Seq[T],
+    pool: ForkJoinPool = ForkJoinPool.commonPool()
+  ): Array[Array[Byte]] = {
+    val objs = batch match {
+      case indexed: collection.IndexedSeq[T] => indexed
+      case _ => batch.toIndexedSeq
+    }
+    val results = new Array[Array[Byte]](objs.size)
+    ParallelBatch.foreachIndex(objs.size, pool) { () => i => results(i) = toBytes(objs(i)) }
+    results
+  }
+
+  /**
+   * Decode the elements of `in` in parallel on `pool`, reading ahead a
+   * group of elements per worker at a time. Results are in the order of `in`.
+   */
+  def fromBytesIterator(
+    in: Iterator[Array[Byte]],
+    pool: ForkJoinPool = ForkJoinPool.commonPool()
+  ): Iterator[T] =
+    ParallelBatch.mapIterator(in, pool)(() => newBatchDecoder())
+
+  /**
+   * Encode the elements of `in` in parallel on `pool`, reading ahead a
+   * group of elements per worker at a time. Results are in the order of `in`.
+   */
+  def toBytesIterator(
+    in: Iterator[T],
+    pool: ForkJoinPool = ForkJoinPool.commonPool()
+  ): Iterator[Array[Byte]] =
+    ParallelBatch.mapIterator(in, pool)(() => toBytes)
+
+  /**
+   * A Spliterator decoding the elements of `in`, for parallel streams, e.g.
+   * `StreamSupport.stream(serializer.fromBytesSpliterator(in), true)`.
+   */
+  def fromBytesSpliterator(in: Spliterator[Array[Byte]]): Spliterator[T] =
+    new ParallelBatch.MappedSpliterator(in, () => newBatchDecoder())
+
+  /**
+   * A Spliterator encoding the elements of `in`, for parallel streams.
+   */
+  def toBytesSpliterator(in: Spliterator[T]): Spliterator[Array[Byte]] =
+    new ParallelBatch.MappedSpliterator(in, () => toBytes)
+
   def toString(obj: T): String = {
     encoder.encode(toBytes(obj))
   }
@@ -84,6 +268,22 @@ trait BinaryThriftStructSerializer[T <: ThriftStruct] extends ThriftStructSerial
     codec.decode(proto)
   }
 
+  override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T = {
+    val stream = new ByteArrayInputStream(bytes, offset, length)
+    // create a new factory in order to limit the string/binary sizes
+    val factory = new TBinaryProtocol.Factory(length, -1)
+    val proto = factory.getProtocol(new TIOStreamTransport(stream))
+    codec.decode(proto)
+  }
+
+  override protected def newBatchDecoder(): Array[Byte] => T = {
+    val transport = new TMemoryInputTransport()
+    val proto = new ThriftStructSerializer.ArrayBinaryProtocol(transport)
+    bytes => {
+      proto.setBytes(bytes)
+      codec.decode(proto)
+    }
+  }
 }
 
 object BinaryThriftStructSerializer {
@@ -94,19 +294,36 @@ object BinaryThriftStructSerializer {
 }
 
 object LazyBinaryThriftStructSerializer {
-  private val reusuableProtocolAndTransport =
-    new ThreadLocal[(TArrayByteTransport, TLazyBinaryProtocol)] {
-      override def initialValue(): (TArrayByteTransport, TLazyBinaryProtocol) = {
-        val transport = new TArrayByteTransport
-        val proto = new TLazyBinaryProtocol(transport)
-        (transport, proto)
-      }
+  private val reusableProtocolAndTransport: ReusablePool[(TArrayByteTransport, TLazyBinaryProtocol)] =
+    ReusablePool { () =>
+      val transport = new TArrayByteTransport
+      val proto = new TLazyBinaryProtocol(transport)
+      (transport, proto)
     }
 
+  /**
+   * Hit, miss and oversize counters of the pool of protocols shared by
+   * all LazyBinaryThriftStructSerializers.
+   */
+  def poolStats: ReusablePool.Stats = reusableProtocolAndTransport.stats
+
   def apply[T <: ThriftStruct](_codec: ThriftStructCodec[T]): LazyBinaryThriftStructSerializer[T] =
     new LazyBinaryThriftStructSerializer[T] {
       def codec: ThriftStructCodec[T] = _codec
     }
+
+  /**
+   * A serializer decoding large lists of structs in parallel, see
+   * [[ParallelListDecoding]].
+   */
+  def apply[T <: ThriftStruct](
+    _codec: ThriftStructCodec[T],
+    _parallelListDecoding: ParallelListDecoding
+  ): LazyBinaryThriftStructSerializer[T] =
+    new LazyBinaryThriftStructSerializer[T] {
+      def codec: ThriftStructCodec[T] = _codec
+      override val parallelListDecoding: Option[ParallelListDecoding] = Some(_parallelListDecoding)
+    }
 }
 
 trait LazyBinaryThriftStructSerializer[T <: ThriftStruct] extends ThriftStructSerializer[T] {
@@ -116,23 +333,100 @@ trait LazyBinaryThriftStructSerializer[T <: ThriftStruct] extends ThriftStructSe
   // we provide the default if someone hits it to be the TBinaryProtocol which we are wire compatible with.
   override val protocolFactory: TBinaryProtocol.Factory = new TBinaryProtocol.Factory
 
-  override def toBytes(obj: T): Array[Byte] = {
-    val (transport, proto) = reusuableProtocolAndTransport.get()
-    transport.reset()
-    codec.encode(obj, proto)
-    transport.toByteArray
+  /**
+   * When set, large lists of structs are decoded in parallel, see
+   * [[ParallelListDecoding]].
+   */
+  def parallelListDecoding: Option[ParallelListDecoding] = None
+
+  // The protocols structs are decoded with, not shared with other serializers
+  // when they decode lists in parallel.
+  private[this] lazy val decodingProtocols: ReusablePool[(TArrayByteTransport, TLazyBinaryProtocol)] =
+    if (parallelListDecoding.isEmpty) reusableProtocolAndTransport
+    else
+      ReusablePool { () =>
+        val transport = new TArrayByteTransport
+        val proto = new TLazyBinaryProtocol(transport, parallelListDecoding)
+        (transport, proto)
+      }
+
+  // Encode obj with a pooled protocol and hand the transport to f before returning it to the pool.
+  // With exactSize, obj is written straight into an array of its serialized size.
+  private[this] def encodeTo[R](obj: T, exactSize: Boolean)(f: TArrayByteTransport => R): R = {
+    val protocolAndTransport = reusableProtocolAndTransport.acquire()
+    try {
+      val (transport, proto) = protocolAndTransport
+      if (exactSize) transport.reset(new Array[Byte](sizeOf(obj, proto)))
+      else transport.reset()
+      codec.encode(obj, proto)
+      f(transport)
+    } finally {
+      reusableProtocolAndTransport.release(protocolAndTransport)
+    }
   }
 
-  override def fromBytes(bytes: Array[Byte]): T = {
-    val (transport, proto) = reusuableProtocolAndTransport.get()
-    transport.setBytes(bytes)
-    codec.decode(proto)
+  private[this] def sizeOf(obj: T, proto: LazyTProtocol): Int = {
+    val sizes = TSizeProtocol(proto)
+    codec.encode(obj, sizes)
+    Math.toIntExact(sizes.size)
   }
 
+  // Decode from the bytes set up by setBytes with a pooled protocol.
+  private[this] def decodeFrom(setBytes: TArrayByteTransport => Unit): T = {
+    val protocolAndTransport = decodingProtocols.acquire()
+    try {
+      val (transport, proto) = protocolAndTransport
+      setBytes(transport)
+      codec.decode(proto)
+    } finally {
+      decodingProtocols.release(protocolAndTransport)
+    }
+  }
+
+  /**
+   * The number of bytes `toBytes(obj)` returns, lazily decoded structs
+   * count the bytes they were decoded from.
+   */
+  override def serializedSize(obj: T): Int = {
+    val protocolAndTransport = reusableProtocolAndTransport.acquire()
+    try {
+      sizeOf(obj, protocolAndTransport._2)
+    } finally {
+      reusableProtocolAndTransport.release(protocolAndTransport)
+    }
+  }
+
+  // The exact size is computed first so that the bytes are written once, into the returned array.
+  override def toBytes(obj: T): Array[Byte] =
+    encodeTo(obj, exactSize = true)(_.toByteArray)
+
+  // Emit the transport segments as they are rather than copying them into a single array first.
+  override def toOutputStream(obj: T, out: OutputStream): Unit =
+    encodeTo(obj, exactSize = false)(_.writeTo(out))
+
+  override def toChannel(obj: T, channel: WritableByteChannel): Unit =
+    encodeTo(obj, exactSize = false)(_.writeTo(channel))
+
+  override def fromBytes(bytes: Array[Byte]): T =
+    decodeFrom(_.setBytes(bytes))
+
+  override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T =
+    decodeFrom(_.setBytes(bytes, offset, length))
+
 }
 
 trait CompactThriftSerializer[T <: ThriftStruct] extends ThriftStructSerializer[T] {
   val protocolFactory: TCompactProtocol.Factory = new TCompactProtocol.Factory
+
+  override protected def newBatchDecoder(): Array[Byte] => T = {
+    val transport = new TMemoryInputTransport()
+    val proto = protocolFactory.getProtocol(transport)
+    bytes => {
+      transport.reset(bytes)
+      proto.reset()
+      codec.decode(proto)
+    }
+  }
 }
 
 object CompactThriftSerializer {
@@ -142,6 +436,131 @@ object CompactThriftSerializer {
     }
 }
 
+object LazyCompactThriftStructSerializer {
+  private val reusableProtocolAndTransport: ReusablePool[(TArrayByteTransport, TLazyCompactProtocol)] =
+    ReusablePool { () =>
+      val transport = new TArrayByteTransport
+      val proto = new TLazyCompactProtocol(transport)
+      (transport, proto)
+    }
+
+  /**
+   * Hit, miss and oversize counters of the pool of protocols shared by
+   * all LazyCompactThriftStructSerializers.
+   */
+  def poolStats: ReusablePool.Stats = reusableProtocolAndTransport.stats
+
+  def apply[T <: ThriftStruct](_codec: ThriftStructCodec[T]): LazyCompactThriftStructSerializer[T] =
+    new LazyCompactThriftStructSerializer[T] {
+      def codec: ThriftStructCodec[T] = _codec
+    }
+
+  /**
+   * A serializer decoding large lists of structs in parallel, see
+   * [[ParallelListDecoding]].
+   */
+  def apply[T <: ThriftStruct](
+    _codec: ThriftStructCodec[T],
+    _parallelListDecoding: ParallelListDecoding
+  ): LazyCompactThriftStructSerializer[T] =
+    new LazyCompactThriftStructSerializer[T] {
+      def codec: ThriftStructCodec[T] = _codec
+      override val parallelListDecoding: Option[ParallelListDecoding] = Some(_parallelListDecoding)
+    }
+}
+
+trait LazyCompactThriftStructSerializer[T <: ThriftStruct] extends ThriftStructSerializer[T] {
+  import LazyCompactThriftStructSerializer._
+
+  // Since we only support the fast path reading from the TArrayByteTransport
+  // we provide the default if someone hits it to be the TCompactProtocol which we are wire compatible with.
+  override val protocolFactory: TCompactProtocol.Factory = new TCompactProtocol.Factory
+
+  /**
+   * When set, large lists of structs are decoded in parallel, see
+   * [[ParallelListDecoding]].
+   */
+  def parallelListDecoding: Option[ParallelListDecoding] = None
+
+  // The protocols structs are decoded with, not shared with other serializers
+  // when they decode lists in parallel.
+  private[this] lazy val decodingProtocols: ReusablePool[(TArrayByteTransport, TLazyCompactProtocol)] =
+    if (parallelListDecoding.isEmpty) reusableProtocolAndTransport
+    else
+      ReusablePool { () =>
+        val transport = new TArrayByteTransport
+        val proto = new TLazyCompactProtocol(transport, parallelListDecoding)
+        (transport, proto)
+      }
+
+  // Encode obj with a pooled protocol and hand the transport to f before returning it to the pool.
+  // With exactSize, obj is written straight into an array of its serialized size.
+  private[this] def encodeTo[R](obj: T, exactSize: Boolean)(f: TArrayByteTransport => R): R = {
+    val protocolAndTransport = reusableProtocolAndTransport.acquire()
+    try {
+      val (transport, proto) = protocolAndTransport
+      if (exactSize) transport.reset(new Array[Byte](sizeOf(obj, proto)))
+      else transport.reset()
+      // the compact protocol tracks field ids across calls, make sure we start clean
+      proto.reset()
+      codec.encode(obj, proto)
+      f(transport)
+    } finally {
+      reusableProtocolAndTransport.release(protocolAndTransport)
+    }
+  }
+
+  private[this] def sizeOf(obj: T, proto: LazyTProtocol): Int = {
+    val sizes = TSizeProtocol(proto)
+    codec.encode(obj, sizes)
+    Math.toIntExact(sizes.size)
+  }
+
+  // Decode from the bytes set up by setBytes with a pooled protocol.
+  private[this] def decodeFrom(setBytes: TArrayByteTransport => Unit): T = {
+    val protocolAndTransport = decodingProtocols.acquire()
+    try {
+      val (transport, proto) = protocolAndTransport
+      setBytes(transport)
+      proto.reset()
+      codec.decode(proto)
+    } finally {
+      decodingProtocols.release(protocolAndTransport)
+    }
+  }
+
+  /**
+   * The number of bytes `toBytes(obj)` returns, lazily decoded structs
+   * count the bytes they were decoded from.
+   */
+  override def serializedSize(obj: T): Int = {
+    val protocolAndTransport = reusableProtocolAndTransport.acquire()
+    try {
+      sizeOf(obj, protocolAndTransport._2)
+    } finally {
+      reusableProtocolAndTransport.release(protocolAndTransport)
+    }
+  }
+
+  // The exact size is computed first so that the bytes are written once, into the returned array.
+  override def toBytes(obj: T): Array[Byte] =
+    encodeTo(obj, exactSize = true)(_.toByteArray)
+
+  // Emit the transport segments as they are rather than copying them into a single array first.
+  override def toOutputStream(obj: T, out: OutputStream): Unit =
+    encodeTo(obj, exactSize = false)(_.writeTo(out))
+
+  override def toChannel(obj: T, channel: WritableByteChannel): Unit =
+    encodeTo(obj, exactSize = false)(_.writeTo(channel))
+
+  override def fromBytes(bytes: Array[Byte]): T =
+    decodeFrom(_.setBytes(bytes))
+
+  override def fromBytes(bytes: Array[Byte], offset: Int, length: Int): T =
+    decodeFrom(_.setBytes(bytes, offset, length))
+
+}
+
 /**
  * Thrift serializer using the TSimpleJSONProtocol. This serializes thrift using field
  * names, and currently does NOT support deserialization of the resulting json.
@@ -0,0 +1,87 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.serializer.thriftscala.SerializerLazyTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerTest
+import java.nio.ByteBuffer
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TCompactProtocol
+import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.transport.TMemoryInputTransport
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class FieldMaskTest extends AnyFunSuite {
+
+  private[this] val instance = SerializerLazyTest(
+    boolField = true,
+    optBoolField = Some(false),
+    shortField = -3,
+    intField = Some(Int.MinValue),
+    longField = Some(Long.MaxValue),
+    doubleField = Some(-1.5),
+    strField = Some("str"),
+    binField = Some(ByteBuffer.wrap(Array[Byte](1, 2, 3))),
+    boolsField = Some(Seq(true, false, true)),
+    nestedField = Some(SerializerTest(-42)),
+    mapField = Some(Map("a" -> SerializerTest(1), "b" -> SerializerTest(2))),
+    afterNestedField = Some("after")
+  )
+
+  // Protocols reading `instance`, with the skips of TProtocolUtil and of LazyTProtocol
+  private[this] def protocols(): Seq[TProtocol] = {
+    val binary = BinaryThriftStructSerializer(SerializerLazyTest).toBytes(instance)
+    val compact = CompactThriftSerializer(SerializerLazyTest).toBytes(instance)
+    Seq(
+      new TBinaryProtocol(new TMemoryInputTransport(binary)),
+      new TCompactProtocol(new TMemoryInputTransport(compact)),
+      new TLazyBinaryProtocol(TArrayByteTransport(binary)),
+      new TLazyCompactProtocol(TArrayByteTransport(compact))
+    )
+  }
+
+  test("decode only the fields of a mask, including nested ones") {
+    val mask = FieldMask.forPaths(SerializerLazyTest, "shortField", "strField", "nestedField.intField", "32")
+    protocols().foreach { proto =>
+      val decoded = SerializerLazyTest.decode(proto, mask)
+      assert(
+        decoded == SerializerLazyTest(
+          boolField = false,
+          shortField = -3,
+          strField = Some("str"),
+          nestedField = Some(SerializerTest(-42)),
+          afterNestedField = Some("after")))
+    }
+  }
+
+  test("FieldMask.All decodes every field") {
+    protocols().foreach { proto =>
+      assert(SerializerLazyTest.decode(proto, FieldMask.All) == instance)
+    }
+  }
+
+  test("strict masks throw on access to the fields not decoded") {
+    val mask = FieldMask(3: Short, 30: Short).strict
+    protocols().foreach { proto =>
+      val decoded = SerializerLazyTest.decode(proto, mask)
+      assert(decoded.shortField == -3)
+      assert(decoded.nestedField == instance.nestedField)
+      val e = intercept[MaskedFieldException] { decoded.strField }
+      assert(e.fieldName == "strField")
+    }
+  }
+
+  test("masks merge paths and reject unknown fields") {
+    val mask = FieldMask.forPaths(SerializerLazyTest, "nestedField.intField", "nestedField", "1")
+    assert(mask == FieldMask(1: Short, 30: Short))
+    assert(mask.toString == "(1, 30)")
+    assert(FieldMask(Map((30: Short) -> FieldMask(1: Short))).strict.toString == "strict(30strict(1))")
+    intercept[IllegalArgumentException] {
+      FieldMask.forPaths(SerializerLazyTest, "nestedField.missing")
+    }
+    intercept[IllegalArgumentException] {
+      FieldMask.forPaths(SerializerLazyTest, "shortField.intField")
+    }
+  }
+}
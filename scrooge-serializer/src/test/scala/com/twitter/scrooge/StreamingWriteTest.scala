@@ -0,0 +1,75 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.serializer.thriftscala.SerializerRecordsTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerTest
+import java.io.ByteArrayOutputStream
+import java.nio.channels.Channels
+import org.apache.thrift.protocol.{TBinaryProtocol, TCompactProtocol, TProtocolException}
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class StreamingWriteTest extends AnyFunSuite {
+
+  private[this] val instance = SerializerRecordsTest(
+    name = "export",
+    records = (1 to 1000).map(SerializerTest(_)),
+    byId = Some(Map(1 -> SerializerTest(10), 2 -> SerializerTest(20))),
+    total = Some(1000L)
+  )
+
+  private[this] val serializers = Seq(
+    new TBinaryProtocol.Factory -> BinaryThriftStructSerializer(SerializerRecordsTest),
+    new TCompactProtocol.Factory -> CompactThriftSerializer(SerializerRecordsTest)
+  )
+
+  private[this] def records: Iterator[SerializerTest] = Iterator.range(1, 1001).map(SerializerTest(_))
+
+  test("write a struct from sized and unsized sources to a stream") {
+    serializers.foreach {
+      case (factory, serializer) =>
+        val sources = Seq(
+          ContainerSource.sized(1000, records),
+          ContainerSource.unsized(records),
+          ContainerSource(instance.records)
+        )
+        sources.foreach { source =>
+          val out = new ByteArrayOutputStream
+          val protocol = StreamingOutput(factory, out)
+          SerializerRecordsTest.writeStreaming(
+            protocol,
+            name = "export",
+            records = source,
+            byId = Some(ContainerSource.unsized(instance.byId.get.iterator)),
+            total = Some(1000L)
+          )
+          protocol.getTransport.flush()
+          assert(out.toByteArray.toSeq == serializer.toBytes(instance).toSeq)
+        }
+    }
+  }
+
+  test("write a struct to a channel") {
+    val out = new ByteArrayOutputStream
+    val protocol = StreamingOutput(new TCompactProtocol.Factory, Channels.newChannel(out))
+    SerializerRecordsTest.writeStreaming(protocol, "export", ContainerSource.unsized(Iterator.empty))
+    protocol.getTransport.flush()
+    assert(
+      CompactThriftSerializer(SerializerRecordsTest).fromBytes(out.toByteArray) ==
+        SerializerRecordsTest("export", Nil))
+  }
+
+  test("sized sources must have as many elements as announced") {
+    def write(source: ContainerSource[SerializerTest]): Unit =
+      SerializerRecordsTest.writeStreaming(
+        StreamingOutput(new TBinaryProtocol.Factory, new ByteArrayOutputStream),
+        "export",
+        source)
+
+    intercept[TProtocolException] { write(ContainerSource.sized(1001, records)) }
+    intercept[TProtocolException] { write(ContainerSource.sized(999, records)) }
+    intercept[TProtocolException] { write(null) }
+    intercept[IllegalArgumentException] { ContainerSource.sized(-1, records) }
+  }
+}
@@ -0,0 +1,107 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.serializer.thriftscala.SerializerRecordsTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerTest
+import java.io.ByteArrayInputStream
+import java.nio.channels.Channels
+import org.apache.thrift.protocol.{TBinaryProtocol, TCompactProtocol, TProtocolFactory, TType}
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class StructCursorTest extends AnyFunSuite {
+
+  private[this] val instance = SerializerRecordsTest(
+    name = "export",
+    records = (1 to 1000).map(SerializerTest(_)),
+    byId = Some(Map(1 -> SerializerTest(10), 2 -> SerializerTest(20))),
+    total = Some(1000L)
+  )
+
+  private[this] val factories: Seq[(TProtocolFactory, ThriftStructSerializer[SerializerRecordsTest])] =
+    Seq(
+      new TBinaryProtocol.Factory -> BinaryThriftStructSerializer(SerializerRecordsTest),
+      new TCompactProtocol.Factory -> CompactThriftSerializer(SerializerRecordsTest)
+    )
+
+  // Cursors over the encoding of `instance` from an array, a stream and a channel
+  private[this] def cursors: Seq[() => StructCursor] =
+    factories.flatMap {
+      case (factory, serializer) =>
+        val bytes = serializer.toBytes(instance)
+        Seq(
+          () => StructCursor(factory, bytes),
+          () => StructCursor(factory, new ByteArrayInputStream(bytes)),
+          () => StructCursor(factory, Channels.newChannel(new ByteArrayInputStream(bytes)))
+        )
+    }
+
+  test("read every field and element one at a time") {
+    cursors.foreach { newCursor =>
+      val cursor = newCursor()
+      var records = Vector.empty[SerializerTest]
+      var byId = Map.empty[Int, SerializerTest]
+      var total = 0L
+      var name: String = null
+      while (cursor.next()) {
+        cursor.fieldId match {
+          case 1 => name = cursor.read(_.readString())
+          case 2 =>
+            val elements = cursor.container()
+            assert(elements.size == 1000)
+            assert(elements.elementType == TType.STRUCT)
+            records = elements.iterator(SerializerTest.decode(_)).toVector
+          case 3 =>
+            byId = cursor.container().entries(_.readI32(), SerializerTest.decode(_)).toMap
+          case 4 => total = cursor.read(_.readI64())
+        }
+      }
+      assert(name == instance.name)
+      assert(records == instance.records)
+      assert(byId == instance.byId.get)
+      assert(total == 1000L)
+      assert(!cursor.next())
+    }
+  }
+
+  test("stop reading a container early and move on to the next fields") {
+    cursors.foreach { newCursor =>
+      val cursor = newCursor()
+      var firstRecords = Seq.empty[Int]
+      var total = 0L
+      while (cursor.next()) {
+        cursor.fieldId match {
+          case 2 =>
+            val records = cursor.container()
+            firstRecords = records.iterator(SerializerTest.decode(_)).take(3).map(_.intField).toSeq
+          case 3 =>
+            val entries = cursor.container()
+            assert(entries.next() && entries.isKey)
+            assert(entries.read(_.readI32()) == 1)
+            assert(entries.next() && !entries.isKey)
+            assert(entries.struct().next())
+          case 4 => total = cursor.read(_.readI64())
+          case _ =>
+        }
+      }
+      assert(firstRecords == Seq(1, 2, 3))
+      assert(total == 1000L)
+    }
+  }
+
+  test("cursors are checked for misuse") {
+    val cursor = cursors.head()
+    intercept[IllegalStateException] { cursor.read(_.readString()) }
+    assert(cursor.next())
+    intercept[IllegalStateException] { cursor.container() }
+    intercept[IllegalStateException] { cursor.readStruct(SerializerTest) }
+    assert(cursor.next())
+    val records = cursor.container()
+    intercept[IllegalStateException] { records.entries(_.readI32(), _.readI32()) }
+    assert(records.next())
+    assert(records.readStruct(SerializerTest) == SerializerTest(1))
+    assert(cursor.next())
+    intercept[IllegalStateException] { records.next() }
+  }
+}
@@ -4,6 +4,15 @@ import com.twitter.scrooge.serializer.thriftscala.SerializerStringTest
 import com.twitter.scrooge.serializer.thriftscala.SerializerListTest
 import com.twitter.scrooge.serializer.thriftscala.SerializerSetTest
 import com.twitter.scrooge.serializer.thriftscala.SerializerMapTest
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TCompactProtocol
+import org.apache.thrift.protocol.TField
+import org.apache.thrift.protocol.TMap
+import org.apache.thrift.protocol.TProtocolFactory
+import org.apache.thrift.protocol.TSet
+import org.apache.thrift.protocol.TStruct
+import org.apache.thrift.protocol.TType
+import org.apache.thrift.transport.TMemoryBuffer
 import org.junit.runner.RunWith
 import org.scalatest.funsuite.AnyFunSuite
 import org.scalatestplus.junit.JUnitRunner
@@ -150,6 +159,54 @@ class ThriftBadDataTest extends AnyFunSuite {
     bytes
   }
 
+  // A struct whose first field is a set or map of i32 announcing `size`
+  // elements, cut off after its first element.
+  private[this] def truncatedContainer(
+    factory: TProtocolFactory,
+    containerType: Byte,
+    size: Int
+  ): Array[Byte] = {
+    val buffer = new TMemoryBuffer(32)
+    val proto = factory.getProtocol(buffer)
+    proto.writeStructBegin(new TStruct("truncated"))
+    proto.writeFieldBegin(new TField("field", containerType, 1))
+    if (containerType == TType.MAP) proto.writeMapBegin(new TMap(TType.I32, TType.I32, size))
+    else proto.writeSetBegin(new TSet(TType.I32, size))
+    proto.writeI32(42)
+    proto.writeI32(42)
+    java.util.Arrays.copyOfRange(buffer.getArray, 0, buffer.length)
+  }
+
+  private[this] val hugeContainerSizes = Seq(100000000, 500000000, Int.MaxValue)
+
+  test("eager serializers throw a TException for sets announcing too many elements") {
+    Seq(
+      new TBinaryProtocol.Factory -> BinaryThriftStructSerializer(SerializerSetTest),
+      new TCompactProtocol.Factory -> CompactThriftSerializer(SerializerSetTest)
+    ).foreach {
+      case (factory, tss) =>
+        hugeContainerSizes.foreach { size =>
+          intercept[TException] {
+            tss.fromBytes(truncatedContainer(factory, TType.SET, size))
+          }
+        }
+    }
+  }
+
+  test("eager serializers throw a TException for maps announcing too many entries") {
+    Seq(
+      new TBinaryProtocol.Factory -> BinaryThriftStructSerializer(SerializerMapTest),
+      new TCompactProtocol.Factory -> CompactThriftSerializer(SerializerMapTest)
+    ).foreach {
+      case (factory, tss) =>
+        hugeContainerSizes.foreach { size =>
+          intercept[TException] {
+            tss.fromBytes(truncatedContainer(factory, TType.MAP, size))
+          }
+        }
+    }
+  }
+
   test("BinaryThriftStructSerializer throws a TException with string payloads too long") {
     val baseInputString = "asdfbd 123rfsd"
     val tss = BinaryThriftStructSerializer(SerializerStringTest)
@@ -168,6 +225,14 @@ class ThriftBadDataTest extends AnyFunSuite {
     }
   }
 
+  test("LazyBinaryThriftStructSerializer throws a TException when skipping lists too long") {
+    val tss = LazyBinaryThriftStructSerializer(SerializerListTest)
+    val badBytes = setupBadList(List(42))
+    intercept[TException] {
+      tss.fromBytes(badBytes)
+    }
+  }
+
   test("LazyBinaryThriftStructSerializer does not throw when we lazy later decode a string") {
     val inputString = "asdfbd 123rfsd"
     val instance = SerializerStringTest(inputString)
@@ -0,0 +1,75 @@
+package com.twitter.scrooge
+
+import com.twitter.scrooge.serializer.thriftscala.SerializerLazyTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerTest
+import java.nio.ByteBuffer
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ThriftPathTest extends AnyFunSuite {
+
+  private[this] val instance = SerializerLazyTest(
+    boolField = true,
+    optBoolField = Some(false),
+    shortField = -3,
+    intField = Some(Int.MinValue),
+    longField = Some(Long.MaxValue),
+    doubleField = Some(-1.5),
+    strField = Some("str"),
+    binField = Some(ByteBuffer.wrap(Array[Byte](1, 2, 3))),
+    boolsField = Some(Seq(true, false, true)),
+    nestedField = Some(SerializerTest(-42)),
+    mapField = Some(Map("a" -> SerializerTest(1), "b" -> SerializerTest(2))),
+    afterNestedField = Some("after")
+  )
+
+  // Protocols reading `struct` with each wire format
+  private[this] def protocols(struct: SerializerLazyTest): Seq[() => LazyTProtocol] = {
+    val binary = BinaryThriftStructSerializer(SerializerLazyTest).toBytes(struct)
+    val compact = CompactThriftSerializer(SerializerLazyTest).toBytes(struct)
+    Seq(
+      () => new TLazyBinaryProtocol(TArrayByteTransport(binary)),
+      () => new TLazyCompactProtocol(TArrayByteTransport(compact))
+    )
+  }
+
+  private[this] def path(p: String): ThriftPath = ThriftPath(SerializerLazyTest, p)
+
+  test("read values at paths without decoding the struct") {
+    protocols(instance).foreach { proto =>
+      assert(path("boolField").getBool(proto(), false))
+      assert(!path("optBoolField").getBool(proto(), true))
+      assert(path("shortField").getI16(proto(), 0) == -3)
+      assert(path("4").getI32(proto(), 0) == Int.MinValue)
+      assert(path("longField").getI64(proto(), 0L) == Long.MaxValue)
+      assert(path("doubleField").getDouble(proto(), 0.0) == -1.5)
+      assert(path("strField").getString(proto()) == "str")
+      assert(path("binField").getBinary(proto()) == ByteBuffer.wrap(Array[Byte](1, 2, 3)))
+      assert(path("nestedField.intField").getI32(proto(), 0) == -42)
+      assert(path("30.1").getI32(proto(), 0) == -42)
+      assert(path("afterNestedField").getString(proto()) == "after")
+    }
+  }
+
+  test("absent values read as defaults") {
+    protocols(SerializerLazyTest(boolField = false, shortField = 7)).foreach { proto =>
+      assert(path("nestedField.intField").getI32(proto(), 5) == 5)
+      assert(path("strField").getString(proto()) == null)
+      assert(path("binField").getBinary(proto()) == null)
+      assert(path("optBoolField").getBool(proto(), true))
+      assert(path("nestedField.intField").offsetIn(proto()) == -1)
+      assert(path("shortField").getI16(proto(), 0) == 7)
+    }
+  }
+
+  test("paths are checked against the struct's fields") {
+    intercept[IllegalArgumentException] { path("missing") }
+    intercept[IllegalArgumentException] { path("mapField.intField") }
+    intercept[IllegalArgumentException] { path("nestedField.missing") }
+    intercept[IllegalArgumentException] {
+      path("strField").getI64(protocols(instance).head(), 0L)
+    }
+  }
+}
@@ -1,10 +1,29 @@
 package com.twitter.scrooge
 
+import com.twitter.scrooge.serializer.thriftscala.SerializerLazyTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerMemoizedTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerPassthroughTest
+import com.twitter.scrooge.serializer.thriftscala.SerializerRecordsTest
 import com.twitter.scrooge.serializer.thriftscala.SerializerStringTest
 import com.twitter.scrooge.serializer.thriftscala.SerializerTest
+import com.twitter.io.Buf
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.util.Arrays
+import java.util.concurrent.ForkJoinPool
+import java.util.stream.Collectors
+import java.util.stream.StreamSupport
+import org.apache.thrift.TException
+import org.apache.thrift.protocol.TBinaryProtocol
+import org.apache.thrift.protocol.TProtocol
+import org.apache.thrift.protocol.TProtocolException
+import org.apache.thrift.protocol.TType
+import org.apache.thrift.transport.TTransport
 import org.junit.runner.RunWith
 import org.scalatest.funsuite.AnyFunSuite
 import org.scalatestplus.junit.JUnitRunner
+import scala.collection.mutable.ArrayBuffer
 
 @RunWith(classOf[JUnitRunner])
 class ThriftStructSerializerTest extends AnyFunSuite {
@@ -29,4 +48,422 @@ class ThriftStructSerializerTest extends AnyFunSuite {
     assert(ThriftStructSerializer.transportTooBig.get() == startCount + 1)
   }
 
+  private[this] val lazyInstances = Seq(
+    SerializerLazyTest(boolField = false, shortField = 0),
+    SerializerLazyTest(
+      boolField = true,
+      optBoolField = Some(false),
+      shortField = -3,
+      intField = Some(Int.MinValue),
+      longField = Some(Long.MaxValue),
+      doubleField = Some(-1.5),
+      strField = Some("\u00e9t\u00e9 \u6771\u4eac"),
+      binField = Some(ByteBuffer.wrap(Array[Byte](1, 2, 3))),
+      boolsField = Some(Seq(true, false, true)),
+      nestedField = Some(SerializerTest(-42)),
+      mapField = Some(Map("a" -> SerializerTest(1), "b" -> SerializerTest(2))),
+      afterNestedField = Some("after")
+    )
+  )
+
+  test("LazyCompactThriftStructSerializer round trip") {
+    val tss = LazyCompactThriftStructSerializer(SerializerLazyTest)
+    lazyInstances.foreach { instance =>
+      val bytes = tss.toBytes(instance)
+      val andBack = tss.fromBytes(bytes)
+      assert(instance == andBack)
+      assert(andBack.copy() == instance)
+    }
+  }
+
+  test("LazyCompactThriftStructSerializer is wire compatible with CompactThriftSerializer") {
+    val lazyTss = LazyCompactThriftStructSerializer(SerializerLazyTest)
+    val compactTss = CompactThriftSerializer(SerializerLazyTest)
+    lazyInstances.foreach { instance =>
+      val bytes = compactTss.toBytes(instance)
+      assert(lazyTss.toBytes(instance).sameElements(bytes))
+      assert(lazyTss.fromBytes(bytes) == instance)
+      // re-encoding a lazily decoded struct copies the bytes as is
+      assert(lazyTss.toBytes(lazyTss.fromBytes(bytes)).sameElements(bytes))
+    }
+  }
+
+  test("lazily decoded compact structs are re-encoded for other protocols") {
+    val lazyCompactTss = LazyCompactThriftStructSerializer(SerializerLazyTest)
+    val lazyBinaryTss = LazyBinaryThriftStructSerializer(SerializerLazyTest)
+    val binaryTss = BinaryThriftStructSerializer(SerializerLazyTest)
+    lazyInstances.foreach { instance =>
+      val decoded = lazyCompactTss.fromBytes(lazyCompactTss.toBytes(instance))
+      assert(lazyBinaryTss.toBytes(decoded).sameElements(binaryTss.toBytes(instance)))
+    }
+  }
+
+  test("nested structs, containers and binaries are decoded lazily on first access") {
+    val instance = lazyInstances.last
+    Seq(
+      LazyBinaryThriftStructSerializer(SerializerLazyTest),
+      LazyCompactThriftStructSerializer(SerializerLazyTest)
+    ).foreach { tss =>
+      val bytes = tss.toBytes(instance)
+      val decoded = tss.fromBytes(bytes)
+      // binaries are not copied out of the bytes read
+      assert(decoded.binField.get.array() eq bytes)
+      assert(decoded.binField == instance.binField)
+      assert(decoded.nestedField eq decoded.nestedField)
+      assert(decoded.nestedField == instance.nestedField)
+      assert(decoded.mapField == instance.mapField)
+      assert(decoded.boolsField == instance.boolsField)
+      assert(decoded.afterNestedField == instance.afterNestedField)
+    }
+  }
+
+  test("lazily decoded structs are equal when decoded from the same bytes or the same fields") {
+    val instance = lazyInstances.last
+    val lazyBinaryTss = LazyBinaryThriftStructSerializer(SerializerLazyTest)
+    val lazyCompactTss = LazyCompactThriftStructSerializer(SerializerLazyTest)
+    val bytes = lazyBinaryTss.toBytes(instance)
+    val a = lazyBinaryTss.fromBytes(bytes)
+    val b = lazyBinaryTss.fromBytes(bytes.clone())
+    assert(a == b)
+    assert(a.hashCode == b.hashCode)
+    // the same fields encoded in another wire format
+    val compact = lazyCompactTss.fromBytes(lazyCompactTss.toBytes(instance))
+    assert(a == compact && compact == a)
+    assert(a.hashCode == compact.hashCode)
+    val other = lazyBinaryTss.fromBytes(
+      lazyBinaryTss.toBytes(SerializerLazyTest(boolField = true, shortField = -3)))
+    assert(other != a && a != other)
+    assert(a == instance && instance == a)
+  }
+
+  test("passthrough fields read lazily keep their bytes and are transcoded on demand") {
+    val inputs = Seq(
+      (
+        BinaryThriftStructSerializer(SerializerLazyTest),
+        LazyBinaryThriftStructSerializer(SerializerPassthroughTest),
+        BinaryThriftStructSerializer(SerializerPassthroughTest)),
+      (
+        CompactThriftSerializer(SerializerLazyTest),
+        LazyCompactThriftStructSerializer(SerializerPassthroughTest),
+        CompactThriftSerializer(SerializerPassthroughTest))
+    )
+    val outputs = Seq(
+      BinaryThriftStructSerializer(SerializerPassthroughTest) -> BinaryThriftStructSerializer(
+        SerializerLazyTest),
+      LazyBinaryThriftStructSerializer(SerializerPassthroughTest) -> BinaryThriftStructSerializer(
+        SerializerLazyTest),
+      CompactThriftSerializer(SerializerPassthroughTest) -> CompactThriftSerializer(
+        SerializerLazyTest),
+      LazyCompactThriftStructSerializer(SerializerPassthroughTest) -> CompactThriftSerializer(
+        SerializerLazyTest),
+      // not known to write values straight to its transport, so blobs are transcoded
+      new BinaryThriftStructSerializer[SerializerPassthroughTest] {
+        override val protocolFactory: TBinaryProtocol.Factory = new TBinaryProtocol.Factory {
+          override def getProtocol(trans: TTransport): TProtocol = new TBinaryProtocol(trans) {}
+        }
+        def codec: ThriftStructCodec[SerializerPassthroughTest] = SerializerPassthroughTest
+      } -> BinaryThriftStructSerializer(SerializerLazyTest)
+    )
+    for {
+      (full, lazyPassthrough, eagerPassthrough) <- inputs
+      instance <- lazyInstances
+    } {
+      val bytes = full.toBytes(instance)
+      val decoded = lazyPassthrough.fromBytes(bytes)
+      if (lazyPassthrough.isInstanceOf[LazyBinaryThriftStructSerializer[_]]) {
+        assert(decoded._passthroughFields.values.forall { blob =>
+          blob.field.`type` == TType.BOOL || blob.content.isInstanceOf[TFieldBlob.BinaryEncodedBuf]
+        })
+      }
+      // the blobs compare equal to the ones captured in the compact encoding
+      assert(decoded == eagerPassthrough.fromBytes(bytes))
+      assert(decoded._passthroughFields.size == instance._passthroughFields.size + {
+        Seq(
+          instance.optBoolField,
+          instance.intField,
+          instance.longField,
+          instance.doubleField,
+          instance.strField,
+          instance.binField,
+          instance.boolsField,
+          instance.nestedField,
+          instance.mapField,
+          instance.afterNestedField
+        ).count(_.isDefined) + 1
+      })
+
+      // a modified copy is written field by field, passthrough fields included
+      val modified = decoded.copy(shortField = 7)
+      outputs.foreach {
+        case (passthroughOut, fullIn) =>
+          assert(fullIn.fromBytes(passthroughOut.toBytes(modified)) == instance.copy(shortField = 7))
+      }
+    }
+  }
+
+  test("decode from array slices, ByteBuffers and Bufs") {
+    val serializers = Seq(
+      BinaryThriftStructSerializer(SerializerLazyTest) -> BinaryThriftStructSerializer(
+        SerializerLazyTest),
+      LazyBinaryThriftStructSerializer(SerializerLazyTest) -> BinaryThriftStructSerializer(
+        SerializerLazyTest),
+      CompactThriftSerializer(SerializerLazyTest) -> CompactThriftSerializer(SerializerLazyTest),
+      LazyCompactThriftStructSerializer(SerializerLazyTest) -> CompactThriftSerializer(
+        SerializerLazyTest)
+    )
+    for {
+      (tss, reference) <- serializers
+      instance <- lazyInstances
+    } {
+      val bytes = reference.toBytes(instance)
+      val padded = Array.fill[Byte](7)(-1) ++ bytes ++ Array.fill[Byte](3)(-1)
+
+      val fromSlice = tss.fromBytes(padded, 7, bytes.length)
+      assert(fromSlice == instance)
+      // lazily decoded fields and raw writes keep pointing into the slice
+      assert(reference.toBytes(fromSlice).sameElements(bytes))
+      assert(tss.toBytes(fromSlice).sameElements(bytes))
+
+      val heap = ByteBuffer.wrap(padded, 7, bytes.length).slice()
+      assert(tss.fromByteBuffer(heap) == instance)
+      assert(heap.remaining == bytes.length)
+
+      val direct = ByteBuffer.allocateDirect(bytes.length)
+      direct.put(bytes).flip()
+      assert(tss.fromByteBuffer(direct) == instance)
+      assert(direct.remaining == bytes.length)
+
+      assert(tss.fromBuf(Buf.ByteArray.Shared(padded).slice(7, 7 + bytes.length)) == instance)
+      assert(tss.fromBuf(Buf.ByteBuffer.Owned(heap)) == instance)
+      val (first, second) = bytes.splitAt(bytes.length / 2)
+      assert(tss.fromBuf(Buf.ByteArray.Owned(first).concat(Buf.ByteArray.Owned(second))) == instance)
+    }
+  }
+
+  test("toOutputStream and toChannel write the same bytes as toBytes") {
+    val serializers = Seq(
+      BinaryThriftStructSerializer(SerializerLazyTest),
+      LazyBinaryThriftStructSerializer(SerializerLazyTest),
+      CompactThriftSerializer(SerializerLazyTest),
+      LazyCompactThriftStructSerializer(SerializerLazyTest)
+    )
+    for {
+      tss <- serializers
+      instance <- lazyInstances
+    } {
+      val bytes = tss.toBytes(instance)
+
+      val out = new ByteArrayOutputStream
+      tss.toOutputStream(instance, out)
+      assert(out.toByteArray.sameElements(bytes))
+
+      val channelOut = new ByteArrayOutputStream
+      tss.toChannel(instance, Channels.newChannel(channelOut))
+      assert(channelOut.toByteArray.sameElements(bytes))
+    }
+  }
+
+  test("serializedSize is the length of toBytes") {
+    val serializers = Seq(
+      BinaryThriftStructSerializer(SerializerLazyTest),
+      LazyBinaryThriftStructSerializer(SerializerLazyTest),
+      CompactThriftSerializer(SerializerLazyTest),
+      LazyCompactThriftStructSerializer(SerializerLazyTest),
+      TJSONProtocolThriftSerializer(SerializerLazyTest)
+    )
+    val decoded = for {
+      tss <- serializers.take(4)
+      instance <- lazyInstances
+    } yield tss.fromBytes(tss.toBytes(instance))
+    // passthrough fields from both wire formats, for both wire formats
+    val passthroughSerializers = Seq(
+      BinaryThriftStructSerializer(SerializerPassthroughTest),
+      LazyBinaryThriftStructSerializer(SerializerPassthroughTest),
+      CompactThriftSerializer(SerializerPassthroughTest),
+      LazyCompactThriftStructSerializer(SerializerPassthroughTest)
+    )
+    val passthroughs = for {
+      tss <- serializers.take(4)
+      passthroughTss <- passthroughSerializers
+      if tss.protocolFactory.getClass == passthroughTss.protocolFactory.getClass
+      instance <- lazyInstances
+    } yield passthroughTss.fromBytes(tss.toBytes(instance))
+
+    for (tss <- serializers) {
+      (lazyInstances ++ decoded).foreach { instance =>
+        assert(tss.serializedSize(instance) == tss.toBytes(instance).length)
+        assert(
+          SerializerLazyTest.serializedSize(instance, tss.protocolFactory) ==
+            tss.toBytes(instance).length)
+      }
+    }
+    for {
+      tss <- passthroughSerializers
+      instance <- passthroughs
+    } {
+      assert(tss.serializedSize(instance) == tss.toBytes(instance).length)
+      val modified = instance.copy(shortField = 7)
+      assert(tss.serializedSize(modified) == tss.toBytes(modified).length)
+    }
+  }
+
+  test("serializedSize is cached by immutable structs") {
+    val binary = BinaryThriftStructSerializer(SerializerStringTest)
+    val compact = CompactThriftSerializer(SerializerStringTest)
+    val instance = SerializerStringTest("\u00e9t\u00e9" * 100)
+    for (_ <- 1 to 2) {
+      assert(binary.serializedSize(instance) == 4 + 3 + 500 + 1)
+      assert(compact.serializedSize(instance) == 1 + 2 + 500 + 1)
+    }
+
+    // the size is counted from the fields again after a copy
+    val copied = instance.copy(strField = "x")
+    assert(binary.serializedSize(copied) == 4 + 3 + 1 + 1)
+    assert(compact.serializedSize(copied) == 1 + 1 + 1 + 1)
+  }
+
+  test("structs annotated with memoizeEncodedBytes keep their encoding for lazy protocols") {
+    val serializers = Seq(
+      LazyBinaryThriftStructSerializer(SerializerMemoizedTest) -> BinaryThriftStructSerializer(
+        SerializerMemoizedTest),
+      LazyCompactThriftStructSerializer(SerializerMemoizedTest) -> CompactThriftSerializer(
+        SerializerMemoizedTest)
+    )
+    // the fields are mutated behind the struct's back to tell memoized writes apart
+    val small = ArrayBuffer(1, 2, 3)
+    val smallInstance = SerializerMemoizedTest("small", small)
+    val large = ArrayBuffer(1, 2, 3)
+    val largeInstance = SerializerMemoizedTest("x" * 64, large)
+
+    val smallBytes = serializers.map { case (tss, _) => tss.toBytes(smallInstance) }
+    val largeBytes = serializers.map { case (tss, _) => tss.toBytes(largeInstance) }
+    serializers.zip(smallBytes.zip(largeBytes)).foreach {
+      case ((tss, reference), (smallEncoded, largeEncoded)) =>
+        assert(smallEncoded.sameElements(reference.toBytes(smallInstance)))
+        assert(largeEncoded.sameElements(reference.toBytes(largeInstance)))
+    }
+
+    small += 4
+    large += 4
+    serializers.zip(smallBytes).foreach {
+      case ((tss, reference), smallEncoded) =>
+        assert(tss.toBytes(smallInstance).sameElements(smallEncoded))
+        assert(tss.fromBytes(tss.toBytes(smallInstance)).listField == Seq(1, 2, 3))
+        // other protocols encode the struct again
+        assert(reference.fromBytes(reference.toBytes(smallInstance)).listField == Seq(1, 2, 3, 4))
+        // encodings larger than the bound are not kept
+        assert(tss.fromBytes(tss.toBytes(largeInstance)).listField == Seq(1, 2, 3, 4))
+    }
+  }
+
+  test("memoized structs count their size from their memoized encoding") {
+    // counts the reads of its elements, which writing the struct's fields does
+    class CountingSeq(values: Vector[Int]) extends scala.collection.immutable.IndexedSeq[Int] {
+      var reads = 0
+      def length: Int = { reads += 1; values.length }
+      def apply(idx: Int): Int = { reads += 1; values(idx) }
+    }
+
+    Seq(
+      LazyBinaryThriftStructSerializer(SerializerMemoizedTest) -> (() => TSizeProtocol.binary()),
+      LazyCompactThriftStructSerializer(SerializerMemoizedTest) -> (() => TSizeProtocol.compact())
+    ).foreach {
+      case (tss, newSizes) =>
+        val list = new CountingSeq(Vector(1, 2, 3))
+        val instance = SerializerMemoizedTest("small", list)
+        val bytes = tss.toBytes(instance)
+        assert(list.reads > 0)
+
+        list.reads = 0
+        val sizes = newSizes()
+        instance.write(sizes)
+        assert(sizes.size == bytes.length)
+        assert(tss.toBytes(instance).sameElements(bytes))
+        assert(list.reads == 0)
+
+        // without a memo for the counted wire format the fields are written
+        val otherSizes = if (sizes.isCompact) TSizeProtocol.binary() else TSizeProtocol.compact()
+        instance.write(otherSizes)
+        assert(list.reads > 0)
+    }
+  }
+
+  test("batch methods keep the order of their input") {
+    val pool = new ForkJoinPool(4)
+    try {
+      val serializers = Seq(
+        BinaryThriftStructSerializer(SerializerTest),
+        LazyBinaryThriftStructSerializer(SerializerTest),
+        CompactThriftSerializer(SerializerTest),
+        LazyCompactThriftStructSerializer(SerializerTest)
+      )
+      val instances = (0 until 10000).map(SerializerTest(_))
+      serializers.foreach { tss =>
+        val bytes = tss.toBytesBatch(instances, pool)
+        assert(bytes.length == instances.size)
+        assert(bytes.zip(instances).forall { case (b, i) => b.sameElements(tss.toBytes(i)) })
+        assert(tss.fromBytesBatch(bytes, pool) == instances)
+        assert(tss.fromBytesBatch(bytes.take(3)) == instances.take(3))
+
+        assert(tss.toBytesIterator(instances.iterator, pool).map(tss.fromBytes).toSeq == instances)
+        assert(tss.fromBytesIterator(bytes.iterator, pool).toSeq == instances)
+
+        val decoded = StreamSupport
+          .stream(tss.fromBytesSpliterator(Arrays.asList(bytes: _*).spliterator()), true)
+          .collect(Collectors.toList[SerializerTest]())
+        assert(decoded.toArray.toSeq == instances)
+      }
+    } finally {
+      pool.shutdown()
+    }
+  }
+
+  test("batch methods throw the exceptions of their elements") {
+    val tss = BinaryThriftStructSerializer(SerializerTest)
+    val bytes = tss.toBytesBatch((0 until 1000).map(SerializerTest(_)))
+    bytes(500) = Array[Byte](TType.I32, 0)
+    intercept[TException] { tss.fromBytesBatch(bytes) }
+  }
+
+  test("binary batch decoding limits string lengths like fromBytes") {
+    val tss = BinaryThriftStructSerializer(SerializerStringTest)
+    val instances = (0 until 1000).map(i => SerializerStringTest("x" * (i % 50)))
+    val bytes = tss.toBytesBatch(instances)
+    assert(tss.fromBytesBatch(bytes) == instances)
+
+    // a string field claiming Int.MaxValue bytes
+    bytes(500) = Array[Byte](TType.STRING, 0, 1, 0x7f, -1, -1, -1)
+    intercept[TProtocolException] { tss.fromBytes(bytes(500)) }
+    intercept[TProtocolException] { tss.fromBytesBatch(bytes) }
+  }
+
+  test("large lists of structs are decoded in parallel when enabled") {
+    val pool = new ForkJoinPool(4)
+    try {
+      val parallel = ParallelListDecoding(minSize = 100, pool)
+      val serializers = Seq(
+        LazyBinaryThriftStructSerializer(SerializerRecordsTest, parallel) ->
+          BinaryThriftStructSerializer(SerializerRecordsTest),
+        LazyCompactThriftStructSerializer(SerializerRecordsTest, parallel) ->
+          CompactThriftSerializer(SerializerRecordsTest)
+      )
+      val small = SerializerRecordsTest("small", (0 until 99).map(SerializerTest(_)))
+      val large = SerializerRecordsTest(
+        "large",
+        (0 until 10000).map(SerializerTest(_)),
+        Some(Map(1 -> SerializerTest(1))),
+        Some(10000L))
+      serializers.foreach {
+        case (tss, reference) =>
+          assert(tss.fromBytes(reference.toBytes(small)) == small)
+          val decoded = tss.fromBytes(reference.toBytes(large))
+          assert(decoded.records == large.records)
+          assert(decoded == large)
+          assert(tss.toBytes(decoded).sameElements(reference.toBytes(large)))
+      }
+      assert(pool.getPoolSize > 0)
+    } finally {
+      pool.shutdown()
+    }
+  }
 }
@@ -20,3 +20,35 @@ struct SerializerSetTest {
 struct SerializerMapTest {
   1: required map<i32, i32> mapField
 }
+
+struct SerializerLazyTest {
+  1: required bool boolField
+  2: optional bool optBoolField
+  3: required i16 shortField
+  4: optional i32 intField
+  5: optional i64 longField
+  6: optional double doubleField
+  7: optional string strField
+  8: optional binary binField
+  9: optional list<bool> boolsField
+  30: optional SerializerTest nestedField
+  31: optional map<string, SerializerTest> mapField
+  32: optional string afterNestedField
+}
+
+// Reads SerializerLazyTest with every other field as a passthrough field
+struct SerializerPassthroughTest {
+  3: required i16 shortField
+}
+
+struct SerializerMemoizedTest {
+  1: required string strField
+  2: required list<i32> listField
+} (com.twitter.scrooge.scala.memoizeEncodedBytes = "64")
+
+struct SerializerRecordsTest {
+  1: required string name
+  2: required list<SerializerTest> records
+  3: optional map<i32, SerializerTest> byId
+  4: optional i64 total
+}